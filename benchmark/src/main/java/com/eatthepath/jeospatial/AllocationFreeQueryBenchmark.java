@@ -0,0 +1,118 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares searches that return new lists to searches that write to reusable {@link SearchResults}. Query points are
+ * generated ahead of time so that the only allocations measured are those made by the searches themselves; run with
+ * {@code -prof gc} to see the allocation rate of each kind of search.
+ */
+@State(Scope.Thread)
+public class AllocationFreeQueryBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+    private CompactGeospatialIndex<GeospatialPoint> compactIndex;
+
+    private GeospatialPoint[] queryPoints;
+    private int nextQuery = 0;
+
+    private final SearchResults<GeospatialPoint> results = new SearchResults<>();
+
+    private static final int RESULT_SET_SIZE = 32;
+    private static final double MAX_DISTANCE = 100e3;
+    private static final int QUERY_COUNT = 1024;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random();
+        final List<GeospatialPoint> points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            points.add(createRandomPoint(random));
+        }
+
+        this.index = new VPTreeGeospatialIndex<>(points);
+        this.compactIndex = new CompactGeospatialIndex<>(points);
+
+        this.queryPoints = new GeospatialPoint[QUERY_COUNT];
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            this.queryPoints[i] = createRandomPoint(random);
+        }
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkNearestNeighborsList() {
+        return this.index.getNearestNeighbors(this.getNextQueryPoint(), RESULT_SET_SIZE);
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> benchmarkNearestNeighborsSearchResults() {
+        final GeospatialPoint queryPoint = this.getNextQueryPoint();
+        this.index.getNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), RESULT_SET_SIZE, this.results);
+
+        return this.results;
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkCompactNearestNeighborsList() {
+        return this.compactIndex.getNearestNeighbors(this.getNextQueryPoint(), RESULT_SET_SIZE);
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> benchmarkCompactNearestNeighborsSearchResults() {
+        final GeospatialPoint queryPoint = this.getNextQueryPoint();
+        this.compactIndex.getNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), RESULT_SET_SIZE, this.results);
+
+        return this.results;
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkCompactWithinDistanceList() {
+        return this.compactIndex.getAllWithinDistance(this.getNextQueryPoint(), MAX_DISTANCE);
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> benchmarkCompactWithinDistanceSearchResults() {
+        final GeospatialPoint queryPoint = this.getNextQueryPoint();
+        this.compactIndex.getAllWithinDistance(queryPoint.getLatitude(), queryPoint.getLongitude(), MAX_DISTANCE, this.results);
+
+        return this.results;
+    }
+
+    private GeospatialPoint getNextQueryPoint() {
+        final GeospatialPoint queryPoint = this.queryPoints[this.nextQuery];
+        this.nextQuery = (this.nextQuery + 1) % QUERY_COUNT;
+
+        return queryPoint;
+    }
+
+    private static GeospatialPoint createRandomPoint(final Random random) {
+        final double latitude = (random.nextDouble() * 180.0) - 90;
+        final double longitude = (random.nextDouble() * 360.0) - 180;
+
+        return new GeospatialPoint() {
+
+            @Override
+            public double getLongitude() {
+                return longitude;
+            }
+
+            @Override
+            public double getLatitude() {
+                return latitude;
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the latency of approximate nearest-neighbor searches for a range of error bounds and work budgets. Searches
+ * cycle through a fixed set of query points; at the end of each trial, the benchmark prints the recall (the fraction
+ * of true nearest neighbors found) and the fraction of searches that reported exact results for the same query points.
+ */
+@State(Scope.Thread)
+public class ApproximateQueryBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    @Param({"0", "0.1", "0.5", "1"})
+    public double epsilon;
+
+    @Param({"2147483647", "300", "100"})
+    public int maxDistanceCalculations;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+    private final SearchResults<GeospatialPoint> results = new SearchResults<>();
+
+    private double[] queryLatitudes;
+    private double[] queryLongitudes;
+    private int nextQuery;
+
+    private final Random random = new Random();
+
+    private static final int QUERY_COUNT = 1024;
+    private static final int RESULT_SET_SIZE = 10;
+
+    @Setup
+    public void setUp() {
+        final List<GeospatialPoint> points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            points.add(this.createRandomPoint());
+        }
+
+        this.index = new VPTreeGeospatialIndex<>(points);
+
+        this.queryLatitudes = new double[QUERY_COUNT];
+        this.queryLongitudes = new double[QUERY_COUNT];
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            final GeospatialPoint queryPoint = this.createRandomPoint();
+
+            this.queryLatitudes[i] = queryPoint.getLatitude();
+            this.queryLongitudes[i] = queryPoint.getLongitude();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void reportRecall() {
+        final SearchResults<GeospatialPoint> exactResults = new SearchResults<>();
+
+        int foundNeighbors = 0;
+        int totalNeighbors = 0;
+        int exactSearches = 0;
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            this.index.getNearestNeighbors(this.queryLatitudes[i], this.queryLongitudes[i], RESULT_SET_SIZE, exactResults);
+            this.index.getApproximateNearestNeighbors(this.queryLatitudes[i], this.queryLongitudes[i], RESULT_SET_SIZE,
+                    this.epsilon, this.maxDistanceCalculations, this.results);
+
+            final Set<GeospatialPoint> approximateNeighbors = new HashSet<>(this.results.toList());
+
+            for (int j = 0; j < exactResults.size(); j++) {
+                if (approximateNeighbors.contains(exactResults.get(j))) {
+                    foundNeighbors++;
+                }
+            }
+
+            totalNeighbors += exactResults.size();
+
+            if (this.results.isExact()) {
+                exactSearches++;
+            }
+        }
+
+        System.out.format("%nRecall: %.4f; exact searches: %.4f%n",
+                (double) foundNeighbors / totalNeighbors, (double) exactSearches / QUERY_COUNT);
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> benchmarkGetApproximateNearestNeighbors() {
+        final int query = this.nextQuery;
+        this.nextQuery = (query + 1) % QUERY_COUNT;
+
+        this.index.getApproximateNearestNeighbors(this.queryLatitudes[query], this.queryLongitudes[query],
+                RESULT_SET_SIZE, this.epsilon, this.maxDistanceCalculations, this.results);
+
+        return this.results;
+    }
+
+    private GeospatialPoint createRandomPoint() {
+        final double latitude = (this.random.nextDouble() * 180.0) - 90;
+        final double longitude = (this.random.nextDouble() * 360.0) - 180;
+
+        return new GeospatialPoint() {
+
+            @Override
+            public double getLongitude() {
+                return longitude;
+            }
+
+            @Override
+            public double getLatitude() {
+                return latitude;
+            }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+@State(Scope.Benchmark)
+public class BatchQueryBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    @Param({"10000"})
+    public int batchSize;
+
+    @Param({"1", "2", "4", "8"})
+    public int threadCount;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+    private List<GeospatialPoint> queryPoints;
+    private ForkJoinPool pool;
+
+    private static final int RESULT_SET_SIZE = 32;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(1);
+
+        this.index = new VPTreeGeospatialIndex<>(createRandomPoints(this.pointCount, random));
+        this.queryPoints = createRandomPoints(this.batchSize, random);
+        this.pool = new ForkJoinPool(this.threadCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    public List<List<GeospatialPoint>> benchmarkSequentialQueries() {
+        final List<List<GeospatialPoint>> results = new ArrayList<>(this.queryPoints.size());
+
+        for (final GeospatialPoint queryPoint : this.queryPoints) {
+            results.add(this.index.getNearestNeighbors(queryPoint, RESULT_SET_SIZE));
+        }
+
+        return results;
+    }
+
+    @Benchmark
+    public List<List<GeospatialPoint>> benchmarkBatchQuery() {
+        return this.index.getAllNearestNeighbors(this.queryPoints, RESULT_SET_SIZE, this.pool);
+    }
+
+    private static List<GeospatialPoint> createRandomPoints(final int count, final Random random) {
+        final List<GeospatialPoint> points = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            final double latitude = (random.nextDouble() * 180.0) - 90;
+            final double longitude = (random.nextDouble() * 360.0) - 180;
+
+            points.add(new GeospatialPoint() {
+
+                @Override
+                public double getLongitude() {
+                    return longitude;
+                }
+
+                @Override
+                public double getLatitude() {
+                    return latitude;
+                }
+            });
+        }
+
+        return points;
+    }
+}
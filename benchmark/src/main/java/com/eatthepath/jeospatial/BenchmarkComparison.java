@@ -0,0 +1,175 @@
+package com.eatthepath.jeospatial;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Compares two sets of benchmark results written in JMH's CSV format (for example, by {@link BenchmarkSuite}) and
+ * reports regressions. Run the comparison with:</p>
+ *
+ * <pre>java -cp benchmarks.jar com.eatthepath.jeospatial.BenchmarkComparison baseline.csv current.csv [threshold]</pre>
+ *
+ * <p>The comparison matches results by benchmark, thread count, and parameters, and compares each benchmark's primary
+ * score and normalized allocation rate ({@code gc.alloc.rate.norm}). A result has regressed if it's worse than the
+ * baseline by more than the threshold, which is a fraction of the baseline score and defaults to
+ * {@value #DEFAULT_THRESHOLD}. Scores measured in operations per unit time are better when higher; all others are
+ * better when lower. The program exits with a non-zero status if any result has regressed.</p>
+ */
+public class BenchmarkComparison {
+
+    public static final double DEFAULT_THRESHOLD = 0.1;
+
+    private static final String ALLOCATION_METRIC_SUFFIX = "gc.alloc.rate.norm";
+
+    // Differences in allocation smaller than this are indistinguishable from profiler noise
+    private static final double MIN_ALLOCATION_DIFFERENCE = 1;
+
+    private static class Result {
+        private final double score;
+        private final String unit;
+
+        private Result(final double score, final String unit) {
+            this.score = score;
+            this.unit = unit;
+        }
+
+        private boolean isHigherBetter() {
+            return this.unit.startsWith("ops/");
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BenchmarkComparison baseline.csv current.csv [threshold]");
+            System.exit(2);
+        }
+
+        final Map<String, Result> baseline = readResults(args[0]);
+        final Map<String, Result> current = readResults(args[1]);
+        final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+
+        int regressions = 0;
+        int comparisons = 0;
+
+        for (final Map.Entry<String, Result> entry : current.entrySet()) {
+            final Result baselineResult = baseline.get(entry.getKey());
+
+            if (baselineResult == null) {
+                System.out.format("NEW         %s%n", entry.getKey());
+                continue;
+            }
+
+            final Result currentResult = entry.getValue();
+            final double change = (currentResult.score - baselineResult.score) / baselineResult.score;
+            final boolean regressed;
+
+            if (currentResult.isHigherBetter()) {
+                regressed = change < -threshold;
+            } else if (entry.getKey().contains(ALLOCATION_METRIC_SUFFIX)) {
+                regressed = currentResult.score - baselineResult.score >= MIN_ALLOCATION_DIFFERENCE &&
+                        currentResult.score > baselineResult.score * (1 + threshold);
+            } else {
+                regressed = change > threshold;
+            }
+
+            comparisons++;
+
+            if (regressed) {
+                regressions++;
+            }
+
+            System.out.format("%-11s %s: %.3f -> %.3f %s (%+.1f%%)%n", regressed ? "REGRESSION" : "OK",
+                    entry.getKey(), baselineResult.score, currentResult.score, currentResult.unit, change * 100);
+        }
+
+        System.out.format("%d results compared, %d regressions (threshold %.1f%%)%n", comparisons, regressions, threshold * 100);
+
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the primary and allocation results from a JMH CSV file, keyed by benchmark name, thread count, and
+     * parameters.
+     */
+    static Map<String, Result> readResults(final String path) throws IOException {
+        final Map<String, Result> results = new LinkedHashMap<>();
+
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            final List<String> header = parseLine(reader.readLine());
+
+            final int benchmarkColumn = header.indexOf("Benchmark");
+            final int threadsColumn = header.indexOf("Threads");
+            final int scoreColumn = header.indexOf("Score");
+            final int unitColumn = header.indexOf("Unit");
+
+            if (benchmarkColumn < 0 || threadsColumn < 0 || scoreColumn < 0 || unitColumn < 0) {
+                throw new IOException(path + " does not look like a JMH CSV result file.");
+            }
+
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                final List<String> fields = parseLine(line);
+                final String benchmark = fields.get(benchmarkColumn);
+
+                if (benchmark.contains(":") && !benchmark.endsWith(ALLOCATION_METRIC_SUFFIX)) {
+                    continue;
+                }
+
+                // Parameter columns vary from file to file, so key results by parameter name rather than position
+                final Map<String, String> parameters = new TreeMap<>();
+
+                for (int column = 0; column < header.size() && column < fields.size(); column++) {
+                    if (header.get(column).startsWith("Param: ") && !fields.get(column).isEmpty()) {
+                        parameters.put(header.get(column).substring("Param: ".length()), fields.get(column));
+                    }
+                }
+
+                results.put(benchmark + " threads=" + fields.get(threadsColumn) + " " + parameters,
+                        new Result(Double.parseDouble(fields.get(scoreColumn)), fields.get(unitColumn)));
+            }
+        }
+
+        return results;
+    }
+
+    static List<String> parseLine(final String line) {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        fields.add(field.toString());
+
+        return fields;
+    }
+}
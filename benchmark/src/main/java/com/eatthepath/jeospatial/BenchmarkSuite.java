@@ -0,0 +1,48 @@
+package com.eatthepath.jeospatial;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Runs the reproducible benchmark suite with allocation profiling and writes the results to a CSV file that can be
+ * compared to the results of other runs with {@link BenchmarkComparison}. Run the suite with:</p>
+ *
+ * <pre>java -cp benchmarks.jar com.eatthepath.jeospatial.BenchmarkSuite [JMH options]</pre>
+ *
+ * <p>Any standard JMH options (for example, {@code -p pointCount=100000} to run a single dataset size) are passed
+ * along to JMH. Unless the options say otherwise, the suite runs the {@link QuerySuiteBenchmark} and
+ * {@link ChurnSuiteBenchmark} benchmarks with JMH's GC profiler and writes its results to
+ * {@value #DEFAULT_RESULT_FILE}.</p>
+ */
+public class BenchmarkSuite {
+
+    public static final String DEFAULT_RESULT_FILE = "jeospatial-benchmarks.csv";
+
+    public static void main(final String[] args) throws Exception {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        final ChainedOptionsBuilder optionsBuilder = new OptionsBuilder().parent(commandLineOptions);
+
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            optionsBuilder.include(QuerySuiteBenchmark.class.getSimpleName());
+            optionsBuilder.include(ChurnSuiteBenchmark.class.getSimpleName());
+        }
+
+        if (commandLineOptions.getProfilers().isEmpty()) {
+            optionsBuilder.addProfiler(GCProfiler.class);
+        }
+
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            optionsBuilder.resultFormat(ResultFormatType.CSV);
+        }
+
+        if (!commandLineOptions.getResult().hasValue()) {
+            optionsBuilder.result(DEFAULT_RESULT_FILE);
+        }
+
+        new Runner(optionsBuilder.build()).run();
+    }
+}
@@ -0,0 +1,114 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class BoundingBoxQueryBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    /**
+     * The height of each query box in degrees of latitude; boxes are twice as wide as they are tall.
+     */
+    @Param({"1", "10", "40"})
+    public double boxHeight;
+
+    /**
+     * Whether every query box should straddle the antimeridian.
+     */
+    @Param({"false", "true"})
+    public boolean crossAntimeridian;
+
+    private List<GeospatialPoint> points;
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+    private CompactGeospatialIndex<GeospatialPoint> compactIndex;
+
+    private final Random random = new Random();
+
+    @Setup
+    public void setUp() {
+        this.points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            this.points.add(new SimplePoint((this.random.nextDouble() * 180.0) - 90, (this.random.nextDouble() * 360.0) - 180));
+        }
+
+        this.index = new VPTreeGeospatialIndex<>(this.points);
+        this.compactIndex = new CompactGeospatialIndex<>(this.points);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkLinearScan() {
+        final double south = this.getRandomSouth();
+        final double west = this.getRandomWest();
+        final double north = south + this.boxHeight;
+        final double east = west + (2 * this.boxHeight);
+
+        final List<GeospatialPoint> pointsInBox = new ArrayList<>();
+
+        for (final GeospatialPoint point : this.points) {
+            final double longitude = point.getLongitude() < west ? point.getLongitude() + 360 : point.getLongitude();
+
+            if (point.getLatitude() >= south && point.getLatitude() <= north && longitude <= east) {
+                pointsInBox.add(point);
+            }
+        }
+
+        return pointsInBox;
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkQueryTree() {
+        final double south = this.getRandomSouth();
+        final double west = this.getRandomWest();
+
+        return this.index.getAllPointsInBoundingBox(south, west, south + this.boxHeight, west + (2 * this.boxHeight));
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkQueryCompactIndex() {
+        final double south = this.getRandomSouth();
+        final double west = this.getRandomWest();
+
+        return this.compactIndex.getAllPointsInBoundingBox(south, west, south + this.boxHeight, west + (2 * this.boxHeight));
+    }
+
+    private double getRandomSouth() {
+        return (this.random.nextDouble() * (180.0 - this.boxHeight)) - 90;
+    }
+
+    private double getRandomWest() {
+        return this.crossAntimeridian ?
+                180 - (this.random.nextDouble() * 2 * this.boxHeight) :
+                (this.random.nextDouble() * (360.0 - (2 * this.boxHeight))) - 180;
+    }
+
+    private static class SimplePoint implements GeospatialPoint {
+        private final double latitude;
+        private final double longitude;
+
+        private SimplePoint(final double latitude, final double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        @Override
+        public double getLatitude() {
+            return this.latitude;
+        }
+
+        @Override
+        public double getLongitude() {
+            return this.longitude;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.eatthepath.jeospatial;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * <p>Compares the time and memory needed to build an index from a file of points with a {@link GeospatialPointLoader}
+ * (from either CSV or binary files) and by reading the same CSV file into a collection of points first, as callers
+ * without a bulk loader would. Each load is a single, timed operation; after each iteration, the benchmark prints the
+ * load's throughput in rows per second and its peak live heap usage.</p>
+ *
+ * <p>Peak live heap usage is the largest amount of heap still in use after any garbage collection during the load (or
+ * after the load finishes, when the finished index is the only thing left) beyond what was in use before the load
+ * began. Because it's sampled at each collection, it's a lower bound on the true peak. Forks run with
+ * {@code -XX:MarkSweepDeadRatio=0} so full collections don't leave dead objects behind, which would skew
+ * measurements. Use JMH's GC profiler ({@code -prof gc}) to see how much memory each load allocates in total.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g", "-XX:MarkSweepDeadRatio=0" })
+public class BulkLoadBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int pointCount;
+
+    private Path csvFile;
+    private Path binaryFile;
+
+    private final GeospatialPointLoader loader = new GeospatialPointLoader();
+    private final HeapMonitor heapMonitor = new HeapMonitor();
+
+    private long startTime;
+
+    // Benchmarks store their results here instead of returning them (which would leave JMH holding a reference to the
+    // previous iteration's index when the next iteration begins)
+    private Object lastIndex;
+
+    private static final long POINT_SEED = 8675309;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final List<GeospatialPoint> points = PointDistribution.CLUSTERED.createPoints(this.pointCount, POINT_SEED);
+
+        this.csvFile = Files.createTempFile("jeospatial-benchmark", ".csv");
+        this.binaryFile = Files.createTempFile("jeospatial-benchmark", ".points");
+
+        // Most real data sets carry about six decimal places (roughly 10 centimeters) of precision
+        try (final BufferedWriter writer = Files.newBufferedWriter(this.csvFile, StandardCharsets.US_ASCII)) {
+            for (final GeospatialPoint point : points) {
+                writer.write(String.format("%.6f,%.6f,%d%n", point.getLatitude(), point.getLongitude(),
+                        ((IdentifiedGeospatialPoint) point).getId()));
+            }
+        }
+
+        final List<IdentifiedGeospatialPoint> identifiedPoints = new ArrayList<>(this.pointCount);
+
+        for (final GeospatialPoint point : points) {
+            identifiedPoints.add((IdentifiedGeospatialPoint) point);
+        }
+
+        GeospatialPointLoader.writeBinary(identifiedPoints, this.binaryFile);
+
+        this.heapMonitor.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.heapMonitor.stop();
+
+        Files.deleteIfExists(this.csvFile);
+        Files.deleteIfExists(this.binaryFile);
+    }
+
+    @Setup(Level.Iteration)
+    public void startLoad() throws InterruptedException {
+        this.heapMonitor.reset();
+
+        this.startTime = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportLoad() throws InterruptedException {
+        final long elapsedNanos = System.nanoTime() - this.startTime;
+        final long peakHeap = this.heapMonitor.getPeakHeapUsage();
+
+        System.out.format("%nRows/s: %.0f; peak live heap: %.1f MB (%.1f bytes/point)%n",
+                this.pointCount / (elapsedNanos / 1e9), peakHeap / (1024.0 * 1024.0), (double) peakHeap / this.pointCount);
+
+        this.lastIndex = null;
+    }
+
+    @Benchmark
+    public void loadCsv() throws IOException {
+        this.lastIndex = this.loader.loadCsv(this.csvFile);
+    }
+
+    @Benchmark
+    public void loadBinary() throws IOException {
+        this.lastIndex = this.loader.loadBinary(this.binaryFile);
+    }
+
+    @Benchmark
+    public void readCsvIntoCollection() throws IOException {
+        final List<IdentifiedGeospatialPoint> points = new ArrayList<>();
+
+        try (final BufferedReader reader = Files.newBufferedReader(this.csvFile, StandardCharsets.US_ASCII)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                final String[] fields = line.split(",");
+
+                points.add(new GeospatialPointHandle(Long.parseLong(fields[2]), Double.parseDouble(fields[0]),
+                        Double.parseDouble(fields[1])));
+            }
+        }
+
+        this.lastIndex = new VPTreeGeospatialIndex<>(points);
+    }
+
+    /**
+     * Tracks peak live heap usage by recording the amount of heap still in use after each garbage collection.
+     */
+    private static class HeapMonitor implements NotificationListener {
+
+        private final Set<String> heapPoolNames = new HashSet<>();
+
+        private long baseline;
+        private long peak;
+
+        // Heap usage reported by the collector may not match heap usage reported elsewhere, so all measurements come
+        // from collection notifications
+        private long lastLiveHeap;
+        private long explicitCollectionCount;
+
+        private static final String EXPLICIT_COLLECTION_CAUSE = "System.gc()";
+
+        private HeapMonitor() {
+            for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    this.heapPoolNames.add(pool.getName());
+                }
+            }
+        }
+
+        private void start() {
+            for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+            }
+        }
+
+        private void stop() {
+            for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                try {
+                    ((NotificationEmitter) collector).removeNotificationListener(this);
+                } catch (final ListenerNotFoundException e) {
+                    // Nothing to remove
+                }
+            }
+        }
+
+        private synchronized void reset() throws InterruptedException {
+            this.collect();
+
+            this.baseline = this.lastLiveHeap;
+            this.peak = this.baseline;
+        }
+
+        private synchronized long getPeakHeapUsage() throws InterruptedException {
+            // Collect whatever is left over from the load (but not the index itself) before taking a final sample
+            this.collect();
+
+            return this.peak - this.baseline;
+        }
+
+        /**
+         * Runs a full garbage collection and waits for its notification to arrive. Notifications are delivered
+         * asynchronously, so notifications for earlier collections may still be arriving, too.
+         */
+        private synchronized void collect() throws InterruptedException {
+            final long expectedCollectionCount = this.explicitCollectionCount + 1;
+
+            System.gc();
+
+            while (this.explicitCollectionCount < expectedCollectionCount) {
+                this.wait();
+            }
+        }
+
+        @Override
+        public synchronized void handleNotification(final Notification notification, final Object handback) {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                final GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+
+                long used = 0;
+
+                for (final Map.Entry<String, MemoryUsage> entry : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+                    if (this.heapPoolNames.contains(entry.getKey())) {
+                        used += entry.getValue().getUsed();
+                    }
+                }
+
+                this.lastLiveHeap = used;
+                this.peak = Math.max(this.peak, used);
+                if (EXPLICIT_COLLECTION_CAUSE.equals(info.getGcCause())) {
+                    this.explicitCollectionCount++;
+                    this.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.eatthepath.jeospatial;
+
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the throughput of steady-state churn: each operation removes one point from the index and adds another in
+ * its place, so the index stays the same size. Removed points are recycled as future additions, so the benchmark
+ * itself allocates nothing; the points to remove are chosen by a seeded random number generator, so every run follows
+ * the same sequence of operations.
+ *
+ * @see QuerySuiteBenchmark
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class ChurnSuiteBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED", "POLAR"})
+    public PointDistribution distribution;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int pointCount;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+
+    // Points currently in the index and points waiting to be added
+    private GeospatialPoint[] residents;
+    private GeospatialPoint[] replacements;
+
+    private int[] slots;
+    private int nextOperation;
+
+    private static final long POINT_SEED = 8675309;
+    private static final long REPLACEMENT_SEED = 5551212;
+    private static final long SLOT_SEED = 1234567;
+
+    private static final int OPERATION_COUNT = 4096;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final List<GeospatialPoint> points = this.distribution.createPoints(this.pointCount, POINT_SEED);
+
+        this.index = new VPTreeGeospatialIndex<>(points, AbstractGeospatialIndex.getDefaultPool());
+        this.residents = points.toArray(new GeospatialPoint[this.pointCount]);
+
+        final double[] coordinates = this.distribution.createCoordinates(OPERATION_COUNT, REPLACEMENT_SEED);
+        this.replacements = new GeospatialPoint[OPERATION_COUNT];
+
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            this.replacements[i] = new GeospatialPointHandle(this.pointCount + i, coordinates[2 * i], coordinates[2 * i + 1]);
+        }
+
+        final Random random = new Random(SLOT_SEED);
+        this.slots = new int[OPERATION_COUNT];
+
+        for (int i = 0; i < OPERATION_COUNT; i++) {
+            this.slots[i] = random.nextInt(this.pointCount);
+        }
+    }
+
+    @Benchmark
+    public boolean replacePoint() {
+        final int operation = this.nextOperation;
+        this.nextOperation = (operation + 1) % OPERATION_COUNT;
+
+        final int slot = this.slots[operation];
+        final GeospatialPoint removed = this.residents[slot];
+        final GeospatialPoint added = this.replacements[operation];
+
+        final boolean changed = this.index.remove(removed) && this.index.add(added);
+
+        this.residents[slot] = added;
+        this.replacements[operation] = removed;
+
+        return changed;
+    }
+}
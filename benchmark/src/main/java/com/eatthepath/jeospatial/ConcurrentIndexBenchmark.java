@@ -0,0 +1,159 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares a {@link ConcurrentGeospatialIndex} to a {@link VPTreeGeospatialIndex} guarded by a single lock under mixed
+ * workloads of nearest-neighbor searches and position updates (each of which removes one point and adds another).
+ * Each benchmark group runs readers and writers at a fixed ratio: "readHeavy" groups run seven readers for every
+ * writer, and "balanced" groups run one reader for every writer.
+ */
+@State(Scope.Group)
+public class ConcurrentIndexBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    private ConcurrentGeospatialIndex<GeospatialPoint> concurrentIndex;
+    private VPTreeGeospatialIndex<GeospatialPoint> lockedIndex;
+
+    // The current position of each "vehicle" in the index
+    private AtomicReferenceArray<GeospatialPoint> concurrentPositions;
+    private AtomicReferenceArray<GeospatialPoint> lockedPositions;
+
+    private static final int RESULT_SET_SIZE = 32;
+
+    @Setup
+    public void setUp() {
+        final List<GeospatialPoint> points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            points.add(createRandomPoint());
+        }
+
+        this.concurrentIndex = new ConcurrentGeospatialIndex<>(points);
+        this.lockedIndex = new VPTreeGeospatialIndex<>(points);
+
+        this.concurrentPositions = new AtomicReferenceArray<>(points.toArray(new GeospatialPoint[this.pointCount]));
+        this.lockedPositions = new AtomicReferenceArray<>(points.toArray(new GeospatialPoint[this.pointCount]));
+    }
+
+    @Benchmark
+    @Group("concurrentReadHeavy")
+    @GroupThreads(7)
+    public List<GeospatialPoint> concurrentReadHeavyQuery() {
+        return this.queryConcurrentIndex();
+    }
+
+    @Benchmark
+    @Group("concurrentReadHeavy")
+    @GroupThreads(1)
+    public boolean concurrentReadHeavyUpdate() {
+        return this.updateConcurrentIndex();
+    }
+
+    @Benchmark
+    @Group("concurrentBalanced")
+    @GroupThreads(1)
+    public List<GeospatialPoint> concurrentBalancedQuery() {
+        return this.queryConcurrentIndex();
+    }
+
+    @Benchmark
+    @Group("concurrentBalanced")
+    @GroupThreads(1)
+    public boolean concurrentBalancedUpdate() {
+        return this.updateConcurrentIndex();
+    }
+
+    @Benchmark
+    @Group("lockedReadHeavy")
+    @GroupThreads(7)
+    public List<GeospatialPoint> lockedReadHeavyQuery() {
+        return this.queryLockedIndex();
+    }
+
+    @Benchmark
+    @Group("lockedReadHeavy")
+    @GroupThreads(1)
+    public boolean lockedReadHeavyUpdate() {
+        return this.updateLockedIndex();
+    }
+
+    @Benchmark
+    @Group("lockedBalanced")
+    @GroupThreads(1)
+    public List<GeospatialPoint> lockedBalancedQuery() {
+        return this.queryLockedIndex();
+    }
+
+    @Benchmark
+    @Group("lockedBalanced")
+    @GroupThreads(1)
+    public boolean lockedBalancedUpdate() {
+        return this.updateLockedIndex();
+    }
+
+    private List<GeospatialPoint> queryConcurrentIndex() {
+        return this.concurrentIndex.getNearestNeighbors(createRandomPoint(), RESULT_SET_SIZE);
+    }
+
+    private boolean updateConcurrentIndex() {
+        final GeospatialPoint newPosition = createRandomPoint();
+        final GeospatialPoint oldPosition =
+                this.concurrentPositions.getAndSet(ThreadLocalRandom.current().nextInt(this.pointCount), newPosition);
+
+        final boolean removed = this.concurrentIndex.remove(oldPosition);
+        this.concurrentIndex.add(newPosition);
+
+        return removed;
+    }
+
+    private List<GeospatialPoint> queryLockedIndex() {
+        synchronized (this.lockedIndex) {
+            return this.lockedIndex.getNearestNeighbors(createRandomPoint(), RESULT_SET_SIZE);
+        }
+    }
+
+    private boolean updateLockedIndex() {
+        final GeospatialPoint newPosition = createRandomPoint();
+        final GeospatialPoint oldPosition =
+                this.lockedPositions.getAndSet(ThreadLocalRandom.current().nextInt(this.pointCount), newPosition);
+
+        synchronized (this.lockedIndex) {
+            final boolean removed = this.lockedIndex.remove(oldPosition);
+            this.lockedIndex.add(newPosition);
+
+            return removed;
+        }
+    }
+
+    private static GeospatialPoint createRandomPoint() {
+        final double latitude = (ThreadLocalRandom.current().nextDouble() * 180.0) - 90;
+        final double longitude = (ThreadLocalRandom.current().nextDouble() * 360.0) - 180;
+
+        return new GeospatialPoint() {
+
+            @Override
+            public double getLongitude() {
+                return longitude;
+            }
+
+            @Override
+            public double getLatitude() {
+                return latitude;
+            }
+        };
+    }
+}
@@ -0,0 +1,152 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * <p>Compares a single corridor search along a long route with the workaround of searching many overlapping circles
+ * along the route and removing duplicates from their results. The route is a winding, 800-kilometer path with a
+ * vertex about every two kilometers, and it starts at one of the indexed points so that even clustered datasets have
+ * points along the route.</p>
+ *
+ * <p>The circles are spaced one corridor width apart, and their radii are just large enough that together they cover
+ * the whole corridor; they also cover some points outside of it, so the workaround finds a few more points than the
+ * corridor search does. At the end of each trial, the benchmark prints the number of points each approach found.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class CorridorQueryBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    public PointDistribution distribution;
+
+    @Param({"1000000"})
+    public int pointCount;
+
+    @Param({"500", "5000"})
+    public double maxDistance;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+
+    private List<GeospatialPoint> route;
+    private List<GeospatialPoint> circleCenters;
+    private double circleRadius;
+
+    private static final long POINT_SEED = 8675309;
+    private static final long ROUTE_SEED = 5551212;
+
+    private static final double ROUTE_LENGTH = 800e3;
+    private static final double ROUTE_STEP = 2e3;
+
+    // The largest random change in heading, in radians, between consecutive steps along the route
+    private static final double MAX_TURN = 0.2;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final List<GeospatialPoint> points = this.distribution.createPoints(this.pointCount, POINT_SEED);
+        this.index = new VPTreeGeospatialIndex<>(points, AbstractGeospatialIndex.getDefaultPool());
+
+        final Random random = new Random(ROUTE_SEED);
+        this.route = createRoute(points.get(random.nextInt(points.size())), random);
+
+        // Circles of this radius spaced one corridor width apart leave no gaps at the edges of the corridor
+        this.circleRadius = this.maxDistance * Math.sqrt(5) / 2;
+        this.circleCenters = new ArrayList<>();
+
+        for (int i = 0; i < this.route.size() - 1; i++) {
+            final double[] start = UnitVectors.getUnitVector(this.route.get(i));
+            final double[] end = UnitVectors.getUnitVector(this.route.get(i + 1));
+            final int circleCount = (int) Math.ceil(ROUTE_STEP / this.maxDistance);
+
+            for (int j = 0; j < circleCount; j++) {
+                this.circleCenters.add(interpolate(start, end, (double) j / circleCount));
+            }
+        }
+
+        this.circleCenters.add(this.route.get(this.route.size() - 1));
+    }
+
+    @TearDown(Level.Trial)
+    public void reportResultCounts() {
+        System.out.format("%nCircles: %d; points found by corridor search: %d; by circle searches: %d%n",
+                this.circleCenters.size(), this.benchmarkCorridorSearch().size(), this.benchmarkCircleSearches().size());
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkCorridorSearch() {
+        return this.index.getAllWithinDistanceOfRoute(this.route, this.maxDistance);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkSortedCorridorSearch() {
+        return this.index.getAllWithinDistanceOfRoute(this.route, this.maxDistance, true);
+    }
+
+    @Benchmark
+    public Set<GeospatialPoint> benchmarkCircleSearches() {
+        final Set<GeospatialPoint> points = new LinkedHashSet<>();
+
+        for (final GeospatialPoint center : this.circleCenters) {
+            points.addAll(this.index.getAllWithinDistance(center, this.circleRadius));
+        }
+
+        return points;
+    }
+
+    private static List<GeospatialPoint> createRoute(final GeospatialPoint start, final Random random) {
+        final List<GeospatialPoint> route = new ArrayList<>();
+        final double stepAngle = ROUTE_STEP / HaversineDistanceFunction.EARTH_RADIUS;
+
+        double latitude = Math.toRadians(start.getLatitude());
+        double longitude = Math.toRadians(start.getLongitude());
+        double heading = random.nextDouble() * 2 * Math.PI;
+
+        route.add(start);
+
+        for (double length = 0; length < ROUTE_LENGTH; length += ROUTE_STEP) {
+            // Step along a great circle in the current direction of travel
+            final double nextLatitude = Math.asin(Math.sin(latitude) * Math.cos(stepAngle) +
+                    Math.cos(latitude) * Math.sin(stepAngle) * Math.cos(heading));
+
+            longitude += Math.atan2(Math.sin(heading) * Math.sin(stepAngle) * Math.cos(latitude),
+                    Math.cos(stepAngle) - Math.sin(latitude) * Math.sin(nextLatitude));
+
+            latitude = nextLatitude;
+            heading += (random.nextDouble() * 2 - 1) * MAX_TURN;
+
+            route.add(new GeospatialPointHandle(route.size(), Math.toDegrees(latitude), normalizeLongitude(Math.toDegrees(longitude))));
+        }
+
+        return route;
+    }
+
+    private static double normalizeLongitude(final double longitude) {
+        return longitude - (360 * Math.floor((longitude + 180) / 360));
+    }
+
+    private static GeospatialPoint interpolate(final double[] start, final double[] end, final double fraction) {
+        final double x = start[0] + (end[0] - start[0]) * fraction;
+        final double y = start[1] + (end[1] - start[1]) * fraction;
+        final double z = start[2] + (end[2] - start[2]) * fraction;
+
+        return new GeospatialPointHandle(0, Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y))), Math.toDegrees(Math.atan2(y, x)));
+    }
+}
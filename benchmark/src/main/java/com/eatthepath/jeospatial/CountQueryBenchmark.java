@@ -0,0 +1,151 @@
+package com.eatthepath.jeospatial;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares count and grid aggregation queries with the workaround of finding every matching point and counting (or
+ * binning) the resulting list. Query points follow the same distribution as the indexed points. Bounding boxes are
+ * centered on the query points and reach {@code queryDistance} meters north, south, east, and west of them; grids
+ * divide those boxes into {@value #GRID_SIZE} by {@value #GRID_SIZE} cells. At the end of each trial, the benchmark
+ * prints the mean number of points matched by each kind of query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class CountQueryBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    public PointDistribution distribution;
+
+    @Param({"1000000"})
+    public int pointCount;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public double queryDistance;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+
+    private List<GeospatialPoint> queryPoints;
+    private double[] boxes;
+    private int nextQuery;
+
+    private static final long POINT_SEED = 8675309;
+    private static final long QUERY_SEED = 5551212;
+
+    private static final int QUERY_COUNT = 1024;
+    private static final int GRID_SIZE = 16;
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(HaversineDistanceFunction.EARTH_RADIUS);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.index = new VPTreeGeospatialIndex<>(this.distribution.createPoints(this.pointCount, POINT_SEED));
+        this.queryPoints = this.distribution.createPoints(QUERY_COUNT, QUERY_SEED);
+        this.boxes = new double[4 * QUERY_COUNT];
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            final GeospatialPoint queryPoint = this.queryPoints.get(i);
+
+            final double height = this.queryDistance / METERS_PER_DEGREE;
+            final double width = Math.min(180, height / Math.max(0.01, Math.cos(Math.toRadians(queryPoint.getLatitude()))));
+
+            this.boxes[4 * i] = Math.max(-90, queryPoint.getLatitude() - height);
+            this.boxes[4 * i + 1] = queryPoint.getLongitude() - width;
+            this.boxes[4 * i + 2] = Math.min(90, queryPoint.getLatitude() + height);
+            this.boxes[4 * i + 3] = queryPoint.getLongitude() + width;
+        }
+
+        // Young collections copy the points into the order in which the tree refers to them, which makes later
+        // traversals much friendlier to the cache. Benchmarks that allocate lists would get that benefit partway
+        // through a trial while counting benchmarks (which allocate almost nothing) never would, so promote the points
+        // in place up front to give every benchmark the same heap layout.
+        System.gc();
+    }
+
+    @TearDown(Level.Trial)
+    public void reportMatches() {
+        long pointsWithinDistance = 0;
+        long pointsInBoxes = 0;
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            final GeospatialPoint queryPoint = this.queryPoints.get(i);
+
+            pointsWithinDistance += this.index.countWithinDistance(queryPoint.getLatitude(), queryPoint.getLongitude(), this.queryDistance);
+            pointsInBoxes += this.index.countInBoundingBox(this.boxes[4 * i], this.boxes[4 * i + 1], this.boxes[4 * i + 2], this.boxes[4 * i + 3]);
+        }
+
+        System.out.format("%nMean points within distance: %.1f; mean points in bounding box: %.1f%n",
+                (double) pointsWithinDistance / QUERY_COUNT, (double) pointsInBoxes / QUERY_COUNT);
+    }
+
+    @Benchmark
+    public int benchmarkCountWithinDistance() {
+        final GeospatialPoint queryPoint = this.queryPoints.get(this.getNextQuery());
+
+        return this.index.countWithinDistance(queryPoint.getLatitude(), queryPoint.getLongitude(), this.queryDistance);
+    }
+
+    @Benchmark
+    public int benchmarkListAndCountWithinDistance() {
+        final GeospatialPoint queryPoint = this.queryPoints.get(this.getNextQuery());
+
+        return this.index.getAllWithinDistance(queryPoint, this.queryDistance).size();
+    }
+
+    @Benchmark
+    public int benchmarkCountInBoundingBox() {
+        final int box = 4 * this.getNextQuery();
+
+        return this.index.countInBoundingBox(this.boxes[box], this.boxes[box + 1], this.boxes[box + 2], this.boxes[box + 3]);
+    }
+
+    @Benchmark
+    public int benchmarkListAndCountInBoundingBox() {
+        final int box = 4 * this.getNextQuery();
+
+        return this.index.getAllPointsInBoundingBox(this.boxes[box], this.boxes[box + 1], this.boxes[box + 2], this.boxes[box + 3]).size();
+    }
+
+    @Benchmark
+    public int[][] benchmarkCountInGrid() {
+        final int box = 4 * this.getNextQuery();
+
+        return this.index.countInGrid(this.boxes[box], this.boxes[box + 1], this.boxes[box + 2], this.boxes[box + 3],
+                GRID_SIZE, GRID_SIZE);
+    }
+
+    @Benchmark
+    public int[][] benchmarkListAndBinInGrid() {
+        final int box = 4 * this.getNextQuery();
+
+        final CountGrid grid = new CountGrid(this.boxes[box], this.boxes[box + 1], this.boxes[box + 2], this.boxes[box + 3],
+                GRID_SIZE, GRID_SIZE);
+
+        for (final GeospatialPoint point : this.index.getAllPointsInBoundingBox(this.boxes[box], this.boxes[box + 1], this.boxes[box + 2], this.boxes[box + 3])) {
+            grid.add(point.getLatitude(), point.getLongitude());
+        }
+
+        return grid.getCounts();
+    }
+
+    private int getNextQuery() {
+        final int query = this.nextQuery;
+        this.nextQuery = (query + 1) % QUERY_COUNT;
+
+        return query;
+    }
+}
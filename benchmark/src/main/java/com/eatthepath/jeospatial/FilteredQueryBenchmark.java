@@ -0,0 +1,140 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Finds the nearest points in a single category when points are spread evenly across {@code categoryCount}
+ * categories. The "overFetch" benchmarks search for a fixed multiple of the desired number of points and filter the
+ * results afterward (and may come up short); the others apply a filter during the search, and the "categorized"
+ * benchmark additionally skips parts of the index that contain no points in the desired category.
+ */
+@State(Scope.Thread)
+public class FilteredQueryBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    @Param({"8", "64"})
+    public int categoryCount;
+
+    private VPTreeGeospatialIndex<CategorizedPoint> index;
+    private CompactGeospatialIndex<CategorizedPoint> compactIndex;
+    private CompactGeospatialIndex<CategorizedPoint> categorizedIndex;
+
+    private CategoryFilter<CategorizedPoint> filter;
+
+    private final Random random = new Random();
+
+    private static final int RESULT_SET_SIZE = 20;
+    private static final int OVER_FETCH_FACTOR = 10;
+
+    private static class CategorizedPoint implements GeospatialPoint {
+        private final double latitude;
+        private final double longitude;
+        private final int category;
+
+        private CategorizedPoint(final double latitude, final double longitude, final int category) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.category = category;
+        }
+
+        public double getLatitude() {
+            return this.latitude;
+        }
+
+        public double getLongitude() {
+            return this.longitude;
+        }
+    }
+
+    private static final PointCategorizer<CategorizedPoint> CATEGORIZER = new PointCategorizer<CategorizedPoint>() {
+
+        public long getCategories(final CategorizedPoint point) {
+            return 1L << point.category;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        final List<CategorizedPoint> points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            points.add(new CategorizedPoint((this.random.nextDouble() * 180.0) - 90,
+                    (this.random.nextDouble() * 360.0) - 180, this.random.nextInt(this.categoryCount)));
+        }
+
+        this.index = new VPTreeGeospatialIndex<>(points);
+        this.compactIndex = new CompactGeospatialIndex<>(points);
+        this.categorizedIndex = new CompactGeospatialIndex<>(CompactGeospatialIndex.DEFAULT_LEAF_CAPACITY, points, CATEGORIZER);
+
+        this.filter = new CategoryFilter<>(CATEGORIZER, 1L);
+    }
+
+    @Benchmark
+    public List<CategorizedPoint> benchmarkOverFetchTree() {
+        return this.overFetch(this.index);
+    }
+
+    @Benchmark
+    public List<CategorizedPoint> benchmarkFilteredTree() {
+        return this.index.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE, this.filter);
+    }
+
+    @Benchmark
+    public List<CategorizedPoint> benchmarkOverFetchCompactIndex() {
+        return this.overFetch(this.compactIndex);
+    }
+
+    @Benchmark
+    public List<CategorizedPoint> benchmarkFilteredCompactIndex() {
+        return this.compactIndex.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE, this.filter);
+    }
+
+    @Benchmark
+    public List<CategorizedPoint> benchmarkFilteredCategorizedCompactIndex() {
+        return this.categorizedIndex.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE, this.filter);
+    }
+
+    private List<CategorizedPoint> overFetch(final GeospatialIndex<CategorizedPoint> index) {
+        final List<CategorizedPoint> accepted = new ArrayList<>(RESULT_SET_SIZE);
+
+        for (final CategorizedPoint point : index.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE * OVER_FETCH_FACTOR)) {
+            if (this.filter.allowPoint(point)) {
+                accepted.add(point);
+
+                if (accepted.size() == RESULT_SET_SIZE) {
+                    break;
+                }
+            }
+        }
+
+        return accepted;
+    }
+
+    private GeospatialPoint createRandomPoint() {
+        final double latitude = (this.random.nextDouble() * 180.0) - 90;
+        final double longitude = (this.random.nextDouble() * 360.0) - 180;
+
+        return new GeospatialPoint() {
+
+            @Override
+            public double getLongitude() {
+                return longitude;
+            }
+
+            @Override
+            public double getLatitude() {
+                return latitude;
+            }
+        };
+    }
+}
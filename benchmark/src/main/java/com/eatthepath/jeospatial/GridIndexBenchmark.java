@@ -0,0 +1,126 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares a grid index to tree-based indices for small-radius and nearest-neighbor queries over points in a single
+ * city-sized region. Points are either spread evenly across the region ("uniform") or clustered around a handful of
+ * hotspots ("clustered"); query points follow the same distribution as the indexed points.
+ */
+@State(Scope.Thread)
+public class GridIndexBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    @Param({"uniform", "clustered"})
+    public String distribution;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+    private CompactGeospatialIndex<GeospatialPoint> compactIndex;
+    private GridGeospatialIndex<GeospatialPoint> gridIndex;
+
+    private double[] hotspotLatitudes;
+    private double[] hotspotLongitudes;
+
+    private final Random random = new Random();
+
+    private static final double REGION_SOUTH = 40.2;
+    private static final double REGION_WEST = -74.5;
+    private static final double REGION_SIZE = 1.0;
+
+    private static final int HOTSPOT_COUNT = 20;
+
+    // Roughly two kilometers
+    private static final double HOTSPOT_STANDARD_DEVIATION = 0.02;
+
+    private static final double SEARCH_RADIUS = 1000;
+    private static final int RESULT_SET_SIZE = 32;
+
+    @Setup
+    public void setUp() {
+        this.hotspotLatitudes = new double[HOTSPOT_COUNT];
+        this.hotspotLongitudes = new double[HOTSPOT_COUNT];
+
+        for (int i = 0; i < HOTSPOT_COUNT; i++) {
+            this.hotspotLatitudes[i] = REGION_SOUTH + this.random.nextDouble() * REGION_SIZE;
+            this.hotspotLongitudes[i] = REGION_WEST + this.random.nextDouble() * REGION_SIZE;
+        }
+
+        final List<GeospatialPoint> points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            points.add(this.createRandomPoint());
+        }
+
+        this.index = new VPTreeGeospatialIndex<>(points);
+        this.compactIndex = new CompactGeospatialIndex<>(points);
+        this.gridIndex = new GridGeospatialIndex<>(SEARCH_RADIUS, points);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetAllWithinDistanceTree() {
+        return this.index.getAllWithinDistance(this.createRandomPoint(), SEARCH_RADIUS);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetAllWithinDistanceCompactIndex() {
+        return this.compactIndex.getAllWithinDistance(this.createRandomPoint(), SEARCH_RADIUS);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetAllWithinDistanceGridIndex() {
+        return this.gridIndex.getAllWithinDistance(this.createRandomPoint(), SEARCH_RADIUS);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetNearestNeighborsTree() {
+        return this.index.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetNearestNeighborsCompactIndex() {
+        return this.compactIndex.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetNearestNeighborsGridIndex() {
+        return this.gridIndex.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE);
+    }
+
+    private GeospatialPoint createRandomPoint() {
+        final double latitude;
+        final double longitude;
+
+        if ("clustered".equals(this.distribution)) {
+            final int hotspot = this.random.nextInt(HOTSPOT_COUNT);
+
+            latitude = this.hotspotLatitudes[hotspot] + this.random.nextGaussian() * HOTSPOT_STANDARD_DEVIATION;
+            longitude = this.hotspotLongitudes[hotspot] + this.random.nextGaussian() * HOTSPOT_STANDARD_DEVIATION;
+        } else {
+            latitude = REGION_SOUTH + this.random.nextDouble() * REGION_SIZE;
+            longitude = REGION_WEST + this.random.nextDouble() * REGION_SIZE;
+        }
+
+        return new GeospatialPoint() {
+
+            @Override
+            public double getLongitude() {
+                return longitude;
+            }
+
+            @Override
+            public double getLatitude() {
+                return latitude;
+            }
+        };
+    }
+}
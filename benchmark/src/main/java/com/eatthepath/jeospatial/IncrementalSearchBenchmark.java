@@ -0,0 +1,145 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Finds the nearest points that satisfy a condition when the number of neighbors to examine isn't known in advance.
+ * Only a fraction of points (given by {@code acceptanceRate}) satisfy the condition. The incremental benchmarks walk
+ * outward with a nearest-neighbor iterator until they've found enough points; the "repeated" benchmarks search for a
+ * fixed number of neighbors and, if too few of them satisfy the condition, search again for twice as many.
+ */
+@State(Scope.Thread)
+public class IncrementalSearchBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    @Param({"0.1", "0.01"})
+    public double acceptanceRate;
+
+    private VPTreeGeospatialIndex<FlaggedPoint> index;
+    private CompactGeospatialIndex<FlaggedPoint> compactIndex;
+
+    private final Random random = new Random();
+
+    private static final int RESULT_SET_SIZE = 20;
+
+    private static class FlaggedPoint implements GeospatialPoint {
+        private final double latitude;
+        private final double longitude;
+        private final boolean accepted;
+
+        private FlaggedPoint(final double latitude, final double longitude, final boolean accepted) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accepted = accepted;
+        }
+
+        public double getLatitude() {
+            return this.latitude;
+        }
+
+        public double getLongitude() {
+            return this.longitude;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        final List<FlaggedPoint> points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            points.add(new FlaggedPoint((this.random.nextDouble() * 180.0) - 90, (this.random.nextDouble() * 360.0) - 180,
+                    this.random.nextDouble() < this.acceptanceRate));
+        }
+
+        this.index = new VPTreeGeospatialIndex<>(points);
+        this.compactIndex = new CompactGeospatialIndex<>(points);
+    }
+
+    @Benchmark
+    public List<FlaggedPoint> benchmarkIncrementalTree() {
+        return findAcceptedIncrementally(this.index, this.createRandomPoint());
+    }
+
+    @Benchmark
+    public List<FlaggedPoint> benchmarkRepeatedTree() {
+        return findAcceptedRepeatedly(this.index, this.createRandomPoint());
+    }
+
+    @Benchmark
+    public List<FlaggedPoint> benchmarkIncrementalCompactIndex() {
+        return findAcceptedIncrementally(this.compactIndex, this.createRandomPoint());
+    }
+
+    @Benchmark
+    public List<FlaggedPoint> benchmarkRepeatedCompactIndex() {
+        return findAcceptedRepeatedly(this.compactIndex, this.createRandomPoint());
+    }
+
+    private static List<FlaggedPoint> findAcceptedIncrementally(final GeospatialIndex<FlaggedPoint> index, final GeospatialPoint queryPoint) {
+        final List<FlaggedPoint> accepted = new ArrayList<>(RESULT_SET_SIZE);
+        final Iterator<FlaggedPoint> iterator = index.getNearestNeighborIterator(queryPoint);
+
+        while (accepted.size() < RESULT_SET_SIZE && iterator.hasNext()) {
+            final FlaggedPoint point = iterator.next();
+
+            if (point.accepted) {
+                accepted.add(point);
+            }
+        }
+
+        return accepted;
+    }
+
+    private static List<FlaggedPoint> findAcceptedRepeatedly(final GeospatialIndex<FlaggedPoint> index, final GeospatialPoint queryPoint) {
+        final List<FlaggedPoint> accepted = new ArrayList<>(RESULT_SET_SIZE);
+
+        for (int k = RESULT_SET_SIZE; ; k *= 2) {
+            final List<FlaggedPoint> neighbors = index.getNearestNeighbors(queryPoint, k);
+            accepted.clear();
+
+            for (final FlaggedPoint point : neighbors) {
+                if (point.accepted) {
+                    accepted.add(point);
+
+                    if (accepted.size() == RESULT_SET_SIZE) {
+                        return accepted;
+                    }
+                }
+            }
+
+            if (neighbors.size() < k) {
+                // We've run out of points
+                return accepted;
+            }
+        }
+    }
+
+    private GeospatialPoint createRandomPoint() {
+        final double latitude = (this.random.nextDouble() * 180.0) - 90;
+        final double longitude = (this.random.nextDouble() * 360.0) - 180;
+
+        return new GeospatialPoint() {
+
+            @Override
+            public double getLongitude() {
+                return longitude;
+            }
+
+            @Override
+            public double getLatitude() {
+                return latitude;
+            }
+        };
+    }
+}
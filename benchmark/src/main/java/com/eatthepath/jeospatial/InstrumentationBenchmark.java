@@ -0,0 +1,80 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the cost of query instrumentation by running the same searches against an index with and without
+ * instrumentation attached.
+ */
+@State(Scope.Thread)
+public class InstrumentationBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    @Param({"false", "true"})
+    public boolean instrumented;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+    private final SearchResults<GeospatialPoint> results = new SearchResults<>();
+
+    private final Random random = new Random();
+
+    private static final int RESULT_SET_SIZE = 32;
+    private static final double SEARCH_RADIUS = 100e3;
+    private static final double BOUNDING_BOX_SIZE = 2;
+
+    @Setup
+    public void setUp() {
+        final List<GeospatialPoint> points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            points.add(new GeospatialPointHandle(i, this.randomLatitude(), this.randomLongitude()));
+        }
+
+        this.index = new VPTreeGeospatialIndex<>(points);
+
+        if (this.instrumented) {
+            this.index.setInstrumentation(new QueryInstrumentation());
+        }
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> benchmarkGetNearestNeighbors() {
+        this.index.getNearestNeighbors(this.randomLatitude(), this.randomLongitude(), RESULT_SET_SIZE, this.results);
+        return this.results;
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> benchmarkGetAllWithinDistance() {
+        this.index.getAllWithinDistance(this.randomLatitude(), this.randomLongitude(), SEARCH_RADIUS, this.results);
+        return this.results;
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> benchmarkGetAllPointsInBoundingBox() {
+        final double south = (this.random.nextDouble() * (180 - BOUNDING_BOX_SIZE)) - 90;
+        final double west = this.randomLongitude();
+
+        this.index.getAllPointsInBoundingBox(south, west, south + BOUNDING_BOX_SIZE,
+                BoundingBox.normalizeLongitude(west + BOUNDING_BOX_SIZE), this.results);
+
+        return this.results;
+    }
+
+    private double randomLatitude() {
+        return (this.random.nextDouble() * 180.0) - 90;
+    }
+
+    private double randomLongitude() {
+        return (this.random.nextDouble() * 360.0) - 180;
+    }
+}
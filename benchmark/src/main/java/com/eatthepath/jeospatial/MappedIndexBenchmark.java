@@ -0,0 +1,101 @@
+package com.eatthepath.jeospatial;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares the time needed to make an index available (by rebuilding a compact index in memory or by mapping a
+ * previously-written index file) and the query latency of each kind of index once it's available.
+ */
+@State(Scope.Thread)
+public class MappedIndexBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int pointCount;
+
+    private List<IdentifiedGeospatialPoint> points;
+    private CompactGeospatialIndex<IdentifiedGeospatialPoint> compactIndex;
+    private MappedGeospatialIndex mappedIndex;
+    private Path indexFile;
+
+    private final Random random = new Random();
+
+    private static final int RESULT_SET_SIZE = 32;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            this.points.add(new GeospatialPointHandle(i, (this.random.nextDouble() * 180.0) - 90, (this.random.nextDouble() * 360.0) - 180));
+        }
+
+        this.compactIndex = new CompactGeospatialIndex<>(this.points);
+
+        this.indexFile = Files.createTempFile("jeospatial-benchmark", ".index");
+        MappedGeospatialIndex.write(this.compactIndex, this.indexFile);
+
+        this.mappedIndex = MappedGeospatialIndex.open(this.indexFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.indexFile);
+    }
+
+    @Benchmark
+    public CompactGeospatialIndex<IdentifiedGeospatialPoint> benchmarkBuildCompactIndex() {
+        return new CompactGeospatialIndex<>(this.points);
+    }
+
+    @Benchmark
+    public MappedGeospatialIndex benchmarkOpenMappedIndex() throws IOException {
+        return MappedGeospatialIndex.open(this.indexFile, false);
+    }
+
+    @Benchmark
+    public MappedGeospatialIndex benchmarkOpenMappedIndexWithChecksum() throws IOException {
+        return MappedGeospatialIndex.open(this.indexFile, true);
+    }
+
+    @Benchmark
+    public List<IdentifiedGeospatialPoint> benchmarkQueryCompactIndex() {
+        return this.compactIndex.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE);
+    }
+
+    @Benchmark
+    public List<IdentifiedGeospatialPoint> benchmarkQueryMappedIndex() {
+        return this.mappedIndex.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE);
+    }
+
+    @Benchmark
+    public List<IdentifiedGeospatialPoint> benchmarkBoundingBoxQueryCompactIndex() {
+        final double south = (this.random.nextDouble() * 170.0) - 90;
+        final double west = (this.random.nextDouble() * 360.0) - 180;
+
+        return this.compactIndex.getAllPointsInBoundingBox(south, west, south + 1, west + 2);
+    }
+
+    @Benchmark
+    public List<IdentifiedGeospatialPoint> benchmarkBoundingBoxQueryMappedIndex() {
+        final double south = (this.random.nextDouble() * 170.0) - 90;
+        final double west = (this.random.nextDouble() * 360.0) - 180;
+
+        return this.mappedIndex.getAllPointsInBoundingBox(south, west, south + 1, west + 2);
+    }
+
+    private GeospatialPoint createRandomPoint() {
+        return new GeospatialPointHandle(-1, (this.random.nextDouble() * 180.0) - 90, (this.random.nextDouble() * 360.0) - 180);
+    }
+}
@@ -0,0 +1,185 @@
+package com.eatthepath.jeospatial;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * <p>Measures an index of moving points (think of a fleet of vehicles) as the points move. Each update moves one point
+ * a short distance along its heading, which wanders a little with every step; updates cycle through the points in a
+ * fixed order, and all randomness comes from fixed seeds. Updates either {@linkplain VPTreeGeospatialIndex#move move}
+ * points in place or remove them and add them again at their new positions.</p>
+ *
+ * <p>{@code benchmarkUpdate} measures the cost of updates themselves. {@code benchmarkNearestNeighbors} measures
+ * searches as the index churns: before each iteration (of either benchmark), every point moves once, so later
+ * iterations search an index that has drifted further from its original shape. At the end of each iteration, the
+ * benchmark prints the total number of updates so far and the shape of the tree; compare the scores of successive
+ * iterations to see how search latency drifts over time.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class MovingPointBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    public PointDistribution distribution;
+
+    @Param({"100000"})
+    public int pointCount;
+
+    @Param({"MOVE", "REMOVE_AND_ADD"})
+    public UpdateStrategy updateStrategy;
+
+    public enum UpdateStrategy {
+        MOVE, REMOVE_AND_ADD
+    }
+
+    private VPTreeGeospatialIndex<Vehicle> index;
+    private Vehicle[] vehicles;
+    private int nextVehicle;
+    private long updateCount;
+
+    private Random random;
+
+    private double[] queryCoordinates;
+    private int nextQuery;
+
+    private final SearchResults<Vehicle> results = new SearchResults<>();
+
+    private static final long POINT_SEED = 8675309;
+    private static final long QUERY_SEED = 5551212;
+    private static final long MOVEMENT_SEED = 1234567;
+
+    private static final int QUERY_COUNT = 1024;
+    private static final int RESULT_SET_SIZE = 10;
+
+    private static final double STEP_DISTANCE = 1e3;
+
+    // The largest random change in heading, in radians, between consecutive steps
+    private static final double MAX_TURN = 0.2;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.random = new Random(MOVEMENT_SEED);
+
+        final List<GeospatialPoint> points = this.distribution.createPoints(this.pointCount, POINT_SEED);
+        this.vehicles = new Vehicle[this.pointCount];
+
+        for (int i = 0; i < this.pointCount; i++) {
+            final GeospatialPoint point = points.get(i);
+            this.vehicles[i] = new Vehicle(point.getLatitude(), point.getLongitude(), this.random.nextDouble() * 2 * Math.PI);
+        }
+
+        this.index = new VPTreeGeospatialIndex<>(Arrays.asList(this.vehicles));
+        this.queryCoordinates = this.distribution.createCoordinates(QUERY_COUNT, QUERY_SEED);
+    }
+
+    @Setup(Level.Iteration)
+    public void moveAllPoints() {
+        for (int i = 0; i < this.pointCount; i++) {
+            this.update();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportTreeShape() {
+        final TreeStatistics statistics = this.index.getTreeStatistics();
+
+        System.out.format("%nUpdates so far: %d; tree balance: %.3f; maximum depth: %d%n",
+                this.updateCount, statistics.getBalance(), statistics.getMaxDepth());
+    }
+
+    @Benchmark
+    public boolean benchmarkUpdate() {
+        return this.update();
+    }
+
+    @Benchmark
+    public int benchmarkNearestNeighbors() {
+        final int query = this.nextQuery;
+        this.nextQuery = (query + 1) % QUERY_COUNT;
+
+        this.index.getNearestNeighbors(this.queryCoordinates[2 * query], this.queryCoordinates[2 * query + 1],
+                RESULT_SET_SIZE, this.results);
+
+        return this.results.size();
+    }
+
+    private boolean update() {
+        final Vehicle vehicle = this.vehicles[this.nextVehicle];
+        this.nextVehicle = (this.nextVehicle + 1) % this.vehicles.length;
+        this.updateCount++;
+
+        // Step along a great circle in the current direction of travel
+        final double stepAngle = STEP_DISTANCE / HaversineDistanceFunction.EARTH_RADIUS;
+        final double latitude = Math.toRadians(vehicle.getLatitude());
+        final double heading = vehicle.heading;
+
+        final double nextLatitude = Math.asin(Math.sin(latitude) * Math.cos(stepAngle) +
+                Math.cos(latitude) * Math.sin(stepAngle) * Math.cos(heading));
+
+        final double nextLongitude = vehicle.getLongitude() + Math.toDegrees(Math.atan2(
+                Math.sin(heading) * Math.sin(stepAngle) * Math.cos(latitude),
+                Math.cos(stepAngle) - Math.sin(latitude) * Math.sin(nextLatitude)));
+
+        vehicle.heading += (this.random.nextDouble() * 2 - 1) * MAX_TURN;
+
+        final double newLatitude = Math.toDegrees(nextLatitude);
+        final double newLongitude = BoundingBox.normalizeLongitude(nextLongitude);
+
+        if (this.updateStrategy == UpdateStrategy.MOVE) {
+            final boolean moved = this.index.move(vehicle, newLatitude, newLongitude);
+            vehicle.setPosition(newLatitude, newLongitude);
+
+            return moved;
+        } else {
+            final boolean removed = this.index.remove(vehicle);
+            vehicle.setPosition(newLatitude, newLongitude);
+
+            return removed && this.index.add(vehicle);
+        }
+    }
+
+    /**
+     * A moving point that is equal only to itself.
+     */
+    private static class Vehicle implements GeospatialPoint {
+        private double latitude;
+        private double longitude;
+        private double heading;
+
+        private Vehicle(final double latitude, final double longitude, final double heading) {
+            this.setPosition(latitude, longitude);
+            this.heading = heading;
+        }
+
+        private void setPosition(final double latitude, final double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        @Override
+        public double getLatitude() {
+            return this.latitude;
+        }
+
+        @Override
+        public double getLongitude() {
+            return this.longitude;
+        }
+    }
+}
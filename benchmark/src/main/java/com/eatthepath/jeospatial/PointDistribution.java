@@ -0,0 +1,177 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible distributions of points on the earth's surface for benchmarks. Each distribution produces the same
+ * points for the same seed, so results from different runs (and different releases) measure the same workload.
+ */
+public enum PointDistribution {
+
+    /**
+     * Points spread uniformly over the surface of the earth (not uniformly in latitude and longitude, which would
+     * crowd points toward the poles).
+     */
+    UNIFORM {
+        @Override
+        void setCoordinates(final Random random, final double[] coordinates, final int index) {
+            coordinates[2 * index] = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+            coordinates[2 * index + 1] = randomLongitude(random);
+        }
+    },
+
+    /**
+     * Points clustered around a fixed set of "cities" whose populations follow a Zipf distribution, with a small
+     * fraction of "rural" points spread uniformly over the earth. Larger cities are also more spread out.
+     */
+    CLUSTERED {
+        @Override
+        void setCoordinates(final Random random, final double[] coordinates, final int index) {
+            if (random.nextDouble() < RURAL_FRACTION) {
+                UNIFORM.setCoordinates(random, coordinates, index);
+            } else {
+                final int city = Cities.pickCity(random);
+                final double spread = Cities.SPREADS[city];
+
+                coordinates[2 * index] = clampLatitude(Cities.LATITUDES[city] + random.nextGaussian() * spread);
+                coordinates[2 * index + 1] = BoundingBox.normalizeLongitude(Cities.LONGITUDES[city] +
+                        random.nextGaussian() * spread / Math.max(0.01, Math.cos(Math.toRadians(Cities.LATITUDES[city]))));
+            }
+        }
+    },
+
+    /**
+     * Points crowded toward the north and south poles, where lines of longitude converge and longitude-based
+     * partitioning schemes perform worst. Most points lie within a few degrees of a pole; the rest are spread uniformly
+     * over the earth.
+     */
+    POLAR {
+        @Override
+        void setCoordinates(final Random random, final double[] coordinates, final int index) {
+            if (random.nextDouble() < POLAR_FRACTION) {
+                final double colatitude = Math.min(90, Math.abs(random.nextGaussian()) * POLAR_SPREAD);
+
+                coordinates[2 * index] = random.nextBoolean() ? 90 - colatitude : colatitude - 90;
+                coordinates[2 * index + 1] = randomLongitude(random);
+            } else {
+                UNIFORM.setCoordinates(random, coordinates, index);
+            }
+        }
+    };
+
+    private static final double RURAL_FRACTION = 0.05;
+
+    private static final double POLAR_FRACTION = 0.8;
+    private static final double POLAR_SPREAD = 5;
+
+    /**
+     * Sets the coordinates of a single point in an array of interleaved latitudes and longitudes.
+     */
+    abstract void setCoordinates(Random random, double[] coordinates, int index);
+
+    /**
+     * Generates the coordinates of the given number of points from this distribution.
+     *
+     * @param count the number of points to generate
+     * @param seed the seed for the random number generator; equal seeds produce equal coordinates
+     *
+     * @return an array of interleaved latitudes and longitudes, in degrees, with the latitude of the {@code i}th point
+     * at index {@code 2 * i} and its longitude at index {@code 2 * i + 1}
+     */
+    public double[] createCoordinates(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final double[] coordinates = new double[2 * count];
+
+        for (int i = 0; i < count; i++) {
+            this.setCoordinates(random, coordinates, i);
+        }
+
+        return coordinates;
+    }
+
+    /**
+     * Generates the given number of points from this distribution. Each point's ID is its position in the returned
+     * list.
+     *
+     * @param count the number of points to generate
+     * @param seed the seed for the random number generator; equal seeds produce equal points
+     *
+     * @return a list of points drawn from this distribution
+     */
+    public List<GeospatialPoint> createPoints(final int count, final long seed) {
+        final double[] coordinates = this.createCoordinates(count, seed);
+        final List<GeospatialPoint> points = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            points.add(new GeospatialPointHandle(i, coordinates[2 * i], coordinates[2 * i + 1]));
+        }
+
+        return points;
+    }
+
+    private static double randomLongitude(final Random random) {
+        return random.nextDouble() * 360 - 180;
+    }
+
+    private static double clampLatitude(final double latitude) {
+        return Math.max(-90, Math.min(90, latitude));
+    }
+
+    /**
+     * A fixed set of cities shared by all clustered datasets regardless of seed.
+     */
+    private static class Cities {
+        private static final int CITY_COUNT = 200;
+        private static final long CITY_SEED = 0x6a656f7370617469L;
+
+        // The most populous city has points spread about 20 km (0.18 degrees) from its center
+        private static final double MAX_SPREAD = 0.18;
+
+        private static final double[] LATITUDES = new double[CITY_COUNT];
+        private static final double[] LONGITUDES = new double[CITY_COUNT];
+        private static final double[] SPREADS = new double[CITY_COUNT];
+        private static final double[] CUMULATIVE_WEIGHTS = new double[CITY_COUNT];
+
+        static {
+            final Random random = new Random(CITY_SEED);
+            double totalWeight = 0;
+
+            for (int city = 0; city < CITY_COUNT; city++) {
+                // Most people live between about 45 degrees south and 60 degrees north
+                LATITUDES[city] = random.nextDouble() * 105 - 45;
+                LONGITUDES[city] = randomLongitude(random);
+
+                final double weight = 1.0 / (city + 1);
+
+                SPREADS[city] = MAX_SPREAD * Math.sqrt(weight);
+                totalWeight += weight;
+                CUMULATIVE_WEIGHTS[city] = totalWeight;
+            }
+
+            for (int city = 0; city < CITY_COUNT; city++) {
+                CUMULATIVE_WEIGHTS[city] /= totalWeight;
+            }
+        }
+
+        private static int pickCity(final Random random) {
+            final double target = random.nextDouble();
+
+            int low = 0;
+            int high = CITY_COUNT - 1;
+
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+
+                if (CUMULATIVE_WEIGHTS[middle] < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+    }
+}
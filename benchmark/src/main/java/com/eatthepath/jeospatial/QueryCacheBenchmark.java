@@ -0,0 +1,106 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares searches of a vp-tree with and without a caching layer when query points are concentrated around a handful
+ * of city blocks. Indexed points are spread evenly across a city-sized region.
+ */
+@State(Scope.Thread)
+public class QueryCacheBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    @Param({"16", "256"})
+    public int hotspotCount;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+    private CachingGeospatialIndex<GeospatialPoint> cachingIndex;
+
+    private double[] hotspotLatitudes;
+    private double[] hotspotLongitudes;
+
+    private final Random random = new Random();
+
+    private static final double REGION_SOUTH = 40.2;
+    private static final double REGION_WEST = -74.5;
+    private static final double REGION_SIZE = 1.0;
+
+    // Roughly 50 meters
+    private static final double HOTSPOT_STANDARD_DEVIATION = 0.0005;
+
+    private static final int RESULT_SET_SIZE = 10;
+    private static final double SEARCH_RADIUS = 500;
+
+    @Setup
+    public void setUp() {
+        final List<GeospatialPoint> points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            points.add(createPoint(REGION_SOUTH + this.random.nextDouble() * REGION_SIZE,
+                    REGION_WEST + this.random.nextDouble() * REGION_SIZE));
+        }
+
+        this.hotspotLatitudes = new double[this.hotspotCount];
+        this.hotspotLongitudes = new double[this.hotspotCount];
+
+        for (int i = 0; i < this.hotspotCount; i++) {
+            this.hotspotLatitudes[i] = REGION_SOUTH + this.random.nextDouble() * REGION_SIZE;
+            this.hotspotLongitudes[i] = REGION_WEST + this.random.nextDouble() * REGION_SIZE;
+        }
+
+        this.index = new VPTreeGeospatialIndex<>(points);
+        this.cachingIndex = new CachingGeospatialIndex<>(this.index);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetNearestNeighborsTree() {
+        return this.index.getNearestNeighbors(this.createQueryPoint(), RESULT_SET_SIZE);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetNearestNeighborsCachingIndex() {
+        return this.cachingIndex.getNearestNeighbors(this.createQueryPoint(), RESULT_SET_SIZE);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetAllWithinDistanceTree() {
+        return this.index.getAllWithinDistance(this.createQueryPoint(), SEARCH_RADIUS);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetAllWithinDistanceCachingIndex() {
+        return this.cachingIndex.getAllWithinDistance(this.createQueryPoint(), SEARCH_RADIUS);
+    }
+
+    private GeospatialPoint createQueryPoint() {
+        final int hotspot = this.random.nextInt(this.hotspotCount);
+
+        return createPoint(this.hotspotLatitudes[hotspot] + this.random.nextGaussian() * HOTSPOT_STANDARD_DEVIATION,
+                this.hotspotLongitudes[hotspot] + this.random.nextGaussian() * HOTSPOT_STANDARD_DEVIATION);
+    }
+
+    private static GeospatialPoint createPoint(final double latitude, final double longitude) {
+        return new GeospatialPoint() {
+
+            @Override
+            public double getLongitude() {
+                return longitude;
+            }
+
+            @Override
+            public double getLatitude() {
+                return latitude;
+            }
+        };
+    }
+}
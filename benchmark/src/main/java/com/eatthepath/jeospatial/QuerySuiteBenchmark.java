@@ -0,0 +1,181 @@
+package com.eatthepath.jeospatial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * <p>Measures search throughput for each kind of search over reproducible datasets of several shapes and sizes. All
+ * data and query points are generated from fixed seeds, so every run (on every release) measures the same workload.
+ * Query points follow the same distribution as the indexed points and are generated ahead of time, so searches are
+ * the only source of allocation; searches write to reusable {@link SearchResults}.</p>
+ *
+ * <p>Each kind of search has its own parameters (the number of neighbors, search radius, or kind of bounding box), so
+ * JMH only combines those parameters with the dataset parameters for the searches that use them. The
+ * {@code *MultiThreaded} benchmarks run the same searches from one thread per available processor against a single
+ * shared index.</p>
+ *
+ * <p>The largest datasets need several gigabytes of heap; each fork runs with a 4 GB heap. Use
+ * {@code -p pointCount=...} to run a subset of sizes, and see {@link BenchmarkSuite} for running the whole suite with
+ * allocation profiling and machine-readable output.</p>
+ */
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class QuerySuiteBenchmark {
+
+    private static final long POINT_SEED = 8675309;
+    private static final long QUERY_SEED = 5551212;
+
+    private static final int QUERY_COUNT = 4096;
+
+    @State(Scope.Benchmark)
+    public static class Dataset {
+
+        @Param({"UNIFORM", "CLUSTERED", "POLAR"})
+        public PointDistribution distribution;
+
+        @Param({"10000", "100000", "1000000", "10000000"})
+        public int pointCount;
+
+        VPTreeGeospatialIndex<GeospatialPoint> index;
+        double[] queryCoordinates;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            this.index = new VPTreeGeospatialIndex<>(this.distribution.createPoints(this.pointCount, POINT_SEED),
+                    AbstractGeospatialIndex.getDefaultPool());
+
+            this.queryCoordinates = this.distribution.createCoordinates(QUERY_COUNT, QUERY_SEED);
+        }
+    }
+
+    /**
+     * Per-thread search state. Each thread starts at a different (but fixed) position in the list of query points.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final SearchResults<GeospatialPoint> results = new SearchResults<>();
+        private int nextQuery;
+
+        private static int nextStartingQuery;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            synchronized (Cursor.class) {
+                this.nextQuery = nextStartingQuery;
+                nextStartingQuery = (nextStartingQuery + QUERY_COUNT / 8) % QUERY_COUNT;
+            }
+        }
+
+        int nextQuery() {
+            final int query = this.nextQuery;
+            this.nextQuery = (query + 1) % QUERY_COUNT;
+
+            return query;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class NearestNeighborParameters {
+
+        @Param({"1", "10", "100"})
+        public int k;
+    }
+
+    @State(Scope.Benchmark)
+    public static class DistanceParameters {
+
+        /**
+         * The search radius, in meters.
+         */
+        @Param({"1000", "10000", "100000"})
+        public double radius;
+    }
+
+    @State(Scope.Benchmark)
+    public static class BoundingBoxParameters {
+
+        @Param({"CITY", "REGION", "ANTIMERIDIAN"})
+        public BoundingBoxShape shape;
+    }
+
+    public enum BoundingBoxShape {
+
+        /**
+         * Boxes about 10 kilometers on a side, centered on the query point.
+         */
+        CITY(0.1, false),
+
+        /**
+         * Boxes about 500 kilometers on a side, centered on the query point.
+         */
+        REGION(5, false),
+
+        /**
+         * Boxes about 500 kilometers on a side, centered on the query point's latitude but on the antimeridian, so
+         * every box spans the line where longitudes wrap from 180 to -180 degrees.
+         */
+        ANTIMERIDIAN(5, true);
+
+        private final double size;
+        private final boolean centeredOnAntimeridian;
+
+        private BoundingBoxShape(final double size, final boolean centeredOnAntimeridian) {
+            this.size = size;
+            this.centeredOnAntimeridian = centeredOnAntimeridian;
+        }
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> nearestNeighbors(final Dataset dataset, final Cursor cursor, final NearestNeighborParameters parameters) {
+        final int query = cursor.nextQuery();
+
+        dataset.index.getNearestNeighbors(dataset.queryCoordinates[2 * query], dataset.queryCoordinates[2 * query + 1],
+                parameters.k, cursor.results);
+
+        return cursor.results;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public SearchResults<GeospatialPoint> nearestNeighborsMultiThreaded(final Dataset dataset, final Cursor cursor, final NearestNeighborParameters parameters) {
+        return this.nearestNeighbors(dataset, cursor, parameters);
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> withinDistance(final Dataset dataset, final Cursor cursor, final DistanceParameters parameters) {
+        final int query = cursor.nextQuery();
+
+        dataset.index.getAllWithinDistance(dataset.queryCoordinates[2 * query], dataset.queryCoordinates[2 * query + 1],
+                parameters.radius, cursor.results);
+
+        return cursor.results;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public SearchResults<GeospatialPoint> withinDistanceMultiThreaded(final Dataset dataset, final Cursor cursor, final DistanceParameters parameters) {
+        return this.withinDistance(dataset, cursor, parameters);
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> inBoundingBox(final Dataset dataset, final Cursor cursor, final BoundingBoxParameters parameters) {
+        final int query = cursor.nextQuery();
+        final BoundingBoxShape shape = parameters.shape;
+
+        final double latitude = dataset.queryCoordinates[2 * query];
+        final double longitude = shape.centeredOnAntimeridian ? 180 : dataset.queryCoordinates[2 * query + 1];
+
+        final double south = Math.max(-90, latitude - shape.size / 2);
+        final double north = Math.min(90, latitude + shape.size / 2);
+
+        dataset.index.getAllPointsInBoundingBox(south, BoundingBox.normalizeLongitude(longitude - shape.size / 2),
+                north, BoundingBox.normalizeLongitude(longitude + shape.size / 2), cursor.results);
+
+        return cursor.results;
+    }
+}
@@ -0,0 +1,92 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares searches of a sharded index to searches of a single vp-tree containing the same points, and measures the
+ * cost of rebuilding one shard of the sharded index versus rebuilding the entire tree.
+ */
+@State(Scope.Thread)
+public class ShardedIndexBenchmark {
+
+    @Param({"100000"})
+    public int pointCount;
+
+    private List<GeospatialPoint> points;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+    private ShardedGeospatialIndex<GeospatialPoint> shardedIndex;
+
+    private final Random random = new Random();
+
+    private static final int RESULT_SET_SIZE = 32;
+    private static final double SEARCH_RADIUS = 100e3;
+
+    @Setup
+    public void setUp() {
+        this.points = new ArrayList<>(this.pointCount);
+
+        for (int i = 0; i < this.pointCount; i++) {
+            this.points.add(this.createRandomPoint());
+        }
+
+        this.index = new VPTreeGeospatialIndex<>(this.points);
+        this.shardedIndex = new ShardedGeospatialIndex<>(this.points);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetNearestNeighborsTree() {
+        return this.index.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetNearestNeighborsShardedIndex() {
+        return this.shardedIndex.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetAllWithinDistanceTree() {
+        return this.index.getAllWithinDistance(this.createRandomPoint(), SEARCH_RADIUS);
+    }
+
+    @Benchmark
+    public List<GeospatialPoint> benchmarkGetAllWithinDistanceShardedIndex() {
+        return this.shardedIndex.getAllWithinDistance(this.createRandomPoint(), SEARCH_RADIUS);
+    }
+
+    @Benchmark
+    public VPTreeGeospatialIndex<GeospatialPoint> benchmarkRebuildTree() {
+        return new VPTreeGeospatialIndex<>(this.points);
+    }
+
+    @Benchmark
+    public void benchmarkRebuildShard() {
+        this.shardedIndex.rebuildShard(this.random.nextInt(this.shardedIndex.getShardCount()));
+    }
+
+    private GeospatialPoint createRandomPoint() {
+        final double latitude = (this.random.nextDouble() * 180.0) - 90;
+        final double longitude = (this.random.nextDouble() * 360.0) - 180;
+
+        return new GeospatialPoint() {
+
+            @Override
+            public double getLongitude() {
+                return longitude;
+            }
+
+            @Override
+            public double getLatitude() {
+                return latitude;
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+package com.eatthepath.jeospatial;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares dual-tree spatial joins between two indices with the workaround of looping over the points in one index
+ * and searching the other index for each of them. Both sides of each join have the same distribution but are
+ * generated from different seeds (think riders and drivers in the same cities). The loops always run on a single
+ * thread; the joins run in a pool with {@code threadCount} threads. Both approaches pass every pair they find to the
+ * same callback, which counts them, and the benchmark prints the counts at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SpatialJoinBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    public PointDistribution distribution;
+
+    @Param({"100000"})
+    public int pointCount;
+
+    @Param({"1", "4"})
+    public int threadCount;
+
+    private List<GeospatialPoint> riderPoints;
+    private VPTreeGeospatialIndex<GeospatialPoint> riders;
+    private VPTreeGeospatialIndex<GeospatialPoint> drivers;
+
+    private ForkJoinPool pool;
+    private final SearchResults<GeospatialPoint> results = new SearchResults<>();
+
+    private static final long RIDER_SEED = 8675309;
+    private static final long DRIVER_SEED = 5551212;
+
+    private static final double MAX_DISTANCE = 2e3;
+    private static final int NEIGHBOR_COUNT = 8;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.riderPoints = this.distribution.createPoints(this.pointCount, RIDER_SEED);
+        this.riders = new VPTreeGeospatialIndex<>(this.riderPoints);
+        this.drivers = new VPTreeGeospatialIndex<>(this.distribution.createPoints(this.pointCount, DRIVER_SEED));
+
+        this.pool = new ForkJoinPool(this.threadCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.format("%nPairs within %.0f meters: %d (loop), %d (join); nearest-neighbor pairs: %d (loop), %d (join)%n",
+                MAX_DISTANCE, this.benchmarkLoopWithinDistance(), this.benchmarkJoinWithinDistance(),
+                this.benchmarkLoopNearestNeighbors(), this.benchmarkJoinNearestNeighbors());
+
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    public long benchmarkLoopWithinDistance() {
+        final StripedCounter pairCount = new StripedCounter(1);
+        final PairCounter callback = new PairCounter(pairCount);
+
+        for (final GeospatialPoint rider : this.riderPoints) {
+            this.drivers.getAllWithinDistance(rider.getLatitude(), rider.getLongitude(), MAX_DISTANCE, this.results);
+            callback.pointsJoined(rider, this.results);
+        }
+
+        return pairCount.sum();
+    }
+
+    @Benchmark
+    public long benchmarkJoinWithinDistance() {
+        final StripedCounter pairCount = new StripedCounter(this.threadCount);
+
+        this.riders.joinWithinDistance(this.drivers, MAX_DISTANCE, new PairCounter(pairCount), this.pool);
+
+        return pairCount.sum();
+    }
+
+    @Benchmark
+    public long benchmarkLoopNearestNeighbors() {
+        final StripedCounter pairCount = new StripedCounter(1);
+        final PairCounter callback = new PairCounter(pairCount);
+
+        for (final GeospatialPoint rider : this.riderPoints) {
+            this.drivers.getNearestNeighbors(rider.getLatitude(), rider.getLongitude(), NEIGHBOR_COUNT, this.results);
+            callback.pointsJoined(rider, this.results);
+        }
+
+        return pairCount.sum();
+    }
+
+    @Benchmark
+    public long benchmarkJoinNearestNeighbors() {
+        final StripedCounter pairCount = new StripedCounter(this.threadCount);
+
+        this.riders.joinNearestNeighbors(this.drivers, NEIGHBOR_COUNT, new PairCounter(pairCount), this.pool);
+
+        return pairCount.sum();
+    }
+
+    private static class PairCounter implements JoinCallback<GeospatialPoint, GeospatialPoint> {
+        private final StripedCounter pairCount;
+
+        private PairCounter(final StripedCounter pairCount) {
+            this.pairCount = pairCount;
+        }
+
+        @Override
+        public void pointsJoined(final GeospatialPoint point, final GeospatialPoint otherPoint, final double distance) {
+            this.pairCount.increment();
+        }
+
+        /**
+         * Passes each result of a search for the given point to this callback, just as a join would.
+         */
+        private void pointsJoined(final GeospatialPoint point, final SearchResults<GeospatialPoint> results) {
+            for (int i = 0; i < results.size(); i++) {
+                this.pointsJoined(point, results.get(i), results.getDistance(i));
+            }
+        }
+    }
+}
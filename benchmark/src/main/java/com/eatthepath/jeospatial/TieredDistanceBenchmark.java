@@ -0,0 +1,102 @@
+package com.eatthepath.jeospatial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares search throughput with exact and tiered distance evaluation. Compare the scores for
+ * {@link DistanceMode#EXACT} and {@link DistanceMode#TIERED} to see any speedup. Searches cycle through a fixed set of
+ * query points. At the end of each trial, the benchmark repeats those searches with instrumentation attached and
+ * prints the fraction of exact distance calculations that tiered evaluation avoided.
+ */
+@State(Scope.Thread)
+public class TieredDistanceBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    public PointDistribution distribution;
+
+    @Param({"100000"})
+    public int pointCount;
+
+    @Param({"EXACT", "TIERED"})
+    public DistanceMode distanceMode;
+
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+    private final SearchResults<GeospatialPoint> results = new SearchResults<>();
+
+    private double[] queryCoordinates;
+    private int nextQuery;
+
+    private static final long POINT_SEED = 8675309;
+    private static final long QUERY_SEED = 5551212;
+
+    private static final int QUERY_COUNT = 1024;
+    private static final int RESULT_SET_SIZE = 10;
+    private static final double SEARCH_RADIUS = 25e3;
+
+    @Setup
+    public void setUp() {
+        this.index = new VPTreeGeospatialIndex<>(this.distribution.createPoints(this.pointCount, POINT_SEED));
+        this.index.setDistanceMode(this.distanceMode);
+
+        this.queryCoordinates = this.distribution.createCoordinates(QUERY_COUNT, QUERY_SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void reportExactDistanceCalculations() {
+        final QueryInstrumentation instrumentation = new QueryInstrumentation();
+        this.index.setInstrumentation(instrumentation);
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            this.benchmarkGetNearestNeighbors();
+        }
+
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            this.benchmarkGetAllWithinDistance();
+        }
+
+        this.index.setInstrumentation(null);
+
+        final QueryMetrics nearestNeighborMetrics = instrumentation.getMetrics(QueryType.NEAREST_NEIGHBORS);
+        final QueryMetrics withinDistanceMetrics = instrumentation.getMetrics(QueryType.WITHIN_DISTANCE);
+
+        System.out.format("%nExact distance calculations avoided: %.4f (nearest neighbors), %.4f (within distance)%n",
+                getFractionAvoided(nearestNeighborMetrics), getFractionAvoided(withinDistanceMetrics));
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> benchmarkGetNearestNeighbors() {
+        final int query = this.nextQuery();
+
+        this.index.getNearestNeighbors(this.queryCoordinates[2 * query], this.queryCoordinates[2 * query + 1],
+                RESULT_SET_SIZE, this.results);
+
+        return this.results;
+    }
+
+    @Benchmark
+    public SearchResults<GeospatialPoint> benchmarkGetAllWithinDistance() {
+        final int query = this.nextQuery();
+
+        this.index.getAllWithinDistance(this.queryCoordinates[2 * query], this.queryCoordinates[2 * query + 1],
+                SEARCH_RADIUS, this.results);
+
+        return this.results;
+    }
+
+    private int nextQuery() {
+        final int query = this.nextQuery;
+        this.nextQuery = (query + 1) % QUERY_COUNT;
+
+        return query;
+    }
+
+    private static double getFractionAvoided(final QueryMetrics metrics) {
+        return 1 - ((double) metrics.getExactDistanceCalculations() / metrics.getDistanceCalculations());
+    }
+}
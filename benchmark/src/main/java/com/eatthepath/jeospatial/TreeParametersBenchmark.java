@@ -0,0 +1,92 @@
+package com.eatthepath.jeospatial;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures nearest-neighbor searches of trees built with different {@link TreeParameters}. Query points follow the
+ * same distribution as the indexed points. At the end of each trial, the benchmark prints the work done per query
+ * with that trial's parameters (as measured by a {@link TreeTuner}) and, once per dataset, the parameters the tuner
+ * would choose from a sample of the dataset.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class TreeParametersBenchmark {
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    public PointDistribution distribution;
+
+    @Param({"1000000"})
+    public int pointCount;
+
+    @Param({"8", "16", "32", "64", "128"})
+    public int nodeCapacity;
+
+    @Param({"1", "8"})
+    public int vantagePointCandidates;
+
+    private List<GeospatialPoint> points;
+    private List<GeospatialPoint> queryPoints;
+    private TreeParameters parameters;
+    private VPTreeGeospatialIndex<GeospatialPoint> index;
+
+    private double[] queryCoordinates;
+    private int nextQuery;
+
+    private final SearchResults<GeospatialPoint> results = new SearchResults<>();
+
+    private static final long POINT_SEED = 8675309;
+    private static final long QUERY_SEED = 5551212;
+    private static final long SAMPLE_SEED = 1234567;
+
+    private static final int QUERY_COUNT = 1024;
+    private static final int SAMPLE_SIZE = 100000;
+    private static final int RESULT_SET_SIZE = 10;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.points = this.distribution.createPoints(this.pointCount, POINT_SEED);
+        this.parameters = new TreeParameters(this.nodeCapacity, this.vantagePointCandidates);
+        this.index = new VPTreeGeospatialIndex<>(this.parameters, this.points, AbstractGeospatialIndex.getDefaultPool());
+
+        this.queryCoordinates = this.distribution.createCoordinates(QUERY_COUNT, QUERY_SEED);
+        this.queryPoints = this.distribution.createPoints(QUERY_COUNT, QUERY_SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void reportWork() {
+        System.out.format("%n%s%n", new TreeTuner(this.points, this.queryPoints, RESULT_SET_SIZE).evaluate(this.parameters));
+
+        if (this.nodeCapacity == TreeParameters.DEFAULT_NODE_CAPACITY &&
+                this.vantagePointCandidates == TreeParameters.DEFAULT_VANTAGE_POINT_CANDIDATES) {
+
+            final List<GeospatialPoint> sample = this.distribution.createPoints(SAMPLE_SIZE, SAMPLE_SEED);
+            System.out.format("Tuned parameters: %s%n", new TreeTuner(sample, this.queryPoints, RESULT_SET_SIZE).tune());
+        }
+    }
+
+    @Benchmark
+    public int benchmarkNearestNeighbors() {
+        final int query = this.nextQuery;
+        this.nextQuery = (query + 1) % QUERY_COUNT;
+
+        this.index.getNearestNeighbors(this.queryCoordinates[2 * query], this.queryCoordinates[2 * query + 1],
+                RESULT_SET_SIZE, this.results);
+
+        return this.results.size();
+    }
+}
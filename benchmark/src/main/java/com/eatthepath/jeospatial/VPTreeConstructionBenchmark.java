@@ -31,49 +31,51 @@
 
 package com.eatthepath.jeospatial;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 
 @State(Scope.Thread)
 public class VPTreeConstructionBenchmark {
 
-    @Param({"100000"})
+    @Param({"100000", "1000000"})
     public int pointCount;
 
-    private final Random random = new Random();
+    @Param({"1", "2", "4", "8"})
+    public int threadCount;
 
-    @Benchmark
-    public VPTreeGeospatialIndex<GeospatialPoint> benchmarkConstructVpTree() {
-        final List<GeospatialPoint> points = new ArrayList<>(this.pointCount);
+    @Param({"UNIFORM", "CLUSTERED", "POLAR"})
+    public PointDistribution distribution;
 
-        for (int i = 0; i < this.pointCount; i++) {
-            points.add(this.createRandomPoint());
-        }
+    private List<GeospatialPoint> points;
+    private ForkJoinPool pool;
 
-        return new VPTreeGeospatialIndex<>(points);
-    }
+    private static final long POINT_SEED = 8675309;
 
-    private GeospatialPoint createRandomPoint() {
-        final double latitude = (this.random.nextDouble() * 180.0) - 90;
-        final double longitude = (this.random.nextDouble() * 360.0) - 180;
+    @Setup
+    public void setUp() {
+        this.points = this.distribution.createPoints(this.pointCount, POINT_SEED);
+        this.pool = new ForkJoinPool(this.threadCount);
+    }
 
-        return new GeospatialPoint() {
+    @TearDown
+    public void tearDown() {
+        this.pool.shutdown();
+    }
 
-            @Override
-            public double getLongitude() {
-                return longitude;
-            }
+    @Benchmark
+    public VPTreeGeospatialIndex<GeospatialPoint> benchmarkConstructVpTree() {
+        return new VPTreeGeospatialIndex<>(this.points);
+    }
 
-            @Override
-            public double getLatitude() {
-                return latitude;
-            }
-        };
+    @Benchmark
+    public VPTreeGeospatialIndex<GeospatialPoint> benchmarkConstructVpTreeInParallel() {
+        return new VPTreeGeospatialIndex<>(this.points, this.pool);
     }
 }
@@ -1,9 +1,7 @@
 package com.eatthepath.jeospatial;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
 
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Param;
@@ -12,7 +10,15 @@ import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 
 import com.eatthepath.jvptree.DistanceComparator;
-
+import com.eatthepath.jvptree.VPTree;
+
+/**
+ * Compares nearest-neighbor searches of {@link VPTreeGeospatialIndex} and {@link CompactGeospatialIndex} to a naive
+ * sort and to a plain vp-tree that uses the Haversine formula directly. Points and query points are generated from
+ * fixed seeds, and query points are generated ahead of time so searches don't pay for creating them.
+ *
+ * @see QuerySuiteBenchmark
+ */
 @State(Scope.Thread)
 public class VPTreeQueryBenchmark {
 
@@ -21,49 +27,60 @@ public class VPTreeQueryBenchmark {
 
     private List<GeospatialPoint> points;
     private VPTreeGeospatialIndex<GeospatialPoint> index;
+    private VPTree<GeospatialPoint, GeospatialPoint> haversineTree;
+    private CompactGeospatialIndex<GeospatialPoint> compactIndex;
+
+    private List<GeospatialPoint> queryPoints;
+    private int nextQuery;
 
-    private final Random random = new Random();
     private final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
 
     private static final int RESULT_SET_SIZE = 32;
 
+    private static final long POINT_SEED = 8675309;
+    private static final long QUERY_SEED = 5551212;
+    private static final int QUERY_COUNT = 1024;
+
     @Setup
     public void setUp() {
-        this.points = new ArrayList<>(this.pointCount);
-
-        for (int i = 0; i < this.pointCount; i++) {
-            this.points.add(this.createRandomPoint());
-        }
+        this.points = PointDistribution.UNIFORM.createPoints(this.pointCount, POINT_SEED);
 
         this.index = new VPTreeGeospatialIndex<>(this.points);
+        this.haversineTree = new VPTree<>(this.distanceFunction, this.points);
+        this.compactIndex = new CompactGeospatialIndex<>(this.points);
+
+        this.queryPoints = PointDistribution.UNIFORM.createPoints(QUERY_COUNT, QUERY_SEED);
     }
 
     @Benchmark
     public List<GeospatialPoint> benchmarkNaiveSearch() {
-        Collections.sort(this.points, new DistanceComparator<>(this.createRandomPoint(), this.distanceFunction));
+        Collections.sort(this.points, new DistanceComparator<>(this.getNextQueryPoint(), this.distanceFunction));
         return this.points.subList(0, RESULT_SET_SIZE);
     }
 
     @Benchmark
     public List<GeospatialPoint> benchmarkQueryTree() {
-        return this.index.getNearestNeighbors(this.createRandomPoint(), RESULT_SET_SIZE);
+        return this.index.getNearestNeighbors(this.getNextQueryPoint(), RESULT_SET_SIZE);
     }
 
-    private GeospatialPoint createRandomPoint() {
-        final double latitude = (this.random.nextDouble() * 180.0) - 90;
-        final double longitude = (this.random.nextDouble() * 360.0) - 180;
+    @Benchmark
+    public List<GeospatialPoint> benchmarkQueryCompactIndex() {
+        return this.compactIndex.getNearestNeighbors(this.getNextQueryPoint(), RESULT_SET_SIZE);
+    }
 
-        return new GeospatialPoint() {
+    /**
+     * Queries a plain vp-tree that evaluates the Haversine formula for every distance calculation; this is a baseline
+     * for comparison with the cached unit vectors used by {@link VPTreeGeospatialIndex}.
+     */
+    @Benchmark
+    public List<GeospatialPoint> benchmarkQueryHaversineTree() {
+        return this.haversineTree.getNearestNeighbors(this.getNextQueryPoint(), RESULT_SET_SIZE);
+    }
 
-            @Override
-            public double getLongitude() {
-                return longitude;
-            }
+    private GeospatialPoint getNextQueryPoint() {
+        final GeospatialPoint queryPoint = this.queryPoints.get(this.nextQuery);
+        this.nextQuery = (this.nextQuery + 1) % QUERY_COUNT;
 
-            @Override
-            public double getLatitude() {
-                return latitude;
-            }
-        };
+        return queryPoint;
     }
 }
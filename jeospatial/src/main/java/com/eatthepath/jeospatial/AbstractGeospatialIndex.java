@@ -0,0 +1,230 @@
+package com.eatthepath.jeospatial;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A skeletal implementation of the {@link GeospatialIndex} interface that provides batch operations in terms of
+ * single-point operations.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public abstract class AbstractGeospatialIndex<E extends GeospatialPoint> extends AbstractCollection<E> implements GeospatialIndex<E> {
+
+    /**
+     * The number of queries below which batch operations stop dividing work between tasks.
+     */
+    static final int BATCH_TASK_SIZE = 64;
+
+    private static class DefaultPoolHolder {
+        private static final ForkJoinPool DEFAULT_POOL = new ForkJoinPool();
+    }
+
+    /**
+     * Returns the pool used for batch operations when callers don't supply one of their own. The pool is created the
+     * first time it's needed and has one thread per available processor.
+     *
+     * @return the default pool for batch operations
+     */
+    static ForkJoinPool getDefaultPool() {
+        return DefaultPoolHolder.DEFAULT_POOL;
+    }
+
+    public List<List<E>> getAllNearestNeighbors(final List<? extends GeospatialPoint> queryPoints, final int maxResults) {
+        return this.getAllNearestNeighbors(queryPoints, maxResults, getDefaultPool());
+    }
+
+    public List<List<E>> getAllNearestNeighbors(final List<? extends GeospatialPoint> queryPoints, final int maxResults, final ForkJoinPool pool) {
+        final GeospatialPoint[] queryPointArray = queryPoints.toArray(new GeospatialPoint[queryPoints.size()]);
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final List<E>[] results = new List[queryPointArray.length];
+
+        pool.invoke(new NearestNeighborBatchTask(queryPointArray, sortByHilbertIndex(queryPointArray), 0,
+                queryPointArray.length, maxResults, results));
+
+        return Arrays.asList(results);
+    }
+
+    public List<E> getAllWithinDistanceOfRoute(final List<? extends GeospatialPoint> route, final double maxDistance) {
+        return this.getAllWithinDistanceOfRoute(route, maxDistance, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation checks every point in the index, and so takes time proportional to the size of the index;
+     * subclasses should override it if they can skip points that are far from the route.</p>
+     */
+    public List<E> getAllWithinDistanceOfRoute(final List<? extends GeospatialPoint> route, final double maxDistance, final boolean sortByRoutePosition) {
+        final Corridor corridor = new Corridor(route, maxDistance);
+        final double[] vector = new double[3];
+        final List<E> points = new ArrayList<>();
+
+        for (final E point : this) {
+            UnitVectors.setUnitVector(point.getLatitude(), point.getLongitude(), vector, 0);
+
+            if (corridor.contains(vector)) {
+                points.add(point);
+            }
+        }
+
+        return sortByRoutePosition ? corridor.sortByRoutePosition(points) : points;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation delegates to {@link #getNearestNeighbors(Object, int)} and copies its results, and so
+     * allocates memory on every call; subclasses should override it if they can search without allocating.</p>
+     */
+    public void getNearestNeighbors(final double latitude, final double longitude, final int maxResults, final SearchResults<E> results) {
+        final GeospatialPoint queryPoint = new GeospatialPointHandle(0, latitude, longitude);
+        copyWithChordLengths(this.getNearestNeighbors(queryPoint, maxResults), queryPoint, results);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation delegates to {@link #getAllWithinDistance(Object, double)} and copies its results, and so
+     * allocates memory on every call; subclasses should override it if they can search without allocating.</p>
+     */
+    public void getAllWithinDistance(final double latitude, final double longitude, final double maxDistance, final SearchResults<E> results) {
+        final GeospatialPoint queryPoint = new GeospatialPointHandle(0, latitude, longitude);
+        copyWithChordLengths(this.getAllWithinDistance(queryPoint, maxDistance), queryPoint, results);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation delegates to {@link #getAllPointsInBoundingBox(double, double, double, double)} and
+     * copies its results, and so allocates memory on every call; subclasses should override it if they can search
+     * without allocating.</p>
+     */
+    public void getAllPointsInBoundingBox(final double south, final double west, final double north, final double east, final SearchResults<E> results) {
+        final List<E> points = this.getAllPointsInBoundingBox(south, west, north, east);
+        results.clear();
+
+        for (final E point : points) {
+            results.add(point, Double.NaN);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation delegates to {@link #getAllWithinDistance(Object, double)} and counts its results, and so
+     * builds a list of every point within the given distance; subclasses should override it if they can count points
+     * without finding them one by one.</p>
+     */
+    public int countWithinDistance(final double latitude, final double longitude, final double maxDistance) {
+        return this.getAllWithinDistance(new GeospatialPointHandle(0, latitude, longitude), maxDistance).size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation delegates to {@link #getAllPointsInBoundingBox(double, double, double, double)} and counts
+     * its results, and so builds a list of every point in the box; subclasses should override it if they can count
+     * points without finding them one by one.</p>
+     */
+    public int countInBoundingBox(final double south, final double west, final double north, final double east) {
+        return this.getAllPointsInBoundingBox(south, west, north, east).size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation delegates to {@link #getAllPointsInBoundingBox(double, double, double, double)} and counts
+     * its results cell by cell, and so builds a list of every point in the box; subclasses should override it if they
+     * can count points without finding them one by one.</p>
+     */
+    public int[][] countInGrid(final double south, final double west, final double north, final double east, final int rows, final int columns) {
+        final CountGrid grid = new CountGrid(south, west, north, east, rows, columns);
+
+        for (final E point : this.getAllPointsInBoundingBox(south, west, north, east)) {
+            grid.add(point.getLatitude(), point.getLongitude());
+        }
+
+        return grid.getCounts();
+    }
+
+    private static <E extends GeospatialPoint> void copyWithChordLengths(final List<E> points, final GeospatialPoint queryPoint, final SearchResults<E> results) {
+        final double[] queryVector = UnitVectors.getUnitVector(queryPoint);
+        results.clear();
+
+        for (final E point : points) {
+            results.add(point, UnitVectors.getChordLength(queryVector, UnitVectors.getUnitVector(point), 0));
+        }
+    }
+
+    /**
+     * Returns the indices of the given points ordered by their positions along a Hilbert curve, so that consecutive
+     * queries tend to visit the same parts of an index.
+     *
+     * @param points the points to sort
+     *
+     * @return the indices of the given points in Hilbert curve order
+     */
+    static int[] sortByHilbertIndex(final GeospatialPoint[] points) {
+        // Hilbert indices fit in 32 bits and array indices in 31, so we can pack both into a sort key without touching
+        // the sign bit (which would put the second half of the curve before the first)
+        final long[] keys = new long[points.length];
+
+        for (int i = 0; i < points.length; i++) {
+            keys[i] = (HilbertCurve.getIndex(points[i]) << 31) | i;
+        }
+
+        Arrays.sort(keys);
+
+        final int[] order = new int[points.length];
+
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) (keys[i] & Integer.MAX_VALUE);
+        }
+
+        return order;
+    }
+
+    private class NearestNeighborBatchTask extends RecursiveAction {
+
+        private final GeospatialPoint[] queryPoints;
+        private final int[] order;
+        private final int from;
+        private final int to;
+        private final int maxResults;
+        private final List<E>[] results;
+
+        private static final long serialVersionUID = 1L;
+
+        private NearestNeighborBatchTask(final GeospatialPoint[] queryPoints, final int[] order, final int from, final int to, final int maxResults, final List<E>[] results) {
+            this.queryPoints = queryPoints;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.maxResults = maxResults;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= BATCH_TASK_SIZE) {
+                for (int i = this.from; i < this.to; i++) {
+                    final int queryIndex = this.order[i];
+
+                    this.results[queryIndex] =
+                            AbstractGeospatialIndex.this.getNearestNeighbors(this.queryPoints[queryIndex], this.maxResults);
+                }
+            } else {
+                final int middle = (this.from + this.to) >>> 1;
+
+                invokeAll(new NearestNeighborBatchTask(this.queryPoints, this.order, this.from, middle, this.maxResults, this.results),
+                        new NearestNeighborBatchTask(this.queryPoints, this.order, middle, this.to, this.maxResults, this.results));
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * <p>Tracks the state of an approximate nearest-neighbor search. Approximate searches may trade accuracy for speed in
+ * two ways: they may prune branches of the tree that could only improve the results by less than a factor of
+ * {@code (1 + epsilon)}, and they may stop after a fixed number of distance calculations.</p>
+ *
+ * <p>A search remains exact until it actually skips work that an exact search would have done; searches that never
+ * need to cut a corner report exact results even if they were allowed to.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class ApproximateSearch {
+
+    private double pruningFactor;
+    private int remainingDistanceCalculations;
+    private boolean exact;
+
+    /**
+     * Prepares this search for a new query.
+     *
+     * @param epsilon the maximum relative error in the chord length of the farthest result
+     * @param maxDistanceCalculations the maximum number of distance calculations the search may perform
+     */
+    void reset(final double epsilon, final int maxDistanceCalculations) {
+        this.pruningFactor = 1 / (1 + epsilon);
+        this.remainingDistanceCalculations = maxDistanceCalculations;
+        this.exact = true;
+    }
+
+    /**
+     * Claims one distance calculation from this search's budget.
+     *
+     * @return {@code true} if the calculation may proceed or {@code false} if the budget is exhausted, in which case
+     * the search is no longer exact
+     */
+    boolean tryCalculateDistance() {
+        if (this.remainingDistanceCalculations == 0) {
+            this.exact = false;
+            return false;
+        }
+
+        this.remainingDistanceCalculations--;
+        return true;
+    }
+
+    /**
+     * Returns the factor by which to shrink the search radius when deciding whether to visit a branch of the tree.
+     * Any point in a branch skipped with the shrunken radius is no closer than the farthest result divided by
+     * {@code (1 + epsilon)}.
+     */
+    double getPruningFactor() {
+        return this.pruningFactor;
+    }
+
+    /**
+     * Records that this search skipped a branch an exact search would have visited.
+     */
+    void markInexact() {
+        this.exact = false;
+    }
+
+    boolean isExact() {
+        return this.exact;
+    }
+}
@@ -0,0 +1,394 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * <p>A "box" on the earth's surface bounded by two lines of latitude and two lines of longitude. Boxes extend eastward
+ * from their western limit to their eastern limit, and so may cross the antimeridian.</p>
+ *
+ * <p>In addition to testing individual points, bounding boxes can compare themselves to the latitude/longitude bounds
+ * of a group of points and can calculate the minimum and maximum chord lengths between a unit vector and any point in
+ * the box, which allows tree searches to prune or accept whole subtrees at once.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class BoundingBox {
+
+    private double south;
+    private double west;
+    private double north;
+    private double east;
+
+    private boolean spansAllLongitudes;
+    private boolean crossesAntimeridian;
+
+    private double southRadians;
+    private double northRadians;
+    private double cosSouth;
+    private double sinSouth;
+    private double cosNorth;
+    private double sinNorth;
+
+    // Floating-point slack for chord length bounds so that rounding errors can never prune a point that is actually in
+    // the box. Dot products near 1 carry absolute errors of a few ulps, and the square root in toChordLength magnifies
+    // those to as much as ~1.5e-8 earth radii, so the slack must be on the order of sqrt(ulp(1)); this is well under a
+    // meter.
+    private static final double CHORD_LENGTH_TOLERANCE = 1e-7;
+
+    /**
+     * Constructs a new bounding box with the given limits.
+     *
+     * @param south the southern limit of the bounding box in degrees
+     * @param west the western limit of the bounding box in degrees
+     * @param north the northern limit of the bounding box in degrees
+     * @param east the eastern limit of the bounding box in degrees
+     *
+     * @throws IllegalArgumentException if the north or south limits fall outside of the range -90 to +90 (inclusive) or
+     * if the northern limit is south of the southern limit
+     */
+    BoundingBox(final double south, final double west, final double north, final double east) {
+        this.set(south, west, north, east);
+    }
+
+    /**
+     * Changes the limits of this bounding box so it can be reused for another search.
+     *
+     * @param south the southern limit of the bounding box in degrees
+     * @param west the western limit of the bounding box in degrees
+     * @param north the northern limit of the bounding box in degrees
+     * @param east the eastern limit of the bounding box in degrees
+     *
+     * @throws IllegalArgumentException if the north or south limits fall outside of the range -90 to +90 (inclusive) or
+     * if the northern limit is south of the southern limit
+     */
+    void set(final double south, final double west, final double north, final double east) {
+        if (south < -90 || south > 90 || north < -90 || north > 90) {
+            throw new IllegalArgumentException("Northern and southern limits must be between -90 and 90 degrees.");
+        }
+
+        if (north < south) {
+            throw new IllegalArgumentException("Northern limit must not be south of southern limit.");
+        }
+
+        this.south = south;
+        this.north = north;
+
+        this.spansAllLongitudes = east - west >= 360;
+        this.west = this.spansAllLongitudes ? -180 : normalizeLongitude(west);
+        this.east = this.spansAllLongitudes ? 180 : normalizeLongitude(east);
+        this.crossesAntimeridian = this.west > this.east;
+
+        this.southRadians = Math.toRadians(south);
+        this.northRadians = Math.toRadians(north);
+        this.cosSouth = Math.cos(this.southRadians);
+        this.sinSouth = Math.sin(this.southRadians);
+        this.cosNorth = Math.cos(this.northRadians);
+        this.sinNorth = Math.sin(this.northRadians);
+    }
+
+    /**
+     * Normalizes the given longitude to the range -180 degrees (inclusive) to 180 degrees (exclusive).
+     *
+     * @param longitude the longitude to normalize, in degrees
+     *
+     * @return the equivalent longitude between -180 degrees (inclusive) and 180 degrees (exclusive)
+     */
+    static double normalizeLongitude(final double longitude) {
+        if (longitude >= -180 && longitude < 180) {
+            return longitude;
+        }
+
+        final double normalized = (longitude + 180) % 360;
+        return (normalized < 0 ? normalized + 360 : normalized) - 180;
+    }
+
+    /**
+     * Resets the given latitude/longitude bounds to an empty state that contains no points.
+     *
+     * @param bounds an array containing the minimum latitude, minimum longitude, maximum latitude, and maximum
+     * longitude of the bounds, in that order and in degrees
+     * @param offset the index of the minimum latitude within the array
+     */
+    static void clearBounds(final double[] bounds, final int offset) {
+        bounds[offset] = Double.POSITIVE_INFINITY;
+        bounds[offset + 1] = Double.POSITIVE_INFINITY;
+        bounds[offset + 2] = Double.NEGATIVE_INFINITY;
+        bounds[offset + 3] = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Expands the given latitude/longitude bounds to include the given point.
+     *
+     * @param bounds an array containing the minimum latitude, minimum longitude, maximum latitude, and maximum
+     * longitude of the bounds, in that order and in degrees
+     * @param offset the index of the minimum latitude within the array
+     * @param point the point to include within the bounds
+     */
+    static void expandBounds(final double[] bounds, final int offset, final GeospatialPoint point) {
+        expandBounds(bounds, offset, point.getLatitude(), point.getLongitude());
+    }
+
+    /**
+     * Expands the given latitude/longitude bounds to include the given position.
+     *
+     * @param bounds an array containing the minimum latitude, minimum longitude, maximum latitude, and maximum
+     * longitude of the bounds, in that order and in degrees
+     * @param offset the index of the minimum latitude within the array
+     * @param latitude the latitude of the position to include, in degrees
+     * @param longitude the longitude of the position to include, in degrees
+     */
+    static void expandBounds(final double[] bounds, final int offset, final double latitude, final double longitude) {
+        final double normalizedLongitude = normalizeLongitude(longitude);
+
+        bounds[offset] = Math.min(bounds[offset], latitude);
+        bounds[offset + 1] = Math.min(bounds[offset + 1], normalizedLongitude);
+        bounds[offset + 2] = Math.max(bounds[offset + 2], latitude);
+        bounds[offset + 3] = Math.max(bounds[offset + 3], normalizedLongitude);
+    }
+
+    /**
+     * Expands the given latitude/longitude bounds to include another set of bounds.
+     *
+     * @param bounds an array containing the bounds to expand
+     * @param offset the index of the minimum latitude of the bounds to expand
+     * @param otherBounds an array containing the bounds to include
+     * @param otherOffset the index of the minimum latitude of the bounds to include
+     */
+    static void expandBounds(final double[] bounds, final int offset, final double[] otherBounds, final int otherOffset) {
+        bounds[offset] = Math.min(bounds[offset], otherBounds[otherOffset]);
+        bounds[offset + 1] = Math.min(bounds[offset + 1], otherBounds[otherOffset + 1]);
+        bounds[offset + 2] = Math.max(bounds[offset + 2], otherBounds[otherOffset + 2]);
+        bounds[offset + 3] = Math.max(bounds[offset + 3], otherBounds[otherOffset + 3]);
+    }
+
+    /**
+     * Indicates whether the given point falls within this box (inclusive of its limits).
+     *
+     * @param point the point to check
+     *
+     * @return {@code true} if the point is inside this box or {@code false} otherwise
+     */
+    boolean contains(final GeospatialPoint point) {
+        return this.contains(point.getLatitude(), point.getLongitude());
+    }
+
+    /**
+     * Indicates whether the given coordinates fall within this box (inclusive of its limits).
+     *
+     * @param latitude the latitude to check, in degrees
+     * @param longitude the longitude to check, in degrees
+     *
+     * @return {@code true} if the coordinates are inside this box or {@code false} otherwise
+     */
+    boolean contains(final double latitude, final double longitude) {
+        return latitude >= this.south && latitude <= this.north && this.containsLongitude(longitude);
+    }
+
+    private boolean containsLongitude(final double longitude) {
+        if (this.spansAllLongitudes) {
+            return true;
+        }
+
+        final double normalizedLongitude = normalizeLongitude(longitude);
+
+        return this.crossesAntimeridian ?
+                normalizedLongitude >= this.west || normalizedLongitude <= this.east :
+                normalizedLongitude >= this.west && normalizedLongitude <= this.east;
+    }
+
+    /**
+     * Indicates whether any point within the given latitude/longitude bounds could fall within this box. Bounds never
+     * cross the antimeridian (i.e. {@code minLongitude <= maxLongitude}).
+     *
+     * @param bounds an array containing the minimum latitude, minimum longitude, maximum latitude, and maximum
+     * longitude of the bounds, in that order and in degrees
+     * @param offset the index of the minimum latitude within the array
+     *
+     * @return {@code true} if the bounds overlap this box or {@code false} if they are disjoint
+     */
+    boolean intersects(final double[] bounds, final int offset) {
+        return this.intersects(bounds[offset], bounds[offset + 1], bounds[offset + 2], bounds[offset + 3]);
+    }
+
+    /**
+     * Indicates whether any point within the given latitude/longitude bounds could fall within this box. Bounds never
+     * cross the antimeridian (i.e. {@code minLongitude <= maxLongitude}).
+     *
+     * @param minLatitude the minimum latitude of the bounds, in degrees
+     * @param minLongitude the minimum longitude of the bounds, in degrees
+     * @param maxLatitude the maximum latitude of the bounds, in degrees
+     * @param maxLongitude the maximum longitude of the bounds, in degrees
+     *
+     * @return {@code true} if the bounds overlap this box or {@code false} if they are disjoint
+     */
+    boolean intersects(final double minLatitude, final double minLongitude, final double maxLatitude, final double maxLongitude) {
+        if (maxLatitude < this.south || minLatitude > this.north) {
+            return false;
+        }
+
+        if (this.spansAllLongitudes) {
+            return true;
+        }
+
+        return this.crossesAntimeridian ?
+                maxLongitude >= this.west || minLongitude <= this.east :
+                maxLongitude >= this.west && minLongitude <= this.east;
+    }
+
+    /**
+     * Indicates whether every point within the given latitude/longitude bounds falls within this box.
+     *
+     * @param bounds an array containing the minimum latitude, minimum longitude, maximum latitude, and maximum
+     * longitude of the bounds, in that order and in degrees
+     * @param offset the index of the minimum latitude within the array
+     *
+     * @return {@code true} if the bounds lie entirely within this box or {@code false} otherwise
+     */
+    boolean encloses(final double[] bounds, final int offset) {
+        return this.encloses(bounds[offset], bounds[offset + 1], bounds[offset + 2], bounds[offset + 3]);
+    }
+
+    /**
+     * Indicates whether every point within the given latitude/longitude bounds falls within this box.
+     *
+     * @param minLatitude the minimum latitude of the bounds, in degrees
+     * @param minLongitude the minimum longitude of the bounds, in degrees
+     * @param maxLatitude the maximum latitude of the bounds, in degrees
+     * @param maxLongitude the maximum longitude of the bounds, in degrees
+     *
+     * @return {@code true} if the bounds lie entirely within this box or {@code false} otherwise
+     */
+    boolean encloses(final double minLatitude, final double minLongitude, final double maxLatitude, final double maxLongitude) {
+        if (minLatitude < this.south || maxLatitude > this.north) {
+            return false;
+        }
+
+        if (this.spansAllLongitudes) {
+            return true;
+        }
+
+        return this.crossesAntimeridian ?
+                minLongitude >= this.west || maxLongitude <= this.east :
+                minLongitude >= this.west && maxLongitude <= this.east;
+    }
+
+    /**
+     * Returns a lower bound for the chord length between the given unit vector and any point in this box.
+     *
+     * @param vector an array containing the unit vector
+     * @param offset the index of the vector's first component within the array
+     *
+     * @return a lower bound for the chord length between the given vector and any point in this box
+     */
+    double getMinChordLength(final double[] vector, final int offset) {
+        return this.getMinChordLength(vector[offset], vector[offset + 1], vector[offset + 2]);
+    }
+
+    /**
+     * Returns a lower bound for the chord length between the given unit vector and any point in this box.
+     *
+     * @param x the first component of the unit vector
+     * @param y the second component of the unit vector
+     * @param z the third component of the unit vector
+     *
+     * @return a lower bound for the chord length between the given vector and any point in this box
+     */
+    double getMinChordLength(final double x, final double y, final double z) {
+        final double horizontalLength = Math.sqrt(x * x + y * y);
+        final double longitude = Math.toDegrees(Math.atan2(y, x));
+
+        // Vectors inside the box are exactly zero chord lengths away; nodes with duplicate vantage points have
+        // thresholds of zero, and any rounding error here would prune their inner subtrees.
+        if (this.contains(Math.toDegrees(Math.atan2(z, horizontalLength)), longitude)) {
+            return 0;
+        }
+
+        // The point in the box closest to the vector is the one with the largest dot product; for any latitude, that's
+        // the point with the longitude closest to the vector's longitude.
+        final double cosLongitudeDifference = Math.cos(Math.toRadians(this.getMinDegreesFromLongitudes(longitude)));
+
+        final double maxDotProduct =
+                this.getMaxOverLatitudes(horizontalLength * cosLongitudeDifference, z);
+
+        return Math.max(0, toChordLength(maxDotProduct) - CHORD_LENGTH_TOLERANCE);
+    }
+
+    /**
+     * Returns an upper bound for the chord length between the given unit vector and any point in this box.
+     *
+     * @param vector an array containing the unit vector
+     * @param offset the index of the vector's first component within the array
+     *
+     * @return an upper bound for the chord length between the given vector and any point in this box
+     */
+    double getMaxChordLength(final double[] vector, final int offset) {
+        return this.getMaxChordLength(vector[offset], vector[offset + 1], vector[offset + 2]);
+    }
+
+    /**
+     * Returns an upper bound for the chord length between the given unit vector and any point in this box.
+     *
+     * @param x the first component of the unit vector
+     * @param y the second component of the unit vector
+     * @param z the third component of the unit vector
+     *
+     * @return an upper bound for the chord length between the given vector and any point in this box
+     */
+    double getMaxChordLength(final double x, final double y, final double z) {
+        final double longitude = Math.toDegrees(Math.atan2(y, x));
+        final double cosLongitudeDifference = Math.cos(Math.toRadians(this.getMaxDegreesFromLongitudes(longitude)));
+
+        final double minDotProduct =
+                -this.getMaxOverLatitudes(-Math.sqrt(x * x + y * y) * cosLongitudeDifference, -z);
+
+        return toChordLength(minDotProduct) + CHORD_LENGTH_TOLERANCE;
+    }
+
+    private static double toChordLength(final double dotProduct) {
+        return Math.sqrt(Math.max(0, 2 - 2 * dotProduct));
+    }
+
+    /**
+     * Returns the maximum of {@code a cos(lat) + b sin(lat)} for latitudes within this box.
+     */
+    private double getMaxOverLatitudes(final double a, final double b) {
+        double max = Math.max(a * this.cosSouth + b * this.sinSouth, a * this.cosNorth + b * this.sinNorth);
+
+        // The function is a sinusoid that peaks at atan2(b, a); if that peak falls within the box's latitudes, it's the
+        // maximum.
+        final double peak = Math.atan2(b, a);
+
+        if (peak >= this.southRadians && peak <= this.northRadians) {
+            max = Math.max(max, Math.sqrt(a * a + b * b));
+        }
+
+        return max;
+    }
+
+    /**
+     * Returns the smallest angle between the given longitude and any longitude in this box.
+     */
+    private double getMinDegreesFromLongitudes(final double longitude) {
+        if (this.containsLongitude(longitude)) {
+            return 0;
+        }
+
+        return Math.min(getDegreesBetweenLongitudes(longitude, this.west), getDegreesBetweenLongitudes(longitude, this.east));
+    }
+
+    /**
+     * Returns the largest angle between the given longitude and any longitude in this box.
+     */
+    private double getMaxDegreesFromLongitudes(final double longitude) {
+        final double antipodalLongitude = normalizeLongitude(longitude + 180);
+
+        if (this.containsLongitude(antipodalLongitude)) {
+            return 180;
+        }
+
+        return Math.max(getDegreesBetweenLongitudes(longitude, this.west), getDegreesBetweenLongitudes(longitude, this.east));
+    }
+
+    private static double getDegreesBetweenLongitudes(final double a, final double b) {
+        final double difference = Math.abs(normalizeLongitude(a - b));
+        return difference > 180 ? 360 - difference : difference;
+    }
+}
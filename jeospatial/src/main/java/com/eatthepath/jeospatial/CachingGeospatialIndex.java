@@ -0,0 +1,554 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A geospatial index that caches the results of searches made through it and passes all other operations through
+ * to another index. Caching indices are useful when many searches are made from nearly the same place.</p>
+ *
+ * <p>Caching indices divide the earth's surface into a grid of small cells. When a nearest-neighbor or distance search
+ * can't be answered from the cache, the caching index finds every point within some distance (the cell's "coverage
+ * distance") of the center of the cell that contains the query point and caches those points. The coverage distance
+ * is chosen so that the cached points are guaranteed to include all of the results of the original search from
+ * anywhere in the cell, with some room to spare. Later searches from anywhere in the same cell are answered by
+ * checking only the cached points, and always produce exactly the same results as a search of the underlying index
+ * would; searches whose results can't be guaranteed to fall within the cell's coverage distance are treated as misses
+ * and refresh the cell with a larger coverage distance.</p>
+ *
+ * <p>Caches hold a limited number of cells and discard the least-recently-used cell when they're full. Adding or
+ * removing a point through a caching index discards only the cells whose coverage distance includes that point;
+ * changes made to the underlying index directly are not visible to the cache, and callers that make such changes must
+ * call {@link #clearCache()} afterward.</p>
+ *
+ * <p>Caching indices may be searched from multiple threads if the underlying index can be, and may be modified from
+ * multiple threads if the underlying index can be.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class CachingGeospatialIndex<E extends GeospatialPoint> extends AbstractGeospatialIndex<E> {
+
+    private final GeospatialIndex<E> index;
+    private final GridCells grid;
+    private final int maxCellSize;
+
+    // Guarded by itself, as are all of the following fields
+    private final LinkedHashMap<Long, CachedCell> cache;
+
+    // Incremented with every change so searches that started before a change don't cache stale results
+    private long generation;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long invalidationCount;
+
+    /**
+     * The default length of the sides of a cache cell, in meters.
+     */
+    public static final double DEFAULT_CELL_SIZE = 200;
+
+    /**
+     * The default maximum number of cells to cache.
+     */
+    public static final int DEFAULT_MAX_CACHED_CELLS = 4096;
+
+    /**
+     * The default maximum number of points to cache in a single cell.
+     */
+    public static final int DEFAULT_MAX_CELL_SIZE = 4096;
+
+    // Cells cover this much more distance than the search that filled them strictly requires, so that slightly larger
+    // searches from the same cell can still be answered from the cache
+    private static final double COVERAGE_FACTOR = 1.25;
+
+    // Slack for rounding errors when checking whether a search falls within a cell's coverage distance, in meters
+    private static final double DISTANCE_TOLERANCE = 1e-3;
+
+    private static final double MAX_DISTANCE = Math.PI * HaversineDistanceFunction.EARTH_RADIUS;
+
+    /**
+     * The points within a cell's coverage distance of the center of the cell.
+     */
+    private class CachedCell {
+        private final double[] centerVector;
+        private final double coverageDistance;
+
+        private final Object[] points;
+        private final double[] vectors;
+
+        private CachedCell(final double[] centerVector, final double coverageDistance, final List<E> points) {
+            this.centerVector = centerVector;
+            this.coverageDistance = coverageDistance;
+
+            this.points = points.toArray();
+            this.vectors = new double[3 * this.points.length];
+
+            for (int i = 0; i < this.points.length; i++) {
+                final E point = points.get(i);
+                UnitVectors.setUnitVector(point.getLatitude(), point.getLongitude(), this.vectors, i);
+            }
+        }
+
+        private boolean covers(final double[] vector) {
+            return this.getDistance(vector) <= this.coverageDistance + DISTANCE_TOLERANCE;
+        }
+
+        private double getDistance(final double[] vector) {
+            return UnitVectors.toDistance(UnitVectors.getChordLength(this.centerVector, vector, 0));
+        }
+
+        /**
+         * Returns the nearest neighbors to the given query vector, or {@code null} if the cached points can't be
+         * guaranteed to contain all of the nearest neighbors.
+         */
+        @SuppressWarnings("unchecked")
+        private List<E> getNearestNeighbors(final double[] queryVector, final int maxResults, final PointFilter<? super E> filter) {
+            if (this.points.length == 0) {
+                return this.coverageDistance >= MAX_DISTANCE ? new ArrayList<E>() : null;
+            }
+
+            final NearestNeighborCollector<E> collector = new NearestNeighborCollector<>(Math.min(maxResults, this.points.length));
+
+            for (int i = 0; i < this.points.length; i++) {
+                final double chordLength = UnitVectors.getChordLength(queryVector, this.vectors, i);
+
+                if (chordLength < collector.getFarthestChordLength() && (filter == null || filter.allowPoint((E) this.points[i]))) {
+                    collector.offerPoint((E) this.points[i], chordLength);
+                }
+            }
+
+            // Any point that isn't cached is farther from the query point than the coverage distance minus the distance
+            // between the query point and the center of the cell
+            final double maxUncachedDistance = this.coverageDistance - this.getDistance(queryVector) - DISTANCE_TOLERANCE;
+
+            if (collector.size() < maxResults) {
+                return this.coverageDistance >= MAX_DISTANCE ? collector.toSortedList() : null;
+            }
+
+            return UnitVectors.toDistance(collector.getFarthestChordLength()) <= maxUncachedDistance ?
+                    collector.toSortedList() : null;
+        }
+
+        /**
+         * Returns all points within the given distance of the given query vector, or {@code null} if the cached points
+         * can't be guaranteed to contain all such points.
+         */
+        @SuppressWarnings("unchecked")
+        private List<E> getAllWithinDistance(final double[] queryVector, final double maxDistance, final PointFilter<? super E> filter) {
+            if (maxDistance + this.getDistance(queryVector) + DISTANCE_TOLERANCE > this.coverageDistance && this.coverageDistance < MAX_DISTANCE) {
+                return null;
+            }
+
+            final double maxChordLength = UnitVectors.toChordLength(maxDistance);
+            final List<E> results = new ArrayList<>();
+
+            for (int i = 0; i < this.points.length; i++) {
+                if (UnitVectors.getChordLength(queryVector, this.vectors, i) <= maxChordLength &&
+                        (filter == null || filter.allowPoint((E) this.points[i]))) {
+
+                    results.add((E) this.points[i]);
+                }
+            }
+
+            return results;
+        }
+    }
+
+    /**
+     * Constructs a new caching index around the given index with the default cell size and cache limits.
+     *
+     * @param index the index to which to pass searches that can't be answered from the cache
+     */
+    public CachingGeospatialIndex(final GeospatialIndex<E> index) {
+        this(index, DEFAULT_CELL_SIZE, DEFAULT_MAX_CACHED_CELLS, DEFAULT_MAX_CELL_SIZE);
+    }
+
+    /**
+     * Constructs a new caching index around the given index.
+     *
+     * @param index the index to which to pass searches that can't be answered from the cache
+     * @param cellSize the approximate length of the sides of a cache cell, in meters; searches from anywhere within the
+     * same cell share cached points
+     * @param maxCachedCells the maximum number of cells to cache
+     * @param maxCellSize the maximum number of points to cache in a single cell; searches that would require caching
+     * more points are passed directly to the underlying index
+     *
+     * @throws IllegalArgumentException if the cell size, maximum number of cached cells, or maximum cell size is not
+     * positive
+     */
+    public CachingGeospatialIndex(final GeospatialIndex<E> index, final double cellSize, final int maxCachedCells, final int maxCellSize) {
+        if (maxCachedCells < 1 || maxCellSize < 1) {
+            throw new IllegalArgumentException("Maximum number of cached cells and maximum cell size must be positive.");
+        }
+
+        this.index = index;
+        this.grid = new GridCells(cellSize);
+        this.maxCellSize = maxCellSize;
+
+        this.cache = new LinkedHashMap<Long, CachedCell>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, CachedCell> eldest) {
+                if (this.size() > maxCachedCells) {
+                    CachingGeospatialIndex.this.evictionCount++;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults) {
+        return this.getNearestNeighbors(queryPoint, maxResults, null);
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults, final PointFilter<? super E> filter) {
+        if (maxResults < 1) {
+            return new ArrayList<>();
+        }
+
+        final long key = this.grid.getKey(queryPoint.getLatitude(), queryPoint.getLongitude());
+        final double[] queryVector = UnitVectors.getUnitVector(queryPoint);
+
+        final CachedCell cachedCell = this.getCachedCell(key);
+
+        if (cachedCell != null) {
+            final List<E> results = cachedCell.getNearestNeighbors(queryVector, maxResults, filter);
+
+            if (results != null) {
+                this.recordHit();
+                return results;
+            }
+        }
+
+        this.recordMiss();
+
+        // There's no way to know how far away the nearest points that pass a filter might be, so filtered searches
+        // use the cache if they can, but never fill it
+        if (filter == null) {
+            final long generation = this.getGeneration();
+            final GeospatialPoint center = this.grid.getCenter(key);
+            final double[] centerVector = UnitVectors.getUnitVector(center);
+            final double cellRadius = UnitVectors.toDistance(this.grid.getBoundingBox(key).getMaxChordLength(centerVector, 0));
+
+            // The k-th nearest neighbor of any point in the cell is no farther from the center of the cell than the
+            // k-th nearest neighbor of the center plus twice the cell's radius
+            final List<E> centerNeighbors = this.index.getNearestNeighbors(center, maxResults);
+
+            final double requiredDistance = centerNeighbors.size() < maxResults ? MAX_DISTANCE :
+                    UnitVectors.toDistance(UnitVectors.getChordLength(centerVector,
+                            UnitVectors.getUnitVector(centerNeighbors.get(maxResults - 1)), 0)) + (2 * cellRadius);
+
+            final CachedCell refreshedCell = this.refreshCell(key, center, centerVector, cachedCell, requiredDistance, generation);
+
+            if (refreshedCell != null) {
+                final List<E> results = refreshedCell.getNearestNeighbors(queryVector, maxResults, null);
+
+                if (results != null) {
+                    return results;
+                }
+            }
+        }
+
+        return this.index.getNearestNeighbors(queryPoint, maxResults, filter);
+    }
+
+    public Iterator<E> getNearestNeighborIterator(final GeospatialPoint queryPoint) {
+        return this.index.getNearestNeighborIterator(queryPoint);
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance) {
+        return this.getAllWithinDistance(queryPoint, maxDistance, null);
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance, final PointFilter<? super E> filter) {
+        final long key = this.grid.getKey(queryPoint.getLatitude(), queryPoint.getLongitude());
+        final double[] queryVector = UnitVectors.getUnitVector(queryPoint);
+
+        final CachedCell cachedCell = this.getCachedCell(key);
+
+        if (cachedCell != null) {
+            final List<E> results = cachedCell.getAllWithinDistance(queryVector, maxDistance, filter);
+
+            if (results != null) {
+                this.recordHit();
+                return results;
+            }
+        }
+
+        this.recordMiss();
+
+        final long generation = this.getGeneration();
+        final GeospatialPoint center = this.grid.getCenter(key);
+        final double[] centerVector = UnitVectors.getUnitVector(center);
+        final double cellRadius = UnitVectors.toDistance(this.grid.getBoundingBox(key).getMaxChordLength(centerVector, 0));
+
+        final CachedCell refreshedCell =
+                this.refreshCell(key, center, centerVector, cachedCell, maxDistance + cellRadius, generation);
+
+        if (refreshedCell != null) {
+            final List<E> results = refreshedCell.getAllWithinDistance(queryVector, maxDistance, filter);
+
+            if (results != null) {
+                return results;
+            }
+        }
+
+        return this.index.getAllWithinDistance(queryPoint, maxDistance, filter);
+    }
+
+    /**
+     * Replaces the cell with the given key with a new cell that covers at least the given distance (and at least as
+     * much distance as the existing cell, if any).
+     *
+     * @return the new cell, or {@code null} if the new cell would have too many points to cache
+     */
+    private CachedCell refreshCell(final long key, final GeospatialPoint center, final double[] centerVector, final CachedCell existingCell, final double requiredDistance, final long generation) {
+        double coverageDistance = Math.min(MAX_DISTANCE, requiredDistance * COVERAGE_FACTOR);
+
+        if (existingCell != null) {
+            coverageDistance = Math.max(coverageDistance, existingCell.coverageDistance);
+        }
+
+        final List<E> points = this.index.getAllWithinDistance(center, coverageDistance);
+
+        if (points.size() > this.maxCellSize) {
+            return null;
+        }
+
+        final CachedCell cell = new CachedCell(centerVector, coverageDistance, points);
+
+        synchronized (this.cache) {
+            // If the index changed while we were searching, the points we found might already be out of date
+            if (this.generation == generation) {
+                this.cache.put(key, cell);
+            }
+        }
+
+        return cell;
+    }
+
+    public List<E> getAllPointsInBoundingBox(final double south, final double west, final double north, final double east) {
+        return this.index.getAllPointsInBoundingBox(south, west, north, east);
+    }
+
+    @Override
+    public List<E> getAllWithinDistanceOfRoute(final List<? extends GeospatialPoint> route, final double maxDistance, final boolean sortByRoutePosition) {
+        return this.index.getAllWithinDistanceOfRoute(route, maxDistance, sortByRoutePosition);
+    }
+
+    @Override
+    public int countWithinDistance(final double latitude, final double longitude, final double maxDistance) {
+        return this.index.countWithinDistance(latitude, longitude, maxDistance);
+    }
+
+    @Override
+    public int countInBoundingBox(final double south, final double west, final double north, final double east) {
+        return this.index.countInBoundingBox(south, west, north, east);
+    }
+
+    @Override
+    public int[][] countInGrid(final double south, final double west, final double north, final double east, final int rows, final int columns) {
+        return this.index.countInGrid(south, west, north, east, rows, columns);
+    }
+
+    private CachedCell getCachedCell(final long key) {
+        synchronized (this.cache) {
+            return this.cache.get(key);
+        }
+    }
+
+    private long getGeneration() {
+        synchronized (this.cache) {
+            return this.generation;
+        }
+    }
+
+    private void recordHit() {
+        synchronized (this.cache) {
+            this.hitCount++;
+        }
+    }
+
+    private void recordMiss() {
+        synchronized (this.cache) {
+            this.missCount++;
+        }
+    }
+
+    /**
+     * Discards any cached cells that might contain the given point.
+     */
+    private void invalidate(final GeospatialPoint point) {
+        final double[] vector = UnitVectors.getUnitVector(point);
+
+        synchronized (this.cache) {
+            this.generation++;
+
+            for (final Iterator<CachedCell> iterator = this.cache.values().iterator(); iterator.hasNext();) {
+                if (iterator.next().covers(vector)) {
+                    iterator.remove();
+                    this.invalidationCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards all cached cells. Callers must clear the cache after modifying the underlying index directly.
+     */
+    public void clearCache() {
+        synchronized (this.cache) {
+            this.generation++;
+            this.cache.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cells currently in the cache.
+     *
+     * @return the number of cells currently in the cache
+     */
+    public int getCachedCellCount() {
+        synchronized (this.cache) {
+            return this.cache.size();
+        }
+    }
+
+    /**
+     * Returns the number of nearest-neighbor and distance searches answered from the cache.
+     *
+     * @return the number of searches answered from the cache
+     */
+    public long getHitCount() {
+        synchronized (this.cache) {
+            return this.hitCount;
+        }
+    }
+
+    /**
+     * Returns the number of nearest-neighbor and distance searches that could not be answered from the cache.
+     *
+     * @return the number of searches that could not be answered from the cache
+     */
+    public long getMissCount() {
+        synchronized (this.cache) {
+            return this.missCount;
+        }
+    }
+
+    /**
+     * Returns the fraction of nearest-neighbor and distance searches answered from the cache.
+     *
+     * @return the fraction of searches answered from the cache, or {@code NaN} if no searches have been made
+     */
+    public double getHitRate() {
+        synchronized (this.cache) {
+            return (double) this.hitCount / (this.hitCount + this.missCount);
+        }
+    }
+
+    /**
+     * Returns the number of cells discarded to make room for other cells.
+     *
+     * @return the number of cells discarded to make room for other cells
+     */
+    public long getEvictionCount() {
+        synchronized (this.cache) {
+            return this.evictionCount;
+        }
+    }
+
+    /**
+     * Returns the number of cells discarded because a point was added to or removed from the area they cover.
+     *
+     * @return the number of cells discarded because of changes to the index
+     */
+    public long getInvalidationCount() {
+        synchronized (this.cache) {
+            return this.invalidationCount;
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.index.size();
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return this.index.contains(o);
+    }
+
+    @Override
+    public boolean add(final E point) {
+        final boolean added = this.index.add(point);
+
+        if (added) {
+            this.invalidate(point);
+        }
+
+        return added;
+    }
+
+    @Override
+    public boolean addAll(final Collection<? extends E> points) {
+        final boolean changed = this.index.addAll(points);
+
+        for (final E point : points) {
+            this.invalidate(point);
+        }
+
+        return changed;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        final boolean removed = this.index.remove(o);
+
+        if (removed) {
+            this.invalidate((GeospatialPoint) o);
+        }
+
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        this.index.clear();
+        this.clearCache();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        final Iterator<E> iterator = this.index.iterator();
+
+        return new Iterator<E>() {
+            private E lastPoint;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                this.lastPoint = iterator.next();
+                return this.lastPoint;
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                CachingGeospatialIndex.this.invalidate(this.lastPoint);
+            }
+        };
+    }
+}
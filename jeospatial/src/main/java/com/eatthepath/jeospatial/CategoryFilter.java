@@ -0,0 +1,39 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * A point filter that allows points that belong to at least one of a set of categories. When used with an index that
+ * was built with the same categorizer, searches can skip whole regions of the index that contain no points in the
+ * given categories instead of checking each point individually.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see CompactGeospatialIndex#CompactGeospatialIndex(int, java.util.Collection, PointCategorizer)
+ */
+public class CategoryFilter<E> implements PointFilter<E> {
+
+    private final PointCategorizer<? super E> categorizer;
+    private final long categories;
+
+    /**
+     * Constructs a new filter that allows points in any of the given categories.
+     *
+     * @param categorizer the categorizer that assigns points to categories
+     * @param categories a bit mask of the categories of points to allow
+     */
+    public CategoryFilter(final PointCategorizer<? super E> categorizer, final long categories) {
+        this.categorizer = categorizer;
+        this.categories = categories;
+    }
+
+    public boolean allowPoint(final E point) {
+        return (this.categorizer.getCategories(point) & this.categories) != 0;
+    }
+
+    PointCategorizer<? super E> getCategorizer() {
+        return this.categorizer;
+    }
+
+    long getCategories() {
+        return this.categories;
+    }
+}
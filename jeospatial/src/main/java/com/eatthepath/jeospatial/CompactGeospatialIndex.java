@@ -0,0 +1,618 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>An immutable geospatial index backed by a vantage point tree that is "flattened" into a handful of primitive
+ * arrays. Compact indices are built once from a fixed collection of points and cannot be modified afterward, but use
+ * much less memory per point than a {@link VPTreeGeospatialIndex} and search contiguous regions of memory instead of
+ * following references between node objects.</p>
+ *
+ * <p>Points are stored in tree order: the points under any node of the tree occupy a single contiguous range of the
+ * point and unit vector arrays. Nodes are stored in depth-first order, so each internal node's "closer" child
+ * immediately follows it; the index of its "farther" child is stored explicitly.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class CompactGeospatialIndex<E extends GeospatialPoint> extends AbstractGeospatialIndex<E> {
+
+    private final Object[] points;
+    private final double[] vectors;
+
+    // Each point occupies two slots: its latitude and longitude, in degrees and in tree order. Bounding box searches
+    // test these instead of asking the points themselves for their coordinates.
+    private final double[] coordinates;
+
+    // Each node occupies four slots: the three components of its vantage point's unit vector and its threshold chord
+    // length.
+    private final double[] nodes;
+
+    // Each node occupies three slots: the index of its "farther" child (or 0 for leaf nodes, since the root can never
+    // be a child) and the first (inclusive) and last (exclusive) indices of its points.
+    private final int[] links;
+
+    // Each node occupies four slots: the minimum latitude, minimum longitude, maximum latitude, and maximum longitude of
+    // its points.
+    private final double[] bounds;
+
+    // If the index was built with a categorizer, each node has a bit mask of the categories of all of its points
+    private final PointCategorizer<? super E> categorizer;
+    private final long[] categories;
+
+    public static final int DEFAULT_LEAF_CAPACITY = 16;
+
+    public CompactGeospatialIndex(final Collection<E> points) {
+        this(DEFAULT_LEAF_CAPACITY, points);
+    }
+
+    public CompactGeospatialIndex(final int leafCapacity, final Collection<E> points) {
+        this(leafCapacity, points, null);
+    }
+
+    /**
+     * Constructs a new index that records the categories of the points under each of its nodes. Searches with a
+     * {@link CategoryFilter} that uses the same categorizer skip any part of the index that contains no points in the
+     * categories sought by the filter.
+     *
+     * @param leafCapacity the maximum number of points to store in each leaf node
+     * @param points the points to add to the index
+     * @param categorizer the categorizer that assigns points to categories, or {@code null} if categories should not be
+     * recorded
+     */
+    @SuppressWarnings("unchecked")
+    public CompactGeospatialIndex(final int leafCapacity, final Collection<E> points, final PointCategorizer<? super E> categorizer) {
+        if (leafCapacity < 1) {
+            throw new IllegalArgumentException("Leaf capacity must be positive.");
+        }
+
+        this.points = points.toArray();
+        this.vectors = new double[3 * this.points.length];
+
+        for (int i = 0; i < this.points.length; i++) {
+            final GeospatialPoint point = (GeospatialPoint) this.points[i];
+            UnitVectors.setUnitVector(point.getLatitude(), point.getLongitude(), this.vectors, i);
+        }
+
+        final Builder builder = new Builder(this.points, this.vectors, leafCapacity);
+        builder.buildNode(0, this.points.length);
+
+        this.nodes = Arrays.copyOf(builder.nodes, 4 * builder.nodeCount);
+        this.links = Arrays.copyOf(builder.links, 3 * builder.nodeCount);
+
+        // The builder has put the points in tree order by now
+        this.coordinates = new double[2 * this.points.length];
+
+        for (int i = 0; i < this.points.length; i++) {
+            final GeospatialPoint point = (GeospatialPoint) this.points[i];
+
+            this.coordinates[2 * i] = point.getLatitude();
+            this.coordinates[2 * i + 1] = point.getLongitude();
+        }
+        this.bounds = Arrays.copyOf(builder.bounds, 4 * builder.nodeCount);
+
+        this.categorizer = categorizer;
+
+        if (categorizer != null) {
+            this.categories = new long[builder.nodeCount];
+
+            // Children always follow their parents, so we can fill in the masks from the bottom up in a single pass
+            for (int node = builder.nodeCount - 1; node >= 0; node--) {
+                if (this.isLeaf(node)) {
+                    for (int i = this.links[3 * node + 1], end = this.links[3 * node + 2]; i < end; i++) {
+                        this.categories[node] |= categorizer.getCategories((E) this.points[i]);
+                    }
+                } else {
+                    this.categories[node] = this.categories[node + 1] | this.categories[this.links[3 * node]];
+                }
+            }
+        } else {
+            this.categories = null;
+        }
+    }
+
+    /**
+     * Assembles the flattened node arrays for a compact index, rearranging the index's point and vector arrays into
+     * tree order along the way.
+     */
+    private static class Builder {
+        private final Object[] points;
+        private final double[] vectors;
+        private final int leafCapacity;
+
+        private final double[] chordLengths;
+        private final double[] scratch;
+
+        private double[] nodes;
+        private int[] links;
+        private double[] bounds;
+        private int nodeCount;
+
+        private Builder(final Object[] points, final double[] vectors, final int leafCapacity) {
+            this.points = points;
+            this.vectors = vectors;
+            this.leafCapacity = leafCapacity;
+
+            this.chordLengths = new double[points.length];
+            this.scratch = new double[points.length];
+
+            final int estimatedNodeCount = Math.max(1, 2 * (points.length / leafCapacity) + 1);
+
+            this.nodes = new double[4 * estimatedNodeCount];
+            this.links = new int[3 * estimatedNodeCount];
+            this.bounds = new double[4 * estimatedNodeCount];
+        }
+
+        private int buildNode(final int from, final int to) {
+            final int node = this.nodeCount++;
+
+            if (this.nodeCount * 3 > this.links.length) {
+                this.nodes = Arrays.copyOf(this.nodes, this.nodes.length * 2);
+                this.links = Arrays.copyOf(this.links, this.links.length * 2);
+                this.bounds = Arrays.copyOf(this.bounds, this.bounds.length * 2);
+            }
+
+            this.links[3 * node + 1] = from;
+            this.links[3 * node + 2] = to;
+
+            if (to - from > this.leafCapacity) {
+                final int vantagePointIndex =
+                        VantagePointPartitioner.selectVantagePoint(from, to, ThreadLocalRandom.current());
+
+                final double[] vantagePoint =
+                        Arrays.copyOfRange(this.vectors, 3 * vantagePointIndex, 3 * vantagePointIndex + 3);
+
+                VantagePointPartitioner.calculateChordLengths(this.vectors, vantagePoint, from, to, this.chordLengths);
+
+                final double threshold = VantagePointPartitioner.selectMedian(this.chordLengths, this.scratch, from, to);
+                final int split = VantagePointPartitioner.partition(this.points, this.vectors, this.chordLengths, from, to, threshold);
+
+                // As with VPTreeNode, points that are all equidistant from the vantage point wind up in one oversized leaf
+                if (split < to) {
+                    System.arraycopy(vantagePoint, 0, this.nodes, 4 * node, 3);
+                    this.nodes[4 * node + 3] = threshold;
+
+                    final int closer = this.buildNode(from, split);
+                    final int farther = this.buildNode(split, to);
+
+                    this.links[3 * node] = farther;
+
+                    BoundingBox.clearBounds(this.bounds, 4 * node);
+                    BoundingBox.expandBounds(this.bounds, 4 * node, this.bounds, 4 * closer);
+                    BoundingBox.expandBounds(this.bounds, 4 * node, this.bounds, 4 * farther);
+
+                    return node;
+                }
+            }
+
+            this.links[3 * node] = 0;
+
+            BoundingBox.clearBounds(this.bounds, 4 * node);
+
+            for (int i = from; i < to; i++) {
+                BoundingBox.expandBounds(this.bounds, 4 * node, (GeospatialPoint) this.points[i]);
+            }
+
+            return node;
+        }
+    }
+
+    // The accessors below expose the index's internal arrays (without copying them) so they can be written to disk
+
+    Object[] getPointArray() {
+        return this.points;
+    }
+
+    double[] getVectorArray() {
+        return this.vectors;
+    }
+
+    double[] getCoordinateArray() {
+        return this.coordinates;
+    }
+
+    double[] getNodeArray() {
+        return this.nodes;
+    }
+
+    int[] getLinkArray() {
+        return this.links;
+    }
+
+    double[] getBoundsArray() {
+        return this.bounds;
+    }
+
+    private boolean isLeaf(final int node) {
+        return this.links[3 * node] == 0;
+    }
+
+    private double getChordLengthFromVantagePoint(final int node, final double[] queryVector) {
+        final double dx = this.nodes[4 * node] - queryVector[0];
+        final double dy = this.nodes[4 * node + 1] - queryVector[1];
+        final double dz = this.nodes[4 * node + 2] - queryVector[2];
+
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults) {
+        return this.getNearestNeighbors(queryPoint, maxResults, null);
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults, final PointFilter<? super E> filter) {
+        if (this.points.length == 0 || maxResults < 1) {
+            return new ArrayList<>();
+        }
+
+        final NearestNeighborCollector<E> collector =
+                new NearestNeighborCollector<>(Math.min(maxResults, this.points.length));
+
+        this.collectNearestNeighbors(UnitVectors.getUnitVector(queryPoint), collector, null, filter);
+
+        return collector.toSortedList();
+    }
+
+    /**
+     * Returns the categories sought by the given filter if this index can use them to skip nodes, or zero if it can't.
+     */
+    private long getRequiredCategories(final PointFilter<? super E> filter) {
+        if (this.categories != null && filter instanceof CategoryFilter) {
+            final CategoryFilter<?> categoryFilter = (CategoryFilter<?>) filter;
+
+            if (categoryFilter.getCategorizer() == this.categorizer) {
+                return categoryFilter.getCategories();
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Offers the points in this index to the given collector, skipping any excluded points and any points that don't
+     * pass the given filter.
+     *
+     * @param queryVector the unit vector of the query point
+     * @param collector the collector to which to offer points
+     * @param excluded the indices of points to skip, or {@code null} if no points should be skipped
+     * @param filter the filter points must pass to be offered to the collector, or {@code null} to offer all points
+     */
+    void collectNearestNeighbors(final double[] queryVector, final NearestNeighborCollector<E> collector, final PersistentBitSet excluded, final PointFilter<? super E> filter) {
+        if (this.points.length > 0) {
+            this.collectNearestNeighbors(0, queryVector, collector, excluded, filter, this.getRequiredCategories(filter));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectNearestNeighbors(final int node, final double[] queryVector, final NearestNeighborCollector<E> collector, final PersistentBitSet excluded, final PointFilter<? super E> filter, final long requiredCategories) {
+        if (requiredCategories != 0 && (this.categories[node] & requiredCategories) == 0) {
+            return;
+        }
+
+        if (this.isLeaf(node)) {
+            for (int i = this.links[3 * node + 1], end = this.links[3 * node + 2]; i < end; i++) {
+                final double chordLength = UnitVectors.getChordLength(queryVector, this.vectors, i);
+
+                // Don't bother checking the filter for points the collector would reject anyhow
+                if (chordLength < collector.getFarthestChordLength() && (excluded == null || !excluded.get(i)) &&
+                        (filter == null || filter.allowPoint((E) this.points[i]))) {
+
+                    collector.offerPoint((E) this.points[i], chordLength);
+                }
+            }
+        } else {
+            final double chordLengthFromVantagePoint = this.getChordLengthFromVantagePoint(node, queryVector);
+            final double threshold = this.nodes[4 * node + 3];
+
+            final int closer = node + 1;
+            final int farther = this.links[3 * node];
+
+            if (chordLengthFromVantagePoint <= threshold) {
+                this.collectNearestNeighbors(closer, queryVector, collector, excluded, filter, requiredCategories);
+
+                if (chordLengthFromVantagePoint + collector.getFarthestChordLength() > threshold) {
+                    this.collectNearestNeighbors(farther, queryVector, collector, excluded, filter, requiredCategories);
+                }
+            } else {
+                this.collectNearestNeighbors(farther, queryVector, collector, excluded, filter, requiredCategories);
+
+                if (chordLengthFromVantagePoint - collector.getFarthestChordLength() <= threshold) {
+                    this.collectNearestNeighbors(closer, queryVector, collector, excluded, filter, requiredCategories);
+                }
+            }
+        }
+    }
+
+    public Iterator<E> getNearestNeighborIterator(final GeospatialPoint queryPoint) {
+        return this.getNearestNeighborIterator(UnitVectors.getUnitVector(queryPoint), null);
+    }
+
+    /**
+     * Returns an iterator over the points in this index in order of increasing distance from a query vector, skipping
+     * any excluded points.
+     *
+     * @param queryVector the unit vector of the query point
+     * @param excluded the indices of points to skip, or {@code null} if no points should be skipped
+     *
+     * @return an iterator over the points in this index in order of increasing distance from the query point
+     */
+    NearestNeighborIterator<E> getNearestNeighborIterator(final double[] queryVector, final PersistentBitSet excluded) {
+        final NearestNeighborIterator<E> iterator = new NearestNeighborIterator<E>(queryVector) {
+
+            @Override
+            void expand(final Object object, final int node, final double minChordLength) {
+                CompactGeospatialIndex.this.expand(this, node, minChordLength, excluded);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            E getPoint(final Object object, final int position) {
+                return (E) CompactGeospatialIndex.this.points[position];
+            }
+        };
+
+        if (this.points.length > 0) {
+            iterator.addNode(null, 0, 0);
+        }
+
+        return iterator;
+    }
+
+    private void expand(final NearestNeighborIterator<E> iterator, final int node, final double minChordLength, final PersistentBitSet excluded) {
+        if (this.isLeaf(node)) {
+            for (int i = this.links[3 * node + 1], end = this.links[3 * node + 2]; i < end; i++) {
+                if (excluded == null || !excluded.get(i)) {
+                    iterator.addPoint(null, i, UnitVectors.getChordLength(iterator.queryVector, this.vectors, i));
+                }
+            }
+        } else {
+            final double chordLengthFromVantagePoint = this.getChordLengthFromVantagePoint(node, iterator.queryVector);
+            final double threshold = this.nodes[4 * node + 3];
+
+            iterator.addNode(null, node + 1, Math.max(minChordLength, chordLengthFromVantagePoint - threshold));
+            iterator.addNode(null, this.links[3 * node], Math.max(minChordLength, threshold - chordLengthFromVantagePoint));
+        }
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance) {
+        return this.getAllWithinDistance(queryPoint, maxDistance, null);
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance, final PointFilter<? super E> filter) {
+        final SearchResults<E> results = new SearchResults<>();
+
+        this.collectAllWithinChordLength(UnitVectors.getUnitVector(queryPoint), UnitVectors.toChordLength(maxDistance),
+                results, null, filter);
+
+        return results.toList();
+    }
+
+    /**
+     * Adds all points in this index within the given chord length of a query vector to the given results, skipping any
+     * excluded points and any points that don't pass the given filter.
+     *
+     * @param queryVector the unit vector of the query point
+     * @param maxChordLength the maximum chord length between the query vector and any point to collect
+     * @param results the results to which to add points
+     * @param excluded the indices of points to skip, or {@code null} if no points should be skipped
+     * @param filter the filter points must pass to be added to the results, or {@code null} to add all points
+     */
+    void collectAllWithinChordLength(final double[] queryVector, final double maxChordLength, final SearchResults<E> results, final PersistentBitSet excluded, final PointFilter<? super E> filter) {
+        if (this.points.length > 0) {
+            this.collectAllWithinChordLength(0, queryVector, maxChordLength, results, excluded, filter,
+                    this.getRequiredCategories(filter));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectAllWithinChordLength(final int node, final double[] queryVector, final double maxChordLength, final SearchResults<E> results, final PersistentBitSet excluded, final PointFilter<? super E> filter, final long requiredCategories) {
+        if (requiredCategories != 0 && (this.categories[node] & requiredCategories) == 0) {
+            return;
+        }
+
+        if (this.isLeaf(node)) {
+            for (int i = this.links[3 * node + 1], end = this.links[3 * node + 2]; i < end; i++) {
+                final double chordLength = UnitVectors.getChordLength(queryVector, this.vectors, i);
+
+                if (chordLength <= maxChordLength && (excluded == null || !excluded.get(i)) &&
+                        (filter == null || filter.allowPoint((E) this.points[i]))) {
+
+                    results.add((E) this.points[i], chordLength);
+                }
+            }
+        } else {
+            final double chordLengthFromVantagePoint = this.getChordLengthFromVantagePoint(node, queryVector);
+            final double threshold = this.nodes[4 * node + 3];
+
+            if (chordLengthFromVantagePoint - maxChordLength <= threshold) {
+                this.collectAllWithinChordLength(node + 1, queryVector, maxChordLength, results, excluded, filter, requiredCategories);
+            }
+
+            if (chordLengthFromVantagePoint + maxChordLength > threshold) {
+                this.collectAllWithinChordLength(this.links[3 * node], queryVector, maxChordLength, results, excluded, filter, requiredCategories);
+            }
+        }
+    }
+
+    public List<E> getAllPointsInBoundingBox(final double south, final double west, final double north, final double east) {
+        final SearchResults<E> results = new SearchResults<>();
+        this.collectAllInBoundingBox(new BoundingBox(south, west, north, east), results, null);
+
+        return results.toList();
+    }
+
+    @Override
+    public void getNearestNeighbors(final double latitude, final double longitude, final int maxResults, final SearchResults<E> results) {
+        results.clear();
+
+        if (this.points.length > 0 && maxResults > 0) {
+            final NearestNeighborCollector<E> collector = results.getCollector(Math.min(maxResults, this.points.length));
+
+            this.collectNearestNeighbors(results.getQueryVector(latitude, longitude), collector, null, null);
+            collector.drainTo(results);
+        }
+    }
+
+    @Override
+    public void getAllWithinDistance(final double latitude, final double longitude, final double maxDistance, final SearchResults<E> results) {
+        results.clear();
+
+        this.collectAllWithinChordLength(results.getQueryVector(latitude, longitude),
+                UnitVectors.toChordLength(maxDistance), results, null, null);
+    }
+
+    @Override
+    public void getAllPointsInBoundingBox(final double south, final double west, final double north, final double east, final SearchResults<E> results) {
+        final BoundingBox boundingBox = results.getBoundingBox(south, west, north, east);
+
+        results.clear();
+        this.collectAllInBoundingBox(boundingBox, results, null);
+    }
+
+    /**
+     * Adds all points in this index within the given bounding box to the given results, skipping any excluded points.
+     *
+     * @param boundingBox the bounding box to search
+     * @param results the results to which to add points
+     * @param excluded the indices of points to skip, or {@code null} if no points should be skipped
+     */
+    void collectAllInBoundingBox(final BoundingBox boundingBox, final SearchResults<E> results, final PersistentBitSet excluded) {
+        if (this.points.length > 0) {
+            this.collectAllInBoundingBox(0, boundingBox, results, excluded);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectAllInBoundingBox(final int node, final BoundingBox boundingBox, final SearchResults<E> results, final PersistentBitSet excluded) {
+        if (!boundingBox.intersects(this.bounds, 4 * node)) {
+            return;
+        }
+
+        if (boundingBox.encloses(this.bounds, 4 * node)) {
+            for (int i = this.links[3 * node + 1], end = this.links[3 * node + 2]; i < end; i++) {
+                if (excluded == null || !excluded.get(i)) {
+                    results.add((E) this.points[i], Double.NaN);
+                }
+            }
+        } else if (this.isLeaf(node)) {
+            for (int i = this.links[3 * node + 1], end = this.links[3 * node + 2]; i < end; i++) {
+                if (boundingBox.contains(this.coordinates[2 * i], this.coordinates[2 * i + 1]) &&
+                        (excluded == null || !excluded.get(i))) {
+                    results.add((E) this.points[i], Double.NaN);
+                }
+            }
+        } else {
+            final double threshold = this.nodes[4 * node + 3];
+
+            if (boundingBox.getMinChordLength(this.nodes, 4 * node) <= threshold) {
+                this.collectAllInBoundingBox(node + 1, boundingBox, results, excluded);
+            }
+
+            if (boundingBox.getMaxChordLength(this.nodes, 4 * node) > threshold) {
+                this.collectAllInBoundingBox(this.links[3 * node], boundingBox, results, excluded);
+            }
+        }
+    }
+
+    /**
+     * Returns the point at the given position in this index's tree order.
+     *
+     * @param index the position of the point to return
+     *
+     * @return the point at the given position
+     */
+    @SuppressWarnings("unchecked")
+    E getPoint(final int index) {
+        return (E) this.points[index];
+    }
+
+    /**
+     * Finds the position of a point equal to the given object in this index's tree order, skipping any excluded
+     * points.
+     *
+     * @param o the object to find
+     * @param excluded the indices of points to skip, or {@code null} if no points should be skipped
+     *
+     * @return the position of a matching point, or -1 if this index contains no matching point
+     */
+    int indexOf(final Object o, final PersistentBitSet excluded) {
+        if (this.points.length == 0 || !(o instanceof GeospatialPoint)) {
+            return -1;
+        }
+
+        return this.indexOf(o, UnitVectors.getUnitVector((GeospatialPoint) o), excluded);
+    }
+
+    /**
+     * Finds the position of a point equal to the given object in this index's tree order, looking for it in the leaf
+     * that holds the given unit vector rather than the one that holds the object's current coordinates. This allows
+     * callers to find points whose coordinates have changed since they were last recorded.
+     *
+     * @param o the object to find
+     * @param vector the unit vector at which to look for the object
+     * @param excluded the indices of points to skip, or {@code null} if no points should be skipped
+     *
+     * @return the position of a matching point, or -1 if no matching point is stored at the given vector
+     */
+    int indexOf(final Object o, final double[] vector, final PersistentBitSet excluded) {
+        if (this.points.length == 0) {
+            return -1;
+        }
+
+        int node = 0;
+
+        // Equal points have identical vectors, and so must all wind up in the same leaf
+        while (!this.isLeaf(node)) {
+            node = this.getChordLengthFromVantagePoint(node, vector) <= this.nodes[4 * node + 3] ?
+                    node + 1 : this.links[3 * node];
+        }
+
+        for (int i = this.links[3 * node + 1], end = this.links[3 * node + 2]; i < end; i++) {
+            if (o.equals(this.points[i]) && (excluded == null || !excluded.get(i))) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return this.points.length;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return this.indexOf(o, null) >= 0;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        return (Iterator<E>) (Iterator<?>) Collections.unmodifiableList(Arrays.asList(this.points)).iterator();
+    }
+}
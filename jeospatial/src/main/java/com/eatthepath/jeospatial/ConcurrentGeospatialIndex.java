@@ -0,0 +1,642 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>A thread-safe geospatial index that allows searches to proceed without locking while other threads add and
+ * remove points.</p>
+ *
+ * <p>Searches run against an immutable snapshot of the index, which consists of a {@link CompactGeospatialIndex} (the
+ * "base" of the snapshot) and a "delta" of points added since the base was built and points removed from the base.
+ * Points in the delta live in a small {@code CompactGeospatialIndex} of their own, except for a handful of the most
+ * recent additions, which searches scan one by one until there are enough of them to fold into a new delta. Writers
+ * publish a new snapshot with an updated delta after every change. When the delta grows beyond a threshold, a
+ * background task builds a new base that incorporates the delta and publishes it; changes made while the new base is
+ * under construction carry over into the new snapshot's delta.</p>
+ *
+ * <p>Each search sees a consistent view of the index as of the moment it began. Writers are serialized with respect to
+ * one another, and iterators reflect the state of the index at the time they were created; an iterator's
+ * {@code remove} method removes the last-returned point from the live index.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class ConcurrentGeospatialIndex<E extends GeospatialPoint> extends AbstractGeospatialIndex<E> {
+
+    private final int mergeThreshold;
+    private final Executor executor;
+
+    private volatile Snapshot<E> snapshot;
+
+    private final Object writeLock = new Object();
+
+    // All of the following fields are guarded by writeLock
+    private final List<Operation<E>> pendingOperations = new ArrayList<>();
+    private boolean mergeInProgress = false;
+    private long generation = 0;
+
+    /**
+     * The default minimum number of changes that may accumulate before the index builds a new base in the background.
+     */
+    public static final int DEFAULT_MERGE_THRESHOLD = 1024;
+
+    // Rebuilding a base takes time proportional to the size of the index, while folding recent additions into the delta
+    // takes time proportional to the size of the delta and searching the delta takes much less, so larger indices
+    // tolerate larger deltas; merges wait for at least this many times the square root of the size of the base, which
+    // roughly balances the two costs.
+    private static final int MERGE_THRESHOLD_SCALE = 32;
+
+    // If writers get this many times the merge threshold ahead of the merge in progress, they wait for the merge to
+    // finish so the delta (and the time needed to rebuild it) can't grow without bound
+    private static final int MAX_BACKLOG_FACTOR = 2;
+
+    public ConcurrentGeospatialIndex() {
+        this(Collections.<E>emptyList());
+    }
+
+    public ConcurrentGeospatialIndex(final Collection<E> points) {
+        this(DEFAULT_MERGE_THRESHOLD, points, getDefaultPool());
+    }
+
+    /**
+     * Constructs a new concurrent index containing the given points.
+     *
+     * @param mergeThreshold the minimum number of changes that may accumulate before the index builds a new base; large
+     * indices may allow more changes to accumulate
+     * @param points the points to add to the index
+     * @param executor the executor in which to build new bases; writers may wait for tasks submitted to this executor
+     * to finish, so it must not run tasks in threads that also modify the index
+     */
+    public ConcurrentGeospatialIndex(final int mergeThreshold, final Collection<E> points, final Executor executor) {
+        if (mergeThreshold < 1) {
+            throw new IllegalArgumentException("Merge threshold must be positive.");
+        }
+
+        this.mergeThreshold = mergeThreshold;
+        this.executor = executor;
+
+        this.snapshot = new Snapshot<>(new CompactGeospatialIndex<>(new ArrayList<>(points)));
+    }
+
+    /**
+     * An immutable view of the index's contents.
+     */
+    private static class Snapshot<E extends GeospatialPoint> {
+        private final CompactGeospatialIndex<E> base;
+
+        // Positions (in the base's tree order) of points removed from the base
+        private final PersistentBitSet removals;
+
+        // Points added since the base was built (except for the most recent additions) and positions (in the delta's
+        // tree order) of points removed from the delta
+        private final CompactGeospatialIndex<E> delta;
+        private final PersistentBitSet deltaRemovals;
+
+        // The most recent additions and their unit vectors. Snapshots derived from one another share these arrays; each
+        // snapshot only reads the elements before its own addition count, and only the most recent snapshot appends new
+        // elements, so existing snapshots never see changes.
+        private final Object[] additions;
+        private final double[] additionVectors;
+        private final int additionCount;
+
+        // Positions of recent additions that were removed before being folded into the delta
+        private final PersistentBitSet removedAdditions;
+
+        // Searches scan the most recent additions one by one, so once this many accumulate, they get folded into a new
+        // delta; rebuilding the delta takes time proportional to its size, but happens only once per this many additions
+        private static final int MAX_ADDITION_COUNT = 64;
+
+        private Snapshot(final CompactGeospatialIndex<E> base) {
+            this(base, new PersistentBitSet(base.size()), new CompactGeospatialIndex<>(Collections.<E>emptyList()));
+        }
+
+        private Snapshot(final CompactGeospatialIndex<E> base, final PersistentBitSet removals, final CompactGeospatialIndex<E> delta) {
+            this(base, removals, delta, new PersistentBitSet(delta.size()), new Object[MAX_ADDITION_COUNT],
+                    new double[3 * MAX_ADDITION_COUNT], 0, new PersistentBitSet(MAX_ADDITION_COUNT));
+        }
+
+        private Snapshot(final CompactGeospatialIndex<E> base, final PersistentBitSet removals,
+                final CompactGeospatialIndex<E> delta, final PersistentBitSet deltaRemovals, final Object[] additions,
+                final double[] additionVectors, final int additionCount, final PersistentBitSet removedAdditions) {
+
+            this.base = base;
+            this.removals = removals;
+            this.delta = delta;
+            this.deltaRemovals = deltaRemovals;
+            this.additions = additions;
+            this.additionVectors = additionVectors;
+            this.additionCount = additionCount;
+            this.removedAdditions = removedAdditions;
+        }
+
+        private int size() {
+            return this.base.size() - this.removals.cardinality() +
+                    this.delta.size() - this.deltaRemovals.cardinality() +
+                    this.additionCount - this.removedAdditions.cardinality();
+        }
+
+        private PersistentBitSet getExcludedBasePoints() {
+            return this.removals.cardinality() == 0 ? null : this.removals;
+        }
+
+        private PersistentBitSet getExcludedDeltaPoints() {
+            return this.deltaRemovals.cardinality() == 0 ? null : this.deltaRemovals;
+        }
+
+        private boolean isLiveAddition(final int index) {
+            return this.removedAdditions.cardinality() == 0 || !this.removedAdditions.get(index);
+        }
+
+        private int getAdditionIndex(final Object o) {
+            for (int i = 0; i < this.additionCount; i++) {
+                if (this.additions[i].equals(o) && this.isLiveAddition(i)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        @SuppressWarnings("unchecked")
+        private E getAddition(final int index) {
+            return (E) this.additions[index];
+        }
+
+        private boolean contains(final Object o) {
+            return this.base.indexOf(o, this.getExcludedBasePoints()) >= 0 ||
+                    this.delta.indexOf(o, this.getExcludedDeltaPoints()) >= 0 ||
+                    this.getAdditionIndex(o) >= 0;
+        }
+
+        private Snapshot<E> withAddition(final E point, final double[] vector) {
+            if (this.additionCount + 1 == MAX_ADDITION_COUNT) {
+                final List<E> deltaPoints = new ArrayList<>();
+                addLivePoints(this.delta, this.deltaRemovals, deltaPoints);
+
+                for (int i = 0; i < this.additionCount; i++) {
+                    if (this.isLiveAddition(i)) {
+                        deltaPoints.add(this.getAddition(i));
+                    }
+                }
+
+                deltaPoints.add(point);
+
+                return new Snapshot<>(this.base, this.removals, new CompactGeospatialIndex<>(deltaPoints));
+            }
+
+            this.additions[this.additionCount] = point;
+            System.arraycopy(vector, 0, this.additionVectors, 3 * this.additionCount, 3);
+
+            return new Snapshot<>(this.base, this.removals, this.delta, this.deltaRemovals, this.additions,
+                    this.additionVectors, this.additionCount + 1, this.removedAdditions);
+        }
+
+        /**
+         * Returns a snapshot without the given point, or {@code null} if this snapshot doesn't contain the point.
+         */
+        private Snapshot<E> withRemoval(final Object o) {
+            final int baseIndex = this.base.indexOf(o, this.getExcludedBasePoints());
+
+            if (baseIndex >= 0) {
+                return this.withBaseRemoval(baseIndex);
+            }
+
+            final int deltaIndex = this.delta.indexOf(o, this.getExcludedDeltaPoints());
+
+            if (deltaIndex >= 0) {
+                return this.withDeltaRemoval(deltaIndex);
+            }
+
+            final int additionIndex = this.getAdditionIndex(o);
+            return additionIndex >= 0 ? this.withAdditionRemoval(additionIndex) : null;
+        }
+
+        /**
+         * Returns a snapshot without the given point, looking for it in the base and then the delta at the unit vector
+         * recorded when it was removed, then at its current coordinates, and finally in every slot. Callers may move a
+         * point (possibly several times) after removing it, and a base or delta built in the meantime may have recorded
+         * any of the point's positions along the way. If the point can't be found at all, this snapshot is returned
+         * unchanged.
+         */
+        private Snapshot<E> withReplayedRemoval(final Object o, final double[] vector) {
+            final int baseIndex = findRemovedPoint(this.base, o, vector, this.getExcludedBasePoints());
+
+            if (baseIndex >= 0) {
+                return this.withBaseRemoval(baseIndex);
+            }
+
+            final int deltaIndex = findRemovedPoint(this.delta, o, vector, this.getExcludedDeltaPoints());
+
+            if (deltaIndex >= 0) {
+                return this.withDeltaRemoval(deltaIndex);
+            }
+
+            final int additionIndex = this.getAdditionIndex(o);
+            return additionIndex >= 0 ? this.withAdditionRemoval(additionIndex) : this;
+        }
+
+        private static int findRemovedPoint(final CompactGeospatialIndex<?> index, final Object o, final double[] vector, final PersistentBitSet excluded) {
+            int position = index.indexOf(o, vector, excluded);
+
+            if (position < 0) {
+                position = index.indexOf(o, excluded);
+            }
+
+            // This is slow, but only happens when a point moved while a new base was under construction
+            for (int i = 0; position < 0 && i < index.size(); i++) {
+                if (o.equals(index.getPoint(i)) && (excluded == null || !excluded.get(i))) {
+                    position = i;
+                }
+            }
+
+            return position;
+        }
+
+        private Snapshot<E> withBaseRemoval(final int baseIndex) {
+            return new Snapshot<>(this.base, this.removals.set(baseIndex), this.delta, this.deltaRemovals,
+                    this.additions, this.additionVectors, this.additionCount, this.removedAdditions);
+        }
+
+        private Snapshot<E> withDeltaRemoval(final int deltaIndex) {
+            return new Snapshot<>(this.base, this.removals, this.delta, this.deltaRemovals.set(deltaIndex),
+                    this.additions, this.additionVectors, this.additionCount, this.removedAdditions);
+        }
+
+        private Snapshot<E> withAdditionRemoval(final int additionIndex) {
+            return new Snapshot<>(this.base, this.removals, this.delta, this.deltaRemovals,
+                    this.additions, this.additionVectors, this.additionCount, this.removedAdditions.set(additionIndex));
+        }
+
+        private List<E> toList() {
+            final ArrayList<E> points = new ArrayList<>(this.size());
+
+            addLivePoints(this.base, this.removals, points);
+            addLivePoints(this.delta, this.deltaRemovals, points);
+
+            for (int i = 0; i < this.additionCount; i++) {
+                if (this.isLiveAddition(i)) {
+                    points.add(this.getAddition(i));
+                }
+            }
+
+            return points;
+        }
+
+        private static <E extends GeospatialPoint> void addLivePoints(final CompactGeospatialIndex<E> index, final PersistentBitSet removals, final List<E> points) {
+            for (int i = 0; i < index.size(); i++) {
+                if (!removals.get(i)) {
+                    points.add(index.getPoint(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * A change to the contents of the index that has not yet been merged into a base. Operations record the point's
+     * unit vector at the time of the change, since callers may move points once they've been removed.
+     */
+    private static class Operation<E extends GeospatialPoint> {
+        private final boolean addition;
+        private final E point;
+        private final double[] vector;
+
+        private Operation(final boolean addition, final E point) {
+            this.addition = addition;
+            this.point = point;
+            this.vector = UnitVectors.getUnitVector(point);
+        }
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults) {
+        return this.getNearestNeighbors(queryPoint, maxResults, null);
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults, final PointFilter<? super E> filter) {
+        final SearchResults<E> results = new SearchResults<>();
+        this.getNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), maxResults, filter, results);
+
+        return results.toList();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Unlike other indices, this index may be modified while a nearest-neighbor iterator is in use; the iterator
+     * reflects the state of the index at the time it was created.</p>
+     */
+    public Iterator<E> getNearestNeighborIterator(final GeospatialPoint queryPoint) {
+        final Snapshot<E> snapshot = this.snapshot;
+        final double[] queryVector = UnitVectors.getUnitVector(queryPoint);
+
+        // There are only a few recent additions, so we sort them up front and merge them with the points from the delta
+        // and base as we go
+        final SearchResults<E> additions = new SearchResults<>();
+        final NearestNeighborCollector<E> collector = additions.getCollector(Math.max(1, snapshot.additionCount));
+
+        for (int i = 0; i < snapshot.additionCount; i++) {
+            if (snapshot.isLiveAddition(i)) {
+                collector.offerPoint(snapshot.getAddition(i), UnitVectors.getChordLength(queryVector, snapshot.additionVectors, i));
+            }
+        }
+
+        collector.drainTo(additions);
+
+        final NearestNeighborIterator<E> deltaIterator =
+                snapshot.delta.getNearestNeighborIterator(queryVector, snapshot.getExcludedDeltaPoints());
+
+        final NearestNeighborIterator<E> baseIterator =
+                snapshot.base.getNearestNeighborIterator(queryVector, snapshot.getExcludedBasePoints());
+
+        return new Iterator<E>() {
+            private int nextAddition = 0;
+
+            public boolean hasNext() {
+                return this.nextAddition < additions.size() || deltaIterator.hasNext() || baseIterator.hasNext();
+            }
+
+            public E next() {
+                final double deltaChordLength = deltaIterator.hasNext() ? deltaIterator.peekChordLength() : Double.POSITIVE_INFINITY;
+                final double baseChordLength = baseIterator.hasNext() ? baseIterator.peekChordLength() : Double.POSITIVE_INFINITY;
+
+                if (this.nextAddition < additions.size() &&
+                        additions.getChordLength(this.nextAddition) <= Math.min(deltaChordLength, baseChordLength)) {
+
+                    return additions.get(this.nextAddition++);
+                }
+
+                return deltaIterator.hasNext() && deltaChordLength <= baseChordLength ? deltaIterator.next() : baseIterator.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance) {
+        return this.getAllWithinDistance(queryPoint, maxDistance, null);
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance, final PointFilter<? super E> filter) {
+        final SearchResults<E> results = new SearchResults<>();
+        this.getAllWithinDistance(queryPoint.getLatitude(), queryPoint.getLongitude(), maxDistance, filter, results);
+
+        return results.toList();
+    }
+
+    public List<E> getAllPointsInBoundingBox(final double south, final double west, final double north, final double east) {
+        final SearchResults<E> results = new SearchResults<>();
+        this.getAllPointsInBoundingBox(south, west, north, east, results);
+
+        return results.toList();
+    }
+
+    @Override
+    public void getNearestNeighbors(final double latitude, final double longitude, final int maxResults, final SearchResults<E> results) {
+        this.getNearestNeighbors(latitude, longitude, maxResults, null, results);
+    }
+
+    private void getNearestNeighbors(final double latitude, final double longitude, final int maxResults, final PointFilter<? super E> filter, final SearchResults<E> results) {
+        final Snapshot<E> snapshot = this.snapshot;
+        results.clear();
+
+        if (snapshot.size() == 0 || maxResults < 1) {
+            return;
+        }
+
+        final double[] queryVector = results.getQueryVector(latitude, longitude);
+        final NearestNeighborCollector<E> collector = results.getCollector(Math.min(maxResults, snapshot.size()));
+
+        // The base holds most of the points, so searching it first gives the collector a tight bound that lets the
+        // search of the delta skip most of its nodes
+        snapshot.base.collectNearestNeighbors(queryVector, collector, snapshot.getExcludedBasePoints(), filter);
+        snapshot.delta.collectNearestNeighbors(queryVector, collector, snapshot.getExcludedDeltaPoints(), filter);
+
+        for (int i = 0; i < snapshot.additionCount; i++) {
+            if (snapshot.isLiveAddition(i) && (filter == null || filter.allowPoint(snapshot.getAddition(i)))) {
+                collector.offerPoint(snapshot.getAddition(i), UnitVectors.getChordLength(queryVector, snapshot.additionVectors, i));
+            }
+        }
+
+        collector.drainTo(results);
+    }
+
+    @Override
+    public void getAllWithinDistance(final double latitude, final double longitude, final double maxDistance, final SearchResults<E> results) {
+        this.getAllWithinDistance(latitude, longitude, maxDistance, null, results);
+    }
+
+    private void getAllWithinDistance(final double latitude, final double longitude, final double maxDistance, final PointFilter<? super E> filter, final SearchResults<E> results) {
+        final Snapshot<E> snapshot = this.snapshot;
+        results.clear();
+
+        final double[] queryVector = results.getQueryVector(latitude, longitude);
+        final double maxChordLength = UnitVectors.toChordLength(maxDistance);
+
+        snapshot.base.collectAllWithinChordLength(queryVector, maxChordLength, results, snapshot.getExcludedBasePoints(), filter);
+        snapshot.delta.collectAllWithinChordLength(queryVector, maxChordLength, results, snapshot.getExcludedDeltaPoints(), filter);
+
+        for (int i = 0; i < snapshot.additionCount; i++) {
+            final double chordLength = UnitVectors.getChordLength(queryVector, snapshot.additionVectors, i);
+
+            if (chordLength <= maxChordLength && snapshot.isLiveAddition(i) &&
+                    (filter == null || filter.allowPoint(snapshot.getAddition(i)))) {
+
+                results.add(snapshot.getAddition(i), chordLength);
+            }
+        }
+    }
+
+    @Override
+    public void getAllPointsInBoundingBox(final double south, final double west, final double north, final double east, final SearchResults<E> results) {
+        final Snapshot<E> snapshot = this.snapshot;
+        final BoundingBox boundingBox = results.getBoundingBox(south, west, north, east);
+
+        results.clear();
+        snapshot.base.collectAllInBoundingBox(boundingBox, results, snapshot.getExcludedBasePoints());
+        snapshot.delta.collectAllInBoundingBox(boundingBox, results, snapshot.getExcludedDeltaPoints());
+
+        for (int i = 0; i < snapshot.additionCount; i++) {
+            if (boundingBox.contains(snapshot.getAddition(i)) && snapshot.isLiveAddition(i)) {
+                results.add(snapshot.getAddition(i), Double.NaN);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.snapshot.size();
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return this.snapshot.contains(o);
+    }
+
+    @Override
+    public boolean add(final E point) {
+        synchronized (this.writeLock) {
+            final Operation<E> operation = new Operation<>(true, point);
+
+            this.snapshot = this.snapshot.withAddition(point, operation.vector);
+            this.pendingOperations.add(operation);
+
+            this.mergeIfNecessary();
+            this.awaitMergeIfBacklogged();
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        synchronized (this.writeLock) {
+            final Snapshot<E> updatedSnapshot = this.snapshot.withRemoval(o);
+
+            if (updatedSnapshot == null) {
+                return false;
+            }
+
+            @SuppressWarnings("unchecked")
+            final E point = (E) o;
+
+            this.snapshot = updatedSnapshot;
+            this.pendingOperations.add(new Operation<>(false, point));
+
+            this.mergeIfNecessary();
+            this.awaitMergeIfBacklogged();
+        }
+
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (this.writeLock) {
+            this.snapshot = new Snapshot<>(new CompactGeospatialIndex<>(Collections.<E>emptyList()));
+            this.pendingOperations.clear();
+
+            // Discard the results of any merge already in progress
+            this.generation++;
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        final Iterator<E> iterator = this.snapshot.toList().iterator();
+
+        return new Iterator<E>() {
+
+            private E lastReturned;
+
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public E next() {
+                this.lastReturned = iterator.next();
+                return this.lastReturned;
+            }
+
+            public void remove() {
+                if (this.lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+
+                ConcurrentGeospatialIndex.this.remove(this.lastReturned);
+                this.lastReturned = null;
+            }
+        };
+    }
+
+    /**
+     * Starts building a new base in the background if enough changes have accumulated and no other merge is already in
+     * progress. Callers must hold the write lock.
+     */
+    private void mergeIfNecessary() {
+        if (!this.mergeInProgress && this.pendingOperations.size() >= this.getMergeThreshold()) {
+            this.mergeInProgress = true;
+
+            final Snapshot<E> snapshot = this.snapshot;
+            final int mergedOperationCount = this.pendingOperations.size();
+            final long generation = this.generation;
+
+            this.executor.execute(new Runnable() {
+
+                public void run() {
+                    ConcurrentGeospatialIndex.this.merge(snapshot, mergedOperationCount, generation);
+                }
+            });
+        }
+    }
+
+    private int getMergeThreshold() {
+        return Math.max(this.mergeThreshold, (int) (MERGE_THRESHOLD_SCALE * Math.sqrt(this.snapshot.base.size())));
+    }
+
+    /**
+     * Waits for the merge in progress to finish if writers have gotten too far ahead of it. Callers must hold the write
+     * lock.
+     */
+    private void awaitMergeIfBacklogged() {
+        boolean interrupted = false;
+
+        while (this.mergeInProgress && this.pendingOperations.size() >= MAX_BACKLOG_FACTOR * this.getMergeThreshold()) {
+            try {
+                this.writeLock.wait();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void merge(final Snapshot<E> snapshot, final int mergedOperationCount, final long generation) {
+        final CompactGeospatialIndex<E> base;
+
+        try {
+            base = new CompactGeospatialIndex<>(snapshot.toList());
+        } catch (final RuntimeException | Error e) {
+            // Leave the delta in place; the next change will try again
+            synchronized (this.writeLock) {
+                this.mergeInProgress = false;
+                this.writeLock.notifyAll();
+            }
+
+            throw e;
+        }
+
+        synchronized (this.writeLock) {
+            this.mergeInProgress = false;
+            this.writeLock.notifyAll();
+
+            if (generation == this.generation) {
+                // Replay any changes that arrived while we were building the new base
+                final List<Operation<E>> remainingOperations = new ArrayList<>(
+                        this.pendingOperations.subList(mergedOperationCount, this.pendingOperations.size()));
+
+                Snapshot<E> mergedSnapshot = new Snapshot<>(base);
+
+                for (final Operation<E> operation : remainingOperations) {
+                    mergedSnapshot = operation.addition ?
+                            mergedSnapshot.withAddition(operation.point, operation.vector) :
+                            mergedSnapshot.withReplayedRemoval(operation.point, operation.vector);
+                }
+
+                this.snapshot = mergedSnapshot;
+
+                this.pendingOperations.clear();
+                this.pendingOperations.addAll(remainingOperations);
+            }
+
+            this.mergeIfNecessary();
+        }
+    }
+}
@@ -0,0 +1,588 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>The region within a fixed distance of a route on the earth's surface. A route is a sequence of points joined by
+ * segments, each of which follows the shorter great-circle arc between two consecutive points; a route with a single
+ * point has a single segment of zero length.</p>
+ *
+ * <p>Corridors arrange the segments of their routes in a balanced binary tree of "spans," each of which covers a range
+ * of consecutive segments and has a bounding cap (a center and a chord length from that center that no point on any
+ * of its segments exceeds). The tree lets corridors find the nearest segment to a point without measuring the distance
+ * to every segment, and lets tree searches decide which spans could be near any point within (or beyond) a given chord
+ * length of a vantage point. Searches keep track of the spans still under consideration for each subtree with a stack
+ * of span indices owned by the corridor, so a corridor may only be used by one search at a time.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class Corridor {
+
+    private final int segmentCount;
+    private final double maxChordLength;
+
+    // The unit vectors of the start and end of each segment
+    private final double[] starts;
+    private final double[] ends;
+
+    // The unit normal of each segment's great circle, and two vectors perpendicular to it; a point projects onto a
+    // segment (rather than onto the rest of its great circle) if and only if its dot products with both are
+    // non-negative
+    private final double[] normals;
+    private final double[] startTangents;
+    private final double[] endTangents;
+
+    // Segments whose endpoints (nearly) coincide have no well-defined great circle and are treated as single points
+    private final boolean[] degenerate;
+
+    // The angular length of each segment and the angular distance along the route to the start of each segment
+    private final double[] segmentAngles;
+    private final double[] segmentStartAngles;
+
+    // Spans are numbered like the nodes of a binary heap: the root is span 1, and span i has children 2i and 2i + 1;
+    // spans that cover a single segment have no children
+    private final int[] spanStarts;
+    private final int[] spanEnds;
+    private final double[] spanCenters;
+    private final double[] spanRadii;
+
+    private int[] spanStack;
+
+    // The results of the most recent search for a nearest segment
+    private int nearestSegment;
+    private double nearestSquaredChordLength;
+    private double nearestChordLength;
+
+    private int distanceCalculations;
+
+    private static final int ROOT_SPAN = 1;
+
+    // Below this magnitude, the cross product of a segment's endpoints is too small to define its great circle; this
+    // corresponds to points a few micrometers apart
+    private static final double MIN_CROSS_PRODUCT_MAGNITUDE = 1e-12;
+
+    // Floating-point slack for chord length bounds so that rounding errors can never prune a point that is actually in
+    // the corridor; this is on the order of millimeters.
+    private static final double CHORD_LENGTH_TOLERANCE = 1e-9;
+
+    /**
+     * Constructs a new corridor around the given route.
+     *
+     * @param route the points that define the route, in order
+     * @param maxDistance the maximum distance (inclusive) between the route and any point in the corridor, in meters
+     *
+     * @throws IllegalArgumentException if the route is empty or if any two consecutive points on the route are
+     * antipodal, in which case the shortest path between them is ambiguous
+     */
+    Corridor(final List<? extends GeospatialPoint> route, final double maxDistance) {
+        if (route.isEmpty()) {
+            throw new IllegalArgumentException("Route must contain at least one point.");
+        }
+
+        this.segmentCount = Math.max(1, route.size() - 1);
+        this.maxChordLength = UnitVectors.toChordLength(maxDistance);
+
+        this.starts = new double[3 * this.segmentCount];
+        this.ends = new double[3 * this.segmentCount];
+        this.normals = new double[3 * this.segmentCount];
+        this.startTangents = new double[3 * this.segmentCount];
+        this.endTangents = new double[3 * this.segmentCount];
+        this.degenerate = new boolean[this.segmentCount];
+        this.segmentAngles = new double[this.segmentCount];
+        this.segmentStartAngles = new double[this.segmentCount];
+
+        double routeAngle = 0;
+
+        for (int i = 0; i < this.segmentCount; i++) {
+            final GeospatialPoint start = route.get(i);
+            final GeospatialPoint end = route.get(Math.min(i + 1, route.size() - 1));
+
+            UnitVectors.setUnitVector(start.getLatitude(), start.getLongitude(), this.starts, i);
+            UnitVectors.setUnitVector(end.getLatitude(), end.getLongitude(), this.ends, i);
+
+            this.initializeSegment(i);
+
+            this.segmentStartAngles[i] = routeAngle;
+            routeAngle += this.segmentAngles[i];
+        }
+
+        // A heap-numbered tree over n leaves needs fewer than 4n slots
+        this.spanStarts = new int[4 * this.segmentCount];
+        this.spanEnds = new int[4 * this.segmentCount];
+        this.spanCenters = new double[12 * this.segmentCount];
+        this.spanRadii = new double[4 * this.segmentCount];
+
+        this.initializeSpan(ROOT_SPAN, 0, this.segmentCount);
+
+        this.spanStack = new int[Math.max(16, this.segmentCount)];
+        this.spanStack[0] = ROOT_SPAN;
+    }
+
+    private void initializeSegment(final int segment) {
+        final int offset = 3 * segment;
+
+        final double ax = this.starts[offset];
+        final double ay = this.starts[offset + 1];
+        final double az = this.starts[offset + 2];
+        final double bx = this.ends[offset];
+        final double by = this.ends[offset + 1];
+        final double bz = this.ends[offset + 2];
+
+        final double cx = ay * bz - az * by;
+        final double cy = az * bx - ax * bz;
+        final double cz = ax * by - ay * bx;
+
+        final double crossProductMagnitude = Math.sqrt(cx * cx + cy * cy + cz * cz);
+        final double dotProduct = ax * bx + ay * by + az * bz;
+
+        if (crossProductMagnitude < MIN_CROSS_PRODUCT_MAGNITUDE) {
+            if (dotProduct < 0) {
+                throw new IllegalArgumentException("Consecutive points on a route must not be antipodal.");
+            }
+
+            this.degenerate[segment] = true;
+        } else {
+            final double nx = cx / crossProductMagnitude;
+            final double ny = cy / crossProductMagnitude;
+            final double nz = cz / crossProductMagnitude;
+
+            this.normals[offset] = nx;
+            this.normals[offset + 1] = ny;
+            this.normals[offset + 2] = nz;
+
+            // n x a
+            this.startTangents[offset] = ny * az - nz * ay;
+            this.startTangents[offset + 1] = nz * ax - nx * az;
+            this.startTangents[offset + 2] = nx * ay - ny * ax;
+
+            // b x n
+            this.endTangents[offset] = by * nz - bz * ny;
+            this.endTangents[offset + 1] = bz * nx - bx * nz;
+            this.endTangents[offset + 2] = bx * ny - by * nx;
+
+            this.segmentAngles[segment] = Math.atan2(crossProductMagnitude, dotProduct);
+        }
+    }
+
+    private void initializeSpan(final int span, final int from, final int to) {
+        this.spanStarts[span] = from;
+        this.spanEnds[span] = to;
+
+        // Center each span on the (normalized) average of the endpoints of its segments
+        double x = 0;
+        double y = 0;
+        double z = 0;
+
+        for (int i = from; i < to; i++) {
+            x += this.starts[3 * i] + this.ends[3 * i];
+            y += this.starts[3 * i + 1] + this.ends[3 * i + 1];
+            z += this.starts[3 * i + 2] + this.ends[3 * i + 2];
+        }
+
+        final double magnitude = Math.sqrt(x * x + y * y + z * z);
+
+        if (magnitude > 0) {
+            this.spanCenters[3 * span] = x / magnitude;
+            this.spanCenters[3 * span + 1] = y / magnitude;
+            this.spanCenters[3 * span + 2] = z / magnitude;
+        } else {
+            // The endpoints cancel one another out; any center will do, though the cap will be a loose one
+            System.arraycopy(this.starts, 3 * from, this.spanCenters, 3 * span, 3);
+        }
+
+        double maxSquaredChordLength = 0;
+
+        for (int i = from; i < to; i++) {
+            maxSquaredChordLength = Math.max(maxSquaredChordLength, this.getMaxSquaredChordLength(this.spanCenters, span, i));
+        }
+
+        this.spanRadii[span] = Math.sqrt(maxSquaredChordLength) + CHORD_LENGTH_TOLERANCE;
+
+        if (to - from > 1) {
+            final int middle = (from + to) >>> 1;
+
+            this.initializeSpan(2 * span, from, middle);
+            this.initializeSpan(2 * span + 1, middle, to);
+        }
+    }
+
+    /**
+     * Returns the number of entries on the span stack before a search begins. Those entries cover the whole route.
+     *
+     * @return the number of entries on the span stack before a search begins
+     */
+    int getInitialStackSize() {
+        return 1;
+    }
+
+    /**
+     * Returns the maximum chord length between the route and any point in this corridor.
+     *
+     * @return the maximum chord length between the route and any point in this corridor, in earth radii
+     */
+    double getMaxChordLength() {
+        return this.maxChordLength;
+    }
+
+    /**
+     * Returns the number of distance calculations (between points and segments, or between points and the centers of
+     * spans) this corridor has performed since it was created. Searches can compare the number before and after an
+     * operation to find the number of calculations that operation needed.
+     *
+     * @return the number of distance calculations this corridor has performed
+     */
+    int getDistanceCalculations() {
+        return this.distanceCalculations;
+    }
+
+    /**
+     * Indicates whether the given vector falls within this corridor.
+     *
+     * @param vector a three-element array containing a unit vector
+     *
+     * @return {@code true} if the given vector is within this corridor's distance of its route or {@code false}
+     * otherwise
+     */
+    boolean contains(final double[] vector) {
+        return this.getNearestSegment(vector, 0, 0, this.getInitialStackSize()) >= 0;
+    }
+
+    /**
+     * Finds the segment nearest to a vector in this corridor, considering only the segments covered by the spans in
+     * the given range of the span stack. Callers must make sure that no segment outside of those spans is within this
+     * corridor's distance of the vector. When two segments are equally close to the vector, the one closer to the start
+     * of the route wins.
+     *
+     * @param vectors the array containing the vector
+     * @param index the vector index of the vector
+     * @param from the first position (inclusive) in the span stack of the spans to consider
+     * @param to the last position (exclusive) in the span stack of the spans to consider
+     *
+     * @return the index of the segment nearest to the vector, or -1 if the vector is not in this corridor
+     */
+    int getNearestSegment(final double[] vectors, final int index, final int from, final int to) {
+        return this.findNearestSegment(vectors, index, from, to, this.maxChordLength);
+    }
+
+    /**
+     * Returns the chord length between the given vector and the nearest point on the route.
+     *
+     * @param vector a three-element array containing a unit vector
+     *
+     * @return the chord length between the given vector and the nearest point on the route, in earth radii
+     */
+    double getChordLength(final double[] vector) {
+        this.findNearestSegment(vector, 0, 0, this.getInitialStackSize(), Double.POSITIVE_INFINITY);
+        return this.nearestChordLength;
+    }
+
+    /**
+     * Indicates whether any point within the given chord length of the given vector could fall within this corridor.
+     *
+     * @param vector a three-element array containing a unit vector
+     * @param chordLength the chord length around the given vector, in earth radii
+     *
+     * @return {@code true} if a point within the given chord length of the given vector could fall within this
+     * corridor or {@code false} if no such point can
+     */
+    boolean mayContainPointsWithin(final double[] vector, final double chordLength) {
+        return this.findNearestSegment(vector, 0, 0, this.getInitialStackSize(),
+                chordLength + this.maxChordLength + CHORD_LENGTH_TOLERANCE) >= 0;
+    }
+
+    /**
+     * Finds the segment nearest to a vector among the segments covered by the spans in the given range of the span
+     * stack, ignoring any segments farther than the given chord length from the vector. When two segments are equally
+     * close to the vector, the one closer to the start of the route wins.
+     *
+     * @return the index of the nearest segment, or -1 if no segment is within the given chord length of the vector
+     */
+    private int findNearestSegment(final double[] vectors, final int index, final int from, final int to, final double maxChordLength) {
+        this.nearestSegment = -1;
+        this.nearestSquaredChordLength = Double.POSITIVE_INFINITY;
+        this.nearestChordLength = maxChordLength;
+
+        for (int i = from; i < to; i++) {
+            this.findNearestSegment(vectors, index, this.spanStack[i]);
+        }
+
+        return this.nearestSegment;
+    }
+
+    private void findNearestSegment(final double[] vectors, final int index, final int span) {
+        final int start = this.spanStarts[span];
+
+        if (this.spanEnds[span] - start == 1) {
+            final double squaredChordLength = this.getMinSquaredChordLength(vectors, index, start);
+            final double chordLength = Math.sqrt(squaredChordLength);
+
+            this.distanceCalculations++;
+
+            if (chordLength <= this.nearestChordLength && (this.nearestSegment < 0 ||
+                    squaredChordLength < this.nearestSquaredChordLength ||
+                    (squaredChordLength == this.nearestSquaredChordLength && start < this.nearestSegment))) {
+
+                this.nearestSegment = start;
+                this.nearestSquaredChordLength = squaredChordLength;
+                this.nearestChordLength = chordLength;
+            }
+        } else {
+            final int left = 2 * span;
+            final int right = left + 1;
+
+            final double leftBound = this.getMinChordLength(vectors, index, left);
+            final double rightBound = this.getMinChordLength(vectors, index, right);
+
+            // Search the nearer span first so the farther one is more likely to be pruned
+            if (leftBound <= rightBound) {
+                this.findNearestSegmentWithin(vectors, index, left, leftBound);
+                this.findNearestSegmentWithin(vectors, index, right, rightBound);
+            } else {
+                this.findNearestSegmentWithin(vectors, index, right, rightBound);
+                this.findNearestSegmentWithin(vectors, index, left, leftBound);
+            }
+        }
+    }
+
+    private void findNearestSegmentWithin(final double[] vectors, final int index, final int span, final double minChordLength) {
+        if (minChordLength <= this.nearestChordLength) {
+            this.findNearestSegment(vectors, index, span);
+        }
+    }
+
+    /**
+     * Returns a lower bound for the chord length between a vector and any point on the segments covered by a span.
+     */
+    private double getMinChordLength(final double[] vectors, final int index, final int span) {
+        this.distanceCalculations++;
+        return UnitVectors.getChordLength(vectors, index, this.spanCenters, span) - this.spanRadii[span] - CHORD_LENGTH_TOLERANCE;
+    }
+
+    /**
+     * Selects the parts of the route covered by the spans in the given range of the span stack that could be within
+     * this corridor's distance of a point no farther than the given threshold from the given vantage point, and pushes
+     * spans that cover them onto the stack starting at position {@code to}.
+     *
+     * @param from the first position (inclusive) in the span stack of the spans to consider
+     * @param to the last position (exclusive) in the span stack of the spans to consider
+     * @param vantagePoint a three-element array containing the unit vector of the vantage point
+     * @param threshold the maximum chord length between the vantage point and any point of interest, in earth radii
+     *
+     * @return the last position (exclusive) of the selected spans, which occupy the stack from position {@code to}
+     */
+    int selectSpansWithin(final int from, final int to, final double[] vantagePoint, final double threshold) {
+        int end = to;
+
+        for (int i = from; i < to; i++) {
+            end = this.selectSpansWithin(this.spanStack[i], vantagePoint, threshold, end);
+        }
+
+        return end;
+    }
+
+    private int selectSpansWithin(final int span, final double[] vantagePoint, final double threshold, final int end) {
+        final double chordLengthFromCenter = UnitVectors.getChordLength(vantagePoint, 0, this.spanCenters, span);
+        this.distanceCalculations++;
+
+        // Points near the vantage point can only be near segments that come close to the vantage point
+        if (chordLengthFromCenter - this.spanRadii[span] - this.maxChordLength - CHORD_LENGTH_TOLERANCE > threshold) {
+            return end;
+        }
+
+        // Split spans that reach beyond the region of interest in case some of their segments don't
+        if (this.isSplittable(span) && chordLengthFromCenter + this.spanRadii[span] + this.maxChordLength > threshold) {
+            return this.selectSpansWithin(2 * span + 1, vantagePoint, threshold,
+                    this.selectSpansWithin(2 * span, vantagePoint, threshold, end));
+        }
+
+        return this.push(span, end);
+    }
+
+    /**
+     * Selects the parts of the route covered by the spans in the given range of the span stack that could be within
+     * this corridor's distance of a point no closer than the given threshold to the given vantage point, and pushes
+     * spans that cover them onto the stack starting at position {@code to}.
+     *
+     * @param from the first position (inclusive) in the span stack of the spans to consider
+     * @param to the last position (exclusive) in the span stack of the spans to consider
+     * @param vantagePoint a three-element array containing the unit vector of the vantage point
+     * @param threshold the minimum chord length between the vantage point and any point of interest, in earth radii
+     *
+     * @return the last position (exclusive) of the selected spans, which occupy the stack from position {@code to}
+     */
+    int selectSpansBeyond(final int from, final int to, final double[] vantagePoint, final double threshold) {
+        int end = to;
+
+        for (int i = from; i < to; i++) {
+            end = this.selectSpansBeyond(this.spanStack[i], vantagePoint, threshold, end);
+        }
+
+        return end;
+    }
+
+    private int selectSpansBeyond(final int span, final double[] vantagePoint, final double threshold, final int end) {
+        final double chordLengthFromCenter = UnitVectors.getChordLength(vantagePoint, 0, this.spanCenters, span);
+        this.distanceCalculations++;
+
+        // Points far from the vantage point can only be near segments that reach far from the vantage point
+        if (chordLengthFromCenter + this.spanRadii[span] + this.maxChordLength + CHORD_LENGTH_TOLERANCE < threshold) {
+            return end;
+        }
+
+        // Split spans that reach into the excluded region in case some of their segments fall entirely within it
+        if (this.isSplittable(span) && chordLengthFromCenter - this.spanRadii[span] + this.maxChordLength < threshold) {
+            return this.selectSpansBeyond(2 * span + 1, vantagePoint, threshold,
+                    this.selectSpansBeyond(2 * span, vantagePoint, threshold, end));
+        }
+
+        return this.push(span, end);
+    }
+
+    private boolean isSplittable(final int span) {
+        return this.spanEnds[span] - this.spanStarts[span] > 1;
+    }
+
+    private int push(final int span, final int end) {
+        if (end == this.spanStack.length) {
+            this.spanStack = Arrays.copyOf(this.spanStack, 2 * this.spanStack.length);
+        }
+
+        this.spanStack[end] = span;
+
+        return end + 1;
+    }
+
+    /**
+     * Returns a new list containing the given points sorted by their positions along this corridor's route. A point's
+     * position along the route is the distance along the route to the nearest point on the route; points that are
+     * equally close to more than one part of the route take their position from the part closest to the start of the
+     * route.
+     *
+     * @param points the points to sort
+     *
+     * @return a new list containing the given points sorted by their positions along the route
+     */
+    <E extends GeospatialPoint> List<E> sortByRoutePosition(final List<E> points) {
+        final double[] routeAngles = new double[points.size()];
+        final double[] vector = new double[3];
+
+        for (int i = 0; i < routeAngles.length; i++) {
+            final GeospatialPoint point = points.get(i);
+            UnitVectors.setUnitVector(point.getLatitude(), point.getLongitude(), vector, 0);
+
+            routeAngles[i] = this.getRouteAngle(vector, 0,
+                    this.findNearestSegment(vector, 0, 0, this.getInitialStackSize(), Double.POSITIVE_INFINITY));
+        }
+
+        return sortByRouteAngle(points, routeAngles);
+    }
+
+    /**
+     * Returns a new list containing the points in the given search results sorted by their positions along this
+     * corridor's route. Unlike {@link #sortByRoutePosition(List)}, this method expects each result to carry its route
+     * angle (as returned by {@link #getRouteAngle(double[], int, int)}) in place of its chord length.
+     *
+     * @param results the search results to sort
+     *
+     * @return a new list containing the points in the given results sorted by their positions along the route
+     */
+    <E extends GeospatialPoint> List<E> sortByRoutePosition(final SearchResults<E> results) {
+        final double[] routeAngles = new double[results.size()];
+
+        for (int i = 0; i < routeAngles.length; i++) {
+            routeAngles[i] = results.getChordLength(i);
+        }
+
+        return sortByRouteAngle(results.toList(), routeAngles);
+    }
+
+    private static <E> List<E> sortByRouteAngle(final List<E> points, final double[] routeAngles) {
+        final Integer[] order = new Integer[routeAngles.length];
+
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                return Double.compare(routeAngles[a], routeAngles[b]);
+            }
+        });
+
+        final List<E> sortedPoints = new ArrayList<>(order.length);
+
+        for (final Integer i : order) {
+            sortedPoints.add(points.get(i));
+        }
+
+        return sortedPoints;
+    }
+
+    /**
+     * Returns the angular distance along the route to the point on the given segment nearest to the given vector.
+     *
+     * @param vectors the array containing the vector
+     * @param index the vector index of the vector
+     * @param segment the index of the segment nearest to the vector
+     *
+     * @return the angular distance along the route to the point nearest to the given vector, in radians
+     */
+    double getRouteAngle(final double[] vectors, final int index, final int segment) {
+        if (this.degenerate[segment]) {
+            return this.segmentStartAngles[segment];
+        }
+
+        final double angle = Math.atan2(dot(vectors, index, this.startTangents, segment), dot(vectors, index, this.starts, segment));
+
+        return this.segmentStartAngles[segment] + Math.max(0, Math.min(this.segmentAngles[segment], angle));
+    }
+
+    private double getMinSquaredChordLength(final double[] vectors, final int index, final int segment) {
+        if (!this.degenerate[segment] &&
+                dot(vectors, index, this.startTangents, segment) >= 0 && dot(vectors, index, this.endTangents, segment) >= 0) {
+
+            // The vector projects onto the segment; the nearest point is on the segment's great circle, at an angle
+            // whose sine is the dot product with the circle's normal
+            final double sine = dot(vectors, index, this.normals, segment);
+            final double cosine = Math.sqrt(Math.max(0, 1 - sine * sine));
+
+            // Equivalent to 2 - 2 * cosine, but without catastrophic cancellation for vectors close to the segment
+            return 2 * sine * sine / (1 + cosine);
+        }
+
+        return Math.min(getSquaredChordLength(vectors, index, this.starts, segment),
+                getSquaredChordLength(vectors, index, this.ends, segment));
+    }
+
+    private double getMaxSquaredChordLength(final double[] vectors, final int index, final int segment) {
+        if (!this.degenerate[segment] &&
+                dot(vectors, index, this.startTangents, segment) <= 0 && dot(vectors, index, this.endTangents, segment) <= 0) {
+
+            // The vector's antipode projects onto the segment, so the farthest point is on the segment's great circle
+            final double sine = dot(vectors, index, this.normals, segment);
+            final double cosine = Math.sqrt(Math.max(0, 1 - sine * sine));
+
+            return 2 + 2 * cosine;
+        }
+
+        return Math.max(getSquaredChordLength(vectors, index, this.starts, segment),
+                getSquaredChordLength(vectors, index, this.ends, segment));
+    }
+
+    private static double dot(final double[] a, final int aIndex, final double[] b, final int bIndex) {
+        return a[3 * aIndex] * b[3 * bIndex] + a[3 * aIndex + 1] * b[3 * bIndex + 1] + a[3 * aIndex + 2] * b[3 * bIndex + 2];
+    }
+
+    private static double getSquaredChordLength(final double[] a, final int aIndex, final double[] b, final int bIndex) {
+        final double dx = a[3 * aIndex] - b[3 * bIndex];
+        final double dy = a[3 * aIndex + 1] - b[3 * bIndex + 1];
+        final double dz = a[3 * aIndex + 2] - b[3 * bIndex + 2];
+
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
@@ -0,0 +1,154 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * <p>A bounding box divided into a grid of equally-sized cells, each of which counts the points that fall within it.
+ * Rows divide the box from south to north and columns divide it from west to east (so, like the box itself, the grid
+ * may cross the antimeridian). Points on the boundary between two cells are counted in the northern or eastern cell,
+ * except that points on the northern or eastern limit of the box are counted in the last row or column.</p>
+ *
+ * <p>In addition to counting individual points, grids can count a whole group of points at once if the
+ * latitude/longitude bounds of the group fall within a single cell.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class CountGrid {
+
+    private final BoundingBox boundingBox;
+    private final int[][] counts;
+
+    private final double south;
+    private final double west;
+    private final double height;
+    private final double width;
+
+    /**
+     * Constructs a new grid of empty cells that covers the given bounding box.
+     *
+     * @param south the southern limit of the bounding box in degrees
+     * @param west the western limit of the bounding box in degrees
+     * @param north the northern limit of the bounding box in degrees
+     * @param east the eastern limit of the bounding box in degrees
+     * @param rows the number of rows into which to divide the box
+     * @param columns the number of columns into which to divide the box
+     *
+     * @throws IllegalArgumentException if the north or south limits fall outside of the range -90 to +90 (inclusive),
+     * if the northern limit is south of the southern limit, or if the number of rows or columns is not positive
+     */
+    CountGrid(final double south, final double west, final double north, final double east, final int rows, final int columns) {
+        if (rows < 1 || columns < 1) {
+            throw new IllegalArgumentException("Numbers of rows and columns must be positive.");
+        }
+
+        this.boundingBox = new BoundingBox(south, west, north, east);
+        this.counts = new int[rows][columns];
+
+        this.south = south;
+        this.height = north - south;
+
+        // Unlike the bounding box, the grid keeps its western limit even if it spans all longitudes so that its first
+        // column always starts where the caller asked it to
+        this.west = BoundingBox.normalizeLongitude(west);
+
+        if (east - west >= 360) {
+            this.width = 360;
+        } else {
+            final double width = BoundingBox.normalizeLongitude(east) - this.west;
+            this.width = width < 0 ? width + 360 : width;
+        }
+    }
+
+    /**
+     * Returns the bounding box covered by this grid.
+     *
+     * @return the bounding box covered by this grid
+     */
+    BoundingBox getBoundingBox() {
+        return this.boundingBox;
+    }
+
+    /**
+     * Counts a point at the given coordinates if it falls within this grid's bounding box.
+     *
+     * @param latitude the latitude of the point, in degrees
+     * @param longitude the longitude of the point, in degrees
+     */
+    void add(final double latitude, final double longitude) {
+        if (this.boundingBox.contains(latitude, longitude)) {
+            this.counts[this.getRow(latitude)][this.getColumn(this.getLongitudeOffset(longitude))] += 1;
+        }
+    }
+
+    /**
+     * Counts a group of points at once if the given latitude/longitude bounds of the group fall entirely within a
+     * single cell of this grid. Callers must first make sure that this grid's bounding box encloses the bounds. Bounds
+     * never cross the antimeridian (i.e. {@code minLongitude <= maxLongitude}), but may still cross the western limit
+     * of a grid that spans all longitudes; such bounds touch both the first and last columns and are never counted
+     * here.
+     *
+     * @param bounds an array containing the minimum latitude, minimum longitude, maximum latitude, and maximum
+     * longitude of the bounds, in that order and in degrees
+     * @param offset the index of the minimum latitude within the array
+     * @param count the number of points in the group
+     *
+     * @return {@code true} if the group was counted or {@code false} if its bounds span more than one cell and its
+     * points must be counted individually
+     *
+     * @see BoundingBox#encloses(double[], int)
+     */
+    boolean addAll(final double[] bounds, final int offset, final int count) {
+        final double minLongitudeOffset = this.getLongitudeOffset(bounds[offset + 1]);
+        final double maxLongitudeOffset = this.getLongitudeOffset(bounds[offset + 3]);
+
+        if (minLongitudeOffset > maxLongitudeOffset) {
+            return false;
+        }
+
+        final int row = this.getRow(bounds[offset]);
+        final int column = this.getColumn(minLongitudeOffset);
+
+        if (row != this.getRow(bounds[offset + 2]) || column != this.getColumn(maxLongitudeOffset)) {
+            return false;
+        }
+
+        this.counts[row][column] += count;
+        return true;
+    }
+
+    /**
+     * Returns the number of points counted in each cell of this grid, indexed by row and then by column.
+     *
+     * @return the number of points counted in each cell of this grid
+     */
+    int[][] getCounts() {
+        return this.counts;
+    }
+
+    private int getRow(final double latitude) {
+        final int rows = this.counts.length;
+
+        if (this.height == 0) {
+            return 0;
+        }
+
+        return Math.min((int) ((latitude - this.south) / this.height * rows), rows - 1);
+    }
+
+    /**
+     * Returns the number of degrees east of this grid's western limit of the given longitude, from 0 (inclusive) to 360
+     * (exclusive).
+     */
+    private double getLongitudeOffset(final double longitude) {
+        final double offset = BoundingBox.normalizeLongitude(longitude) - this.west;
+        return offset < 0 ? offset + 360 : offset;
+    }
+
+    private int getColumn(final double longitudeOffset) {
+        final int columns = this.counts[0].length;
+
+        if (this.width == 0) {
+            return 0;
+        }
+
+        return Math.min((int) (longitudeOffset / this.width * columns), columns - 1);
+    }
+}
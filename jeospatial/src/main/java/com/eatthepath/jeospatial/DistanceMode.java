@@ -0,0 +1,24 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * Strategies for evaluating distances between a query point and the points in an index. Both strategies produce
+ * identical search results; they differ only in how much work they do to get there.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see VPTreeGeospatialIndex#setDistanceMode(DistanceMode)
+ */
+public enum DistanceMode {
+
+    /**
+     * Calculates the exact distance to every point examined by a search. This is the default.
+     */
+    EXACT,
+
+    /**
+     * Compares the squared distance to each point examined by a search to the square of the search's current distance
+     * limit, and calculates exact distances only for points within the limit. This skips most square roots, but
+     * measurements so far haven't shown it to be faster than {@link #EXACT} in practice.
+     */
+    TIERED
+}
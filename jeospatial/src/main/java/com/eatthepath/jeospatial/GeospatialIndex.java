@@ -1,6 +1,8 @@
 package com.eatthepath.jeospatial;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import com.eatthepath.jvptree.SpatialIndex;
 
@@ -12,6 +14,86 @@ import com.eatthepath.jvptree.SpatialIndex;
  */
 public interface GeospatialIndex<E extends GeospatialPoint> extends SpatialIndex<GeospatialPoint, E> {
 
+    /**
+     * Returns a list of the nearest neighbors of the given query point that pass the given filter, sorted by increasing
+     * distance. The filter is applied while the index is searched, so points that don't pass the filter never displace
+     * points that do; the returned list will contain {@code maxResults} points if at least that many points in the
+     * index pass the filter.
+     *
+     * @param queryPoint the point for which to find neighbors
+     * @param maxResults the maximum number of neighbors to find
+     * @param filter the filter that points must pass to be included in the results
+     *
+     * @return a list of the nearest neighbors of the query point that pass the given filter
+     *
+     * @see #getNearestNeighbors(Object, int)
+     */
+    public List<E> getNearestNeighbors(GeospatialPoint queryPoint, int maxResults, PointFilter<? super E> filter);
+
+    /**
+     * Returns a list of all points in the index within the given distance of the query point that pass the given
+     * filter. The order of the returned list is not prescribed.
+     *
+     * @param queryPoint the point from which to measure distances
+     * @param maxDistance the maximum distance (inclusive) between the query point and any returned point, in meters
+     * @param filter the filter that points must pass to be included in the results
+     *
+     * @return a list of points within the given distance of the query point that pass the given filter
+     *
+     * @see #getAllWithinDistance(Object, double)
+     */
+    public List<E> getAllWithinDistance(GeospatialPoint queryPoint, double maxDistance, PointFilter<? super E> filter);
+
+    /**
+     * Returns an iterator over all points in the index in order of increasing distance from the given query point. The
+     * iterator searches lazily, doing only as much work as it needs to find each successive point, so it's well-suited
+     * to searches that don't know in advance how many neighbors they'll need (e.g. "find the nearest 20 points that
+     * satisfy some condition"). Stopping early costs only the work done so far. The index must not be modified while
+     * an iterator is in use, and iterators do not support the {@code remove} operation.
+     *
+     * @param queryPoint the point from which to measure distances
+     *
+     * @return an iterator over the points in the index in order of increasing distance from the query point
+     *
+     * @see #getNearestNeighbors(Object, int)
+     */
+    public Iterator<E> getNearestNeighborIterator(GeospatialPoint queryPoint);
+
+    /**
+     * Returns a list of all points in the index within the given distance of a route. A route is a sequence of points
+     * joined by segments, each of which follows the shorter great-circle path between two consecutive points, and a
+     * point's distance from the route is its distance from the nearest point on any segment. Each point appears in
+     * the returned list at most once, and the order of the returned list is not prescribed.
+     *
+     * @param route the points that define the route, in order
+     * @param maxDistance the maximum distance (inclusive) between the route and any returned point, in meters
+     *
+     * @return a list of all points in the index within the given distance of the route
+     *
+     * @throws IllegalArgumentException if the route is empty or if any two consecutive points on the route are
+     * antipodal
+     */
+    public List<E> getAllWithinDistanceOfRoute(List<? extends GeospatialPoint> route, double maxDistance);
+
+    /**
+     * Returns a list of all points in the index within the given distance of a route, optionally sorted by position
+     * along the route. A point's position along the route is the distance along the route from its start to the point
+     * on the route nearest to the indexed point.
+     *
+     * @param route the points that define the route, in order
+     * @param maxDistance the maximum distance (inclusive) between the route and any returned point, in meters
+     * @param sortByRoutePosition if {@code true}, the returned list is sorted by increasing position along the route;
+     * otherwise, the order of the returned list is not prescribed
+     *
+     * @return a list of all points in the index within the given distance of the route
+     *
+     * @throws IllegalArgumentException if the route is empty or if any two consecutive points on the route are
+     * antipodal
+     *
+     * @see #getAllWithinDistanceOfRoute(List, double)
+     */
+    public List<E> getAllWithinDistanceOfRoute(List<? extends GeospatialPoint> route, double maxDistance, boolean sortByRoutePosition);
+
     /**
      * Returns a list of all points in the index within the given bounding "box." A point is considered to be inside the
      * box if its latitude falls between the given north and south limits (inclusive) and its longitude falls between
@@ -28,4 +110,137 @@ public interface GeospatialIndex<E extends GeospatialPoint> extends SpatialIndex
      * if the northern limit is south of the southern limit (or vice versa)
      */
     public List<E> getAllPointsInBoundingBox(double south, double west, double north, double east);
+
+    /**
+     * Finds the nearest neighbors of the given coordinates and writes them to the given results, sorted by increasing
+     * distance. Any previous contents of the results are discarded. Implementations should not allocate memory once the
+     * results have grown large enough to hold the neighbors they find, so callers that reuse results can perform many
+     * searches without creating garbage.
+     *
+     * @param latitude the latitude of the query point in degrees
+     * @param longitude the longitude of the query point in degrees
+     * @param maxResults the maximum number of neighbors to find
+     * @param results the results to which to write the neighbors of the query point
+     *
+     * @see #getNearestNeighbors(Object, int)
+     */
+    public void getNearestNeighbors(double latitude, double longitude, int maxResults, SearchResults<E> results);
+
+    /**
+     * Finds all points in the index within the given distance of the given coordinates and writes them to the given
+     * results. Any previous contents of the results are discarded, and the order of the results is not prescribed.
+     *
+     * @param latitude the latitude of the query point in degrees
+     * @param longitude the longitude of the query point in degrees
+     * @param maxDistance the maximum distance (inclusive) between the query point and any point written to the results,
+     * in meters
+     * @param results the results to which to write points
+     *
+     * @see #getAllWithinDistance(Object, double)
+     */
+    public void getAllWithinDistance(double latitude, double longitude, double maxDistance, SearchResults<E> results);
+
+    /**
+     * Finds all points in the index within the given bounding "box" and writes them to the given results. Any previous
+     * contents of the results are discarded, and the order of the results is not prescribed. Bounding boxes have no
+     * query point, so the distances reported by the results are always {@code NaN}.
+     *
+     * @param south the southern limit of the bounding box in degrees
+     * @param west the western limit of the bounding box in degrees
+     * @param north the northern limit of the bounding box in degrees
+     * @param east the eastern limit of the bounding box in degrees
+     * @param results the results to which to write points
+     *
+     * @throws IllegalArgumentException if the north or south limits fall outside of the range -90 to +90 (inclusive) or
+     * if the northern limit is south of the southern limit (or vice versa)
+     *
+     * @see #getAllPointsInBoundingBox(double, double, double, double)
+     */
+    public void getAllPointsInBoundingBox(double south, double west, double north, double east, SearchResults<E> results);
+
+    /**
+     * Returns the number of points in the index within the given distance of the given coordinates. Counting doesn't
+     * build a list of the points it finds, and so is much cheaper than finding all of the points within the given
+     * distance when there may be many of them.
+     *
+     * @param latitude the latitude of the query point in degrees
+     * @param longitude the longitude of the query point in degrees
+     * @param maxDistance the maximum distance (inclusive) between the query point and any counted point, in meters
+     *
+     * @return the number of points in the index within the given distance of the given coordinates
+     *
+     * @see #getAllWithinDistance(double, double, double, SearchResults)
+     */
+    public int countWithinDistance(double latitude, double longitude, double maxDistance);
+
+    /**
+     * Returns the number of points in the index within the given bounding "box." Points are inside the box under the
+     * same rules as {@link #getAllPointsInBoundingBox(double, double, double, double)}.
+     *
+     * @param south the southern limit of the bounding box in degrees
+     * @param west the western limit of the bounding box in degrees
+     * @param north the northern limit of the bounding box in degrees
+     * @param east the eastern limit of the bounding box in degrees
+     *
+     * @return the number of points in the index within the given bounding box
+     *
+     * @throws IllegalArgumentException if the north or south limits fall outside of the range -90 to +90 (inclusive) or
+     * if the northern limit is south of the southern limit (or vice versa)
+     */
+    public int countInBoundingBox(double south, double west, double north, double east);
+
+    /**
+     * Divides the given bounding "box" into a grid of equally-sized cells and returns the number of points in the index
+     * within each cell (e.g. to draw a heatmap). Rows divide the box from south to north and columns divide it eastward
+     * from its western limit to its eastern limit, crossing the antimeridian if the eastern limit is west of the western
+     * limit. A point on the boundary between two cells is counted in the northern or eastern cell, except that points
+     * on the northern or eastern limit of the box are counted in the last row or column. The counts of all cells add up
+     * to {@link #countInBoundingBox(double, double, double, double)} for the same box.
+     *
+     * @param south the southern limit of the bounding box in degrees
+     * @param west the western limit of the bounding box in degrees
+     * @param north the northern limit of the bounding box in degrees
+     * @param east the eastern limit of the bounding box in degrees
+     * @param rows the number of rows into which to divide the box
+     * @param columns the number of columns into which to divide the box
+     *
+     * @return the number of points in each cell, indexed by row (starting from the south) and then by column (starting
+     * from the west)
+     *
+     * @throws IllegalArgumentException if the north or south limits fall outside of the range -90 to +90 (inclusive),
+     * if the northern limit is south of the southern limit (or vice versa), or if the number of rows or columns is not
+     * positive
+     */
+    public int[][] countInGrid(double south, double west, double north, double east, int rows, int columns);
+
+    /**
+     * Finds the nearest neighbors of each of the given query points, dividing the work among the threads of a shared
+     * default pool. Queries are reordered internally so that queries near one another on the earth's surface run
+     * near one another in time, but results are returned in the same order as the given query points. The index must
+     * not be modified while a batch search is in progress.
+     *
+     * @param queryPoints the points for which to find nearest neighbors
+     * @param maxResults the maximum number of neighbors to find for each query point
+     *
+     * @return a list containing, for each query point, a list of its nearest neighbors sorted by increasing distance
+     *
+     * @see #getNearestNeighbors(Object, int)
+     */
+    public List<List<E>> getAllNearestNeighbors(List<? extends GeospatialPoint> queryPoints, int maxResults);
+
+    /**
+     * Finds the nearest neighbors of each of the given query points, dividing the work among the threads of the given
+     * pool. Queries are reordered internally so that queries near one another on the earth's surface run near one
+     * another in time, but results are returned in the same order as the given query points. The index must not be
+     * modified while a batch search is in progress.
+     *
+     * @param queryPoints the points for which to find nearest neighbors
+     * @param maxResults the maximum number of neighbors to find for each query point
+     * @param pool the pool in which to perform searches
+     *
+     * @return a list containing, for each query point, a list of its nearest neighbors sorted by increasing distance
+     *
+     * @see #getNearestNeighbors(Object, int)
+     */
+    public List<List<E>> getAllNearestNeighbors(List<? extends GeospatialPoint> queryPoints, int maxResults, ForkJoinPool pool);
 }
@@ -0,0 +1,67 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * A lightweight, immutable point that carries nothing but an identifier and a pair of coordinates. Indices that store
+ * their points as primitive values create handles on demand when returning search results.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class GeospatialPointHandle implements IdentifiedGeospatialPoint {
+
+    private final long id;
+    private final double latitude;
+    private final double longitude;
+
+    GeospatialPointHandle(final long id, final double latitude, final double longitude) {
+        this.id = id;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    public double getLatitude() {
+        return this.latitude;
+    }
+
+    public double getLongitude() {
+        return this.longitude;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        long temp;
+        result = prime * result + (int) (this.id ^ (this.id >>> 32));
+        temp = Double.doubleToLongBits(this.latitude);
+        result = prime * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(this.longitude);
+        result = prime * result + (int) (temp ^ (temp >>> 32));
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null || this.getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final GeospatialPointHandle other = (GeospatialPointHandle) obj;
+
+        return this.id == other.id &&
+                Double.doubleToLongBits(this.latitude) == Double.doubleToLongBits(other.latitude) &&
+                Double.doubleToLongBits(this.longitude) == Double.doubleToLongBits(other.longitude);
+    }
+
+    @Override
+    public String toString() {
+        return "GeospatialPointHandle [id=" + this.id + ", latitude=" + this.latitude + ", longitude=" + this.longitude + "]";
+    }
+}
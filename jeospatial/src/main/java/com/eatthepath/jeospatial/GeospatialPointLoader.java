@@ -0,0 +1,692 @@
+package com.eatthepath.jeospatial;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>Builds vantage point tree indices directly from files of point identifiers and coordinates. Building an index
+ * from a {@link java.util.Collection} requires callers to create an object for every point (and usually several
+ * more for every line of input) before construction even begins; loaders instead stream their input through a small
+ * buffer and parse each row straight into the primitive arrays used to build the tree. The only object created for
+ * each row is the {@link IdentifiedGeospatialPoint} handle that becomes the point's element in the index; callers
+ * can use identifiers to find any other data associated with a point.</p>
+ *
+ * <p>Loaders read two formats:</p>
+ *
+ * <ul>
+ * <li>CSV files with one point per line. The latitude, longitude, and (integer) identifier of each point may appear
+ * in any column, and other columns are ignored; fields may be quoted, and blank lines are skipped. A fixed number of
+ * header lines at the start of the file may be skipped, too. Coordinates with up to 15 significant digits are parsed
+ * without allocating any objects; longer values are still parsed exactly, but more slowly.</li>
+ *
+ * <li>A packed binary format in which each point is a {@value #BINARY_RECORD_SIZE}-byte record containing the
+ * point's identifier followed by its latitude and longitude, all stored in little-endian byte order. Binary files can
+ * be written with {@link #writeBinary(Iterable, Path)}.</li>
+ * </ul>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class GeospatialPointLoader {
+
+    private final int latitudeColumn;
+    private final int longitudeColumn;
+    private final int idColumn;
+    private final int headerLines;
+
+    private final TreeParameters parameters;
+    private final ForkJoinPool pool;
+
+    /**
+     * The size, in bytes, of each point in a binary point file.
+     */
+    public static final int BINARY_RECORD_SIZE = 24;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Leaves room for the largest array the JVM is willing to allocate
+    private static final int MAX_POINTS = (Integer.MAX_VALUE - 8) / 3;
+
+    // Numeric fields longer than this are almost certainly not numbers
+    private static final int MAX_FIELD_LENGTH = 64;
+
+    // The largest number of significant digits that always fit exactly in a double's 53-bit mantissa
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /**
+     * Constructs a new loader that reads CSV files with each point's latitude, longitude, and identifier (in that
+     * order) in the first three columns and no header, and builds indices sequentially with the default node
+     * capacity.
+     */
+    public GeospatialPointLoader() {
+        this(0, 1, 2, 0);
+    }
+
+    /**
+     * Constructs a new loader that reads CSV files with the given layout and builds indices sequentially with the
+     * default node capacity.
+     *
+     * @param latitudeColumn the zero-based index of the column that contains each point's latitude
+     * @param longitudeColumn the zero-based index of the column that contains each point's longitude
+     * @param idColumn the zero-based index of the column that contains each point's identifier
+     * @param headerLines the number of lines to skip at the start of each CSV file
+     */
+    public GeospatialPointLoader(final int latitudeColumn, final int longitudeColumn, final int idColumn, final int headerLines) {
+        this(latitudeColumn, longitudeColumn, idColumn, headerLines, VPTreeGeospatialIndex.DEFAULT_NODE_CAPACITY, null);
+    }
+
+    /**
+     * Constructs a new loader that reads CSV files with the given layout and builds indices with the given node
+     * capacity, dividing the work of building each tree among the threads of the given pool.
+     *
+     * @param latitudeColumn the zero-based index of the column that contains each point's latitude
+     * @param longitudeColumn the zero-based index of the column that contains each point's longitude
+     * @param idColumn the zero-based index of the column that contains each point's identifier
+     * @param headerLines the number of lines to skip at the start of each CSV file
+     * @param nodeCapacity the maximum number of points to store in a leaf node of each tree
+     * @param pool the pool in which to build each tree, or {@code null} to build trees sequentially
+     */
+    public GeospatialPointLoader(final int latitudeColumn, final int longitudeColumn, final int idColumn, final int headerLines, final int nodeCapacity, final ForkJoinPool pool) {
+        this(latitudeColumn, longitudeColumn, idColumn, headerLines, new TreeParameters(nodeCapacity), pool);
+    }
+
+    /**
+     * Constructs a new loader that reads CSV files with the given layout and builds indices whose trees have the
+     * given shape, dividing the work of building each tree among the threads of the given pool.
+     *
+     * @param latitudeColumn the zero-based index of the column that contains each point's latitude
+     * @param longitudeColumn the zero-based index of the column that contains each point's longitude
+     * @param idColumn the zero-based index of the column that contains each point's identifier
+     * @param headerLines the number of lines to skip at the start of each CSV file
+     * @param parameters the parameters that control the shape of each tree
+     * @param pool the pool in which to build each tree, or {@code null} to build trees sequentially
+     */
+    public GeospatialPointLoader(final int latitudeColumn, final int longitudeColumn, final int idColumn, final int headerLines, final TreeParameters parameters, final ForkJoinPool pool) {
+        if (latitudeColumn < 0 || longitudeColumn < 0 || idColumn < 0) {
+            throw new IllegalArgumentException("Column indices must not be negative.");
+        }
+
+        if (latitudeColumn == longitudeColumn || latitudeColumn == idColumn || longitudeColumn == idColumn) {
+            throw new IllegalArgumentException("Latitude, longitude, and identifier columns must all be different.");
+        }
+
+        if (headerLines < 0) {
+            throw new IllegalArgumentException("Number of header lines must not be negative.");
+        }
+
+        if (parameters == null) {
+            throw new NullPointerException("Parameters must not be null.");
+        }
+
+        this.latitudeColumn = latitudeColumn;
+        this.longitudeColumn = longitudeColumn;
+        this.idColumn = idColumn;
+        this.headerLines = headerLines;
+        this.parameters = parameters;
+        this.pool = pool;
+    }
+
+    /**
+     * Builds an index from the points in the CSV file at the given path.
+     *
+     * @param path the path of the file to read
+     *
+     * @return an index that contains a handle for each point in the file
+     *
+     * @throws IOException if the file could not be read or contains a malformed line
+     */
+    public VPTreeGeospatialIndex<IdentifiedGeospatialPoint> loadCsv(final Path path) throws IOException {
+        try (final ReadableByteChannel channel = Files.newByteChannel(path)) {
+            return this.loadCsv(channel);
+        }
+    }
+
+    /**
+     * Builds an index from the CSV points read from the given channel. The channel is read until it's exhausted, but
+     * is not closed.
+     *
+     * @param channel the channel from which to read points
+     *
+     * @return an index that contains a handle for each point read from the channel
+     *
+     * @throws IOException if the channel could not be read or contains a malformed line
+     */
+    public VPTreeGeospatialIndex<IdentifiedGeospatialPoint> loadCsv(final ReadableByteChannel channel) throws IOException {
+        final PointBuffer points = new PointBuffer(INITIAL_CAPACITY);
+        new CsvParser(points).parse(channel);
+
+        return this.buildIndex(points);
+    }
+
+    /**
+     * Builds an index from the points in the binary point file at the given path.
+     *
+     * @param path the path of the file to read
+     *
+     * @return an index that contains a handle for each point in the file
+     *
+     * @throws IOException if the file could not be read or is not a valid binary point file
+     */
+    public VPTreeGeospatialIndex<IdentifiedGeospatialPoint> loadBinary(final Path path) throws IOException {
+        try (final SeekableByteChannel channel = Files.newByteChannel(path)) {
+            final long size = channel.size();
+
+            if (size % BINARY_RECORD_SIZE != 0) {
+                throw new IOException("Expected file size to be a multiple of " + BINARY_RECORD_SIZE +
+                        " bytes, but found " + size + " bytes.");
+            }
+
+            if (size / BINARY_RECORD_SIZE > MAX_POINTS) {
+                throw new IOException("File contains more than " + MAX_POINTS + " points.");
+            }
+
+            // Since we know exactly how many points to expect, we can avoid growing (and over-allocating) arrays
+            return this.loadBinary(channel, (int) (size / BINARY_RECORD_SIZE));
+        }
+    }
+
+    /**
+     * Builds an index from the binary points read from the given channel. The channel is read until it's exhausted,
+     * but is not closed.
+     *
+     * @param channel the channel from which to read points
+     *
+     * @return an index that contains a handle for each point read from the channel
+     *
+     * @throws IOException if the channel could not be read or does not contain a whole number of valid points
+     */
+    public VPTreeGeospatialIndex<IdentifiedGeospatialPoint> loadBinary(final ReadableByteChannel channel) throws IOException {
+        return this.loadBinary(channel, INITIAL_CAPACITY);
+    }
+
+    private VPTreeGeospatialIndex<IdentifiedGeospatialPoint> loadBinary(final ReadableByteChannel channel, final int expectedPoints) throws IOException {
+        final PointBuffer points = new PointBuffer(Math.max(1, expectedPoints));
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+
+            while (buffer.remaining() >= BINARY_RECORD_SIZE) {
+                final long id = buffer.getLong();
+                final double latitude = buffer.getDouble();
+                final double longitude = buffer.getDouble();
+
+                if (!isValidPoint(latitude, longitude)) {
+                    throw new IOException("Point " + points.size + " has invalid coordinates (" + latitude + ", " +
+                            longitude + ").");
+                }
+
+                points.add(id, latitude, longitude);
+            }
+
+            // Keep any partial record at the start of the buffer until the rest of it arrives
+            buffer.compact();
+        }
+
+        if (buffer.position() > 0) {
+            throw new EOFException("Input ended in the middle of a point.");
+        }
+
+        return this.buildIndex(points);
+    }
+
+    private VPTreeGeospatialIndex<IdentifiedGeospatialPoint> buildIndex(final PointBuffer points) {
+        if (points.size == 0) {
+            return new VPTreeGeospatialIndex<IdentifiedGeospatialPoint>(this.parameters);
+        }
+
+        final VPTreeNode<IdentifiedGeospatialPoint> rootNode = this.pool != null ?
+                VPTreeNode.<IdentifiedGeospatialPoint>build(points.points, points.vectors, points.size, this.parameters, this.pool) :
+                VPTreeNode.<IdentifiedGeospatialPoint>build(points.points, points.vectors, 0, points.size, this.parameters);
+
+        return new VPTreeGeospatialIndex<IdentifiedGeospatialPoint>(this.parameters, rootNode);
+    }
+
+    /**
+     * Writes the given points to a binary point file that can later be read with {@link #loadBinary(Path)}. Any
+     * existing file at the given path is replaced.
+     *
+     * @param points the points to write
+     * @param path the path of the file to write
+     *
+     * @throws IOException if the file could not be written for any reason
+     */
+    public static void writeBinary(final Iterable<? extends IdentifiedGeospatialPoint> points, final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            writeBinary(points, channel);
+        }
+    }
+
+    /**
+     * Writes the given points to the given channel in the binary point format. The channel is not closed.
+     *
+     * @param points the points to write
+     * @param channel the channel to which to write points
+     *
+     * @throws IOException if the points could not be written for any reason
+     */
+    public static void writeBinary(final Iterable<? extends IdentifiedGeospatialPoint> points, final WritableByteChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (final IdentifiedGeospatialPoint point : points) {
+            if (buffer.remaining() < BINARY_RECORD_SIZE) {
+                flush(buffer, channel);
+            }
+
+            buffer.putLong(point.getId());
+            buffer.putDouble(point.getLatitude());
+            buffer.putDouble(point.getLongitude());
+        }
+
+        flush(buffer, channel);
+    }
+
+    private static void flush(final ByteBuffer buffer, final WritableByteChannel channel) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    private static boolean isValidPoint(final double latitude, final double longitude) {
+        // Written so that NaN fails both checks
+        return latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180;
+    }
+
+    /**
+     * Parses a decimal number from the given range of ASCII bytes, ignoring leading and trailing whitespace. Numbers
+     * with few enough significant digits (and small enough exponents) are converted with a single, exactly-rounded
+     * floating point operation; all others are handed to {@link Double#parseDouble(String)}.
+     *
+     * @throws NumberFormatException if the given bytes do not contain a number
+     */
+    static double parseDouble(final byte[] bytes, final int offset, final int length) {
+        int start = offset;
+        int end = offset + length;
+
+        while (start < end && isWhitespace(bytes[start])) {
+            start++;
+        }
+
+        while (end > start && isWhitespace(bytes[end - 1])) {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int scale = 0;
+        boolean sawDigit = false;
+        boolean sawPoint = false;
+
+        for (; i < end; i++) {
+            final byte b = bytes[i];
+
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+
+                if (sawPoint) {
+                    scale--;
+                }
+
+                // Leading zeroes aren't significant
+                if (mantissa != 0 || b != '0') {
+                    if (++significantDigits > MAX_EXACT_DIGITS) {
+                        return parseDoubleSlowly(bytes, start, end);
+                    }
+
+                    mantissa = (mantissa * 10) + (b - '0');
+                }
+            } else if (b == '.' && !sawPoint) {
+                sawPoint = true;
+            } else if ((b == 'e' || b == 'E') && sawDigit) {
+                final int exponent = parseExponent(bytes, i + 1, end);
+
+                if (exponent == Integer.MIN_VALUE) {
+                    return parseDoubleSlowly(bytes, start, end);
+                }
+
+                scale += exponent;
+                break;
+            } else {
+                return parseDoubleSlowly(bytes, start, end);
+            }
+        }
+
+        if (!sawDigit) {
+            return parseDoubleSlowly(bytes, start, end);
+        }
+
+        final double value;
+
+        if (mantissa == 0) {
+            value = 0;
+        } else if (scale >= 0 && scale < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[scale];
+        } else if (scale < 0 && -scale < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-scale];
+        } else {
+            return parseDoubleSlowly(bytes, start, end);
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a short exponent from the given range of bytes.
+     *
+     * @return the exponent, or {@link Integer#MIN_VALUE} if the bytes don't contain a short, well-formed exponent
+     */
+    private static int parseExponent(final byte[] bytes, final int start, final int end) {
+        int i = start;
+        boolean negative = false;
+
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        if (i == end || end - i > 3) {
+            return Integer.MIN_VALUE;
+        }
+
+        int exponent = 0;
+
+        for (; i < end; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return Integer.MIN_VALUE;
+            }
+
+            exponent = (exponent * 10) + (bytes[i] - '0');
+        }
+
+        return negative ? -exponent : exponent;
+    }
+
+    private static double parseDoubleSlowly(final byte[] bytes, final int start, final int end) {
+        return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Parses a decimal integer from the given range of ASCII bytes, ignoring leading and trailing whitespace.
+     *
+     * @throws NumberFormatException if the given bytes do not contain an integer that fits in a {@code long}
+     */
+    static long parseLong(final byte[] bytes, final int offset, final int length) {
+        int start = offset;
+        int end = offset + length;
+
+        while (start < end && isWhitespace(bytes[start])) {
+            start++;
+        }
+
+        while (end > start && isWhitespace(bytes[end - 1])) {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        // Eighteen digits can never overflow; leave longer (or malformed) values to the standard parser
+        if (i == end || end - i > 18) {
+            return Long.parseLong(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+        }
+
+        long value = 0;
+
+        for (; i < end; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return Long.parseLong(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+            }
+
+            value = (value * 10) + (bytes[i] - '0');
+        }
+
+        return negative ? -value : value;
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * A growable pair of arrays that hold point handles and their unit vectors.
+     */
+    private static class PointBuffer {
+        private Object[] points;
+        private double[] vectors;
+        private int size;
+
+        private PointBuffer(final int capacity) {
+            this.points = new Object[capacity];
+            this.vectors = new double[3 * capacity];
+        }
+
+        private void add(final long id, final double latitude, final double longitude) throws IOException {
+            if (this.size == this.points.length) {
+                if (this.size == MAX_POINTS) {
+                    throw new IOException("Input contains more than " + MAX_POINTS + " points.");
+                }
+
+                final int capacity = (int) Math.min(MAX_POINTS, this.size + (this.size >> 1) + 1L);
+
+                this.points = Arrays.copyOf(this.points, capacity);
+                this.vectors = Arrays.copyOf(this.vectors, 3 * capacity);
+            }
+
+            this.points[this.size] = new GeospatialPointHandle(id, latitude, longitude);
+            UnitVectors.setUnitVector(latitude, longitude, this.vectors, this.size);
+
+            this.size++;
+        }
+    }
+
+    /**
+     * Splits CSV input into fields byte by byte, so lines may span any number of reads from the input channel. Only
+     * the bytes of the latitude, longitude, and identifier fields of each line are retained, and only until the end
+     * of each field.
+     */
+    private class CsvParser {
+        private final PointBuffer points;
+
+        private final byte[] field = new byte[MAX_FIELD_LENGTH];
+        private int fieldLength;
+
+        private int column;
+        private boolean capturing;
+        private boolean quoted;
+        private boolean afterClosingQuote;
+        private boolean lineIsBlank = true;
+
+        // Records end at unquoted line breaks; line numbers (for error messages) count every line break
+        private long record;
+        private long line = 1;
+
+        private double latitude;
+        private double longitude;
+        private long id;
+        private int columnsFound;
+
+        private CsvParser(final PointBuffer points) {
+            this.points = points;
+            this.capturing = this.isCapturedColumn(0);
+        }
+
+        private void parse(final ReadableByteChannel channel) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            final byte[] bytes = buffer.array();
+
+            while (channel.read(buffer) >= 0) {
+                for (int i = 0, end = buffer.position(); i < end; i++) {
+                    this.consume(bytes[i]);
+                }
+
+                buffer.clear();
+            }
+
+            if (this.quoted) {
+                throw new EOFException("Line " + this.line + ": input ended in the middle of a quoted field.");
+            }
+
+            if (!this.lineIsBlank) {
+                this.endRecord();
+            }
+        }
+
+        private void consume(final byte b) throws IOException {
+            if (this.quoted) {
+                if (b == '"') {
+                    this.quoted = false;
+                    this.afterClosingQuote = true;
+                } else {
+                    if (b == '\n') {
+                        this.line++;
+                    }
+
+                    this.append(b);
+                }
+
+                return;
+            }
+
+            switch (b) {
+                case ',': {
+                    this.endField();
+                    this.column++;
+                    this.capturing = this.isCapturedColumn(this.column);
+                    this.lineIsBlank = false;
+                    break;
+                }
+
+                case '\n': {
+                    if (!this.lineIsBlank) {
+                        this.endRecord();
+                    }
+
+                    this.record++;
+                    this.line++;
+                    this.column = 0;
+                    this.capturing = this.isCapturedColumn(0);
+                    this.lineIsBlank = true;
+                    break;
+                }
+
+                case '\r': {
+                    break;
+                }
+
+                case '"': {
+                    // A doubled quote inside a quoted field stands for a literal quote
+                    if (this.afterClosingQuote) {
+                        this.append(b);
+                    }
+
+                    this.quoted = true;
+                    this.lineIsBlank = false;
+                    break;
+                }
+
+                default: {
+                    this.append(b);
+                    this.lineIsBlank = false;
+                    break;
+                }
+            }
+
+            this.afterClosingQuote = false;
+        }
+
+        private boolean isCapturedColumn(final int column) {
+            return this.record >= GeospatialPointLoader.this.headerLines &&
+                    (column == GeospatialPointLoader.this.latitudeColumn ||
+                    column == GeospatialPointLoader.this.longitudeColumn ||
+                    column == GeospatialPointLoader.this.idColumn);
+        }
+
+        private void append(final byte b) throws IOException {
+            if (this.capturing) {
+                if (this.fieldLength == MAX_FIELD_LENGTH) {
+                    throw new IOException("Line " + this.line + ": field in column " + this.column + " is too long.");
+                }
+
+                this.field[this.fieldLength++] = b;
+            }
+        }
+
+        private void endField() throws IOException {
+            if (this.capturing) {
+                try {
+                    if (this.column == GeospatialPointLoader.this.latitudeColumn) {
+                        this.latitude = parseDouble(this.field, 0, this.fieldLength);
+                    } else if (this.column == GeospatialPointLoader.this.longitudeColumn) {
+                        this.longitude = parseDouble(this.field, 0, this.fieldLength);
+                    } else {
+                        this.id = parseLong(this.field, 0, this.fieldLength);
+                    }
+                } catch (final NumberFormatException e) {
+                    throw new IOException("Line " + this.line + ": could not parse \"" +
+                            new String(this.field, 0, this.fieldLength, StandardCharsets.US_ASCII) + "\" in column " +
+                            this.column + ".", e);
+                }
+
+                this.columnsFound++;
+            }
+
+            this.fieldLength = 0;
+        }
+
+        private void endRecord() throws IOException {
+            this.endField();
+
+            if (this.record >= GeospatialPointLoader.this.headerLines) {
+                if (this.columnsFound != 3) {
+                    throw new IOException("Line " + this.line + ": expected latitude, longitude, and identifier in columns " +
+                            GeospatialPointLoader.this.latitudeColumn + ", " + GeospatialPointLoader.this.longitudeColumn +
+                            ", and " + GeospatialPointLoader.this.idColumn + ".");
+                }
+
+                if (!isValidPoint(this.latitude, this.longitude)) {
+                    throw new IOException("Line " + this.line + ": invalid coordinates (" + this.latitude + ", " +
+                            this.longitude + ").");
+                }
+
+                this.points.add(this.id, this.latitude, this.longitude);
+            }
+
+            this.columnsFound = 0;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * <p>Divides the earth's surface into a grid of cells of roughly equal size. The grid is made of latitude "bands" of
+ * equal height, and each band is divided into as many cells as will fit given the circumference of the earth at the
+ * band's latitude, so cells stay roughly square from the equator to the poles.</p>
+ *
+ * <p>Each cell is identified by a key that contains its band (in the upper 32 bits) and its column within that band
+ * (in the lower 32 bits). Columns are numbered eastward from the antimeridian.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class GridCells {
+
+    private final double bandHeight;
+    private final int[] columnCounts;
+
+    /**
+     * Constructs a new grid with cells of approximately the given size.
+     *
+     * @param cellSize the approximate length of the sides of each cell, in meters
+     *
+     * @throws IllegalArgumentException if the given cell size is not positive
+     */
+    GridCells(final double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive.");
+        }
+
+        final int bandCount = (int) Math.ceil(180 / Math.toDegrees(Math.min(Math.PI, cellSize / HaversineDistanceFunction.EARTH_RADIUS)));
+
+        this.bandHeight = 180.0 / bandCount;
+        this.columnCounts = new int[bandCount];
+
+        for (int band = 0; band < bandCount; band++) {
+            final double latitude = -90 + (band + 0.5) * this.bandHeight;
+            this.columnCounts[band] = Math.max(1, (int) (360 * Math.cos(Math.toRadians(latitude)) / this.bandHeight));
+        }
+    }
+
+    /**
+     * Returns the band that contains the given latitude. Latitudes outside of the range -90 to +90 degrees are clamped
+     * to the nearest band.
+     *
+     * @param latitude the latitude for which to find a band, in degrees
+     *
+     * @return the band that contains the given latitude
+     */
+    int getBand(final double latitude) {
+        return Math.max(0, Math.min(this.columnCounts.length - 1, (int) Math.floor((latitude + 90) / this.bandHeight)));
+    }
+
+    /**
+     * Returns the number of columns in the given band.
+     *
+     * @param band the band for which to count columns
+     *
+     * @return the number of columns in the given band
+     */
+    int getColumnCount(final int band) {
+        return this.columnCounts[band];
+    }
+
+    /**
+     * Returns the key of the cell that contains the given coordinates.
+     *
+     * @param latitude the latitude of the coordinates, in degrees
+     * @param longitude the longitude of the coordinates, in degrees
+     *
+     * @return the key of the cell that contains the given coordinates
+     */
+    long getKey(final double latitude, final double longitude) {
+        final int band = this.getBand(latitude);
+        final int columnCount = this.columnCounts[band];
+
+        return getKey(band, floorMod((int) Math.floor((BoundingBox.normalizeLongitude(longitude) + 180) / 360 * columnCount), columnCount));
+    }
+
+    static long getKey(final int band, final int column) {
+        return ((long) band << 32) | column;
+    }
+
+    static int getBand(final long key) {
+        return (int) (key >>> 32);
+    }
+
+    static int getColumn(final long key) {
+        return (int) key;
+    }
+
+    /**
+     * Returns a bounding box whose limits are the limits of the cell with the given key.
+     *
+     * @param key the key of the cell
+     *
+     * @return a bounding box with the same limits as the given cell
+     */
+    BoundingBox getBoundingBox(final long key) {
+        final int band = getBand(key);
+        final double columnWidth = 360.0 / this.columnCounts[band];
+        final double west = -180 + getColumn(key) * columnWidth;
+
+        return new BoundingBox(-90 + band * this.bandHeight, west,
+                Math.min(90, -90 + (band + 1) * this.bandHeight), west + columnWidth);
+    }
+
+    /**
+     * Returns the point at the center of the cell with the given key.
+     *
+     * @param key the key of the cell
+     *
+     * @return the point at the center of the given cell
+     */
+    GeospatialPoint getCenter(final long key) {
+        final int band = getBand(key);
+
+        return new GeospatialPointHandle(key, Math.min(90, -90 + (band + 0.5) * this.bandHeight),
+                -180 + (getColumn(key) + 0.5) * (360.0 / this.columnCounts[band]));
+    }
+
+    static int floorMod(final int x, final int y) {
+        final int mod = x % y;
+        return mod < 0 ? mod + y : mod;
+    }
+}
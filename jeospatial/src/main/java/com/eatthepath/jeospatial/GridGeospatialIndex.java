@@ -0,0 +1,574 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>A geospatial index that divides the earth's surface into a grid of cells of roughly equal size and stores each
+ * point in the cell that contains it. The grid is made of latitude "bands" of equal height, and each band is divided
+ * into as many cells as will fit given the circumference of the earth at the band's latitude, so cells stay roughly
+ * square from the equator to the poles.</p>
+ *
+ * <p>Searches visit only the cells that could contain matching points, and so, for dense data and search radii
+ * comparable to the grid's cell size, do much less work than a search of a tree. Nearest-neighbor searches visit
+ * cells in rings of increasing radius until they've found enough points. Searches that would visit more cells than are
+ * occupied instead check each occupied cell, so large search radii and sparse data degrade gracefully to a linear
+ * scan.</p>
+ *
+ * <p>Cells are created as points are added to them. Cells are not destroyed when their last point is removed (except
+ * when the index is cleared), so an index that sees many points come and go over a wide area will accumulate empty
+ * cells.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class GridGeospatialIndex<E extends GeospatialPoint> extends AbstractGeospatialIndex<E> {
+
+    private final double cellSize;
+
+    private final GridCells grid;
+
+    // Cells are stored in an open-addressing hash table keyed by band (upper 32 bits) and column (lower 32 bits)
+    private long[] cellKeys;
+    private Cell[] cells;
+    private int cellCount;
+
+    private int size;
+
+    /**
+     * The default length of the sides of a grid cell, in meters.
+     */
+    public static final double DEFAULT_CELL_SIZE = 1000;
+
+    private static final int INITIAL_TABLE_CAPACITY = 64;
+    private static final int INITIAL_CELL_CAPACITY = 4;
+
+    // Search regions are padded by a tiny amount to absorb rounding errors at cell boundaries
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * The points in a single cell of the grid and their cached unit vectors.
+     */
+    private static class Cell {
+        private Object[] points = new Object[INITIAL_CELL_CAPACITY];
+        private double[] vectors = new double[3 * INITIAL_CELL_CAPACITY];
+        private int size;
+
+        private void add(final GeospatialPoint point) {
+            if (this.size == this.points.length) {
+                this.points = Arrays.copyOf(this.points, this.size * 2);
+                this.vectors = Arrays.copyOf(this.vectors, this.vectors.length * 2);
+            }
+
+            this.points[this.size] = point;
+            UnitVectors.setUnitVector(point.getLatitude(), point.getLongitude(), this.vectors, this.size);
+            this.size++;
+        }
+
+        private int indexOf(final Object o) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.points[i].equals(o)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        private void remove(final int index) {
+            final int last = --this.size;
+
+            this.points[index] = this.points[last];
+            System.arraycopy(this.vectors, 3 * last, this.vectors, 3 * index, 3);
+
+            this.points[last] = null;
+        }
+    }
+
+    public GridGeospatialIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public GridGeospatialIndex(final Collection<E> points) {
+        this(DEFAULT_CELL_SIZE, points);
+    }
+
+    public GridGeospatialIndex(final double cellSize) {
+        this.grid = new GridCells(cellSize);
+        this.cellSize = cellSize;
+
+        this.clear();
+    }
+
+    public GridGeospatialIndex(final double cellSize, final Collection<E> points) {
+        this(cellSize);
+        this.addAll(points);
+    }
+
+    /**
+     * Returns the approximate length of the sides of this index's grid cells.
+     *
+     * @return the approximate length of the sides of this index's grid cells, in meters
+     */
+    public double getCellSize() {
+        return this.cellSize;
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults) {
+        return this.getNearestNeighbors(queryPoint, maxResults, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults, final PointFilter<? super E> filter) {
+        if (this.size == 0 || maxResults < 1) {
+            return new ArrayList<>();
+        }
+
+        final double[] queryVector = UnitVectors.getUnitVector(queryPoint);
+        final NearestNeighborCollector<E> collector = new NearestNeighborCollector<>(Math.min(maxResults, this.size));
+        final List<Cell> cells = new ArrayList<>();
+
+        // Search rings of increasing radius until every point that hasn't been checked yet must be farther away than
+        // the farthest neighbor found so far
+        for (double innerRadius = -1, radius = this.cellSize; ; innerRadius = radius, radius *= 2) {
+            cells.clear();
+
+            final boolean searchedAllCells = this.collectCells(queryPoint.getLatitude(), queryPoint.getLongitude(),
+                    radius, innerRadius, cells);
+
+            for (final Cell cell : cells) {
+                for (int i = 0; i < cell.size; i++) {
+                    final double chordLength = UnitVectors.getChordLength(queryVector, cell.vectors, i);
+
+                    if (chordLength < collector.getFarthestChordLength() && (filter == null || filter.allowPoint((E) cell.points[i]))) {
+                        collector.offerPoint((E) cell.points[i], chordLength);
+                    }
+                }
+            }
+
+            if (searchedAllCells || collector.getFarthestChordLength() <= UnitVectors.toChordLength(radius)) {
+                break;
+            }
+        }
+
+        return collector.toSortedList();
+    }
+
+    public Iterator<E> getNearestNeighborIterator(final GeospatialPoint queryPoint) {
+        final double latitude = queryPoint.getLatitude();
+        final double longitude = queryPoint.getLongitude();
+        final List<Cell> cells = new ArrayList<>();
+
+        // Nodes are rings of cells around the query point; node n covers cells within (cellSize * 2^n) meters that
+        // aren't within (cellSize * 2^(n - 1)) meters
+        final NearestNeighborIterator<E> iterator = new NearestNeighborIterator<E>(UnitVectors.getUnitVector(queryPoint)) {
+
+            @Override
+            void expand(final Object object, final int ring, final double minChordLength) {
+                final double radius = GridGeospatialIndex.this.cellSize * Math.pow(2, ring);
+
+                cells.clear();
+
+                final boolean searchedAllCells = GridGeospatialIndex.this.collectCells(latitude, longitude, radius,
+                        ring == 0 ? -1 : radius / 2, cells);
+
+                for (final Cell cell : cells) {
+                    for (int i = 0; i < cell.size; i++) {
+                        this.addPoint(cell, i, UnitVectors.getChordLength(this.queryVector, cell.vectors, i));
+                    }
+                }
+
+                if (!searchedAllCells) {
+                    this.addNode(null, ring + 1, UnitVectors.toChordLength(radius));
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            E getPoint(final Object object, final int position) {
+                return (E) ((Cell) object).points[position];
+            }
+        };
+
+        if (this.size > 0) {
+            iterator.addNode(null, 0, 0);
+        }
+
+        return iterator;
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance) {
+        return this.getAllWithinDistance(queryPoint, maxDistance, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance, final PointFilter<? super E> filter) {
+        final List<E> points = new ArrayList<>();
+
+        if (this.size == 0) {
+            return points;
+        }
+
+        final double[] queryVector = UnitVectors.getUnitVector(queryPoint);
+        final double maxChordLength = UnitVectors.toChordLength(maxDistance);
+        final List<Cell> cells = new ArrayList<>();
+
+        this.collectCells(queryPoint.getLatitude(), queryPoint.getLongitude(), maxDistance, -1, cells);
+
+        for (final Cell cell : cells) {
+            for (int i = 0; i < cell.size; i++) {
+                if (UnitVectors.getChordLength(queryVector, cell.vectors, i) <= maxChordLength &&
+                        (filter == null || filter.allowPoint((E) cell.points[i]))) {
+
+                    points.add((E) cell.points[i]);
+                }
+            }
+        }
+
+        return points;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<E> getAllPointsInBoundingBox(final double south, final double west, final double north, final double east) {
+        final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+        final List<E> points = new ArrayList<>();
+
+        if (this.size == 0) {
+            return points;
+        }
+
+        final List<Cell> cells = new ArrayList<>();
+
+        if (this.countCellsInBoundingBox(south, west, north, east) > this.cellCount) {
+            this.collectAllCells(cells);
+        } else {
+            // Make sure the eastern limit is east of the western limit, even if the box crosses the antimeridian
+            final double normalizedWest = BoundingBox.normalizeLongitude(west);
+            final double normalizedEast = east - west >= 360 ? normalizedWest + 360 :
+                    normalizedWest + (BoundingBox.normalizeLongitude(east) - normalizedWest + 360) % 360;
+
+            for (int band = this.grid.getBand(south), lastBand = this.grid.getBand(north); band <= lastBand; band++) {
+                this.collectCells(band, normalizedWest, normalizedEast, -1, 0, 0, cells);
+            }
+        }
+
+        for (final Cell cell : cells) {
+            for (int i = 0; i < cell.size; i++) {
+                if (boundingBox.contains((E) cell.points[i])) {
+                    points.add((E) cell.points[i]);
+                }
+            }
+        }
+
+        return points;
+    }
+
+    /**
+     * Adds the non-empty cells that could contain points within the given distance of the given coordinates to the
+     * given list, skipping cells that could contain points within the given "inner" distance (which have presumably
+     * been visited already).
+     *
+     * @param latitude the latitude of the center of the search region
+     * @param longitude the longitude of the center of the search region
+     * @param distance the radius of the search region, in meters
+     * @param innerDistance the radius of the region to skip, in meters, or a negative number to skip no cells
+     * @param cells the list to which to add cells
+     *
+     * @return {@code true} if every cell in the index has now been visited or {@code false} otherwise
+     */
+    private boolean collectCells(final double latitude, final double longitude, final double distance, final double innerDistance, final List<Cell> cells) {
+        final double angle = distance / HaversineDistanceFunction.EARTH_RADIUS;
+        final double innerAngle = innerDistance / HaversineDistanceFunction.EARTH_RADIUS;
+
+        if (angle >= Math.PI || this.countCellsInRange(latitude, longitude, angle) > this.cellCount) {
+            for (int slot = 0; slot < this.cells.length; slot++) {
+                if (this.cells[slot] != null && this.cells[slot].size > 0 &&
+                        !this.isCellInRange(this.cellKeys[slot], latitude, longitude, innerAngle)) {
+
+                    cells.add(this.cells[slot]);
+                }
+            }
+
+            return true;
+        }
+
+        final double latitudeExtent = Math.toDegrees(angle) + EPSILON;
+        final double longitudeExtent = getLongitudeExtent(latitude, angle);
+
+        for (int band = this.grid.getBand(latitude - latitudeExtent), lastBand = this.grid.getBand(latitude + latitudeExtent); band <= lastBand; band++) {
+            this.collectCells(band, longitude - longitudeExtent, longitude + longitudeExtent, innerAngle, latitude, longitude, cells);
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds the non-empty cells in the given band between the given western and eastern limits to the given list,
+     * skipping cells within the given angular distance of the given coordinates.
+     */
+    private void collectCells(final int band, final double west, final double east, final double innerAngle, final double latitude, final double longitude, final List<Cell> cells) {
+        final int columnCount = this.grid.getColumnCount(band);
+        final int firstColumn = getFirstColumn(west, east, columnCount);
+        final int lastColumn = getLastColumn(west, east, columnCount);
+
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            final long key = GridCells.getKey(band, GridCells.floorMod(column, columnCount));
+            final Cell cell = this.getCell(key);
+
+            if (cell != null && cell.size > 0 && !this.isCellInRange(key, latitude, longitude, innerAngle)) {
+                cells.add(cell);
+            }
+        }
+    }
+
+    private void collectAllCells(final List<Cell> cells) {
+        for (final Cell cell : this.cells) {
+            if (cell != null && cell.size > 0) {
+                cells.add(cell);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the cell with the given key would be visited by a search for points within the given angular
+     * distance of the given coordinates.
+     */
+    private boolean isCellInRange(final long key, final double latitude, final double longitude, final double angle) {
+        if (angle < 0) {
+            return false;
+        }
+
+        final int band = GridCells.getBand(key);
+        final double latitudeExtent = Math.toDegrees(angle) + EPSILON;
+
+        if (band < this.grid.getBand(latitude - latitudeExtent) || band > this.grid.getBand(latitude + latitudeExtent)) {
+            return false;
+        }
+
+        final double longitudeExtent = getLongitudeExtent(latitude, angle);
+        final int columnCount = this.grid.getColumnCount(band);
+        final int firstColumn = getFirstColumn(longitude - longitudeExtent, longitude + longitudeExtent, columnCount);
+        final int lastColumn = getLastColumn(longitude - longitudeExtent, longitude + longitudeExtent, columnCount);
+
+        return GridCells.floorMod(GridCells.getColumn(key) - firstColumn, columnCount) <= lastColumn - firstColumn;
+    }
+
+    /**
+     * Counts the cells (occupied or not) that a search for points within the given angular distance of the given
+     * coordinates would visit, stopping early if the count exceeds the number of occupied cells.
+     */
+    private long countCellsInRange(final double latitude, final double longitude, final double angle) {
+        final double latitudeExtent = Math.toDegrees(angle) + EPSILON;
+        final double longitudeExtent = getLongitudeExtent(latitude, angle);
+
+        long count = 0;
+
+        for (int band = this.grid.getBand(latitude - latitudeExtent), lastBand = this.grid.getBand(latitude + latitudeExtent); band <= lastBand && count <= this.cellCount; band++) {
+            final int columnCount = this.grid.getColumnCount(band);
+
+            count += getLastColumn(longitude - longitudeExtent, longitude + longitudeExtent, columnCount) -
+                    getFirstColumn(longitude - longitudeExtent, longitude + longitudeExtent, columnCount) + 1;
+        }
+
+        return count;
+    }
+
+    private long countCellsInBoundingBox(final double south, final double west, final double north, final double east) {
+        final int firstBand = this.grid.getBand(south);
+        final int lastBand = this.grid.getBand(north);
+
+        if (east - west >= 360) {
+            long count = 0;
+
+            for (int band = firstBand; band <= lastBand; band++) {
+                count += this.grid.getColumnCount(band);
+            }
+
+            return count;
+        }
+
+        final double normalizedWest = BoundingBox.normalizeLongitude(west);
+        final double width = (BoundingBox.normalizeLongitude(east) - normalizedWest + 360) % 360;
+
+        long count = 0;
+
+        for (int band = firstBand; band <= lastBand && count <= this.cellCount; band++) {
+            // Round up to account for partial cells at either end of the range
+            count += Math.min(this.grid.getColumnCount(band), (long) Math.ceil(width / 360 * this.grid.getColumnCount(band)) + 1);
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the greatest difference in longitude between the given latitude and any point within the given angular
+     * distance of the given latitude, or 180 degrees if the search region contains a pole.
+     */
+    private static double getLongitudeExtent(final double latitude, final double angle) {
+        final double latitudeRadians = Math.toRadians(latitude);
+
+        if (angle >= Math.PI / 2 - Math.abs(latitudeRadians)) {
+            return 180;
+        }
+
+        return Math.toDegrees(Math.asin(Math.sin(angle) / Math.cos(latitudeRadians))) + EPSILON;
+    }
+
+    private static boolean spansAllColumns(final double west, final double east, final int columnCount) {
+        return east - west >= 360 ||
+                Math.floor((east + 180) / 360 * columnCount) - Math.floor((west + 180) / 360 * columnCount) + 1 >= columnCount;
+    }
+
+    // Columns returned by the following methods may fall outside of the range [0, columnCount) if the range of columns
+    // crosses the antimeridian; callers should normalize them with floorMod
+
+    private static int getFirstColumn(final double west, final double east, final int columnCount) {
+        return spansAllColumns(west, east, columnCount) ? 0 : (int) Math.floor((west + 180) / 360 * columnCount);
+    }
+
+    private static int getLastColumn(final double west, final double east, final int columnCount) {
+        return spansAllColumns(west, east, columnCount) ?
+                columnCount - 1 : (int) Math.floor((east + 180) / 360 * columnCount);
+    }
+
+    private long getKey(final GeospatialPoint point) {
+        return this.grid.getKey(point.getLatitude(), point.getLongitude());
+    }
+
+    private int getSlot(final long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & (this.cells.length - 1);
+
+        while (this.cells[slot] != null && this.cellKeys[slot] != key) {
+            slot = (slot + 1) & (this.cells.length - 1);
+        }
+
+        return slot;
+    }
+
+    private Cell getCell(final long key) {
+        return this.cells[this.getSlot(key)];
+    }
+
+    private Cell getOrCreateCell(final long key) {
+        int slot = this.getSlot(key);
+
+        if (this.cells[slot] == null) {
+            if (2 * (this.cellCount + 1) > this.cells.length) {
+                this.resizeTable();
+                slot = this.getSlot(key);
+            }
+
+            this.cellKeys[slot] = key;
+            this.cells[slot] = new Cell();
+            this.cellCount++;
+        }
+
+        return this.cells[slot];
+    }
+
+    private void resizeTable() {
+        final long[] oldKeys = this.cellKeys;
+        final Cell[] oldCells = this.cells;
+
+        this.cellKeys = new long[oldKeys.length * 2];
+        this.cells = new Cell[oldCells.length * 2];
+
+        for (int i = 0; i < oldCells.length; i++) {
+            if (oldCells[i] != null) {
+                final int slot = this.getSlot(oldKeys[i]);
+
+                this.cellKeys[slot] = oldKeys[i];
+                this.cells[slot] = oldCells[i];
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof GeospatialPoint)) {
+            return false;
+        }
+
+        final Cell cell = this.getCell(this.getKey((GeospatialPoint) o));
+        return cell != null && cell.indexOf(o) >= 0;
+    }
+
+    @Override
+    public boolean add(final E point) {
+        this.getOrCreateCell(this.getKey(point)).add(point);
+        this.size++;
+
+        return true;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (!(o instanceof GeospatialPoint)) {
+            return false;
+        }
+
+        final Cell cell = this.getCell(this.getKey((GeospatialPoint) o));
+        final int index = cell == null ? -1 : cell.indexOf(o);
+
+        if (index < 0) {
+            return false;
+        }
+
+        cell.remove(index);
+        this.size--;
+
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        this.cellKeys = new long[INITIAL_TABLE_CAPACITY];
+        this.cells = new Cell[INITIAL_TABLE_CAPACITY];
+        this.cellCount = 0;
+        this.size = 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        final Cell[] cells = this.cells;
+
+        return new Iterator<E>() {
+            private int slot = 0;
+            private int pointIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (this.slot < cells.length && (cells[this.slot] == null || this.pointIndex >= cells[this.slot].size)) {
+                    this.slot++;
+                    this.pointIndex = 0;
+                }
+
+                return this.slot < cells.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return (E) cells[this.slot].points[this.pointIndex++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
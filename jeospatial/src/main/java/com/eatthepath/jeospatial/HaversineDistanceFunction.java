@@ -10,7 +10,7 @@ import com.eatthepath.jvptree.DistanceFunction;
  */
 class HaversineDistanceFunction implements DistanceFunction<GeospatialPoint> {
 
-    private static final double EARTH_RADIUS = 6371e3; // meters
+    static final double EARTH_RADIUS = 6371e3; // meters
 
     /**
      * Returns the "great cricle" distance in meters between two points on the earth's surface.
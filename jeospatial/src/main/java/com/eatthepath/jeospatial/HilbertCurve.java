@@ -0,0 +1,75 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * Maps points on the earth's surface to positions along a Hilbert curve that covers a latitude/longitude grid. Points
+ * that are close to one another along the curve are also close to one another on the grid (though the converse is not
+ * always true), so sorting points by their Hilbert index groups nearby points together.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class HilbertCurve {
+
+    /**
+     * The number of bits of precision used for each of latitude and longitude.
+     */
+    static final int BITS_PER_DIMENSION = 16;
+
+    private static final int GRID_SIZE = 1 << BITS_PER_DIMENSION;
+
+    private HilbertCurve() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Returns the position of the given point along the Hilbert curve.
+     *
+     * @param point the point for which to calculate a Hilbert index
+     *
+     * @return the position of the given point along the Hilbert curve; always non-negative and less than
+     * 2<sup>32</sup>
+     */
+    static long getIndex(final GeospatialPoint point) {
+        return getIndex(point.getLatitude(), point.getLongitude());
+    }
+
+    /**
+     * Returns the position of the given coordinates along the Hilbert curve.
+     *
+     * @param latitude the latitude of the point in degrees
+     * @param longitude the longitude of the point in degrees
+     *
+     * @return the position of the given coordinates along the Hilbert curve; always non-negative and less than
+     * 2<sup>32</sup>
+     */
+    static long getIndex(final double latitude, final double longitude) {
+        int x = quantize((BoundingBox.normalizeLongitude(longitude) + 180) / 360);
+        int y = quantize((latitude + 90) / 180);
+
+        long index = 0;
+
+        // Via https://en.wikipedia.org/wiki/Hilbert_curve#Applications_and_mapping_algorithms
+        for (int s = GRID_SIZE / 2; s > 0; s /= 2) {
+            final int rx = (x & s) > 0 ? 1 : 0;
+            final int ry = (y & s) > 0 ? 1 : 0;
+
+            index += (long) s * s * ((3 * rx) ^ ry);
+
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = GRID_SIZE - 1 - x;
+                    y = GRID_SIZE - 1 - y;
+                }
+
+                final int temp = x;
+                x = y;
+                y = temp;
+            }
+        }
+
+        return index;
+    }
+
+    private static int quantize(final double fraction) {
+        return (int) Math.max(0, Math.min(GRID_SIZE - 1, fraction * GRID_SIZE));
+    }
+}
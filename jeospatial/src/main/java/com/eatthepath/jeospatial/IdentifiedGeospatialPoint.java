@@ -0,0 +1,20 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * A geospatial point with a numeric identifier. Identifiers allow points to be written to and read back from index
+ * files, which store only each point's identifier and coordinates; callers can use identifiers to look up any other
+ * data associated with a point.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see MappedGeospatialIndex
+ */
+public interface IdentifiedGeospatialPoint extends GeospatialPoint {
+
+    /**
+     * Returns the identifier of this point.
+     *
+     * @return the identifier of this point
+     */
+    public long getId();
+}
@@ -0,0 +1,24 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * A callback that receives the pairs of points found by a spatial join. Joins report pairs as they find them instead
+ * of collecting them, so joins that find many pairs don't need to hold them all in memory at once. Joins that run in a
+ * pool with more than one thread may call a callback from several threads at once, and callbacks used with such joins
+ * must be thread-safe.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see VPTreeGeospatialIndex#joinWithinDistance(VPTreeGeospatialIndex, double, JoinCallback)
+ * @see VPTreeGeospatialIndex#joinNearestNeighbors(VPTreeGeospatialIndex, int, JoinCallback)
+ */
+public interface JoinCallback<E, F> {
+
+    /**
+     * Called once for each pair of points found by a join.
+     *
+     * @param point a point from the index on which the join was called
+     * @param otherPoint a point from the other index
+     * @param distance the distance between the two points, in meters
+     */
+    public void pointsJoined(E point, F otherPoint, double distance);
+}
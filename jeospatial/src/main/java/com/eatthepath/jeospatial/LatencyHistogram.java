@@ -0,0 +1,143 @@
+package com.eatthepath.jeospatial;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A histogram of latencies, in nanoseconds, that can be updated concurrently by many threads. Like an
+ * <a href="http://hdrhistogram.org/">HdrHistogram</a>, this histogram divides its range into buckets whose width
+ * grows with the magnitude of the values they hold: values below 128 are recorded exactly, and larger values are
+ * recorded with a relative error of less than 1/64 (about 1.6%). This keeps the histogram small (a few tens of
+ * kilobytes) while covering every positive {@code long} value.</p>
+ *
+ * <p>Reported percentiles are the largest value that would have been recorded in the same bucket as the true
+ * percentile, and so never understate a latency.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class LatencyHistogram {
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final StripedCounter totalCount = new StripedCounter();
+    private final StripedCounter totalLatency = new StripedCounter();
+
+    // Each power of two above SUB_BUCKET_COUNT is divided into this many linear buckets
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    /**
+     * Records a single latency. Negative latencies are recorded as zero.
+     *
+     * @param latencyNanos the latency to record, in nanoseconds
+     */
+    public void recordLatency(final long latencyNanos) {
+        final long latency = Math.max(0, latencyNanos);
+
+        this.counts.incrementAndGet(getBucket(latency));
+        this.totalCount.increment();
+        this.totalLatency.add(latency);
+    }
+
+    /**
+     * Returns the number of latencies recorded by this histogram.
+     *
+     * @return the number of latencies recorded by this histogram
+     */
+    public long getCount() {
+        return this.totalCount.sum();
+    }
+
+    /**
+     * Returns the mean of the latencies recorded by this histogram.
+     *
+     * @return the mean recorded latency in nanoseconds, or {@code NaN} if no latencies have been recorded
+     */
+    public double getMean() {
+        final long count = this.totalCount.sum();
+        return count == 0 ? Double.NaN : (double) this.totalLatency.sum() / count;
+    }
+
+    /**
+     * Returns the largest latency recorded by this histogram, rounded up to the largest value in its bucket.
+     *
+     * @return the largest recorded latency in nanoseconds, or zero if no latencies have been recorded
+     */
+    public long getMax() {
+        for (int bucket = BUCKET_COUNT - 1; bucket >= 0; bucket--) {
+            if (this.counts.get(bucket) > 0) {
+                return getHighestValueInBucket(bucket);
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns the latency at or below which the given percentage of recorded latencies fall.
+     *
+     * @param percentile the percentile to return, between 0 and 100 (inclusive)
+     *
+     * @return the latency at the given percentile in nanoseconds, or zero if no latencies have been recorded
+     *
+     * @throws IllegalArgumentException if the given percentile is not between 0 and 100
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+
+        // Take a snapshot so concurrent updates can't move the target past the end of the histogram
+        final long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            snapshot[bucket] = this.counts.get(bucket);
+            count += snapshot[bucket];
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long cumulativeCount = 0;
+
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            cumulativeCount += snapshot[bucket];
+
+            if (cumulativeCount >= target) {
+                return getHighestValueInBucket(bucket);
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Discards all latencies recorded by this histogram. Latencies recorded concurrently with a reset may or may not be
+     * discarded.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            this.counts.set(bucket, 0);
+        }
+
+        this.totalCount.reset();
+        this.totalLatency.reset();
+    }
+
+    static int getBucket(final long value) {
+        // Values below 2 * SUB_BUCKET_COUNT map directly to buckets; larger values are shifted right until they fall
+        // into the top half of that range, and the shift selects a block of SUB_BUCKET_COUNT buckets
+        final int shift = Math.max(0, (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    static long getLowestValueInBucket(final int bucket) {
+        final int shift = Math.max(0, (bucket >> SUB_BUCKET_BITS) - 1);
+        return (long) (bucket - (shift << SUB_BUCKET_BITS)) << shift;
+    }
+
+    static long getHighestValueInBucket(final int bucket) {
+        final int shift = Math.max(0, (bucket >> SUB_BUCKET_BITS) - 1);
+        return getLowestValueInBucket(bucket) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,612 @@
+package com.eatthepath.jeospatial;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * <p>An immutable geospatial index that reads its points and tree structure directly from a memory-mapped file.
+ * Opening a mapped index doesn't require reading (let alone rebuilding) the index; the operating system pages parts of
+ * the file into memory as searches touch them, and pages can be shared between processes that open the same file.</p>
+ *
+ * <p>Index files are written from a {@link CompactGeospatialIndex} with {@link #write(CompactGeospatialIndex, Path)}
+ * and contain the compact index's flattened tree followed by the identifier and coordinates of each point. Searches
+ * return {@link IdentifiedGeospatialPoint} handles that are created on demand from the stored identifiers and
+ * coordinates; callers can use identifiers to find any other data associated with a point.</p>
+ *
+ * <p>Index files begin with a fixed-size header that contains a "magic number," a format version, the number of
+ * points and nodes in the index, and a CRC-32 checksum of the rest of the file. All values are stored in little-endian
+ * byte order. Because each section of the file is mapped as a separate buffer, a single file may contain up to about
+ * 89 million points.</p>
+ *
+ * <p>Mapped regions remain valid until the index itself is garbage-collected; there is no need to close a mapped
+ * index.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class MappedGeospatialIndex extends AbstractGeospatialIndex<IdentifiedGeospatialPoint> {
+
+    private final int size;
+
+    private final DoubleBuffer nodes;
+    private final DoubleBuffer bounds;
+    private final DoubleBuffer vectors;
+    private final DoubleBuffer coordinates;
+    private final LongBuffer ids;
+    private final IntBuffer links;
+
+    /**
+     * The first four bytes of every index file ("JEOS" in ASCII).
+     */
+    static final int MAGIC_NUMBER = 0x4A454F53;
+
+    /**
+     * The version of the index file format written by this class.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * The size of an index file's header in bytes; the header is padded with zeroes to leave room for future additions
+     * and to keep the sections that follow it aligned.
+     */
+    static final int HEADER_SIZE = 64;
+
+    /**
+     * The offset, in bytes, of the checksum within an index file's header.
+     */
+    static final int CHECKSUM_OFFSET = 16;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private MappedGeospatialIndex(final int size, final DoubleBuffer nodes, final DoubleBuffer bounds,
+            final DoubleBuffer vectors, final DoubleBuffer coordinates, final LongBuffer ids, final IntBuffer links) {
+
+        this.size = size;
+        this.nodes = nodes;
+        this.bounds = bounds;
+        this.vectors = vectors;
+        this.coordinates = coordinates;
+        this.ids = ids;
+        this.links = links;
+    }
+
+    /**
+     * Writes the given index to a file that can later be opened with {@link #open(Path)}. Any existing file at the
+     * given path is replaced.
+     *
+     * @param index the index to write
+     * @param path the path of the file to write
+     *
+     * @throws IOException if the file could not be written for any reason
+     * @throws IllegalArgumentException if the index contains too many points to fit in a single index file
+     */
+    public static void write(final CompactGeospatialIndex<? extends IdentifiedGeospatialPoint> index, final Path path) throws IOException {
+        final Object[] points = index.getPointArray();
+        final double[] nodes = index.getNodeArray();
+        final int nodeCount = nodes.length / 4;
+
+        checkSectionSizes(points.length, nodeCount);
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            channel.position(HEADER_SIZE);
+
+            final SectionWriter writer = new SectionWriter(channel);
+
+            writer.putDoubles(nodes);
+            writer.putDoubles(index.getBoundsArray());
+            writer.putDoubles(index.getVectorArray());
+            writer.putDoubles(index.getCoordinateArray());
+
+            for (final Object point : points) {
+                writer.putLong(((IdentifiedGeospatialPoint) point).getId());
+            }
+
+            writer.putInts(index.getLinkArray());
+            writer.flush();
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC_NUMBER);
+            header.putInt(FORMAT_VERSION);
+            header.putInt(points.length);
+            header.putInt(nodeCount);
+            header.putLong(CHECKSUM_OFFSET, writer.getChecksum());
+            header.clear();
+
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    /**
+     * Opens the index file at the given path, verifying its checksum before mapping it into memory. Verifying the
+     * checksum requires reading the entire file once.
+     *
+     * @param path the path of the index file to open
+     *
+     * @return an index backed by the given file
+     *
+     * @throws IOException if the file could not be read or is not a valid index file
+     *
+     * @see #open(Path, boolean)
+     */
+    public static MappedGeospatialIndex open(final Path path) throws IOException {
+        return open(path, true);
+    }
+
+    /**
+     * Opens the index file at the given path. If {@code verifyChecksum} is {@code false}, only the file's header is
+     * read when opening the index, and opening an index takes roughly constant time regardless of its size; corrupt
+     * files may produce incorrect search results in that case.
+     *
+     * @param path the path of the index file to open
+     * @param verifyChecksum if {@code true}, read the entire file and verify its checksum before mapping it into memory
+     *
+     * @return an index backed by the given file
+     *
+     * @throws IOException if the file could not be read or is not a valid index file
+     */
+    public static MappedGeospatialIndex open(final Path path, final boolean verifyChecksum) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new EOFException("Index file is too short to contain a header.");
+                }
+            }
+
+            if (header.getInt(0) != MAGIC_NUMBER) {
+                throw new IOException("File is not a geospatial index file.");
+            }
+
+            final int version = header.getInt(4);
+
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported index file version: " + version);
+            }
+
+            final int pointCount = header.getInt(8);
+            final int nodeCount = header.getInt(12);
+
+            if (pointCount < 0 || nodeCount < 1) {
+                throw new IOException("Index file header is corrupt.");
+            }
+
+            final long nodeSectionSize = 32L * nodeCount;
+            final long pointSectionSize = 24L * pointCount;
+            final long coordinateSectionSize = 16L * pointCount;
+            final long idSectionSize = 8L * pointCount;
+            final long linkSectionSize = 12L * nodeCount;
+
+            final long expectedFileSize = HEADER_SIZE + (2 * nodeSectionSize) + pointSectionSize +
+                    coordinateSectionSize + idSectionSize + linkSectionSize;
+
+            if (channel.size() != expectedFileSize) {
+                throw new IOException("Expected index file to contain " + expectedFileSize + " bytes, but found " +
+                        channel.size() + " bytes.");
+            }
+
+            if (verifyChecksum && getChecksum(channel) != header.getLong(CHECKSUM_OFFSET)) {
+                throw new IOException("Index file checksum does not match its contents.");
+            }
+
+            // Map the whole file as a single region if we can, and fall back to mapping each section separately
+            final ByteBuffer file = expectedFileSize <= Integer.MAX_VALUE ? map(channel, 0, expectedFileSize) : null;
+
+            long position = HEADER_SIZE;
+
+            final DoubleBuffer nodes = getSection(channel, file, position, nodeSectionSize).asDoubleBuffer();
+            position += nodeSectionSize;
+
+            final DoubleBuffer bounds = getSection(channel, file, position, nodeSectionSize).asDoubleBuffer();
+            position += nodeSectionSize;
+
+            final DoubleBuffer vectors = getSection(channel, file, position, pointSectionSize).asDoubleBuffer();
+            position += pointSectionSize;
+
+            final DoubleBuffer coordinates = getSection(channel, file, position, coordinateSectionSize).asDoubleBuffer();
+            position += coordinateSectionSize;
+
+            final LongBuffer ids = getSection(channel, file, position, idSectionSize).asLongBuffer();
+            position += idSectionSize;
+
+            final IntBuffer links = getSection(channel, file, position, linkSectionSize).asIntBuffer();
+
+            return new MappedGeospatialIndex(pointCount, nodes, bounds, vectors, coordinates, ids, links);
+        }
+    }
+
+    private static void checkSectionSizes(final int pointCount, final int nodeCount) {
+        // The largest section holds three doubles per point, and each section must fit in a single mapped buffer
+        if (24L * pointCount > Integer.MAX_VALUE || 32L * nodeCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Index contains too many points to write to a single file.");
+        }
+    }
+
+    private static ByteBuffer map(final FileChannel channel, final long position, final long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer getSection(final FileChannel channel, final ByteBuffer file, final long position, final long size) throws IOException {
+        if (file == null) {
+            return map(channel, position, size);
+        }
+
+        final ByteBuffer section = file.duplicate();
+        section.limit((int) (position + size));
+        section.position((int) position);
+
+        return section.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long getChecksum(final FileChannel channel) throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+
+        long position = HEADER_SIZE;
+        int bytesRead;
+
+        while ((bytesRead = channel.read(buffer, position)) > 0) {
+            crc.update(buffer.array(), 0, bytesRead);
+            position += bytesRead;
+            buffer.clear();
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Writes the sections of an index file through a small buffer, updating a running checksum as it goes.
+     */
+    private static class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+
+        private SectionWriter(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void putDoubles(final double[] values) throws IOException {
+            for (final double value : values) {
+                this.putDouble(value);
+            }
+        }
+
+        private void putDouble(final double value) throws IOException {
+            if (this.buffer.remaining() < 8) {
+                this.flush();
+            }
+
+            this.buffer.putDouble(value);
+        }
+
+        private void putLong(final long value) throws IOException {
+            if (this.buffer.remaining() < 8) {
+                this.flush();
+            }
+
+            this.buffer.putLong(value);
+        }
+
+        private void putInts(final int[] values) throws IOException {
+            for (final int value : values) {
+                if (this.buffer.remaining() < 4) {
+                    this.flush();
+                }
+
+                this.buffer.putInt(value);
+            }
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            this.crc.update(this.buffer.array(), 0, this.buffer.limit());
+
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+
+            this.buffer.clear();
+        }
+
+        private long getChecksum() {
+            return this.crc.getValue();
+        }
+    }
+
+    private IdentifiedGeospatialPoint getPoint(final int index) {
+        return new GeospatialPointHandle(this.ids.get(index), this.coordinates.get(2 * index),
+                this.coordinates.get(2 * index + 1));
+    }
+
+    private boolean isLeaf(final int node) {
+        return this.links.get(3 * node) == 0;
+    }
+
+    private double getChordLengthFromVantagePoint(final int node, final double[] queryVector) {
+        final double dx = this.nodes.get(4 * node) - queryVector[0];
+        final double dy = this.nodes.get(4 * node + 1) - queryVector[1];
+        final double dz = this.nodes.get(4 * node + 2) - queryVector[2];
+
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private double getChordLengthToPoint(final int index, final double[] queryVector) {
+        final double dx = this.vectors.get(3 * index) - queryVector[0];
+        final double dy = this.vectors.get(3 * index + 1) - queryVector[1];
+        final double dz = this.vectors.get(3 * index + 2) - queryVector[2];
+
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    public List<IdentifiedGeospatialPoint> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults) {
+        return this.getNearestNeighbors(queryPoint, maxResults, null);
+    }
+
+    public List<IdentifiedGeospatialPoint> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults, final PointFilter<? super IdentifiedGeospatialPoint> filter) {
+        if (this.size == 0 || maxResults < 1) {
+            return new ArrayList<>();
+        }
+
+        final NearestNeighborCollector<Integer> collector =
+                new NearestNeighborCollector<>(Math.min(maxResults, this.size));
+
+        this.collectNearestNeighbors(0, UnitVectors.getUnitVector(queryPoint), collector, filter);
+
+        final List<IdentifiedGeospatialPoint> nearestNeighbors = new ArrayList<>(collector.size());
+
+        for (final int index : collector.toSortedList()) {
+            nearestNeighbors.add(this.getPoint(index));
+        }
+
+        return nearestNeighbors;
+    }
+
+    private void collectNearestNeighbors(final int node, final double[] queryVector, final NearestNeighborCollector<Integer> collector, final PointFilter<? super IdentifiedGeospatialPoint> filter) {
+        if (this.isLeaf(node)) {
+            for (int i = this.links.get(3 * node + 1), end = this.links.get(3 * node + 2); i < end; i++) {
+                final double chordLength = this.getChordLengthToPoint(i, queryVector);
+
+                // Avoid boxing indices (or creating handles for the filter) for points that can't make the cut
+                if (chordLength < collector.getFarthestChordLength() && (filter == null || filter.allowPoint(this.getPoint(i)))) {
+                    collector.offerPoint(i, chordLength);
+                }
+            }
+        } else {
+            final double chordLengthFromVantagePoint = this.getChordLengthFromVantagePoint(node, queryVector);
+            final double threshold = this.nodes.get(4 * node + 3);
+
+            final int closer = node + 1;
+            final int farther = this.links.get(3 * node);
+
+            if (chordLengthFromVantagePoint <= threshold) {
+                this.collectNearestNeighbors(closer, queryVector, collector, filter);
+
+                if (chordLengthFromVantagePoint + collector.getFarthestChordLength() > threshold) {
+                    this.collectNearestNeighbors(farther, queryVector, collector, filter);
+                }
+            } else {
+                this.collectNearestNeighbors(farther, queryVector, collector, filter);
+
+                if (chordLengthFromVantagePoint - collector.getFarthestChordLength() <= threshold) {
+                    this.collectNearestNeighbors(closer, queryVector, collector, filter);
+                }
+            }
+        }
+    }
+
+    public Iterator<IdentifiedGeospatialPoint> getNearestNeighborIterator(final GeospatialPoint queryPoint) {
+        final NearestNeighborIterator<IdentifiedGeospatialPoint> iterator =
+                new NearestNeighborIterator<IdentifiedGeospatialPoint>(UnitVectors.getUnitVector(queryPoint)) {
+
+            @Override
+            void expand(final Object object, final int node, final double minChordLength) {
+                MappedGeospatialIndex.this.expand(this, node, minChordLength);
+            }
+
+            @Override
+            IdentifiedGeospatialPoint getPoint(final Object object, final int position) {
+                return MappedGeospatialIndex.this.getPoint(position);
+            }
+        };
+
+        if (this.size > 0) {
+            iterator.addNode(null, 0, 0);
+        }
+
+        return iterator;
+    }
+
+    private void expand(final NearestNeighborIterator<IdentifiedGeospatialPoint> iterator, final int node, final double minChordLength) {
+        if (this.isLeaf(node)) {
+            for (int i = this.links.get(3 * node + 1), end = this.links.get(3 * node + 2); i < end; i++) {
+                iterator.addPoint(null, i, this.getChordLengthToPoint(i, iterator.queryVector));
+            }
+        } else {
+            final double chordLengthFromVantagePoint = this.getChordLengthFromVantagePoint(node, iterator.queryVector);
+            final double threshold = this.nodes.get(4 * node + 3);
+
+            iterator.addNode(null, node + 1, Math.max(minChordLength, chordLengthFromVantagePoint - threshold));
+            iterator.addNode(null, this.links.get(3 * node), Math.max(minChordLength, threshold - chordLengthFromVantagePoint));
+        }
+    }
+
+    public List<IdentifiedGeospatialPoint> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance) {
+        return this.getAllWithinDistance(queryPoint, maxDistance, null);
+    }
+
+    public List<IdentifiedGeospatialPoint> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance, final PointFilter<? super IdentifiedGeospatialPoint> filter) {
+        final ArrayList<IdentifiedGeospatialPoint> points = new ArrayList<>();
+
+        if (this.size > 0) {
+            this.collectAllWithinChordLength(0, UnitVectors.getUnitVector(queryPoint),
+                    UnitVectors.toChordLength(maxDistance), points, filter);
+        }
+
+        return points;
+    }
+
+    private void collectAllWithinChordLength(final int node, final double[] queryVector, final double maxChordLength, final Collection<IdentifiedGeospatialPoint> collection, final PointFilter<? super IdentifiedGeospatialPoint> filter) {
+        if (this.isLeaf(node)) {
+            for (int i = this.links.get(3 * node + 1), end = this.links.get(3 * node + 2); i < end; i++) {
+                if (this.getChordLengthToPoint(i, queryVector) <= maxChordLength) {
+                    final IdentifiedGeospatialPoint point = this.getPoint(i);
+
+                    if (filter == null || filter.allowPoint(point)) {
+                        collection.add(point);
+                    }
+                }
+            }
+        } else {
+            final double chordLengthFromVantagePoint = this.getChordLengthFromVantagePoint(node, queryVector);
+            final double threshold = this.nodes.get(4 * node + 3);
+
+            if (chordLengthFromVantagePoint - maxChordLength <= threshold) {
+                this.collectAllWithinChordLength(node + 1, queryVector, maxChordLength, collection, filter);
+            }
+
+            if (chordLengthFromVantagePoint + maxChordLength > threshold) {
+                this.collectAllWithinChordLength(this.links.get(3 * node), queryVector, maxChordLength, collection, filter);
+            }
+        }
+    }
+
+    public List<IdentifiedGeospatialPoint> getAllPointsInBoundingBox(final double south, final double west, final double north, final double east) {
+        final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+        final ArrayList<IdentifiedGeospatialPoint> points = new ArrayList<>();
+
+        if (this.size > 0) {
+            this.collectAllInBoundingBox(0, boundingBox, points);
+        }
+
+        return points;
+    }
+
+    private void collectAllInBoundingBox(final int node, final BoundingBox boundingBox, final Collection<IdentifiedGeospatialPoint> collection) {
+        final double minLatitude = this.bounds.get(4 * node);
+        final double minLongitude = this.bounds.get(4 * node + 1);
+        final double maxLatitude = this.bounds.get(4 * node + 2);
+        final double maxLongitude = this.bounds.get(4 * node + 3);
+
+        if (!boundingBox.intersects(minLatitude, minLongitude, maxLatitude, maxLongitude)) {
+            return;
+        }
+
+        if (boundingBox.encloses(minLatitude, minLongitude, maxLatitude, maxLongitude)) {
+            for (int i = this.links.get(3 * node + 1), end = this.links.get(3 * node + 2); i < end; i++) {
+                collection.add(this.getPoint(i));
+            }
+        } else if (this.isLeaf(node)) {
+            for (int i = this.links.get(3 * node + 1), end = this.links.get(3 * node + 2); i < end; i++) {
+                if (boundingBox.contains(this.coordinates.get(2 * i), this.coordinates.get(2 * i + 1))) {
+                    collection.add(this.getPoint(i));
+                }
+            }
+        } else {
+            final double x = this.nodes.get(4 * node);
+            final double y = this.nodes.get(4 * node + 1);
+            final double z = this.nodes.get(4 * node + 2);
+            final double threshold = this.nodes.get(4 * node + 3);
+
+            if (boundingBox.getMinChordLength(x, y, z) <= threshold) {
+                this.collectAllInBoundingBox(node + 1, boundingBox, collection);
+            }
+
+            if (boundingBox.getMaxChordLength(x, y, z) > threshold) {
+                this.collectAllInBoundingBox(this.links.get(3 * node), boundingBox, collection);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (this.size == 0 || !(o instanceof IdentifiedGeospatialPoint)) {
+            return false;
+        }
+
+        final IdentifiedGeospatialPoint point = (IdentifiedGeospatialPoint) o;
+        final double[] vector = UnitVectors.getUnitVector(point);
+
+        int node = 0;
+
+        while (!this.isLeaf(node)) {
+            node = this.getChordLengthFromVantagePoint(node, vector) <= this.nodes.get(4 * node + 3) ?
+                    node + 1 : this.links.get(3 * node);
+        }
+
+        for (int i = this.links.get(3 * node + 1), end = this.links.get(3 * node + 2); i < end; i++) {
+            if (this.ids.get(i) == point.getId() && this.coordinates.get(2 * i) == point.getLatitude() &&
+                    this.coordinates.get(2 * i + 1) == point.getLongitude()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<IdentifiedGeospatialPoint> iterator() {
+        return new Iterator<IdentifiedGeospatialPoint>() {
+
+            private int nextIndex = 0;
+
+            public boolean hasNext() {
+                return this.nextIndex < MappedGeospatialIndex.this.size;
+            }
+
+            public IdentifiedGeospatialPoint next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return MappedGeospatialIndex.this.getPoint(this.nextIndex++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,181 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the closest points to a query point as they are offered during a search. Points are kept in a bounded
+ * max-heap keyed by their chord length from the query point, so the farthest retained point can be found and replaced
+ * in logarithmic time.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class NearestNeighborCollector<E> {
+
+    private int capacity;
+
+    private Object[] points;
+    private double[] chordLengths;
+
+    private int size;
+
+    /**
+     * Constructs a new collector that retains up to the given number of points.
+     *
+     * @param capacity the maximum number of points to retain; must be positive
+     */
+    NearestNeighborCollector(final int capacity) {
+        this.capacity = capacity;
+
+        this.points = new Object[capacity];
+        this.chordLengths = new double[capacity];
+    }
+
+    /**
+     * Empties this collector and changes its capacity so it can be reused for another search.
+     *
+     * @param capacity the maximum number of points to retain; must be positive
+     */
+    void reset(final int capacity) {
+        Arrays.fill(this.points, 0, this.size, null);
+
+        if (capacity > this.points.length) {
+            this.points = new Object[capacity];
+            this.chordLengths = new double[capacity];
+        }
+
+        this.capacity = capacity;
+        this.size = 0;
+    }
+
+    /**
+     * Offers a point to this collector. The point is retained if the collector has not yet reached capacity or if the
+     * point is closer to the query point than the farthest point retained so far.
+     *
+     * @param point the point to offer
+     * @param chordLength the chord length between the point and the query point
+     */
+    void offerPoint(final E point, final double chordLength) {
+        if (this.size < this.capacity) {
+            this.points[this.size] = point;
+            this.chordLengths[this.size] = chordLength;
+            this.siftUp(this.size++);
+        } else if (chordLength < this.chordLengths[0]) {
+            this.points[0] = point;
+            this.chordLengths[0] = chordLength;
+            this.siftDown(0, this.size);
+        }
+    }
+
+    /**
+     * Returns the chord length between the query point and the farthest point retained by this collector. If the
+     * collector has not yet reached capacity, any point could still be retained and this method returns positive
+     * infinity.
+     *
+     * @return the chord length to the farthest retained point, or positive infinity if the collector is not yet full
+     */
+    double getFarthestChordLength() {
+        return this.size < this.capacity ? Double.POSITIVE_INFINITY : this.chordLengths[0];
+    }
+
+    /**
+     * Returns the number of points retained by this collector.
+     *
+     * @return the number of points retained by this collector
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the retained points in order of increasing distance from the query point. This drains the collector, and
+     * it should not be used afterward.
+     *
+     * @return a list of retained points sorted by increasing distance from the query point
+     */
+    @SuppressWarnings("unchecked")
+    List<E> toSortedList() {
+        this.sort();
+
+        final ArrayList<E> sortedPoints = new ArrayList<>(this.size);
+
+        for (int i = 0; i < this.size; i++) {
+            sortedPoints.add((E) this.points[i]);
+        }
+
+        this.size = 0;
+
+        return sortedPoints;
+    }
+
+    /**
+     * Appends the retained points to the given results in order of increasing distance from the query point. The
+     * retained points must be instances of the results' point type. This drains the collector, and it should not be
+     * used afterward unless it is reset.
+     *
+     * @param results the results to which to append the retained points
+     */
+    @SuppressWarnings("unchecked")
+    <P extends GeospatialPoint> void drainTo(final SearchResults<P> results) {
+        this.sort();
+
+        for (int i = 0; i < this.size; i++) {
+            results.add((P) this.points[i], this.chordLengths[i]);
+            this.points[i] = null;
+        }
+
+        this.size = 0;
+    }
+
+    private void sort() {
+        // Repeatedly move the farthest point to the end of the heap, leaving the arrays sorted in ascending order
+        for (int end = this.size - 1; end > 0; end--) {
+            this.swap(0, end);
+            this.siftDown(0, end);
+        }
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+
+            if (this.chordLengths[parent] >= this.chordLengths[index]) {
+                break;
+            }
+
+            this.swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, final int heapSize) {
+        while (true) {
+            final int left = 2 * index + 1;
+
+            if (left >= heapSize) {
+                break;
+            }
+
+            final int right = left + 1;
+            final int largerChild = (right < heapSize && this.chordLengths[right] > this.chordLengths[left]) ? right : left;
+
+            if (this.chordLengths[index] >= this.chordLengths[largerChild]) {
+                break;
+            }
+
+            this.swap(index, largerChild);
+            index = largerChild;
+        }
+    }
+
+    private void swap(final int i, final int j) {
+        final Object point = this.points[i];
+        this.points[i] = this.points[j];
+        this.points[j] = point;
+
+        final double chordLength = this.chordLengths[i];
+        this.chordLengths[i] = this.chordLengths[j];
+        this.chordLengths[j] = chordLength;
+    }
+}
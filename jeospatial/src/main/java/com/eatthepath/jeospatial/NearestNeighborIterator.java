@@ -0,0 +1,194 @@
+package com.eatthepath.jeospatial;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>A best-first iterator over the points in a tree, in order of increasing distance from a query point. The iterator
+ * keeps a priority queue of tree nodes and points ordered by the smallest possible chord length between the query point
+ * and anything they could contain; when a node reaches the head of the queue, the iterator "expands" it by replacing it
+ * with its children or its points. A point at the head of the queue is closer to the query point than anything that
+ * remains in the queue and can be returned right away.</p>
+ *
+ * <p>Each call to {@code next} does only as much work as it needs to find the next point, so callers that stop early
+ * pay only for the part of the tree they actually visited.</p>
+ *
+ * <p>Queue entries have an object reference and an index, the meanings of which are up to subclasses. Non-negative
+ * indices identify nodes, which subclasses expand via {@link #expand(Object, int, double)}; negative indices identify
+ * points at the position given by the bitwise complement of the index, which subclasses resolve via
+ * {@link #getPoint(Object, int)}.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+abstract class NearestNeighborIterator<E extends GeospatialPoint> implements Iterator<E> {
+
+    final double[] queryVector;
+
+    // A binary min-heap of entries stored in parallel arrays
+    private double[] chordLengths;
+    private Object[] objects;
+    private int[] indices;
+    private int size;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    NearestNeighborIterator(final double[] queryVector) {
+        this.queryVector = queryVector;
+
+        this.chordLengths = new double[INITIAL_CAPACITY];
+        this.objects = new Object[INITIAL_CAPACITY];
+        this.indices = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Replaces a node that has reached the head of the queue with its children or points.
+     *
+     * @param object the object reference of the node's queue entry
+     * @param index the (non-negative) index of the node's queue entry
+     * @param minChordLength the smallest possible chord length between the query point and any point in the node
+     */
+    abstract void expand(Object object, int index, double minChordLength);
+
+    /**
+     * Returns the point identified by a queue entry.
+     *
+     * @param object the object reference of the point's queue entry
+     * @param position the position of the point (i.e. the bitwise complement of the queue entry's index)
+     *
+     * @return the point identified by the given queue entry
+     */
+    abstract E getPoint(Object object, int position);
+
+    /**
+     * Adds a node to the queue.
+     *
+     * @param object the object reference for the node's queue entry
+     * @param index the index for the node's queue entry; must not be negative
+     * @param minChordLength the smallest possible chord length between the query point and any point in the node
+     */
+    void addNode(final Object object, final int index, final double minChordLength) {
+        this.add(minChordLength, object, index);
+    }
+
+    /**
+     * Adds a point to the queue.
+     *
+     * @param object the object reference for the point's queue entry
+     * @param position the position of the point; must not be negative
+     * @param chordLength the chord length between the query point and the point
+     */
+    void addPoint(final Object object, final int position, final double chordLength) {
+        this.add(chordLength, object, ~position);
+    }
+
+    /**
+     * Returns the chord length between the query point and the point that will be returned by the next call to
+     * {@link #next()}.
+     *
+     * @return the chord length between the query point and the next point
+     *
+     * @throws NoSuchElementException if no points remain
+     */
+    double peekChordLength() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return this.chordLengths[0];
+    }
+
+    public boolean hasNext() {
+        while (this.size > 0 && this.indices[0] >= 0) {
+            final Object object = this.objects[0];
+            final int index = this.indices[0];
+            final double minChordLength = this.chordLengths[0];
+
+            this.removeHead();
+            this.expand(object, index, minChordLength);
+        }
+
+        return this.size > 0;
+    }
+
+    public E next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final E point = this.getPoint(this.objects[0], ~this.indices[0]);
+        this.removeHead();
+
+        return point;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void add(final double chordLength, final Object object, final int index) {
+        if (this.size == this.chordLengths.length) {
+            this.chordLengths = Arrays.copyOf(this.chordLengths, this.size * 2);
+            this.objects = Arrays.copyOf(this.objects, this.size * 2);
+            this.indices = Arrays.copyOf(this.indices, this.size * 2);
+        }
+
+        int i = this.size++;
+
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+
+            if (this.chordLengths[parent] <= chordLength) {
+                break;
+            }
+
+            this.set(i, this.chordLengths[parent], this.objects[parent], this.indices[parent]);
+            i = parent;
+        }
+
+        this.set(i, chordLength, object, index);
+    }
+
+    private void removeHead() {
+        final int last = --this.size;
+
+        final double chordLength = this.chordLengths[last];
+        final Object object = this.objects[last];
+        final int index = this.indices[last];
+
+        this.objects[last] = null;
+
+        if (last == 0) {
+            return;
+        }
+
+        int i = 0;
+
+        while (true) {
+            int child = 2 * i + 1;
+
+            if (child >= last) {
+                break;
+            }
+
+            if (child + 1 < last && this.chordLengths[child + 1] < this.chordLengths[child]) {
+                child++;
+            }
+
+            if (chordLength <= this.chordLengths[child]) {
+                break;
+            }
+
+            this.set(i, this.chordLengths[child], this.objects[child], this.indices[child]);
+            i = child;
+        }
+
+        this.set(i, chordLength, object, index);
+    }
+
+    private void set(final int i, final double chordLength, final Object object, final int index) {
+        this.chordLengths[i] = chordLength;
+        this.objects[i] = object;
+        this.indices[i] = index;
+    }
+}
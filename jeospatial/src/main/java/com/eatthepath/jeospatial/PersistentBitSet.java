@@ -0,0 +1,83 @@
+package com.eatthepath.jeospatial;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of bits. "Setting" a bit returns a new set that shares all but a small block of its storage with
+ * the original, so sets can be updated cheaply even when they're large and old versions are still in use by other
+ * threads.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class PersistentBitSet {
+
+    // Blocks that contain no set bits are null
+    private final long[][] blocks;
+    private final int cardinality;
+
+    private static final int BITS_PER_BLOCK_SHIFT = 12;
+    private static final int WORDS_PER_BLOCK = (1 << BITS_PER_BLOCK_SHIFT) / 64;
+
+    /**
+     * Constructs an empty set with room for bits with indices from zero (inclusive) to the given capacity (exclusive);
+     * the set grows as needed if bits beyond its initial capacity are set.
+     *
+     * @param capacity the initial number of bits the set can hold
+     */
+    PersistentBitSet(final int capacity) {
+        this(new long[(capacity + (1 << BITS_PER_BLOCK_SHIFT) - 1) >>> BITS_PER_BLOCK_SHIFT][], 0);
+    }
+
+    private PersistentBitSet(final long[][] blocks, final int cardinality) {
+        this.blocks = blocks;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Returns the value of the bit at the given index.
+     *
+     * @param index the index of the bit to check
+     *
+     * @return {@code true} if the bit is set or {@code false} otherwise
+     */
+    boolean get(final int index) {
+        final int blockIndex = index >>> BITS_PER_BLOCK_SHIFT;
+
+        if (blockIndex >= this.blocks.length) {
+            return false;
+        }
+
+        final long[] block = this.blocks[blockIndex];
+        return block != null && (block[(index >>> 6) & (WORDS_PER_BLOCK - 1)] & (1L << index)) != 0;
+    }
+
+    /**
+     * Returns a set that contains all of the bits in this set and the bit at the given index.
+     *
+     * @param index the index of the bit to set
+     *
+     * @return a set with the given bit set; may be this set if the bit was already set
+     */
+    PersistentBitSet set(final int index) {
+        if (this.get(index)) {
+            return this;
+        }
+
+        final int blockIndex = index >>> BITS_PER_BLOCK_SHIFT;
+        final long[][] blocks = Arrays.copyOf(this.blocks, Math.max(this.blocks.length, blockIndex + 1));
+
+        blocks[blockIndex] = blocks[blockIndex] == null ? new long[WORDS_PER_BLOCK] : blocks[blockIndex].clone();
+        blocks[blockIndex][(index >>> 6) & (WORDS_PER_BLOCK - 1)] |= 1L << index;
+
+        return new PersistentBitSet(blocks, this.cardinality + 1);
+    }
+
+    /**
+     * Returns the number of bits set in this set.
+     *
+     * @return the number of bits set in this set
+     */
+    int cardinality() {
+        return this.cardinality;
+    }
+}
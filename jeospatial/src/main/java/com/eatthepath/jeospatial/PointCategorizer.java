@@ -0,0 +1,23 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * Assigns points to up to 64 categories (e.g. the kinds of business at a location). Indices that are given a
+ * categorizer when they're built can record which categories appear under each part of the index, and can then skip
+ * whole regions that contain no points in the categories sought by a {@link CategoryFilter}.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see CompactGeospatialIndex#CompactGeospatialIndex(int, java.util.Collection, PointCategorizer)
+ */
+public interface PointCategorizer<E> {
+
+    /**
+     * Returns the categories to which the given point belongs as a bit mask, in which bit {@code n} is set if the
+     * point belongs to category {@code n}. The categories of a point must not change while the point is in an index.
+     *
+     * @param point the point to categorize
+     *
+     * @return a bit mask of the categories to which the given point belongs
+     */
+    public long getCategories(E point);
+}
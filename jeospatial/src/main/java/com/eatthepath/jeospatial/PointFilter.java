@@ -0,0 +1,23 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * A filter that decides which points may be included in the results of a search. Filtered searches apply their
+ * filters as they traverse an index, so points that don't pass the filter never displace points that do; a filtered
+ * nearest-neighbor search returns the nearest points that pass the filter, no matter how sparse they are.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see GeospatialIndex#getNearestNeighbors(GeospatialPoint, int, PointFilter)
+ * @see GeospatialIndex#getAllWithinDistance(GeospatialPoint, double, PointFilter)
+ */
+public interface PointFilter<E> {
+
+    /**
+     * Indicates whether the given point may be included in the results of a search.
+     *
+     * @param point the point to check
+     *
+     * @return {@code true} if the point may be included in search results or {@code false} otherwise
+     */
+    public boolean allowPoint(E point);
+}
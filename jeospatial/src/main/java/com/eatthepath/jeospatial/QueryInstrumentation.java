@@ -0,0 +1,123 @@
+package com.eatthepath.jeospatial;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>Collects metrics for the queries performed by an instrumented index. Instrumentation records, for each type of
+ * query, aggregate counts of the work done by all queries and a histogram of query latencies; it also passes the
+ * statistics for each individual query to any registered {@link QueryListener}s.</p>
+ *
+ * <p>Instrumentation is opt-in. Indices without instrumentation skip all of the bookkeeping, and instrumentation may be
+ * attached to or detached from an index at any time. A single instance may be shared by several indices to aggregate
+ * their metrics.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see VPTreeGeospatialIndex#setInstrumentation(QueryInstrumentation)
+ */
+public class QueryInstrumentation {
+
+    private final QueryMetrics[] metrics;
+    private final List<QueryListener> listeners = new CopyOnWriteArrayList<>();
+
+    public QueryInstrumentation() {
+        this.metrics = new QueryMetrics[QueryType.values().length];
+
+        for (int i = 0; i < this.metrics.length; i++) {
+            this.metrics[i] = new QueryMetrics();
+        }
+    }
+
+    /**
+     * Returns the aggregate metrics for the given type of query.
+     *
+     * @param queryType the type of query for which to return metrics
+     *
+     * @return the aggregate metrics for the given type of query
+     */
+    public QueryMetrics getMetrics(final QueryType queryType) {
+        return this.metrics[queryType.ordinal()];
+    }
+
+    /**
+     * Registers a listener to be notified when each instrumented query finishes.
+     *
+     * @param listener the listener to register
+     */
+    public void addListener(final QueryListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("Listener must not be null.");
+        }
+
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Removes a previously-registered listener.
+     *
+     * @param listener the listener to remove
+     *
+     * @return {@code true} if the listener had been registered or {@code false} otherwise
+     */
+    public boolean removeListener(final QueryListener listener) {
+        return this.listeners.remove(listener);
+    }
+
+    /**
+     * Resets the metrics for all types of queries.
+     */
+    public void reset() {
+        for (final QueryMetrics queryMetrics : this.metrics) {
+            queryMetrics.reset();
+        }
+    }
+
+    /**
+     * Registers the metrics for each type of query with the given MBean server. Each type of query gets its own MBean
+     * with the name {@code com.eatthepath.jeospatial:type=QueryMetrics,name=<name>,query=<query type>}.
+     *
+     * @param server the server with which to register MBeans
+     * @param name a name that distinguishes this instrumentation from others registered with the same server
+     *
+     * @throws JMException if the MBeans could not be registered
+     *
+     * @see java.lang.management.ManagementFactory#getPlatformMBeanServer()
+     */
+    public void registerMBeans(final MBeanServer server, final String name) throws JMException {
+        for (final QueryType queryType : QueryType.values()) {
+            server.registerMBean(this.getMetrics(queryType), getObjectName(name, queryType));
+        }
+    }
+
+    /**
+     * Removes the MBeans registered by {@link #registerMBeans(MBeanServer, String)} from the given server.
+     *
+     * @param server the server from which to remove MBeans
+     * @param name the name under which the MBeans were registered
+     *
+     * @throws JMException if the MBeans could not be removed
+     */
+    public void unregisterMBeans(final MBeanServer server, final String name) throws JMException {
+        for (final QueryType queryType : QueryType.values()) {
+            server.unregisterMBean(getObjectName(name, queryType));
+        }
+    }
+
+    static ObjectName getObjectName(final String name, final QueryType queryType) throws JMException {
+        return new ObjectName("com.eatthepath.jeospatial:type=QueryMetrics,name=" + ObjectName.quote(name) +
+                ",query=" + queryType.name());
+    }
+
+    void recordQuery(final QueryType queryType, final QueryStatistics statistics, final long latencyNanos) {
+        this.metrics[queryType.ordinal()].record(statistics, latencyNanos);
+
+        for (final QueryListener listener : this.listeners) {
+            listener.queryCompleted(queryType, statistics, latencyNanos);
+        }
+    }
+}
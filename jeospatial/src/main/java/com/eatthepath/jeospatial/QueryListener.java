@@ -0,0 +1,23 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * A listener that receives the statistics for each query an instrumented index performs. Listeners are called on the
+ * thread that performed the query, after the query's results are complete but before they're returned to the caller,
+ * and so should return quickly.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see QueryInstrumentation#addListener(QueryListener)
+ */
+public interface QueryListener {
+
+    /**
+     * Called when an instrumented index finishes a query. The given statistics are reused by subsequent queries and
+     * must not be retained after this method returns.
+     *
+     * @param queryType the type of query that finished
+     * @param statistics the work done by the query
+     * @param latencyNanos the time taken by the query, in nanoseconds
+     */
+    public void queryCompleted(QueryType queryType, QueryStatistics statistics, long latencyNanos);
+}
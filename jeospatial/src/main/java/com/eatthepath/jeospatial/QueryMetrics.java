@@ -0,0 +1,123 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * Aggregate metrics for one type of query. Counters are totals across all recorded queries; callers can divide by
+ * {@link #getQueryCount()} to find per-query averages. Metrics may be updated concurrently by many threads, and values
+ * read while queries are in progress may not reflect those queries.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see QueryInstrumentation#getMetrics(QueryType)
+ */
+public class QueryMetrics implements QueryMetricsMXBean {
+
+    private final StripedCounter queryCount = new StripedCounter();
+    private final StripedCounter nodesVisited = new StripedCounter();
+    private final StripedCounter pointsExamined = new StripedCounter();
+    private final StripedCounter distanceCalculations = new StripedCounter();
+    private final StripedCounter exactDistanceCalculations = new StripedCounter();
+    private final StripedCounter prunedBranches = new StripedCounter();
+    private final StripedCounter resultCount = new StripedCounter();
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    QueryMetrics() {
+    }
+
+    void record(final QueryStatistics statistics, final long latencyNanos) {
+        this.queryCount.increment();
+        this.nodesVisited.add(statistics.getNodesVisited());
+        this.pointsExamined.add(statistics.getPointsExamined());
+        this.distanceCalculations.add(statistics.getDistanceCalculations());
+        this.exactDistanceCalculations.add(statistics.getExactDistanceCalculations());
+        this.prunedBranches.add(statistics.getPrunedBranches());
+        this.resultCount.add(statistics.getResultCount());
+
+        this.latencyHistogram.recordLatency(latencyNanos);
+    }
+
+    @Override
+    public long getQueryCount() {
+        return this.queryCount.sum();
+    }
+
+    @Override
+    public long getNodesVisited() {
+        return this.nodesVisited.sum();
+    }
+
+    @Override
+    public long getPointsExamined() {
+        return this.pointsExamined.sum();
+    }
+
+    @Override
+    public long getDistanceCalculations() {
+        return this.distanceCalculations.sum();
+    }
+
+    @Override
+    public long getExactDistanceCalculations() {
+        return this.exactDistanceCalculations.sum();
+    }
+
+    @Override
+    public long getPrunedBranches() {
+        return this.prunedBranches.sum();
+    }
+
+    @Override
+    public long getResultCount() {
+        return this.resultCount.sum();
+    }
+
+    /**
+     * Returns the histogram of latencies for this type of query.
+     *
+     * @return the histogram of latencies for this type of query
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return this.latencyHistogram;
+    }
+
+    @Override
+    public double getMeanLatency() {
+        return this.latencyHistogram.getMean();
+    }
+
+    @Override
+    public long getMedianLatency() {
+        return this.latencyHistogram.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long get99thPercentileLatency() {
+        return this.latencyHistogram.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long get999thPercentileLatency() {
+        return this.latencyHistogram.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getMaxLatency() {
+        return this.latencyHistogram.getMax();
+    }
+
+    /**
+     * Resets all counters and discards all recorded latencies.
+     */
+    @Override
+    public void reset() {
+        this.queryCount.reset();
+        this.nodesVisited.reset();
+        this.pointsExamined.reset();
+        this.distanceCalculations.reset();
+        this.exactDistanceCalculations.reset();
+        this.prunedBranches.reset();
+        this.resultCount.reset();
+
+        this.latencyHistogram.reset();
+    }
+}
@@ -0,0 +1,37 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * The management interface for the aggregate metrics of one type of query. Latencies are reported in nanoseconds.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see QueryInstrumentation#registerMBeans(javax.management.MBeanServer, String)
+ */
+public interface QueryMetricsMXBean {
+
+    public long getQueryCount();
+
+    public long getNodesVisited();
+
+    public long getPointsExamined();
+
+    public long getDistanceCalculations();
+
+    public long getExactDistanceCalculations();
+
+    public long getPrunedBranches();
+
+    public long getResultCount();
+
+    public double getMeanLatency();
+
+    public long getMedianLatency();
+
+    public long get99thPercentileLatency();
+
+    public long get999thPercentileLatency();
+
+    public long getMaxLatency();
+
+    public void reset();
+}
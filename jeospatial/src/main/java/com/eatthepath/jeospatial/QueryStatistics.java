@@ -0,0 +1,120 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * <p>Counts the work done by a single query. Instrumented indices pass a set of statistics to each registered
+ * {@link QueryListener} when a query finishes.</p>
+ *
+ * <p>Statistics objects are reused from one query to the next, so listeners that want to keep the statistics for a
+ * query must copy the values they need before returning.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class QueryStatistics {
+
+    private int nodesVisited;
+    private int pointsExamined;
+    private int distanceCalculations;
+    private int exactDistanceCalculations;
+    private int prunedBranches;
+    private int resultCount;
+
+    /**
+     * Returns the number of tree nodes (both internal and leaf nodes) the query visited.
+     *
+     * @return the number of tree nodes the query visited
+     */
+    public int getNodesVisited() {
+        return this.nodesVisited;
+    }
+
+    /**
+     * Returns the number of individual points the query checked in leaf nodes. Points that bounding box queries collect
+     * in bulk from subtrees that lie entirely within the box are not examined individually and are not counted.
+     *
+     * @return the number of individual points the query checked
+     */
+    public int getPointsExamined() {
+        return this.pointsExamined;
+    }
+
+    /**
+     * Returns the number of distance calculations the query performed, including calculations between the query point
+     * and points in leaf nodes and between the query point (or query box) and vantage points.
+     *
+     * @return the number of distance calculations the query performed
+     */
+    public int getDistanceCalculations() {
+        return this.distanceCalculations;
+    }
+
+    /**
+     * Returns the number of distance calculations that produced an exact distance. Indices that use
+     * {@link DistanceMode#TIERED} distance evaluation rule out most points with a cheaper test and calculate exact
+     * distances only for the rest; the difference between this value and {@link #getDistanceCalculations()} is the
+     * number of exact calculations the query avoided. Distances to vantage points are always calculated exactly.
+     *
+     * @return the number of distance calculations that produced an exact distance
+     */
+    public int getExactDistanceCalculations() {
+        return this.exactDistanceCalculations;
+    }
+
+    /**
+     * Returns the number of subtrees the query skipped because they could not contain any matching points.
+     *
+     * @return the number of subtrees the query skipped
+     */
+    public int getPrunedBranches() {
+        return this.prunedBranches;
+    }
+
+    /**
+     * Returns the number of points the query returned.
+     *
+     * @return the number of points the query returned
+     */
+    public int getResultCount() {
+        return this.resultCount;
+    }
+
+    void reset() {
+        this.nodesVisited = 0;
+        this.pointsExamined = 0;
+        this.distanceCalculations = 0;
+        this.exactDistanceCalculations = 0;
+        this.prunedBranches = 0;
+        this.resultCount = 0;
+    }
+
+    void visitLeaf(final int pointsExamined, final int distanceCalculations) {
+        this.nodesVisited++;
+        this.pointsExamined += pointsExamined;
+        this.distanceCalculations += distanceCalculations;
+    }
+
+    void visitInternalNode(final int distanceCalculations) {
+        this.nodesVisited++;
+        this.distanceCalculations += distanceCalculations;
+        this.exactDistanceCalculations += distanceCalculations;
+    }
+
+    void calculateExactDistances(final int exactDistanceCalculations) {
+        this.exactDistanceCalculations += exactDistanceCalculations;
+    }
+
+    void pruneBranch() {
+        this.prunedBranches++;
+    }
+
+    void setResultCount(final int resultCount) {
+        this.resultCount = resultCount;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryStatistics [nodesVisited=" + this.nodesVisited + ", pointsExamined=" + this.pointsExamined +
+                ", distanceCalculations=" + this.distanceCalculations + ", exactDistanceCalculations=" +
+                this.exactDistanceCalculations + ", prunedBranches=" + this.prunedBranches +
+                ", resultCount=" + this.resultCount + "]";
+    }
+}
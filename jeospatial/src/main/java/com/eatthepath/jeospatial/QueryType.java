@@ -0,0 +1,31 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * The kinds of queries for which an index can collect instrumentation.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see QueryInstrumentation
+ */
+public enum QueryType {
+
+    /**
+     * Searches for the nearest neighbors to a query point.
+     */
+    NEAREST_NEIGHBORS,
+
+    /**
+     * Searches for all points within a given distance of a query point.
+     */
+    WITHIN_DISTANCE,
+
+    /**
+     * Searches for all points within a bounding box.
+     */
+    BOUNDING_BOX,
+
+    /**
+     * Searches for all points within a given distance of a route.
+     */
+    WITHIN_DISTANCE_OF_ROUTE
+}
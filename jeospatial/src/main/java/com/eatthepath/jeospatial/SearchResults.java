@@ -0,0 +1,241 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>A reusable container for the results of a search. Results are stored in parallel arrays of points and distances
+ * that grow as needed but never shrink, so a caller that reuses one set of results for many searches stops allocating
+ * memory once the results have grown large enough to hold the largest result set. Results also carry the scratch
+ * space searches need, so searches that write to a set of results don't allocate any memory of their own.</p>
+ *
+ * <p>Each search discards any previous contents of the results to which it writes. Results are not thread-safe; each
+ * thread should have its own set of results.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see GeospatialIndex#getNearestNeighbors(double, double, int, SearchResults)
+ * @see GeospatialIndex#getAllWithinDistance(double, double, double, SearchResults)
+ * @see GeospatialIndex#getAllPointsInBoundingBox(double, double, double, double, SearchResults)
+ */
+public class SearchResults<E extends GeospatialPoint> {
+
+    private Object[] points;
+
+    // Distances are stored as chord lengths and only converted to great-circle distances on request
+    private double[] chordLengths;
+
+    private int size;
+    private boolean exact = true;
+
+    private final double[] queryVector = new double[3];
+    private BoundingBox boundingBox;
+    private NearestNeighborCollector<E> collector;
+    private ApproximateSearch approximateSearch;
+    private QueryStatistics statistics;
+
+    public static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    public SearchResults() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public SearchResults(final int initialCapacity) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("Initial capacity must be positive.");
+        }
+
+        this.points = new Object[initialCapacity];
+        this.chordLengths = new double[initialCapacity];
+    }
+
+    /**
+     * Returns the number of points in these results.
+     *
+     * @return the number of points in these results
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Indicates whether these results contain no points.
+     *
+     * @return {@code true} if these results contain no points or {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the point at the given position in these results. Nearest-neighbor results are sorted by increasing
+     * distance from the query point; the order of other results is not prescribed.
+     *
+     * @param index the position of the point to return
+     *
+     * @return the point at the given position
+     *
+     * @throws IndexOutOfBoundsException if the index is negative or not less than the size of these results
+     */
+    @SuppressWarnings("unchecked")
+    public E get(final int index) {
+        this.checkIndex(index);
+        return (E) this.points[index];
+    }
+
+    /**
+     * Returns the great-circle distance between the query point and the point at the given position in these results.
+     * Results from bounding box searches have no query point, and their distances are always {@code NaN}.
+     *
+     * @param index the position of the point for which to return a distance
+     *
+     * @return the distance between the query point and the point at the given position in meters, or {@code NaN} if
+     * the search had no query point
+     *
+     * @throws IndexOutOfBoundsException if the index is negative or not less than the size of these results
+     */
+    public double getDistance(final int index) {
+        this.checkIndex(index);
+        return UnitVectors.toDistance(this.chordLengths[index]);
+    }
+
+    /**
+     * Returns the chord length between the query point and the point at the given position in these results.
+     */
+    double getChordLength(final int index) {
+        this.checkIndex(index);
+        return this.chordLengths[index];
+    }
+
+    /**
+     * Indicates whether these results are guaranteed to be exact. Only approximate searches may produce inexact
+     * results, and even approximate searches report exact results if they never needed to skip any work an exact
+     * search would have done.
+     *
+     * @return {@code true} if these results are guaranteed to be exact or {@code false} if they may be approximate
+     *
+     * @see VPTreeGeospatialIndex#getApproximateNearestNeighbors(double, double, int, double, int, SearchResults)
+     */
+    public boolean isExact() {
+        return this.exact;
+    }
+
+    void setExact(final boolean exact) {
+        this.exact = exact;
+    }
+
+    /**
+     * Removes all points from these results.
+     */
+    public void clear() {
+        // Release references to points so they can be garbage-collected
+        Arrays.fill(this.points, 0, this.size, null);
+        this.size = 0;
+        this.exact = true;
+    }
+
+    /**
+     * Returns a new list that contains the points in these results in order.
+     *
+     * @return a new list of the points in these results
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> toList() {
+        final ArrayList<E> list = new ArrayList<>(this.size);
+
+        for (int i = 0; i < this.size; i++) {
+            list.add((E) this.points[i]);
+        }
+
+        return list;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+        }
+    }
+
+    /**
+     * Appends a point to these results.
+     *
+     * @param point the point to append
+     * @param chordLength the chord length between the point and the query point, or {@code NaN} if the search had no
+     * query point
+     */
+    void add(final E point, final double chordLength) {
+        if (this.size == this.points.length) {
+            this.points = Arrays.copyOf(this.points, this.size * 2);
+            this.chordLengths = Arrays.copyOf(this.chordLengths, this.size * 2);
+        }
+
+        this.points[this.size] = point;
+        this.chordLengths[this.size] = chordLength;
+        this.size++;
+    }
+
+    /**
+     * Returns a scratch array containing the unit vector for the given coordinates. The array is reused by subsequent
+     * calls.
+     */
+    double[] getQueryVector(final double latitude, final double longitude) {
+        UnitVectors.setUnitVector(latitude, longitude, this.queryVector, 0);
+        return this.queryVector;
+    }
+
+    /**
+     * Returns a scratch bounding box with the given limits. The box is reused by subsequent calls.
+     */
+    BoundingBox getBoundingBox(final double south, final double west, final double north, final double east) {
+        if (this.boundingBox == null) {
+            this.boundingBox = new BoundingBox(south, west, north, east);
+        } else {
+            this.boundingBox.set(south, west, north, east);
+        }
+
+        return this.boundingBox;
+    }
+
+    /**
+     * Returns an empty scratch nearest-neighbor collector with the given capacity. The collector is reused by
+     * subsequent calls.
+     */
+    NearestNeighborCollector<E> getCollector(final int capacity) {
+        if (this.collector == null) {
+            this.collector = new NearestNeighborCollector<>(capacity);
+        } else {
+            this.collector.reset(capacity);
+        }
+
+        return this.collector;
+    }
+
+    /**
+     * Returns a scratch approximate search state prepared with the given limits. The state is reused by subsequent
+     * calls.
+     */
+    ApproximateSearch getApproximateSearch(final double epsilon, final int maxDistanceCalculations) {
+        if (this.approximateSearch == null) {
+            this.approximateSearch = new ApproximateSearch();
+        }
+
+        this.approximateSearch.reset(epsilon, maxDistanceCalculations);
+
+        return this.approximateSearch;
+    }
+
+    /**
+     * Returns a set of scratch query statistics with all counters set to zero. The statistics are reused by subsequent
+     * calls.
+     */
+    QueryStatistics getStatistics() {
+        if (this.statistics == null) {
+            this.statistics = new QueryStatistics();
+        } else {
+            this.statistics.reset();
+        }
+
+        return this.statistics;
+    }
+}
@@ -0,0 +1,860 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>A thread-safe geospatial index that divides the earth's surface into regional "shards," each of which is backed
+ * by its own {@link VPTreeGeospatialIndex}. Shards are laid out in a grid of equal-angle latitude bands and longitude
+ * sectors, and each point belongs to the shard whose region contains it.</p>
+ *
+ * <p>Searches only visit shards whose points could satisfy the search. Nearest-neighbor searches visit the nearest
+ * shard (usually the one that contains the query point) first and skip any other shard that's farther away than the
+ * farthest neighbor found in the nearest shard.
+ * When a search needs to visit more than one shard, it searches them in parallel in a {@link ForkJoinPool} and merges
+ * their results.</p>
+ *
+ * <p>Each shard has its own lock, and so searches, changes, and rebuilds in one shard never wait for activity in
+ * another. Searches wait only for changes to the shards they visit; rebuilding a shard (see
+ * {@link #rebuildShard(int)}) constructs a new tree in the background and blocks searches only for the moment it takes
+ * to swap the new tree into place. Nearest-neighbor iterators do not lock shards, and must not be used while points
+ * are being added to or removed from the index (though shards may be rebuilt while iterators are in use).</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class ShardedGeospatialIndex<E extends GeospatialPoint> extends AbstractGeospatialIndex<E> {
+
+    private final int latitudeDivisions;
+    private final int longitudeDivisions;
+    private final Shard<E>[] shards;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * The default number of latitude bands into which indices divide the earth's surface.
+     */
+    public static final int DEFAULT_LATITUDE_DIVISIONS = 4;
+
+    /**
+     * The default number of longitude sectors into which indices divide each latitude band.
+     */
+    public static final int DEFAULT_LONGITUDE_DIVISIONS = 8;
+
+    /**
+     * A single regional shard of the index. Searches and changes hold the shard's read and write locks, respectively,
+     * while they use its tree; writers (including rebuilds) additionally synchronize on the shard's write monitor so a
+     * rebuild can construct a new tree without blocking searches and without losing concurrent changes.
+     */
+    private static class Shard<E extends GeospatialPoint> {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Object writeMonitor = new Object();
+
+        // Guarded by lock
+        private VPTreeGeospatialIndex<E> tree;
+
+        // Searches read the bounds without locking so they can skip shards without waiting for writers; bounds are
+        // null if the shard is empty, never shrink when points are removed, and are recalculated when the shard is
+        // rebuilt
+        private volatile ShardBounds bounds;
+
+        private Shard(final VPTreeGeospatialIndex<E> tree) {
+            this.setTree(tree);
+        }
+
+        private void setTree(final VPTreeGeospatialIndex<E> tree) {
+            this.tree = tree;
+
+            if (tree.isEmpty()) {
+                this.bounds = null;
+            } else {
+                final double[] limits = new double[4];
+                BoundingBox.clearBounds(limits, 0);
+
+                for (final E point : tree) {
+                    BoundingBox.expandBounds(limits, 0, point);
+                }
+
+                this.bounds = new ShardBounds(limits);
+            }
+        }
+
+        private void expandBounds(final E point) {
+            final ShardBounds bounds = this.bounds;
+
+            if (bounds == null || !bounds.boundingBox.contains(point)) {
+                final double[] limits = new double[4];
+
+                if (bounds == null) {
+                    BoundingBox.clearBounds(limits, 0);
+                } else {
+                    System.arraycopy(bounds.limits, 0, limits, 0, 4);
+                }
+
+                BoundingBox.expandBounds(limits, 0, point);
+                this.bounds = new ShardBounds(limits);
+            }
+        }
+
+        private void lockForSearch() {
+            this.lock.readLock().lock();
+        }
+
+        private void unlockForSearch() {
+            this.lock.readLock().unlock();
+        }
+
+        private void lockForWrite() {
+            this.lock.writeLock().lock();
+        }
+
+        private void unlockForWrite() {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The latitude/longitude bounds of the points in a shard, along with a spherical cap that encloses those bounds.
+     * Testing whether a search region could overlap the cap is much cheaper than finding the distance to the bounds
+     * themselves, and so searches check the cap first. Instances are never modified once constructed.
+     */
+    private static class ShardBounds {
+        private final double[] limits;
+        private final BoundingBox boundingBox;
+
+        private final double[] capCenter;
+        private final double capAngle;
+        private final double cosCapAngle;
+        private final double sinCapAngle;
+
+        // Slack for rounding errors when comparing dot products so caps never exclude points they actually contain
+        private static final double DOT_PRODUCT_TOLERANCE = 1e-12;
+
+        private ShardBounds(final double[] limits) {
+            this.limits = limits;
+            this.boundingBox = new BoundingBox(limits[0], limits[1], limits[2], limits[3]);
+
+            // Bounds never cross the antimeridian, so the center of the box is just the midpoint of its limits
+            this.capCenter = UnitVectors.getUnitVector((limits[0] + limits[2]) / 2, (limits[1] + limits[3]) / 2);
+
+            final double maxChordLength = Math.min(UnitVectors.MAX_CHORD_LENGTH, this.boundingBox.getMaxChordLength(this.capCenter, 0));
+
+            this.capAngle = 2 * Math.asin(maxChordLength / 2);
+            this.cosCapAngle = Math.cos(this.capAngle);
+            this.sinCapAngle = Math.sin(this.capAngle);
+        }
+
+        /**
+         * Indicates whether this cap could contain any point within the given angle of the given unit vector.
+         */
+        private boolean mayContainPointsWithin(final double[] vector, final double angle, final double cosAngle, final double sinAngle) {
+            if (this.capAngle + angle >= Math.PI) {
+                return true;
+            }
+
+            final double dotProduct =
+                    vector[0] * this.capCenter[0] + vector[1] * this.capCenter[1] + vector[2] * this.capCenter[2];
+
+            // The cosine of the sum of the two angles
+            return dotProduct >= (this.cosCapAngle * cosAngle) - (this.sinCapAngle * sinAngle) - DOT_PRODUCT_TOLERANCE;
+        }
+    }
+
+    /**
+     * A search to be run against the tree of a single shard.
+     */
+    private interface ShardSearch<E extends GeospatialPoint> {
+        List<E> search(VPTreeGeospatialIndex<E> tree);
+    }
+
+    /**
+     * A task that runs a search against a range of shards, dividing the range between subtasks until each subtask
+     * searches a single shard.
+     */
+    private static class ShardSearchTask<E extends GeospatialPoint> extends RecursiveAction {
+
+        private final ShardSearch<E> search;
+        private final List<Shard<E>> shards;
+        private final int from;
+        private final int to;
+        private final List<E>[] results;
+
+        private static final long serialVersionUID = 1L;
+
+        private ShardSearchTask(final ShardSearch<E> search, final List<Shard<E>> shards, final int from, final int to, final List<E>[] results) {
+            this.search = search;
+            this.shards = shards;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from == 1) {
+                this.results[this.from] = searchShard(this.shards.get(this.from), this.search);
+            } else {
+                final int middle = (this.from + this.to) >>> 1;
+
+                invokeAll(new ShardSearchTask<>(this.search, this.shards, this.from, middle, this.results),
+                        new ShardSearchTask<>(this.search, this.shards, middle, this.to, this.results));
+            }
+        }
+    }
+
+    public ShardedGeospatialIndex() {
+        this(new ArrayList<E>());
+    }
+
+    public ShardedGeospatialIndex(final Collection<E> points) {
+        this(DEFAULT_LATITUDE_DIVISIONS, DEFAULT_LONGITUDE_DIVISIONS, points, getDefaultPool());
+    }
+
+    /**
+     * Constructs a new sharded index containing the given points.
+     *
+     * @param latitudeDivisions the number of latitude bands into which to divide the earth's surface
+     * @param longitudeDivisions the number of longitude sectors into which to divide each latitude band
+     * @param points the points to add to the index
+     * @param pool the pool in which to search shards in parallel and build their trees
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ShardedGeospatialIndex(final int latitudeDivisions, final int longitudeDivisions, final Collection<E> points, final ForkJoinPool pool) {
+        if (latitudeDivisions < 1 || longitudeDivisions < 1) {
+            throw new IllegalArgumentException("Indices must have at least one latitude band and longitude sector.");
+        }
+
+        this.latitudeDivisions = latitudeDivisions;
+        this.longitudeDivisions = longitudeDivisions;
+        this.pool = pool;
+
+        final List<List<E>> pointsByShard = new ArrayList<>(latitudeDivisions * longitudeDivisions);
+
+        for (int i = 0; i < latitudeDivisions * longitudeDivisions; i++) {
+            pointsByShard.add(new ArrayList<E>());
+        }
+
+        for (final E point : points) {
+            pointsByShard.get(this.getShardIndex(point)).add(point);
+        }
+
+        this.shards = new Shard[pointsByShard.size()];
+
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard<>(this.buildTree(pointsByShard.get(i)));
+        }
+    }
+
+    private VPTreeGeospatialIndex<E> buildTree(final Collection<E> points) {
+        return new VPTreeGeospatialIndex<>(VPTreeGeospatialIndex.DEFAULT_NODE_CAPACITY, points, this.pool);
+    }
+
+    /**
+     * Returns the number of shards in this index.
+     *
+     * @return the number of shards in this index
+     */
+    public int getShardCount() {
+        return this.shards.length;
+    }
+
+    /**
+     * Returns the index of the shard to which the given point belongs.
+     *
+     * @param point the point for which to find a shard
+     *
+     * @return the index of the shard to which the given point belongs
+     */
+    public int getShardIndex(final GeospatialPoint point) {
+        final int band = Math.min(this.latitudeDivisions - 1,
+                (int) ((point.getLatitude() + 90) / 180 * this.latitudeDivisions));
+
+        final int sector = Math.min(this.longitudeDivisions - 1,
+                (int) ((BoundingBox.normalizeLongitude(point.getLongitude()) + 180) / 360 * this.longitudeDivisions));
+
+        return (band * this.longitudeDivisions) + sector;
+    }
+
+    /**
+     * Rebuilds the tree of a single shard, which may improve the speed of searches in that shard after many points
+     * have been added to or removed from it. Searches may continue to use the shard while its new tree is under
+     * construction; changes to the shard wait for the rebuild to finish.
+     *
+     * @param shardIndex the index of the shard to rebuild
+     *
+     * @throws IndexOutOfBoundsException if the given shard index is negative or not less than the number of shards
+     */
+    public void rebuildShard(final int shardIndex) {
+        final Shard<E> shard = this.shards[shardIndex];
+
+        synchronized (shard.writeMonitor) {
+            final List<E> points;
+
+            shard.lockForSearch();
+
+            try {
+                points = new ArrayList<>(shard.tree);
+            } finally {
+                shard.unlockForSearch();
+            }
+
+            this.replaceTree(shard, points);
+        }
+    }
+
+    /**
+     * Replaces all of the points in a single shard with the given points. Searches may continue to use the shard's
+     * existing points while its new tree is under construction.
+     *
+     * @param shardIndex the index of the shard to rebuild
+     * @param points the new contents of the shard
+     *
+     * @throws IndexOutOfBoundsException if the given shard index is negative or not less than the number of shards
+     * @throws IllegalArgumentException if any of the given points belongs to a different shard
+     */
+    public void rebuildShard(final int shardIndex, final Collection<E> points) {
+        final Shard<E> shard = this.shards[shardIndex];
+
+        for (final E point : points) {
+            if (this.getShardIndex(point) != shardIndex) {
+                throw new IllegalArgumentException("Point " + point + " does not belong to shard " + shardIndex + ".");
+            }
+        }
+
+        synchronized (shard.writeMonitor) {
+            this.replaceTree(shard, new ArrayList<>(points));
+        }
+    }
+
+    private void replaceTree(final Shard<E> shard, final List<E> points) {
+        final VPTreeGeospatialIndex<E> tree = this.buildTree(points);
+
+        shard.lockForWrite();
+
+        try {
+            shard.setTree(tree);
+        } finally {
+            shard.unlockForWrite();
+        }
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults) {
+        return this.getNearestNeighbors(queryPoint, maxResults, null);
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults, final PointFilter<? super E> filter) {
+        if (maxResults < 1) {
+            return new ArrayList<>();
+        }
+
+        final double[] queryVector = UnitVectors.getUnitVector(queryPoint);
+
+        final ShardSearch<E> search = new ShardSearch<E>() {
+            public List<E> search(final VPTreeGeospatialIndex<E> tree) {
+                return tree.getNearestNeighbors(queryPoint, maxResults, filter);
+            }
+        };
+
+        // The shard that contains the query point is the nearest shard (if it has any points at all), and the cheapest
+        // to find. If it produces a full set of results, we only need to search other shards that could contain points
+        // closer than the farthest of those results.
+        final Shard<E> homeShard = this.shards[this.getShardIndex(queryPoint)];
+
+        if (homeShard.bounds != null) {
+            final List<E> homeShardResults = searchShard(homeShard, search);
+
+            if (homeShardResults.size() == maxResults) {
+                final double farthestChordLength = UnitVectors.getChordLength(queryVector,
+                        UnitVectors.getUnitVector(homeShardResults.get(maxResults - 1)), 0);
+
+                final List<Shard<E>> candidates =
+                        this.getShardsWithinChordLength(queryVector, farthestChordLength, homeShard);
+
+                if (candidates.isEmpty()) {
+                    return homeShardResults;
+                }
+
+                // A range search could return arbitrarily many points from a dense shard, so each candidate returns at
+                // most its own nearest neighbors, which are all that could displace any results
+                return mergeNearestNeighbors(homeShardResults, this.searchShards(candidates, search), queryVector, maxResults);
+            }
+        }
+
+        // Otherwise, search the nearest non-empty shard and use its results to decide which others to search
+        final List<Shard<E>> candidates = new ArrayList<>();
+        final double[] minChordLengths = this.getShardsByMinChordLength(queryVector, candidates);
+
+        if (candidates.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final List<E> nearestShardResults = searchShard(candidates.get(0), search);
+
+        double farthestChordLength = Double.POSITIVE_INFINITY;
+
+        if (nearestShardResults.size() == maxResults) {
+            farthestChordLength = UnitVectors.getChordLength(queryVector,
+                    UnitVectors.getUnitVector(nearestShardResults.get(maxResults - 1)), 0);
+        }
+
+        int shardsToSearch = 1;
+
+        while (shardsToSearch < candidates.size() && minChordLengths[shardsToSearch] < farthestChordLength) {
+            shardsToSearch++;
+        }
+
+        return shardsToSearch == 1 ? nearestShardResults : mergeNearestNeighbors(nearestShardResults,
+                this.searchShards(candidates.subList(1, shardsToSearch), search), queryVector, maxResults);
+    }
+
+    private static <E extends GeospatialPoint> List<E> mergeNearestNeighbors(final List<E> firstResults, final List<E>[] otherResults, final double[] queryVector, final int maxResults) {
+        int resultCount = firstResults.size();
+
+        for (final List<E> results : otherResults) {
+            resultCount += results.size();
+        }
+
+        final NearestNeighborCollector<E> collector = new NearestNeighborCollector<>(Math.min(maxResults, resultCount));
+        offerAll(firstResults, queryVector, collector);
+
+        for (final List<E> results : otherResults) {
+            offerAll(results, queryVector, collector);
+        }
+
+        return collector.toSortedList();
+    }
+
+    /**
+     * Returns the non-empty shards (except for the given excluded shard) that could contain points within the given
+     * chord length of the given query vector.
+     */
+    private List<Shard<E>> getShardsWithinChordLength(final double[] queryVector, final double maxChordLength, final Shard<E> excludedShard) {
+        final double angle = 2 * Math.asin(Math.min(UnitVectors.MAX_CHORD_LENGTH, maxChordLength) / 2);
+        final double cosAngle = Math.cos(angle);
+        final double sinAngle = Math.sin(angle);
+
+        final List<Shard<E>> shards = new ArrayList<>();
+
+        for (final Shard<E> shard : this.shards) {
+            final ShardBounds bounds = shard.bounds;
+
+            if (shard != excludedShard && bounds != null &&
+                    bounds.mayContainPointsWithin(queryVector, angle, cosAngle, sinAngle) &&
+                    bounds.boundingBox.getMinChordLength(queryVector, 0) <= maxChordLength) {
+
+                shards.add(shard);
+            }
+        }
+
+        return shards;
+    }
+
+    private static <E extends GeospatialPoint> void offerAll(final List<E> points, final double[] queryVector, final NearestNeighborCollector<E> collector) {
+        final double[] vector = new double[3];
+
+        for (final E point : points) {
+            UnitVectors.setUnitVector(point.getLatitude(), point.getLongitude(), vector, 0);
+            collector.offerPoint(point, UnitVectors.getChordLength(queryVector, vector, 0));
+        }
+    }
+
+    /**
+     * Adds every non-empty shard to the given list in order of increasing minimum chord length between the given
+     * vector and any point in the shard.
+     *
+     * @return the minimum chord lengths of the shards, in the same order as the shards in the list
+     */
+    private double[] getShardsByMinChordLength(final double[] queryVector, final List<Shard<E>> shards) {
+        final List<Shard<E>> sortedShards = new ArrayList<>(this.shards.length);
+        final double[] minChordLengths = new double[this.shards.length];
+
+        for (final Shard<E> shard : this.shards) {
+            final ShardBounds bounds = shard.bounds;
+
+            if (bounds == null) {
+                continue;
+            }
+
+            final double minChordLength = bounds.boundingBox.getMinChordLength(queryVector, 0);
+
+            // There are few enough shards that an insertion sort is perfectly adequate
+            int i = sortedShards.size();
+
+            while (i > 0 && minChordLengths[i - 1] > minChordLength) {
+                minChordLengths[i] = minChordLengths[i - 1];
+                i--;
+            }
+
+            minChordLengths[i] = minChordLength;
+            sortedShards.add(i, shard);
+        }
+
+        shards.addAll(sortedShards);
+
+        return Arrays.copyOf(minChordLengths, sortedShards.size());
+    }
+
+    public Iterator<E> getNearestNeighborIterator(final GeospatialPoint queryPoint) {
+        // Each shard starts as a node whose distance is the distance to the shard's bounds; expanding a shard opens an
+        // iterator over its points, and each point from a shard's iterator is added to the queue along with a node
+        // for the rest of the shard's iterator.
+        final NearestNeighborIterator<E> iterator = new NearestNeighborIterator<E>(UnitVectors.getUnitVector(queryPoint)) {
+
+            private final double[] vector = new double[3];
+
+            @Override
+            @SuppressWarnings("unchecked")
+            void expand(final Object object, final int index, final double minChordLength) {
+                final Iterator<E> shardIterator = object instanceof Shard ?
+                        ((Shard<E>) object).tree.getNearestNeighborIterator(queryPoint) : (Iterator<E>) object;
+
+                if (shardIterator.hasNext()) {
+                    final E point = shardIterator.next();
+
+                    UnitVectors.setUnitVector(point.getLatitude(), point.getLongitude(), this.vector, 0);
+                    final double chordLength = UnitVectors.getChordLength(this.queryVector, this.vector, 0);
+
+                    this.addPoint(point, 0, chordLength);
+
+                    // The shard's remaining points can be no closer than the point we just found
+                    this.addNode(shardIterator, 0, chordLength);
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            E getPoint(final Object object, final int position) {
+                return (E) object;
+            }
+        };
+
+        final List<Shard<E>> shards = new ArrayList<>();
+        final double[] minChordLengths = this.getShardsByMinChordLength(iterator.queryVector, shards);
+
+        for (int i = 0; i < shards.size(); i++) {
+            iterator.addNode(shards.get(i), 0, minChordLengths[i]);
+        }
+
+        return iterator;
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance) {
+        return this.getAllWithinDistance(queryPoint, maxDistance, null);
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance, final PointFilter<? super E> filter) {
+        final double[] queryVector = UnitVectors.getUnitVector(queryPoint);
+        final double maxChordLength = UnitVectors.toChordLength(maxDistance);
+        final List<Shard<E>> candidates = this.getShardsWithinChordLength(queryVector, maxChordLength, null);
+
+        return concatenate(this.searchShards(candidates, new ShardSearch<E>() {
+            public List<E> search(final VPTreeGeospatialIndex<E> tree) {
+                return tree.getAllWithinDistance(queryPoint, maxDistance, filter);
+            }
+        }));
+    }
+
+    public List<E> getAllPointsInBoundingBox(final double south, final double west, final double north, final double east) {
+        final List<Shard<E>> candidates = this.getShardsInBoundingBox(new BoundingBox(south, west, north, east));
+
+        return concatenate(this.searchShards(candidates, new ShardSearch<E>() {
+            public List<E> search(final VPTreeGeospatialIndex<E> tree) {
+                return tree.getAllPointsInBoundingBox(south, west, north, east);
+            }
+        }));
+    }
+
+    private List<Shard<E>> getShardsInBoundingBox(final BoundingBox boundingBox) {
+        final List<Shard<E>> shards = new ArrayList<>();
+
+        for (final Shard<E> shard : this.shards) {
+            final ShardBounds bounds = shard.bounds;
+
+            if (bounds != null && boundingBox.intersects(bounds.limits, 0)) {
+                shards.add(shard);
+            }
+        }
+
+        return shards;
+    }
+
+    // Counts are cheap enough that handing shards to other threads would cost more than it saves, so counting methods
+    // visit shards one at a time
+
+    @Override
+    public int countWithinDistance(final double latitude, final double longitude, final double maxDistance) {
+        final List<Shard<E>> candidates = this.getShardsWithinChordLength(UnitVectors.getUnitVector(latitude, longitude),
+                UnitVectors.toChordLength(maxDistance), null);
+
+        int count = 0;
+
+        for (final Shard<E> shard : candidates) {
+            shard.lockForSearch();
+
+            try {
+                count += shard.tree.countWithinDistance(latitude, longitude, maxDistance);
+            } finally {
+                shard.unlockForSearch();
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public int countInBoundingBox(final double south, final double west, final double north, final double east) {
+        int count = 0;
+
+        for (final Shard<E> shard : this.getShardsInBoundingBox(new BoundingBox(south, west, north, east))) {
+            shard.lockForSearch();
+
+            try {
+                count += shard.tree.countInBoundingBox(south, west, north, east);
+            } finally {
+                shard.unlockForSearch();
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public int[][] countInGrid(final double south, final double west, final double north, final double east, final int rows, final int columns) {
+        final CountGrid grid = new CountGrid(south, west, north, east, rows, columns);
+
+        for (final Shard<E> shard : this.getShardsInBoundingBox(grid.getBoundingBox())) {
+            shard.lockForSearch();
+
+            try {
+                shard.tree.countInGrid(grid);
+            } finally {
+                shard.unlockForSearch();
+            }
+        }
+
+        return grid.getCounts();
+    }
+
+    @Override
+    public List<E> getAllWithinDistanceOfRoute(final List<? extends GeospatialPoint> route, final double maxDistance, final boolean sortByRoutePosition) {
+        final Corridor corridor = new Corridor(route, maxDistance);
+        final List<Shard<E>> candidates = new ArrayList<>();
+
+        for (final Shard<E> shard : this.shards) {
+            final ShardBounds bounds = shard.bounds;
+
+            if (bounds != null && corridor.mayContainPointsWithin(bounds.capCenter, 2 * Math.sin(bounds.capAngle / 2))) {
+                candidates.add(shard);
+            }
+        }
+
+        final List<E> points = concatenate(this.searchShards(candidates, new ShardSearch<E>() {
+            public List<E> search(final VPTreeGeospatialIndex<E> tree) {
+                return tree.getAllWithinDistanceOfRoute(route, maxDistance);
+            }
+        }));
+
+        return sortByRoutePosition ? corridor.sortByRoutePosition(points) : points;
+    }
+
+    /**
+     * Runs the given search against each of the given shards, in parallel if there's more than one shard and the pool
+     * has more than one thread.
+     *
+     * @return the results from each shard, in the same order as the given shards
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private List<E>[] searchShards(final List<Shard<E>> shards, final ShardSearch<E> search) {
+        final List<E>[] results = new List[shards.size()];
+
+        if (shards.size() == 1 || this.pool.getParallelism() == 1) {
+            // Handing work to another thread costs more than it saves if there's no other thread to share the work
+            for (int i = 0; i < results.length; i++) {
+                results[i] = searchShard(shards.get(i), search);
+            }
+        } else if (shards.size() > 1) {
+            this.pool.invoke(new ShardSearchTask<>(search, shards, 0, shards.size(), results));
+        }
+
+        return results;
+    }
+
+    private static <E extends GeospatialPoint> List<E> searchShard(final Shard<E> shard, final ShardSearch<E> search) {
+        shard.lockForSearch();
+
+        try {
+            return search.search(shard.tree);
+        } finally {
+            shard.unlockForSearch();
+        }
+    }
+
+    private static <E> List<E> concatenate(final List<E>[] lists) {
+        if (lists.length == 1) {
+            return lists[0];
+        }
+
+        int size = 0;
+
+        for (final List<E> list : lists) {
+            size += list.size();
+        }
+
+        final List<E> concatenated = new ArrayList<>(size);
+
+        for (final List<E> list : lists) {
+            concatenated.addAll(list);
+        }
+
+        return concatenated;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+
+        for (final Shard<E> shard : this.shards) {
+            shard.lockForSearch();
+
+            try {
+                size += shard.tree.size();
+            } finally {
+                shard.unlockForSearch();
+            }
+        }
+
+        return size;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof GeospatialPoint)) {
+            return false;
+        }
+
+        final Shard<E> shard = this.shards[this.getShardIndex((GeospatialPoint) o)];
+        shard.lockForSearch();
+
+        try {
+            return shard.tree.contains(o);
+        } finally {
+            shard.unlockForSearch();
+        }
+    }
+
+    @Override
+    public boolean add(final E point) {
+        final Shard<E> shard = this.shards[this.getShardIndex(point)];
+
+        synchronized (shard.writeMonitor) {
+            shard.lockForWrite();
+
+            try {
+                // Expand the shard's bounds first so searches that skip the shard based on its old bounds can't see
+                // the new point
+                shard.expandBounds(point);
+                shard.tree.add(point);
+            } finally {
+                shard.unlockForWrite();
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (!(o instanceof GeospatialPoint)) {
+            return false;
+        }
+
+        final Shard<E> shard = this.shards[this.getShardIndex((GeospatialPoint) o)];
+
+        synchronized (shard.writeMonitor) {
+            shard.lockForWrite();
+
+            try {
+                return shard.tree.remove(o);
+            } finally {
+                shard.unlockForWrite();
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (final Shard<E> shard : this.shards) {
+            synchronized (shard.writeMonitor) {
+                shard.lockForWrite();
+
+                try {
+                    shard.setTree(this.buildTree(new ArrayList<E>()));
+                } finally {
+                    shard.unlockForWrite();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator over the points in this index. The iterator copies the contents of each shard as it reaches
+     * that shard, and so never fails because of concurrent changes, but may or may not reflect changes made after it
+     * was created.
+     *
+     * @return an iterator over the points in this index
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int shardIndex = 0;
+            private List<E> shardPoints = new ArrayList<>();
+            private int pointIndex = 0;
+
+            private E lastPoint;
+
+            @Override
+            public boolean hasNext() {
+                while (this.pointIndex >= this.shardPoints.size() && this.shardIndex < ShardedGeospatialIndex.this.shards.length) {
+                    final Shard<E> shard = ShardedGeospatialIndex.this.shards[this.shardIndex++];
+                    shard.lockForSearch();
+
+                    try {
+                        this.shardPoints = new ArrayList<>(shard.tree);
+                    } finally {
+                        shard.unlockForSearch();
+                    }
+
+                    this.pointIndex = 0;
+                }
+
+                return this.pointIndex < this.shardPoints.size();
+            }
+
+            @Override
+            public E next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                this.lastPoint = this.shardPoints.get(this.pointIndex++);
+                return this.lastPoint;
+            }
+
+            @Override
+            public void remove() {
+                if (this.lastPoint == null) {
+                    throw new IllegalStateException();
+                }
+
+                ShardedGeospatialIndex.this.remove(this.lastPoint);
+                this.lastPoint = null;
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package com.eatthepath.jeospatial;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads updates from different threads across several cells so concurrent updates rarely contend
+ * for the same cache line. Reading the counter sums all of the cells and so is much more expensive than updating it;
+ * sums taken while other threads are updating the counter reflect some, but not necessarily all, of those updates.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class StripedCounter {
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    // Each stripe occupies a full (64-byte) cache line so updates to neighboring stripes don't interfere
+    private static final int CELL_SPACING = 8;
+
+    StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    StripedCounter(final int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive.");
+        }
+
+        final int stripeCount = Integer.highestOneBit(Math.min(concurrency, 1 << 16) * 2 - 1);
+
+        this.cells = new AtomicLongArray(stripeCount * CELL_SPACING);
+        this.mask = stripeCount - 1;
+    }
+
+    void add(final long x) {
+        this.cells.getAndAdd(this.getStripe() * CELL_SPACING, x);
+    }
+
+    void increment() {
+        this.add(1);
+    }
+
+    long sum() {
+        long sum = 0;
+
+        for (int i = 0; i < this.cells.length(); i += CELL_SPACING) {
+            sum += this.cells.get(i);
+        }
+
+        return sum;
+    }
+
+    void reset() {
+        for (int i = 0; i < this.cells.length(); i += CELL_SPACING) {
+            this.cells.set(i, 0);
+        }
+    }
+
+    private int getStripe() {
+        // Thread IDs are usually sequential; scramble them so neighboring threads land on different stripes
+        final long hash = Thread.currentThread().getId() * 0x9e3779b97f4a7c15L;
+        return (int) (hash >>> 32) & this.mask;
+    }
+}
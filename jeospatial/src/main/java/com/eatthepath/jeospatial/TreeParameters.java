@@ -0,0 +1,112 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * <p>Parameters that control the shape of the tree behind a {@link VPTreeGeospatialIndex}. Parameters are immutable
+ * and may be shared by any number of indices.</p>
+ *
+ * <p>The node capacity is the largest number of points a leaf node may hold. Searches scan leaf nodes linearly, so
+ * larger leaves mean fewer nodes to visit but more points to check in each leaf.</p>
+ *
+ * <p>The number of vantage point candidates controls how the tree chooses the vantage point for each internal node.
+ * With a single candidate, vantage points are chosen at random. With more than one candidate, each node chooses that
+ * many candidates at random and keeps the one whose distances to a random sample of the node's points are most spread
+ * out; such vantage points tend to divide points more cleanly, which lets searches prune more of the tree, especially
+ * when points are strongly clustered. Evaluating candidates makes building the tree (and splitting nodes as points are
+ * added) more expensive.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see TreeTuner
+ */
+public final class TreeParameters {
+
+    private final int nodeCapacity;
+    private final int vantagePointCandidates;
+
+    public static final int DEFAULT_NODE_CAPACITY = 32;
+    public static final int DEFAULT_VANTAGE_POINT_CANDIDATES = 1;
+
+    /**
+     * The default parameters, which build trees with leaves of up to {@value #DEFAULT_NODE_CAPACITY} points and
+     * random vantage points.
+     */
+    public static final TreeParameters DEFAULT = new TreeParameters(DEFAULT_NODE_CAPACITY);
+
+    /**
+     * Constructs a set of parameters with the given node capacity and randomly-chosen vantage points.
+     *
+     * @param nodeCapacity the maximum number of points to store in a leaf node of the tree
+     *
+     * @throws IllegalArgumentException if the node capacity is not positive
+     */
+    public TreeParameters(final int nodeCapacity) {
+        this(nodeCapacity, DEFAULT_VANTAGE_POINT_CANDIDATES);
+    }
+
+    /**
+     * Constructs a set of parameters with the given node capacity and number of vantage point candidates.
+     *
+     * @param nodeCapacity the maximum number of points to store in a leaf node of the tree
+     * @param vantagePointCandidates the number of candidates from which to choose each vantage point
+     *
+     * @throws IllegalArgumentException if either the node capacity or the number of vantage point candidates is not
+     * positive
+     */
+    public TreeParameters(final int nodeCapacity, final int vantagePointCandidates) {
+        if (nodeCapacity < 1) {
+            throw new IllegalArgumentException("Node capacity must be positive.");
+        }
+
+        if (vantagePointCandidates < 1) {
+            throw new IllegalArgumentException("Number of vantage point candidates must be positive.");
+        }
+
+        this.nodeCapacity = nodeCapacity;
+        this.vantagePointCandidates = vantagePointCandidates;
+    }
+
+    /**
+     * Returns the maximum number of points to store in a leaf node of the tree.
+     *
+     * @return the maximum number of points to store in a leaf node of the tree
+     */
+    public int getNodeCapacity() {
+        return this.nodeCapacity;
+    }
+
+    /**
+     * Returns the number of candidates from which to choose each vantage point. A single candidate means that vantage
+     * points are chosen at random.
+     *
+     * @return the number of candidates from which to choose each vantage point
+     */
+    public int getVantagePointCandidates() {
+        return this.vantagePointCandidates;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.nodeCapacity + this.vantagePointCandidates;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof TreeParameters)) {
+            return false;
+        }
+
+        final TreeParameters other = (TreeParameters) obj;
+
+        return this.nodeCapacity == other.nodeCapacity && this.vantagePointCandidates == other.vantagePointCandidates;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeParameters [nodeCapacity=" + this.nodeCapacity +
+                ", vantagePointCandidates=" + this.vantagePointCandidates + "]";
+    }
+}
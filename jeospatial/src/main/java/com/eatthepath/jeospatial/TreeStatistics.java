@@ -0,0 +1,126 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * A summary of the shape of a vantage point tree. Trees that have been built from scratch are nearly balanced; trees
+ * that have grown or shrunk through many individual additions and removals may become deeper and less balanced, and
+ * comparing their statistics to those of a freshly-built tree can show whether rebuilding would help.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ *
+ * @see VPTreeGeospatialIndex#getTreeStatistics()
+ */
+public class TreeStatistics {
+
+    private int nodeCount;
+    private int leafCount;
+    private int maxDepth;
+    private long totalLeafDepth;
+
+    private int pointCount;
+    private int minLeafSize = Integer.MAX_VALUE;
+    private int maxLeafSize;
+
+    TreeStatistics() {
+    }
+
+    void addInternalNode() {
+        this.nodeCount++;
+    }
+
+    void addLeaf(final int depth, final int size) {
+        this.nodeCount++;
+        this.leafCount++;
+        this.maxDepth = Math.max(this.maxDepth, depth);
+        this.totalLeafDepth += depth;
+
+        this.pointCount += size;
+        this.minLeafSize = Math.min(this.minLeafSize, size);
+        this.maxLeafSize = Math.max(this.maxLeafSize, size);
+    }
+
+    /**
+     * Returns the total number of nodes (both internal and leaf nodes) in the tree.
+     *
+     * @return the total number of nodes in the tree
+     */
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Returns the number of leaf nodes in the tree.
+     *
+     * @return the number of leaf nodes in the tree
+     */
+    public int getLeafCount() {
+        return this.leafCount;
+    }
+
+    /**
+     * Returns the depth of the deepest leaf in the tree. The root node has a depth of zero.
+     *
+     * @return the depth of the deepest leaf in the tree
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * Returns the mean depth of the leaves in the tree.
+     *
+     * @return the mean depth of the leaves in the tree, or {@code NaN} if the tree is empty
+     */
+    public double getMeanLeafDepth() {
+        return this.leafCount == 0 ? Double.NaN : (double) this.totalLeafDepth / this.leafCount;
+    }
+
+    /**
+     * Returns a measure of the balance of the tree: the ratio of the mean leaf depth of a perfectly balanced tree with
+     * the same number of leaves to the mean leaf depth of this tree. Perfectly balanced trees have a balance of 1, and
+     * the balance of a tree falls toward zero as the tree becomes less balanced.
+     *
+     * @return the balance of the tree, or {@code NaN} if the tree is empty
+     */
+    public double getBalance() {
+        if (this.leafCount == 0) {
+            return Double.NaN;
+        }
+
+        return this.totalLeafDepth == 0 ? 1 : (Math.log(this.leafCount) / Math.log(2)) / this.getMeanLeafDepth();
+    }
+
+    /**
+     * Returns the number of points in the smallest leaf in the tree.
+     *
+     * @return the number of points in the smallest leaf, or zero if the tree is empty
+     */
+    public int getMinLeafSize() {
+        return this.leafCount == 0 ? 0 : this.minLeafSize;
+    }
+
+    /**
+     * Returns the number of points in the largest leaf in the tree.
+     *
+     * @return the number of points in the largest leaf in the tree
+     */
+    public int getMaxLeafSize() {
+        return this.maxLeafSize;
+    }
+
+    /**
+     * Returns the mean number of points in the leaves of the tree.
+     *
+     * @return the mean number of points in the leaves of the tree, or {@code NaN} if the tree is empty
+     */
+    public double getMeanLeafSize() {
+        return this.leafCount == 0 ? Double.NaN : (double) this.pointCount / this.leafCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TreeStatistics [nodeCount=" + this.nodeCount + ", leafCount=" + this.leafCount +
+                ", maxDepth=" + this.maxDepth + ", meanLeafDepth=" + this.getMeanLeafDepth() +
+                ", balance=" + this.getBalance() + ", minLeafSize=" + this.getMinLeafSize() +
+                ", maxLeafSize=" + this.maxLeafSize + ", meanLeafSize=" + this.getMeanLeafSize() + "]";
+    }
+}
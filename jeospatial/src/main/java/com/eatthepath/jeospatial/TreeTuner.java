@@ -0,0 +1,210 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Chooses {@link TreeParameters} for a dataset and query workload. A tuner builds a tree from a sample of the
+ * points to be indexed for each set of candidate parameters, runs a sample of nearest-neighbor queries against each
+ * tree, and chooses the parameters whose tree does the least work per query.</p>
+ *
+ * <p>Tuners measure work by counting distance calculations and visits to tree nodes rather than by timing queries,
+ * so their choices don't depend on the load of the machine they run on. Each node visit is weighted as
+ * {@value #NODE_VISIT_COST} distance calculations to account for the cost of moving from node to node, which is much
+ * higher than the cost of moving from one point to the next in a leaf. Tuners do not account for the cost of building
+ * the tree.</p>
+ *
+ * <p>Samples should resemble the real dataset and workload. Nearest neighbors are farther apart in a sample than in
+ * the full dataset, and so tuners tend to favor slightly larger leaves than the full dataset would need; samples
+ * should be as large as is practical. A tenth of the dataset (or all of it, for smaller datasets) and a thousand or
+ * so real query points is usually enough.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class TreeTuner {
+
+    private final Collection<? extends GeospatialPoint> samplePoints;
+    private final List<? extends GeospatialPoint> queryPoints;
+    private final int maxResults;
+
+    /**
+     * The number of distance calculations equivalent to a single visit to a tree node.
+     */
+    public static final double NODE_VISIT_COST = 4;
+
+    private static final int[] DEFAULT_NODE_CAPACITIES = { 8, 16, 32, 64, 128 };
+    private static final int[] DEFAULT_VANTAGE_POINT_CANDIDATES = { 1, 8 };
+
+    /**
+     * Constructs a new tuner for the given sample points and query workload.
+     *
+     * @param samplePoints a sample of the points to be indexed
+     * @param queryPoints a sample of the points for which to find nearest neighbors
+     * @param maxResults the number of nearest neighbors to find for each query point
+     *
+     * @throws IllegalArgumentException if either sample is empty or if the number of nearest neighbors to find is not
+     * positive
+     */
+    public TreeTuner(final Collection<? extends GeospatialPoint> samplePoints, final List<? extends GeospatialPoint> queryPoints, final int maxResults) {
+        if (samplePoints.isEmpty()) {
+            throw new IllegalArgumentException("Sample points must not be empty.");
+        }
+
+        if (queryPoints.isEmpty()) {
+            throw new IllegalArgumentException("Query points must not be empty.");
+        }
+
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("Number of results must be positive.");
+        }
+
+        this.samplePoints = samplePoints;
+        this.queryPoints = queryPoints;
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Returns the candidate parameters a tuner considers by default: every combination of node capacities of 8, 16, 32,
+     * 64, and 128 points and of random or sampled (from eight candidates) vantage points.
+     *
+     * @return the default candidate parameters
+     */
+    public static List<TreeParameters> getDefaultCandidates() {
+        final List<TreeParameters> candidates = new ArrayList<>();
+
+        for (final int nodeCapacity : DEFAULT_NODE_CAPACITIES) {
+            for (final int vantagePointCandidates : DEFAULT_VANTAGE_POINT_CANDIDATES) {
+                candidates.add(new TreeParameters(nodeCapacity, vantagePointCandidates));
+            }
+        }
+
+        return Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * Chooses the best of the default candidate parameters for this tuner's sample points and queries.
+     *
+     * @return the candidate parameters whose tree does the least work per query
+     *
+     * @see #getDefaultCandidates()
+     */
+    public TreeParameters tune() {
+        return this.tune(getDefaultCandidates());
+    }
+
+    /**
+     * Chooses the best of the given candidate parameters for this tuner's sample points and queries.
+     *
+     * @param candidates the parameters from which to choose
+     *
+     * @return the candidate parameters whose tree does the least work per query
+     *
+     * @throws IllegalArgumentException if no candidates are given
+     */
+    public TreeParameters tune(final Collection<TreeParameters> candidates) {
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("Candidates must not be empty.");
+        }
+
+        Evaluation best = null;
+
+        for (final TreeParameters parameters : candidates) {
+            final Evaluation evaluation = this.evaluate(parameters);
+
+            if (best == null || evaluation.getCost() < best.getCost()) {
+                best = evaluation;
+            }
+        }
+
+        return best.getParameters();
+    }
+
+    /**
+     * Measures the work done per query by a tree built from this tuner's sample points with the given parameters.
+     *
+     * @param parameters the parameters with which to build the tree
+     *
+     * @return the work done per query
+     */
+    public Evaluation evaluate(final TreeParameters parameters) {
+        final List<GeospatialPoint> points = new ArrayList<>(this.samplePoints);
+        final VPTreeGeospatialIndex<GeospatialPoint> index = new VPTreeGeospatialIndex<>(parameters, points);
+
+        final QueryInstrumentation instrumentation = new QueryInstrumentation();
+        index.setInstrumentation(instrumentation);
+
+        final SearchResults<GeospatialPoint> results = new SearchResults<>();
+
+        for (final GeospatialPoint queryPoint : this.queryPoints) {
+            index.getNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), this.maxResults, results);
+        }
+
+        final QueryMetrics metrics = instrumentation.getMetrics(QueryType.NEAREST_NEIGHBORS);
+        final double queryCount = metrics.getQueryCount();
+
+        return new Evaluation(parameters, metrics.getDistanceCalculations() / queryCount,
+                metrics.getNodesVisited() / queryCount);
+    }
+
+    /**
+     * The work done per query by a tree built with a specific set of parameters.
+     *
+     * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+     */
+    public static class Evaluation {
+        private final TreeParameters parameters;
+        private final double distanceCalculationsPerQuery;
+        private final double nodesVisitedPerQuery;
+
+        private Evaluation(final TreeParameters parameters, final double distanceCalculationsPerQuery, final double nodesVisitedPerQuery) {
+            this.parameters = parameters;
+            this.distanceCalculationsPerQuery = distanceCalculationsPerQuery;
+            this.nodesVisitedPerQuery = nodesVisitedPerQuery;
+        }
+
+        /**
+         * Returns the parameters with which the evaluated tree was built.
+         *
+         * @return the parameters with which the evaluated tree was built
+         */
+        public TreeParameters getParameters() {
+            return this.parameters;
+        }
+
+        /**
+         * Returns the mean number of distance calculations per query, including calculations against vantage points.
+         *
+         * @return the mean number of distance calculations per query
+         */
+        public double getDistanceCalculationsPerQuery() {
+            return this.distanceCalculationsPerQuery;
+        }
+
+        /**
+         * Returns the mean number of tree nodes (both internal and leaf nodes) visited per query.
+         *
+         * @return the mean number of tree nodes visited per query
+         */
+        public double getNodesVisitedPerQuery() {
+            return this.nodesVisitedPerQuery;
+        }
+
+        /**
+         * Returns the estimated cost per query in units of distance calculations; see {@link TreeTuner}.
+         *
+         * @return the estimated cost per query
+         */
+        public double getCost() {
+            return this.distanceCalculationsPerQuery + NODE_VISIT_COST * this.nodesVisitedPerQuery;
+        }
+
+        @Override
+        public String toString() {
+            return "Evaluation [parameters=" + this.parameters + ", distanceCalculationsPerQuery=" +
+                    this.distanceCalculationsPerQuery + ", nodesVisitedPerQuery=" + this.nodesVisitedPerQuery +
+                    ", cost=" + this.getCost() + "]";
+        }
+    }
+}
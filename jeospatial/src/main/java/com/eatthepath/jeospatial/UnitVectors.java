@@ -0,0 +1,171 @@
+package com.eatthepath.jeospatial;
+
+/**
+ * Utility methods for representing points on the earth's surface as three-dimensional unit vectors. The straight-line
+ * ("chord") distance between two unit vectors grows monotonically with the great-circle distance between the points
+ * they represent, but is much cheaper to calculate once the vectors are known. Indices can convert each point to a
+ * vector once, compare points by chord length, and convert to great-circle distances only when they need to.
+ *
+ * <p>Vectors are stored in {@code double} arrays as three consecutive components; the vector at index {@code i}
+ * occupies slots {@code 3i}, {@code 3i + 1}, and {@code 3i + 2}.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class UnitVectors {
+
+    /**
+     * The largest possible chord length between two points on a unit sphere.
+     */
+    static final double MAX_CHORD_LENGTH = 2;
+
+    private UnitVectors() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Returns a new three-element array containing the unit vector for the given point.
+     *
+     * @param point the point for which to calculate a unit vector
+     *
+     * @return the unit vector for the given point
+     */
+    static double[] getUnitVector(final GeospatialPoint point) {
+        return getUnitVector(point.getLatitude(), point.getLongitude());
+    }
+
+    /**
+     * Returns a new three-element array containing the unit vector for the given coordinates.
+     *
+     * @param latitude the latitude of the point in degrees
+     * @param longitude the longitude of the point in degrees
+     *
+     * @return the unit vector for the given coordinates
+     */
+    static double[] getUnitVector(final double latitude, final double longitude) {
+        final double[] vector = new double[3];
+        setUnitVector(latitude, longitude, vector, 0);
+
+        return vector;
+    }
+
+    /**
+     * Calculates the unit vector for the given coordinates and writes it to the given array at the given vector index.
+     *
+     * @param latitude the latitude of the point in degrees
+     * @param longitude the longitude of the point in degrees
+     * @param vectors the array to which to write the vector
+     * @param index the vector index (not the array offset) at which to write the vector
+     */
+    static void setUnitVector(final double latitude, final double longitude, final double[] vectors, final int index) {
+        final double lat = Math.toRadians(latitude);
+        final double lon = Math.toRadians(longitude);
+        final double cosLat = Math.cos(lat);
+
+        vectors[3 * index] = cosLat * Math.cos(lon);
+        vectors[3 * index + 1] = cosLat * Math.sin(lon);
+        vectors[3 * index + 2] = Math.sin(lat);
+    }
+
+    /**
+     * Returns the chord length between two vectors.
+     *
+     * @param a the array containing the first vector
+     * @param aIndex the vector index of the first vector
+     * @param b the array containing the second vector
+     * @param bIndex the vector index of the second vector
+     *
+     * @return the chord length between the two vectors, in earth radii
+     */
+    static double getChordLength(final double[] a, final int aIndex, final double[] b, final int bIndex) {
+        final double dx = a[3 * aIndex] - b[3 * bIndex];
+        final double dy = a[3 * aIndex + 1] - b[3 * bIndex + 1];
+        final double dz = a[3 * aIndex + 2] - b[3 * bIndex + 2];
+
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Returns the chord length between a single vector and a vector in an array of vectors.
+     *
+     * @param vector a three-element array containing the first vector
+     * @param vectors the array containing the second vector
+     * @param index the vector index of the second vector
+     *
+     * @return the chord length between the two vectors, in earth radii
+     */
+    static double getChordLength(final double[] vector, final double[] vectors, final int index) {
+        return getChordLength(vector, 0, vectors, index);
+    }
+
+    /**
+     * Returns the square of the chord length between a single vector and a vector in an array of vectors. Squared
+     * chord lengths skip the square root needed for a true chord length, and the square root of the value returned by
+     * this method is exactly equal to the value returned by {@link #getChordLength(double[], double[], int)} for the
+     * same vectors.
+     *
+     * @param vector a three-element array containing the first vector
+     * @param vectors the array containing the second vector
+     * @param index the vector index of the second vector
+     *
+     * @return the squared chord length between the two vectors, in square earth radii
+     */
+    static double getSquaredChordLength(final double[] vector, final double[] vectors, final int index) {
+        final double dx = vector[0] - vectors[3 * index];
+        final double dy = vector[1] - vectors[3 * index + 1];
+        final double dz = vector[2] - vectors[3 * index + 2];
+
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Returns the largest squared chord length whose square root (as calculated by {@link Math#sqrt(double)}) is no
+     * greater than the given chord length. A squared chord length is no greater than the returned limit if and only if
+     * its square root is no greater than the given chord length, so callers can compare squared chord lengths to the
+     * limit instead of calculating square roots.
+     *
+     * @param chordLength the chord length, in earth radii, or positive infinity; negative chord lengths produce a limit
+     * smaller than every squared chord length
+     *
+     * @return the limit for squared chord lengths, in square earth radii
+     */
+    static double getSquaredChordLengthLimit(final double chordLength) {
+        if (chordLength < 0) {
+            return -1;
+        }
+
+        // Math.sqrt is correctly rounded and never decreases as its argument grows, and sqrt(c * c) == c, so every value
+        // up to c * c has a square root no greater than c. Rounding c * c may leave out a value or two just above it
+        // whose square roots also round to c, though.
+        double limit = chordLength * chordLength;
+
+        while (limit < Double.POSITIVE_INFINITY && Math.sqrt(Math.nextUp(limit)) <= chordLength) {
+            limit = Math.nextUp(limit);
+        }
+
+        return limit;
+    }
+
+    /**
+     * Converts a chord length to a great-circle distance.
+     *
+     * @param chordLength the chord length, in earth radii
+     *
+     * @return the great-circle distance in meters
+     */
+    static double toDistance(final double chordLength) {
+        return 2 * Math.asin(Math.min(1, chordLength / 2)) * HaversineDistanceFunction.EARTH_RADIUS;
+    }
+
+    /**
+     * Converts a great-circle distance to a chord length. Distances greater than half of the earth's circumference
+     * are clamped to the length of the earth's diameter.
+     *
+     * @param distance the great-circle distance in meters
+     *
+     * @return the chord length, in earth radii
+     */
+    static double toChordLength(final double distance) {
+        final double angle = distance / HaversineDistanceFunction.EARTH_RADIUS;
+        return angle >= Math.PI ? MAX_CHORD_LENGTH : 2 * Math.sin(angle / 2);
+    }
+}
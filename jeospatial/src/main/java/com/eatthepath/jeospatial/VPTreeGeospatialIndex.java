@@ -2,98 +2,702 @@ package com.eatthepath.jeospatial;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
 
-import com.eatthepath.jvptree.VPTree;
+/**
+ * A geospatial index backed by a vantage point tree. Each point's latitude and longitude are converted to a
+ * three-dimensional unit vector once, when the point is added to the index; searches compare points by the chord
+ * length between their vectors (which grows monotonically with great-circle distance) and convert to great-circle
+ * distances only at the boundaries of the search. This avoids evaluating trigonometric functions for every distance
+ * calculation in the tree.
+ *
+ * <p>Unlike earlier versions, this class does not extend jvptree's {@code VPTree}, whose nodes it can't reach. It
+ * still implements jvptree's {@link com.eatthepath.jvptree.SpatialIndex} interface through {@link GeospatialIndex},
+ * and callers that need a common type for several indices should use one of those interfaces.</p>
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+public class VPTreeGeospatialIndex<E extends GeospatialPoint> extends AbstractGeospatialIndex<E> {
 
-public class VPTreeGeospatialIndex<E extends GeospatialPoint> extends VPTree<GeospatialPoint, E> implements GeospatialIndex<E> {
+    private final TreeParameters parameters;
+    private VPTreeNode<E> rootNode;
+
+    private volatile QueryInstrumentation instrumentation;
+    private volatile DistanceMode distanceMode = DistanceMode.EXACT;
+
+    public static final int DEFAULT_NODE_CAPACITY = TreeParameters.DEFAULT_NODE_CAPACITY;
 
     public VPTreeGeospatialIndex() {
-        super(new HaversineDistanceFunction());
+        this(TreeParameters.DEFAULT);
     }
 
     public VPTreeGeospatialIndex(final Collection<E> points) {
-        super(new HaversineDistanceFunction(), points);
+        this(TreeParameters.DEFAULT, points);
+    }
+
+    public VPTreeGeospatialIndex(final int nodeCapacity) {
+        this(new TreeParameters(nodeCapacity));
+    }
+
+    public VPTreeGeospatialIndex(final int nodeCapacity, final Collection<E> points) {
+        this(new TreeParameters(nodeCapacity), points);
+    }
+
+    /**
+     * Constructs a new, empty index whose tree has the given shape.
+     *
+     * @param parameters the parameters that control the shape of the tree
+     */
+    public VPTreeGeospatialIndex(final TreeParameters parameters) {
+        if (parameters == null) {
+            throw new NullPointerException("Parameters must not be null.");
+        }
+
+        this.parameters = parameters;
+    }
+
+    /**
+     * Constructs a new index containing the given points whose tree has the given shape.
+     *
+     * @param parameters the parameters that control the shape of the tree
+     * @param points the points to add to the index
+     */
+    public VPTreeGeospatialIndex(final TreeParameters parameters, final Collection<E> points) {
+        this(parameters);
+        this.addAll(points);
+    }
+
+    /**
+     * Constructs a new index containing the given points, dividing the work of building the tree among the threads of
+     * the given pool. The resulting index is equivalent to one built sequentially.
+     *
+     * @param points the points to add to the index
+     * @param pool the pool in which to build the tree
+     */
+    public VPTreeGeospatialIndex(final Collection<E> points, final ForkJoinPool pool) {
+        this(DEFAULT_NODE_CAPACITY, points, pool);
+    }
+
+    /**
+     * Constructs a new index containing the given points, dividing the work of building the tree among the threads of
+     * the given pool. The resulting index is equivalent to one built sequentially.
+     *
+     * @param nodeCapacity the maximum number of points to store in a leaf node of the tree
+     * @param points the points to add to the index
+     * @param pool the pool in which to build the tree
+     */
+    public VPTreeGeospatialIndex(final int nodeCapacity, final Collection<E> points, final ForkJoinPool pool) {
+        this(new TreeParameters(nodeCapacity), points, pool);
+    }
+
+    /**
+     * Constructs a new index containing the given points whose tree has the given shape, dividing the work of
+     * building the tree among the threads of the given pool. The resulting index is equivalent to one built
+     * sequentially.
+     *
+     * @param parameters the parameters that control the shape of the tree
+     * @param points the points to add to the index
+     * @param pool the pool in which to build the tree
+     */
+    public VPTreeGeospatialIndex(final TreeParameters parameters, final Collection<E> points, final ForkJoinPool pool) {
+        this(parameters);
+
+        if (!points.isEmpty()) {
+            this.rootNode = VPTreeNode.build(points.toArray(), parameters, pool);
+        }
+    }
+
+    /**
+     * Constructs a new index around an existing tree.
+     *
+     * @param parameters the parameters that control the shape of the tree
+     * @param rootNode the root node of the tree, or {@code null} if the index is empty
+     */
+    VPTreeGeospatialIndex(final TreeParameters parameters, final VPTreeNode<E> rootNode) {
+        this(parameters);
+        this.rootNode = rootNode;
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults) {
+        return this.getNearestNeighbors(queryPoint, maxResults, null);
+    }
+
+    public List<E> getNearestNeighbors(final GeospatialPoint queryPoint, final int maxResults, final PointFilter<? super E> filter) {
+        final QueryInstrumentation instrumentation = this.instrumentation;
+        final long startNanos = instrumentation != null ? System.nanoTime() : 0;
+        final QueryStatistics statistics = instrumentation != null ? new QueryStatistics() : null;
+
+        final List<E> neighbors;
+
+        if (this.rootNode == null || maxResults < 1) {
+            neighbors = new ArrayList<>();
+        } else {
+            final NearestNeighborCollector<E> collector =
+                    new NearestNeighborCollector<>(Math.min(maxResults, this.rootNode.size()));
+
+            this.rootNode.collectNearestNeighbors(UnitVectors.getUnitVector(queryPoint), collector, filter, statistics, this.distanceMode);
+            neighbors = collector.toSortedList();
+        }
+
+        if (instrumentation != null) {
+            recordQuery(instrumentation, QueryType.NEAREST_NEIGHBORS, statistics, neighbors.size(), startNanos);
+        }
+
+        return neighbors;
+    }
+
+    public Iterator<E> getNearestNeighborIterator(final GeospatialPoint queryPoint) {
+        if (this.rootNode == null) {
+            return Collections.<E>emptyIterator();
+        }
+
+        return this.rootNode.getNearestNeighborIterator(UnitVectors.getUnitVector(queryPoint));
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance) {
+        return this.getAllWithinDistance(queryPoint, maxDistance, null);
+    }
+
+    public List<E> getAllWithinDistance(final GeospatialPoint queryPoint, final double maxDistance, final PointFilter<? super E> filter) {
+        final QueryInstrumentation instrumentation = this.instrumentation;
+        final long startNanos = instrumentation != null ? System.nanoTime() : 0;
+        final QueryStatistics statistics = instrumentation != null ? new QueryStatistics() : null;
+
+        final SearchResults<E> results = new SearchResults<>();
+
+        if (this.rootNode != null) {
+            this.rootNode.collectAllWithinChordLength(UnitVectors.getUnitVector(queryPoint),
+                    UnitVectors.toChordLength(maxDistance), results, filter, statistics, this.distanceMode);
+        }
+
+        if (instrumentation != null) {
+            recordQuery(instrumentation, QueryType.WITHIN_DISTANCE, statistics, results.size(), startNanos);
+        }
+
+        return results.toList();
+    }
+
+    @Override
+    public List<E> getAllWithinDistanceOfRoute(final List<? extends GeospatialPoint> route, final double maxDistance, final boolean sortByRoutePosition) {
+        final QueryInstrumentation instrumentation = this.instrumentation;
+        final long startNanos = instrumentation != null ? System.nanoTime() : 0;
+        final QueryStatistics statistics = instrumentation != null ? new QueryStatistics() : null;
+
+        final Corridor corridor = new Corridor(route, maxDistance);
+        final SearchResults<E> results = new SearchResults<>();
+
+        if (this.rootNode != null) {
+            this.rootNode.collectAllInCorridor(corridor, 0, corridor.getInitialStackSize(), results, sortByRoutePosition, statistics);
+        }
+
+        if (instrumentation != null) {
+            recordQuery(instrumentation, QueryType.WITHIN_DISTANCE_OF_ROUTE, statistics, results.size(), startNanos);
+        }
+
+        return sortByRoutePosition ? corridor.sortByRoutePosition(results) : results.toList();
     }
 
     public List<E> getAllPointsInBoundingBox(final double south, final double west, final double north, final double east) {
-        final GeospatialPoint centroid;
-        {
-            // Via http://www.movable-type.co.uk/scripts/latlong.html
-            final double Bx = Math.cos(north) * Math.cos(east-west);
-            final double By = Math.cos(north) * Math.sin(east-west);
-
-            final double latitude = Math.atan2(Math.sin(south) + Math.sin(north), Math.sqrt((Math.cos(south) + Bx) * (Math.cos(south) + Bx) + (By * By)));
-            final double longitude = west + Math.atan2(By, Math.cos(south) + Bx);
-
-            centroid = new GeospatialPoint() {
-                public double getLongitude() {
-                    return longitude;
-                }
+        final QueryInstrumentation instrumentation = this.instrumentation;
+        final long startNanos = instrumentation != null ? System.nanoTime() : 0;
+        final QueryStatistics statistics = instrumentation != null ? new QueryStatistics() : null;
 
-                public double getLatitude() {
-                    return latitude;
-                }
-            };
+        final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+        final SearchResults<E> results = new SearchResults<>();
+
+        if (this.rootNode != null) {
+            this.rootNode.collectAllInBoundingBox(boundingBox, results, statistics);
         }
 
-        final double searchRadius;
-        {
-            searchRadius = new HaversineDistanceFunction().getDistance(centroid, new GeospatialPoint() {
-                public double getLongitude() {
-                    return east;
-                }
+        if (instrumentation != null) {
+            recordQuery(instrumentation, QueryType.BOUNDING_BOX, statistics, results.size(), startNanos);
+        }
 
-                public double getLatitude() {
-                    return north;
-                }
-            });
+        return results.toList();
+    }
+
+    @Override
+    public void getNearestNeighbors(final double latitude, final double longitude, final int maxResults, final SearchResults<E> results) {
+        final QueryInstrumentation instrumentation = this.instrumentation;
+        final long startNanos = instrumentation != null ? System.nanoTime() : 0;
+        final QueryStatistics statistics = instrumentation != null ? results.getStatistics() : null;
+
+        results.clear();
+
+        if (this.rootNode != null && maxResults > 0) {
+            final NearestNeighborCollector<E> collector =
+                    results.getCollector(Math.min(maxResults, this.rootNode.size()));
+
+            this.rootNode.collectNearestNeighbors(results.getQueryVector(latitude, longitude), collector, null, statistics,
+                    this.distanceMode);
+            collector.drainTo(results);
         }
 
-        final ArrayList<E> points = new ArrayList<E>();
+        if (instrumentation != null) {
+            recordQuery(instrumentation, QueryType.NEAREST_NEIGHBORS, statistics, results.size(), startNanos);
+        }
+    }
 
-        for (final E point : this.getAllWithinDistance(centroid, searchRadius)) {
-            if (point.getLatitude() <= north && point.getLatitude() >= south) {
-                // If the point is inside the bounding box, it will be shorter to get to the point by traveling east
-                // from the western boundary than by traveling east from the eastern boundary.
-                if (this.getDegreesEastFromMeridian(west, point) <= this.getDegreesEastFromMeridian(east, point)) {
-                    // Similarly, it should be shorter to get to the point by traveling west from the eastern boundary
-                    // than by traveling west from the western boundary.
-                    if(this.getDegreesWestFromMeridian(east, point) <= this.getDegreesWestFromMeridian(west, point)) {
-                        points.add(point);
-                    }
-                }
-            }
+    /**
+     * <p>Finds approximate nearest neighbors to the given coordinates, trading accuracy for a bound on the work done
+     * by any one search. Approximate searches may cut corners in two ways:</p>
+     *
+     * <ul>
+     *  <li>They skip branches of the tree that could only contain points closer than the farthest result divided by
+     *  {@code (1 + epsilon)}. The straight-line (chord) distance to the farthest result is therefore at most
+     *  {@code (1 + epsilon)} times the chord distance to the true farthest neighbor. For distances that are small
+     *  compared to the radius of the earth, the same bound holds very nearly for great-circle distances.</li>
+     *  <li>They stop after {@code maxDistanceCalculations} distance calculations, returning the best points found so
+     *  far. Searches that run out of budget may return fewer than {@code maxResults} points and carry no accuracy
+     *  guarantee.</li>
+     * </ul>
+     *
+     * <p>An epsilon of zero and a budget of {@link Integer#MAX_VALUE} produce the same results as an exact search.
+     * Callers can check whether a given search actually cut any corners with {@link SearchResults#isExact()}.</p>
+     *
+     * @param latitude the latitude of the query point, in degrees
+     * @param longitude the longitude of the query point, in degrees
+     * @param maxResults the maximum number of neighbors to find
+     * @param epsilon the maximum relative error in the chord distance to the farthest result; must not be negative
+     * @param maxDistanceCalculations the maximum number of distance calculations the search may perform; must be
+     * positive
+     * @param results the results to which to write the nearest neighbors in order of increasing distance
+     *
+     * @throws IllegalArgumentException if epsilon is negative or if the budget of distance calculations is not
+     * positive
+     */
+    public void getApproximateNearestNeighbors(final double latitude, final double longitude, final int maxResults,
+            final double epsilon, final int maxDistanceCalculations, final SearchResults<E> results) {
+
+        if (!(epsilon >= 0)) {
+            throw new IllegalArgumentException("Epsilon must not be negative.");
+        }
+
+        if (maxDistanceCalculations < 1) {
+            throw new IllegalArgumentException("Budget of distance calculations must be positive.");
+        }
+
+        results.clear();
+
+        if (this.rootNode != null && maxResults > 0) {
+            final NearestNeighborCollector<E> collector =
+                    results.getCollector(Math.min(maxResults, this.rootNode.size()));
+
+            final ApproximateSearch search = results.getApproximateSearch(epsilon, maxDistanceCalculations);
+
+            this.rootNode.collectApproximateNearestNeighbors(results.getQueryVector(latitude, longitude), collector, search);
+            collector.drainTo(results);
+
+            results.setExact(search.isExact());
+        }
+    }
+
+    @Override
+    public void getAllWithinDistance(final double latitude, final double longitude, final double maxDistance, final SearchResults<E> results) {
+        final QueryInstrumentation instrumentation = this.instrumentation;
+        final long startNanos = instrumentation != null ? System.nanoTime() : 0;
+        final QueryStatistics statistics = instrumentation != null ? results.getStatistics() : null;
+
+        results.clear();
+
+        if (this.rootNode != null) {
+            this.rootNode.collectAllWithinChordLength(results.getQueryVector(latitude, longitude),
+                    UnitVectors.toChordLength(maxDistance), results, null, statistics, this.distanceMode);
+        }
+
+        if (instrumentation != null) {
+            recordQuery(instrumentation, QueryType.WITHIN_DISTANCE, statistics, results.size(), startNanos);
+        }
+    }
+
+    @Override
+    public void getAllPointsInBoundingBox(final double south, final double west, final double north, final double east, final SearchResults<E> results) {
+        final QueryInstrumentation instrumentation = this.instrumentation;
+        final long startNanos = instrumentation != null ? System.nanoTime() : 0;
+        final QueryStatistics statistics = instrumentation != null ? results.getStatistics() : null;
+
+        final BoundingBox boundingBox = results.getBoundingBox(south, west, north, east);
+        results.clear();
+
+        if (this.rootNode != null) {
+            this.rootNode.collectAllInBoundingBox(boundingBox, results, statistics);
         }
 
-        return points;
+        if (instrumentation != null) {
+            recordQuery(instrumentation, QueryType.BOUNDING_BOX, statistics, results.size(), startNanos);
+        }
     }
 
     /**
-     * Calculates the minimum eastward angle traveled from a meridian to a point. If the point is coincident with the
-     * meridian, this method returns 360 degrees.
+     * {@inheritDoc}
      *
-     * @param longitude the line of longitude at which to begin travel
-     * @param point the point to which to travel
+     * <p>Every node in the tree knows how many points are beneath it, so subtrees that lie entirely within the given
+     * distance are counted without visiting their points.</p>
+     */
+    @Override
+    public int countWithinDistance(final double latitude, final double longitude, final double maxDistance) {
+        if (this.rootNode == null) {
+            return 0;
+        }
+
+        return this.rootNode.countWithinChordLength(UnitVectors.getUnitVector(latitude, longitude),
+                UnitVectors.toChordLength(maxDistance));
+    }
+
+    /**
+     * {@inheritDoc}
      *
-     * @return the eastward-traveling distance between the line and the point in degrees
+     * <p>Every node in the tree knows how many points are beneath it, so subtrees that lie entirely within the given
+     * bounding box are counted without visiting their points.</p>
      */
-    private double getDegreesEastFromMeridian(final double longitude, final E point) {
-        return point.getLongitude() > longitude ?
-                point.getLongitude() - longitude : Math.abs(360 - (point.getLongitude() - longitude));
+    @Override
+    public int countInBoundingBox(final double south, final double west, final double north, final double east) {
+        final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+        return this.rootNode != null ? this.rootNode.countInBoundingBox(boundingBox) : 0;
     }
 
     /**
-     * Calculates the minimum westward angle traveled from a meridian to a point. If the point is coincident with the
-     * meridian, this method returns 360 degrees.
+     * {@inheritDoc}
      *
-     * @param longitude the line of longitude at which to begin travel
-     * @param point the point to which to travel
+     * <p>Every node in the tree knows how many points are beneath it, so subtrees that lie entirely within a single
+     * cell are counted without visiting their points.</p>
+     */
+    @Override
+    public int[][] countInGrid(final double south, final double west, final double north, final double east, final int rows, final int columns) {
+        final CountGrid grid = new CountGrid(south, west, north, east, rows, columns);
+        this.countInGrid(grid);
+
+        return grid.getCounts();
+    }
+
+    /**
+     * Adds the points in this index to the cells of the given grid.
      *
-     * @return the westward-traveling distance between the line and the point in degrees
+     * @param grid the grid to which to add points
      */
-    private double getDegreesWestFromMeridian(final double longitude, final E point) {
-        return point.getLongitude() < longitude ?
-                longitude - point.getLongitude() : Math.abs(360 - (longitude - point.getLongitude()));
+    void countInGrid(final CountGrid grid) {
+        if (this.rootNode != null) {
+            this.rootNode.countInGrid(grid);
+        }
+    }
+
+    /**
+     * Finds every pair of a point in this index and a point in the given index that are no more than the given distance
+     * apart, and reports each (ordered) pair to the given callback exactly once. The join walks the trees behind both
+     * indices together, skipping whole subtrees of the other index that are too far from a subtree of this index to
+     * hold any pairs, and divides its work among the threads of the default pool. Neither index may be modified while
+     * the join is running.
+     *
+     * <p>Pairs are ordered: the first point of each pair comes from this index and the second from the other. If the
+     * other index is this index, each point is paired with itself, and every pair of two different points {@code a} and
+     * {@code b} is reported twice, once as {@code (a, b)} and once as {@code (b, a)}.</p>
+     *
+     * @param other the index whose points to pair with the points in this index; may be this index, in which case each
+     * point is paired with itself and with every nearby point in both orders
+     * @param maxDistance the maximum distance (inclusive) between the points in a pair, in meters
+     * @param callback the callback to which to report pairs; must be thread-safe if the default pool has more than one
+     * thread
+     */
+    public <F extends GeospatialPoint> void joinWithinDistance(final VPTreeGeospatialIndex<F> other, final double maxDistance, final JoinCallback<? super E, ? super F> callback) {
+        this.joinWithinDistance(other, maxDistance, callback, getDefaultPool());
+    }
+
+    /**
+     * Finds every pair of a point in this index and a point in the given index that are no more than the given distance
+     * apart, and reports each (ordered) pair to the given callback exactly once, dividing the work among the threads of
+     * the given pool.
+     *
+     * @param other the index whose points to pair with the points in this index; may be this index, in which case each
+     * point is paired with itself and with every nearby point in both orders
+     * @param maxDistance the maximum distance (inclusive) between the points in a pair, in meters
+     * @param callback the callback to which to report pairs; must be thread-safe if the given pool has more than one
+     * thread
+     * @param pool the pool in which to run the join
+     *
+     * @see #joinWithinDistance(VPTreeGeospatialIndex, double, JoinCallback)
+     */
+    public <F extends GeospatialPoint> void joinWithinDistance(final VPTreeGeospatialIndex<F> other, final double maxDistance, final JoinCallback<? super E, ? super F> callback, final ForkJoinPool pool) {
+        if (this.rootNode != null && other.rootNode != null) {
+            this.rootNode.joinWithinChordLength(other.rootNode, UnitVectors.toChordLength(maxDistance), callback,
+                    other.distanceMode, pool);
+        }
+    }
+
+    /**
+     * Finds the nearest neighbors in the given index of every point in this index, and reports each point and each of
+     * its neighbors to the given callback as a pair. Pairs for any one point in this index are reported together, in
+     * order of increasing distance, but pairs for different points may be reported in any order (and, with a pool of
+     * more than one thread, at the same time). The join walks the trees behind both indices together, and divides its
+     * work among the threads of the default pool. Neither index may be modified while the join is running.
+     *
+     * @param other the index in which to find neighbors; may be this index, in which case each point is its own
+     * nearest neighbor
+     * @param maxNeighbors the number of neighbors to find for each point in this index; points get fewer neighbors
+     * only if the other index has fewer points than this
+     * @param callback the callback to which to report pairs; must be thread-safe if the default pool has more than one
+     * thread
+     */
+    public <F extends GeospatialPoint> void joinNearestNeighbors(final VPTreeGeospatialIndex<F> other, final int maxNeighbors, final JoinCallback<? super E, ? super F> callback) {
+        this.joinNearestNeighbors(other, maxNeighbors, callback, getDefaultPool());
+    }
+
+    /**
+     * Finds the nearest neighbors in the given index of every point in this index, and reports each point and each of
+     * its neighbors to the given callback as a pair, dividing the work among the threads of the given pool.
+     *
+     * @param other the index in which to find neighbors; may be this index, in which case each point is its own
+     * nearest neighbor
+     * @param maxNeighbors the number of neighbors to find for each point in this index; points get fewer neighbors
+     * only if the other index has fewer points than this
+     * @param callback the callback to which to report pairs; must be thread-safe if the given pool has more than one
+     * thread
+     * @param pool the pool in which to run the join
+     *
+     * @see #joinNearestNeighbors(VPTreeGeospatialIndex, int, JoinCallback)
+     */
+    public <F extends GeospatialPoint> void joinNearestNeighbors(final VPTreeGeospatialIndex<F> other, final int maxNeighbors, final JoinCallback<? super E, ? super F> callback, final ForkJoinPool pool) {
+        if (this.rootNode != null && other.rootNode != null && maxNeighbors > 0) {
+            this.rootNode.joinNearestNeighbors(other.rootNode, Math.min(maxNeighbors, other.rootNode.size()), callback,
+                    other.distanceMode, pool);
+        }
+    }
+
+    private static void recordQuery(final QueryInstrumentation instrumentation, final QueryType queryType, final QueryStatistics statistics, final int resultCount, final long startNanos) {
+        statistics.setResultCount(resultCount);
+        instrumentation.recordQuery(queryType, statistics, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Attaches instrumentation to this index, replacing any previously-attached instrumentation. Nearest-neighbor,
+     * distance, bounding box, and route searches will record their statistics and latencies with the given
+     * instrumentation; other operations (including nearest-neighbor iterators and approximate searches) are not
+     * instrumented. Without instrumentation, searches skip all of the associated bookkeeping.
+     *
+     * @param instrumentation the instrumentation with which to record queries, or {@code null} to stop instrumenting
+     * queries
+     */
+    public void setInstrumentation(final QueryInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Returns the instrumentation attached to this index, if any.
+     *
+     * @return the instrumentation attached to this index, or {@code null} if queries are not instrumented
+     */
+    public QueryInstrumentation getInstrumentation() {
+        return this.instrumentation;
+    }
+
+    /**
+     * Sets the strategy with which nearest-neighbor and distance searches evaluate distances to the points in this
+     * index. Both strategies produce identical results, and {@link DistanceMode#EXACT} is the default.
+     *
+     * @param distanceMode the strategy with which to evaluate distances
+     */
+    public void setDistanceMode(final DistanceMode distanceMode) {
+        if (distanceMode == null) {
+            throw new NullPointerException("Distance mode must not be null.");
+        }
+
+        this.distanceMode = distanceMode;
+    }
+
+    /**
+     * Returns the strategy with which nearest-neighbor and distance searches evaluate distances to the points in this
+     * index.
+     *
+     * @return the strategy with which searches evaluate distances
+     */
+    public DistanceMode getDistanceMode() {
+        return this.distanceMode;
+    }
+
+    /**
+     * Returns the parameters that control the shape of the tree behind this index.
+     *
+     * @return the parameters that control the shape of the tree behind this index
+     */
+    public TreeParameters getTreeParameters() {
+        return this.parameters;
+    }
+
+    /**
+     * Returns a summary of the current shape of the tree behind this index. Gathering statistics visits every node
+     * in the tree.
+     *
+     * @return a summary of the shape of the tree
+     */
+    public TreeStatistics getTreeStatistics() {
+        final TreeStatistics statistics = new TreeStatistics();
+
+        if (this.rootNode != null) {
+            this.rootNode.collectTreeStatistics(0, statistics);
+        }
+
+        return statistics;
+    }
+
+    @Override
+    public int size() {
+        return this.rootNode == null ? 0 : this.rootNode.size();
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (this.rootNode == null || !(o instanceof GeospatialPoint)) {
+            return false;
+        }
+
+        return this.rootNode.contains(o, UnitVectors.getUnitVector((GeospatialPoint) o));
+    }
+
+    @Override
+    public boolean add(final E point) {
+        return this.addAll(Collections.singletonList(point));
+    }
+
+    @Override
+    public boolean addAll(final Collection<? extends E> points) {
+        if (points.isEmpty()) {
+            return false;
+        }
+
+        if (this.rootNode == null) {
+            // Build a balanced tree from scratch rather than growing one point at a time
+            final Object[] pointArray = points.toArray();
+            final double[] vectors = new double[3 * pointArray.length];
+
+            for (int i = 0; i < pointArray.length; i++) {
+                final GeospatialPoint point = (GeospatialPoint) pointArray[i];
+                UnitVectors.setUnitVector(point.getLatitude(), point.getLongitude(), vectors, i);
+            }
+
+            this.rootNode = VPTreeNode.build(pointArray, vectors, 0, pointArray.length, this.parameters);
+        } else {
+            for (final E point : points) {
+                this.rootNode.add(point, UnitVectors.getUnitVector(point));
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if (this.rootNode == null || !(o instanceof GeospatialPoint)) {
+            return false;
+        }
+
+        final boolean removed = this.rootNode.remove(o, UnitVectors.getUnitVector((GeospatialPoint) o));
+
+        if (this.rootNode.size() == 0) {
+            this.rootNode = null;
+        }
+
+        return removed;
+    }
+
+    /**
+     * <p>Moves a single instance of the given element to a new position. This is equivalent to removing the element
+     * and adding it again at its new position, but is much cheaper when the element moves only a short distance: the
+     * element keeps its place in the tree unless its new position falls on the other side of a vantage point's
+     * threshold, and even then it moves only within the subtree below that vantage point.</p>
+     *
+     * <p>The index finds the element by its current coordinates, so callers that track moving objects should move
+     * them in the index before updating their coordinates, and must update their coordinates (to match the given
+     * position) before passing them to any other method of this index. Subtrees that grow unbalanced as elements move
+     * are rebuilt automatically.</p>
+     *
+     * @param element the element to move
+     * @param latitude the latitude of the element's new position, in degrees
+     * @param longitude the longitude of the element's new position, in degrees
+     *
+     * @return {@code true} if the element was moved or {@code false} if it is not in this index
+     */
+    public boolean move(final E element, final double latitude, final double longitude) {
+        if (this.rootNode == null || element == null) {
+            return false;
+        }
+
+        return this.rootNode.move(element, UnitVectors.getUnitVector(element),
+                UnitVectors.getUnitVector(latitude, longitude), latitude, longitude);
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        boolean changed = false;
+
+        for (final Object o : c) {
+            while (this.remove(o)) {
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        final ArrayList<E> pointsToRemove = new ArrayList<>();
+
+        for (final E point : this) {
+            if (!c.contains(point)) {
+                pointsToRemove.add(point);
+            }
+        }
+
+        for (final E point : pointsToRemove) {
+            this.remove(point);
+        }
+
+        return !pointsToRemove.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        this.rootNode = null;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        final List<VPTreeNode<E>> leaves = new ArrayList<>();
+
+        if (this.rootNode != null) {
+            this.rootNode.collectLeaves(leaves);
+        }
+
+        return new Iterator<E>() {
+            private int leafIndex = 0;
+            private int pointIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (this.leafIndex < leaves.size() && this.pointIndex >= leaves.get(this.leafIndex).size()) {
+                    this.leafIndex++;
+                    this.pointIndex = 0;
+                }
+
+                return this.leafIndex < leaves.size();
+            }
+
+            @Override
+            public E next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return leaves.get(this.leafIndex).getPoint(this.pointIndex++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 }
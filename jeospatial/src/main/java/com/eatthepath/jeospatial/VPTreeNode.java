@@ -0,0 +1,1540 @@
+package com.eatthepath.jeospatial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A single node of a vantage point tree of geospatial points. Leaf nodes hold points and their cached unit vectors
+ * directly; internal nodes hold a vantage point's unit vector and a threshold chord length, and divide their points
+ * between a "closer" child (points no farther than the threshold from the vantage point) and a "farther" child. Every
+ * node also tracks the latitude/longitude bounds of the points beneath it and a spherical cap that contains them;
+ * bounds and caps may grow looser than necessary as points are removed, but always contain every point in the node.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class VPTreeNode<E extends GeospatialPoint> {
+
+    private final TreeParameters parameters;
+
+    /**
+     * The number of points below which parallel construction switches to sequential construction.
+     */
+    static final int PARALLEL_BUILD_THRESHOLD = 8192;
+
+    /**
+     * The number of points below which parallel joins stop dividing their work among separate tasks.
+     */
+    static final int PARALLEL_JOIN_THRESHOLD = 8192;
+
+    /**
+     * The largest fraction of an internal node's points that either of its children may hold before the node is
+     * rebuilt.
+     */
+    static final double MAX_CHILD_FRACTION = 0.75;
+
+    // Floating-point slack for chord length bounds so that rounding errors can never prune a point that should have been
+    // found; this is on the order of millimeters.
+    private static final double CHORD_LENGTH_TOLERANCE = 1e-9;
+
+    private int size;
+    private final double[] bounds = new double[4];
+
+    // The unit vector of the center of a cap that contains every point in this node, followed by the cap's radius as a
+    // chord length
+    private final double[] cap = new double[4];
+
+    // Leaf nodes only
+    private Object[] points;
+    private double[] vectors;
+
+    // The size beyond which a leaf node tries to split itself. This is normally the node capacity, but a leaf whose
+    // points couldn't be partitioned (because most of them are duplicates, for example) waits until it has doubled in
+    // size before trying again; otherwise, every point added to it would rebuild the whole leaf.
+    private int splitSize;
+
+    // Internal nodes only
+    private double[] vantagePoint;
+    private double threshold;
+
+    private VPTreeNode<E> closer;
+    private VPTreeNode<E> farther;
+
+    // The number of points added to or removed from this node's children since this node was built
+    private int updateCount;
+
+    private VPTreeNode(final TreeParameters parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Builds a tree from the given range of points. The given arrays are rearranged during construction, but are not
+     * retained by the returned tree.
+     *
+     * @param points the elements to add to the tree
+     * @param vectors the unit vectors of each element
+     * @param from the index of the first point in the range (inclusive)
+     * @param to the index of the last point in the range (exclusive)
+     * @param parameters the parameters that control the shape of the tree
+     *
+     * @return the root node of the new tree
+     */
+    static <E extends GeospatialPoint> VPTreeNode<E> build(final Object[] points, final double[] vectors, final int from, final int to, final TreeParameters parameters) {
+        // Arrays may have spare room at the end (if, for example, they were filled while reading points from a file)
+        final double[] chordLengths = new double[to];
+        final double[] scratch = new double[to];
+
+        return build(points, vectors, chordLengths, scratch, from, to, parameters, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Builds a tree from the given points, dividing the work among the threads of the given pool. Ranges of points
+     * smaller than {@link #PARALLEL_BUILD_THRESHOLD} are built sequentially. The given array is rearranged during
+     * construction, but is not retained by the returned tree.
+     *
+     * @param points the elements to add to the tree
+     * @param parameters the parameters that control the shape of the tree
+     * @param pool the pool in which to build the tree
+     *
+     * @return the root node of the new tree
+     */
+    static <E extends GeospatialPoint> VPTreeNode<E> build(final Object[] points, final TreeParameters parameters, final ForkJoinPool pool) {
+        final double[] vectors = new double[3 * points.length];
+
+        pool.invoke(new UnitVectorTask(points, vectors, 0, points.length));
+
+        return build(points, vectors, points.length, parameters, pool);
+    }
+
+    /**
+     * Builds a tree from the first {@code size} points in the given array, whose unit vectors have already been
+     * calculated, dividing the work among the threads of the given pool. The given arrays are rearranged during
+     * construction, but are not retained by the returned tree.
+     *
+     * @param points the elements to add to the tree
+     * @param vectors the unit vectors of each element
+     * @param size the number of points to add to the tree
+     * @param parameters the parameters that control the shape of the tree
+     * @param pool the pool in which to build the tree
+     *
+     * @return the root node of the new tree
+     */
+    static <E extends GeospatialPoint> VPTreeNode<E> build(final Object[] points, final double[] vectors, final int size, final TreeParameters parameters, final ForkJoinPool pool) {
+        return pool.invoke(new BuildTask<E>(points, vectors, new double[size], new double[size], 0, size, parameters));
+    }
+
+    private static <E extends GeospatialPoint> VPTreeNode<E> build(final Object[] points, final double[] vectors, final double[] chordLengths, final double[] scratch, final int from, final int to, final TreeParameters parameters, final Random random) {
+        final VPTreeNode<E> node = new VPTreeNode<>(parameters);
+        final int split = node.partition(points, vectors, chordLengths, scratch, from, to, random, false);
+
+        if (split < 0) {
+            node.initializeLeaf(points, vectors, from, to);
+        } else {
+            node.closer = build(points, vectors, chordLengths, scratch, from, split, parameters, random);
+            node.farther = build(points, vectors, chordLengths, scratch, split, to, parameters, random);
+            node.updateBounds();
+        }
+
+        return node;
+    }
+
+    /**
+     * Chooses a vantage point and threshold for this node from the given range of points and partitions the range
+     * around them.
+     *
+     * @return the index of the first point in the "farther" partition, or -1 if the points should be stored in a leaf
+     * node instead
+     */
+    private int partition(final Object[] points, final double[] vectors, final double[] chordLengths, final double[] scratch, final int from, final int to, final Random random, final boolean parallel) {
+        this.size = to - from;
+
+        if (to - from <= this.parameters.getNodeCapacity()) {
+            return -1;
+        }
+
+        final int vantagePointIndex = VantagePointPartitioner.selectVantagePoint(vectors, from, to,
+                this.parameters.getVantagePointCandidates(), random);
+        final double[] vantagePoint = Arrays.copyOfRange(vectors, 3 * vantagePointIndex, 3 * vantagePointIndex + 3);
+
+        if (parallel) {
+            new ChordLengthTask(vectors, vantagePoint, from, to, chordLengths).invoke();
+        } else {
+            VantagePointPartitioner.calculateChordLengths(vectors, vantagePoint, from, to, chordLengths);
+        }
+
+        final double threshold = VantagePointPartitioner.selectMedian(chordLengths, scratch, from, to);
+        final int split = VantagePointPartitioner.partition(points, vectors, chordLengths, from, to, threshold);
+
+        // If every point is equidistant from the vantage point, we can't partition the points and will just have an
+        // oversized leaf node.
+        if (split == to) {
+            return -1;
+        }
+
+        this.vantagePoint = vantagePoint;
+        this.threshold = threshold;
+
+        return split;
+    }
+
+    private void initializeLeaf(final Object[] points, final double[] vectors, final int from, final int to) {
+        this.size = to - from;
+
+        final int nodeCapacity = this.parameters.getNodeCapacity();
+        this.splitSize = this.size <= nodeCapacity ? nodeCapacity : 2 * this.size;
+
+        this.points = Arrays.copyOfRange(points, from, to);
+        this.vectors = Arrays.copyOfRange(vectors, 3 * from, 3 * to);
+
+        BoundingBox.clearBounds(this.bounds, 0);
+
+        for (int i = from; i < to; i++) {
+            BoundingBox.expandBounds(this.bounds, 0, (GeospatialPoint) points[i]);
+        }
+
+        // Center the cap on the average of the points' vectors
+        double x = 0;
+        double y = 0;
+        double z = 0;
+
+        for (int i = 0; i < this.size; i++) {
+            x += this.vectors[3 * i];
+            y += this.vectors[3 * i + 1];
+            z += this.vectors[3 * i + 2];
+        }
+
+        this.setCapCenter(x, y, z, this.vectors);
+
+        double radius = 0;
+
+        for (int i = 0; i < this.size; i++) {
+            radius = Math.max(radius, UnitVectors.getChordLength(this.cap, this.vectors, i));
+        }
+
+        this.cap[3] = radius;
+    }
+
+    private void updateBounds() {
+        BoundingBox.clearBounds(this.bounds, 0);
+        BoundingBox.expandBounds(this.bounds, 0, this.closer.bounds, 0);
+        BoundingBox.expandBounds(this.bounds, 0, this.farther.bounds, 0);
+
+        // Center the cap on the average of the children's centers, weighted by the number of points in each child, and
+        // make it just large enough to contain both children's caps
+        final double[] closerCap = this.closer.cap;
+        final double[] fartherCap = this.farther.cap;
+
+        this.setCapCenter(
+                this.closer.size * closerCap[0] + this.farther.size * fartherCap[0],
+                this.closer.size * closerCap[1] + this.farther.size * fartherCap[1],
+                this.closer.size * closerCap[2] + this.farther.size * fartherCap[2],
+                closerCap);
+
+        this.cap[3] = Math.min(UnitVectors.MAX_CHORD_LENGTH, Math.max(
+                UnitVectors.getChordLength(this.cap, closerCap, 0) + closerCap[3],
+                UnitVectors.getChordLength(this.cap, fartherCap, 0) + fartherCap[3]));
+    }
+
+    /**
+     * Points this node's cap at the given vector, normalized, or at the first vector in the given array if the given
+     * vector is (nearly) zero.
+     */
+    private void setCapCenter(final double x, final double y, final double z, final double[] fallbackVectors) {
+        final double magnitude = Math.sqrt(x * x + y * y + z * z);
+
+        if (magnitude > 1e-9) {
+            this.cap[0] = x / magnitude;
+            this.cap[1] = y / magnitude;
+            this.cap[2] = z / magnitude;
+        } else if (fallbackVectors.length >= 3) {
+            System.arraycopy(fallbackVectors, 0, this.cap, 0, 3);
+        } else {
+            this.cap[0] = 1;
+            this.cap[1] = 0;
+            this.cap[2] = 0;
+        }
+    }
+
+    /**
+     * Builds a subtree, forking separate tasks to build the "closer" and "farther" children of large nodes.
+     */
+    private static class BuildTask<E extends GeospatialPoint> extends RecursiveTask<VPTreeNode<E>> {
+        private final Object[] points;
+        private final double[] vectors;
+        private final double[] chordLengths;
+        private final double[] scratch;
+        private final int from;
+        private final int to;
+        private final TreeParameters parameters;
+
+        private static final long serialVersionUID = 1L;
+
+        private BuildTask(final Object[] points, final double[] vectors, final double[] chordLengths, final double[] scratch, final int from, final int to, final TreeParameters parameters) {
+            this.points = points;
+            this.vectors = vectors;
+            this.chordLengths = chordLengths;
+            this.scratch = scratch;
+            this.from = from;
+            this.to = to;
+            this.parameters = parameters;
+        }
+
+        @Override
+        protected VPTreeNode<E> compute() {
+            if (this.to - this.from <= PARALLEL_BUILD_THRESHOLD) {
+                return build(this.points, this.vectors, this.chordLengths, this.scratch, this.from, this.to,
+                        this.parameters, ThreadLocalRandom.current());
+            }
+
+            final VPTreeNode<E> node = new VPTreeNode<>(this.parameters);
+            final int split = node.partition(this.points, this.vectors, this.chordLengths, this.scratch, this.from,
+                    this.to, ThreadLocalRandom.current(), true);
+
+            if (split < 0) {
+                node.initializeLeaf(this.points, this.vectors, this.from, this.to);
+            } else {
+                // Subtrees cover disjoint ranges of the shared arrays, so they can be built concurrently
+                final BuildTask<E> closerTask = new BuildTask<>(this.points, this.vectors, this.chordLengths,
+                        this.scratch, this.from, split, this.parameters);
+
+                closerTask.fork();
+
+                node.farther = new BuildTask<E>(this.points, this.vectors, this.chordLengths, this.scratch, split,
+                        this.to, this.parameters).compute();
+
+                node.closer = closerTask.join();
+                node.updateBounds();
+            }
+
+            return node;
+        }
+    }
+
+    /**
+     * Calculates chord lengths from a vantage point for a large range of points by dividing the range among tasks.
+     */
+    private static class ChordLengthTask extends RecursiveAction {
+        private final double[] vectors;
+        private final double[] vantagePoint;
+        private final int from;
+        private final int to;
+        private final double[] chordLengths;
+
+        private static final long serialVersionUID = 1L;
+
+        private ChordLengthTask(final double[] vectors, final double[] vantagePoint, final int from, final int to, final double[] chordLengths) {
+            this.vectors = vectors;
+            this.vantagePoint = vantagePoint;
+            this.from = from;
+            this.to = to;
+            this.chordLengths = chordLengths;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= PARALLEL_BUILD_THRESHOLD) {
+                VantagePointPartitioner.calculateChordLengths(this.vectors, this.vantagePoint, this.from, this.to, this.chordLengths);
+            } else {
+                final int middle = (this.from + this.to) >>> 1;
+
+                invokeAll(new ChordLengthTask(this.vectors, this.vantagePoint, this.from, middle, this.chordLengths),
+                        new ChordLengthTask(this.vectors, this.vantagePoint, middle, this.to, this.chordLengths));
+            }
+        }
+    }
+
+    /**
+     * Calculates the unit vectors for a large range of points by dividing the range among tasks.
+     */
+    private static class UnitVectorTask extends RecursiveAction {
+        private final Object[] points;
+        private final double[] vectors;
+        private final int from;
+        private final int to;
+
+        private static final long serialVersionUID = 1L;
+
+        private UnitVectorTask(final Object[] points, final double[] vectors, final int from, final int to) {
+            this.points = points;
+            this.vectors = vectors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= PARALLEL_BUILD_THRESHOLD) {
+                for (int i = this.from; i < this.to; i++) {
+                    final GeospatialPoint point = (GeospatialPoint) this.points[i];
+                    UnitVectors.setUnitVector(point.getLatitude(), point.getLongitude(), this.vectors, i);
+                }
+            } else {
+                final int middle = (this.from + this.to) >>> 1;
+
+                invokeAll(new UnitVectorTask(this.points, this.vectors, this.from, middle),
+                        new UnitVectorTask(this.points, this.vectors, middle, this.to));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of points stored in this node and all of its descendants.
+     *
+     * @return the number of points stored in this node and all of its descendants
+     */
+    int size() {
+        return this.size;
+    }
+
+    private boolean isLeaf() {
+        return this.points != null;
+    }
+
+    private VPTreeNode<E> getChildNodeForVector(final double[] vector) {
+        return UnitVectors.getChordLength(this.vantagePoint, vector, 0) <= this.threshold ? this.closer : this.farther;
+    }
+
+    /**
+     * Adds a point to this node or to the appropriate descendant, splitting leaf nodes that exceed their capacity.
+     *
+     * @param point the point to add
+     * @param vector the unit vector of the point to add
+     */
+    void add(final E point, final double[] vector) {
+        this.add(point, vector, point.getLatitude(), point.getLongitude());
+    }
+
+    /**
+     * Adds a point at the given position to this node or to the appropriate descendant, splitting leaf nodes that
+     * exceed their capacity. The given position may differ from the point's own coordinates (if, for example, the
+     * point is being moved to the given position).
+     *
+     * @param point the point to add
+     * @param vector the unit vector of the given position
+     * @param latitude the latitude of the given position, in degrees
+     * @param longitude the longitude of the given position, in degrees
+     */
+    private void add(final E point, final double[] vector, final double latitude, final double longitude) {
+        this.size++;
+
+        if (this.size == 1) {
+            BoundingBox.expandBounds(this.bounds, 0, latitude, longitude);
+            System.arraycopy(vector, 0, this.cap, 0, 3);
+            this.cap[3] = 0;
+        } else {
+            this.expand(vector, latitude, longitude);
+        }
+
+        if (this.isLeaf()) {
+            final int index = this.size - 1;
+
+            if (index == this.points.length) {
+                final int newLength = Math.max(this.parameters.getNodeCapacity(), 2 * this.points.length) + 1;
+
+                this.points = Arrays.copyOf(this.points, newLength);
+                this.vectors = Arrays.copyOf(this.vectors, 3 * newLength);
+            }
+
+            this.points[index] = point;
+            System.arraycopy(vector, 0, this.vectors, 3 * index, 3);
+
+            if (this.size > this.splitSize) {
+                this.adopt(VPTreeNode.<E>build(this.points, this.vectors, 0, this.size, this.parameters));
+                this.include(vector, latitude, longitude);
+            }
+        } else {
+            this.getChildNodeForVector(vector).add(point, vector, latitude, longitude);
+            this.updateCount++;
+
+            if (this.rebalance()) {
+                this.include(vector, latitude, longitude);
+            }
+        }
+    }
+
+    /**
+     * Removes a single instance of the given point from this node or its descendants.
+     *
+     * @param point the point to remove
+     * @param vector the unit vector of the point to remove
+     *
+     * @return {@code true} if the point was removed or {@code false} otherwise
+     */
+    boolean remove(final Object point, final double[] vector) {
+        if (this.isLeaf()) {
+            final int index = this.indexOf(point);
+
+            if (index < 0) {
+                return false;
+            }
+
+            final int last = this.size - 1;
+
+            this.points[index] = this.points[last];
+            System.arraycopy(this.vectors, 3 * last, this.vectors, 3 * index, 3);
+            this.points[last] = null;
+
+            this.size--;
+            return true;
+        }
+
+        if (!this.getChildNodeForVector(vector).remove(point, vector)) {
+            return false;
+        }
+
+        this.size--;
+        this.updateCount++;
+
+        this.removeEmptyChild();
+        this.rebalance();
+
+        return true;
+    }
+
+    /**
+     * Moves a single instance of the given point to a new position. The point stays in its current leaf node if its
+     * new position falls on the same side of every vantage point's threshold as its old position; otherwise, it's
+     * removed from the subtree below the first vantage point that separates the two positions and added to that
+     * vantage point's other child.
+     *
+     * @param point the point to move
+     * @param vector the unit vector of the point's current position
+     * @param newVector the unit vector of the point's new position
+     * @param latitude the latitude of the point's new position, in degrees
+     * @param longitude the longitude of the point's new position, in degrees
+     *
+     * @return {@code true} if the point was moved or {@code false} if it could not be found
+     */
+    @SuppressWarnings("unchecked")
+    boolean move(final Object point, final double[] vector, final double[] newVector, final double latitude, final double longitude) {
+        if (this.isLeaf()) {
+            final int index = this.indexOf(point);
+
+            if (index < 0) {
+                return false;
+            }
+
+            System.arraycopy(newVector, 0, this.vectors, 3 * index, 3);
+            this.expand(newVector, latitude, longitude);
+
+            return true;
+        }
+
+        final VPTreeNode<E> child = this.getChildNodeForVector(vector);
+        final VPTreeNode<E> newChild = this.getChildNodeForVector(newVector);
+
+        if (child == newChild) {
+            if (!child.move(point, vector, newVector, latitude, longitude)) {
+                return false;
+            }
+        } else {
+            if (!child.remove(point, vector)) {
+                return false;
+            }
+
+            newChild.add((E) point, newVector, latitude, longitude);
+            this.updateCount += 2;
+
+            this.removeEmptyChild();
+
+            if (this.rebalance()) {
+                // Rebuilt nodes take their bounds from the point's own (old) coordinates
+                this.include(newVector, latitude, longitude);
+                return true;
+            }
+        }
+
+        this.expand(newVector, latitude, longitude);
+
+        return true;
+    }
+
+    /**
+     * Expands the bounds and caps of this node and every node on the path to the given vector to include the given
+     * position.
+     */
+    private void include(final double[] vector, final double latitude, final double longitude) {
+        this.expand(vector, latitude, longitude);
+
+        if (!this.isLeaf()) {
+            this.getChildNodeForVector(vector).include(vector, latitude, longitude);
+        }
+    }
+
+    /**
+     * Expands the bounds and cap of this node (but not its descendants) to include the given position.
+     */
+    private void expand(final double[] vector, final double latitude, final double longitude) {
+        BoundingBox.expandBounds(this.bounds, 0, latitude, longitude);
+        this.cap[3] = Math.max(this.cap[3], UnitVectors.getChordLength(this.cap, vector, 0));
+    }
+
+    /**
+     * Replaces this node with its other child if either of its children is empty, since the node no longer
+     * partitions anything.
+     */
+    private void removeEmptyChild() {
+        if (this.closer.size() == 0) {
+            this.adopt(this.farther);
+        } else if (this.farther.size() == 0) {
+            this.adopt(this.closer);
+        }
+    }
+
+    /**
+     * Rebuilds this node from scratch if it's an internal node that holds no more points than a leaf could or if one of
+     * its children holds more than {@link #MAX_CHILD_FRACTION} of its points. To keep the cost of rebuilding
+     * proportional to the number of updates, unbalanced nodes are only rebuilt once the number of points added to or
+     * removed from their children since they were built reaches a quarter of their size; a node whose points can't be
+     * divided evenly (because many are equidistant from every vantage point, for example) might otherwise be rebuilt
+     * after every update.
+     *
+     * @return {@code true} if this node was rebuilt or {@code false} otherwise
+     */
+    private boolean rebalance() {
+        if (this.isLeaf()) {
+            return false;
+        }
+
+        final boolean unbalanced = Math.max(this.closer.size, this.farther.size) > MAX_CHILD_FRACTION * this.size &&
+                this.updateCount >= this.size / 4;
+
+        if (this.size <= this.parameters.getNodeCapacity() || unbalanced) {
+            final Object[] points = new Object[this.size];
+            final double[] vectors = new double[3 * this.size];
+
+            this.gatherPoints(points, vectors, 0);
+            this.adopt(VPTreeNode.<E>build(points, vectors, 0, points.length, this.parameters));
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Copies the points in this node and its descendants (and their unit vectors) into the given arrays.
+     *
+     * @param points the array into which to copy points
+     * @param vectors the array into which to copy unit vectors
+     * @param offset the index in the given arrays at which to copy the first point
+     *
+     * @return the index in the given arrays just after the last point copied
+     */
+    private int gatherPoints(final Object[] points, final double[] vectors, final int offset) {
+        if (this.isLeaf()) {
+            System.arraycopy(this.points, 0, points, offset, this.size);
+            System.arraycopy(this.vectors, 0, vectors, 3 * offset, 3 * this.size);
+
+            return offset + this.size;
+        }
+
+        return this.farther.gatherPoints(points, vectors, this.closer.gatherPoints(points, vectors, offset));
+    }
+
+    /**
+     * Indicates whether this node or any of its descendants contains the given point.
+     *
+     * @param point the point to find
+     * @param vector the unit vector of the point to find
+     *
+     * @return {@code true} if the point is stored in this node or a descendant or {@code false} otherwise
+     */
+    boolean contains(final Object point, final double[] vector) {
+        return this.isLeaf() ? this.indexOf(point) >= 0 : this.getChildNodeForVector(vector).contains(point, vector);
+    }
+
+    private int indexOf(final Object point) {
+        for (int i = 0; i < this.size; i++) {
+            if (point.equals(this.points[i])) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Replaces the contents of this node with the contents of the given node.
+     *
+     * @param node the node whose contents should be copied into this node
+     */
+    private void adopt(final VPTreeNode<E> node) {
+        this.size = node.size;
+        System.arraycopy(node.bounds, 0, this.bounds, 0, 4);
+        System.arraycopy(node.cap, 0, this.cap, 0, 4);
+        this.points = node.points;
+        this.vectors = node.vectors;
+        this.splitSize = node.splitSize;
+        this.vantagePoint = node.vantagePoint;
+        this.threshold = node.threshold;
+        this.closer = node.closer;
+        this.farther = node.farther;
+        this.updateCount = node.updateCount;
+    }
+
+    /**
+     * Offers points in this node and its descendants that may be among the nearest neighbors of the collector's query
+     * point to the given collector, skipping any points that don't pass the given filter.
+     *
+     * @param queryVector the unit vector of the query point
+     * @param collector the collector to which to offer points
+     * @param filter the filter points must pass to be offered to the collector, or {@code null} to offer all points
+     * @param statistics the statistics in which to count the work done by the search, or {@code null} if the search
+     * is not instrumented
+     * @param distanceMode the strategy with which to evaluate distances to points in leaf nodes
+     */
+    @SuppressWarnings("unchecked")
+    void collectNearestNeighbors(final double[] queryVector, final NearestNeighborCollector<E> collector, final PointFilter<? super E> filter, final QueryStatistics statistics, final DistanceMode distanceMode) {
+        if (this.isLeaf()) {
+            final int exactDistanceCalculations;
+
+            if (distanceMode == DistanceMode.TIERED) {
+                exactDistanceCalculations = this.offerNearestNeighborsTiered(queryVector, collector, filter);
+            } else {
+                for (int i = 0; i < this.size; i++) {
+                    final double chordLength = UnitVectors.getChordLength(queryVector, this.vectors, i);
+
+                    // Don't bother checking the filter for points the collector would reject anyhow
+                    if (chordLength < collector.getFarthestChordLength() && (filter == null || filter.allowPoint((E) this.points[i]))) {
+                        collector.offerPoint((E) this.points[i], chordLength);
+                    }
+                }
+
+                exactDistanceCalculations = this.size;
+            }
+
+            if (statistics != null) {
+                statistics.visitLeaf(this.size, this.size);
+                statistics.calculateExactDistances(exactDistanceCalculations);
+            }
+        } else {
+            if (statistics != null) {
+                statistics.visitInternalNode(1);
+            }
+
+            final double chordLengthFromVantagePoint = UnitVectors.getChordLength(this.vantagePoint, queryVector, 0);
+
+            if (chordLengthFromVantagePoint <= this.threshold) {
+                this.closer.collectNearestNeighbors(queryVector, collector, filter, statistics, distanceMode);
+
+                if (chordLengthFromVantagePoint + collector.getFarthestChordLength() > this.threshold) {
+                    this.farther.collectNearestNeighbors(queryVector, collector, filter, statistics, distanceMode);
+                } else if (statistics != null) {
+                    statistics.pruneBranch();
+                }
+            } else {
+                this.farther.collectNearestNeighbors(queryVector, collector, filter, statistics, distanceMode);
+
+                if (chordLengthFromVantagePoint - collector.getFarthestChordLength() <= this.threshold) {
+                    this.closer.collectNearestNeighbors(queryVector, collector, filter, statistics, distanceMode);
+                } else if (statistics != null) {
+                    statistics.pruneBranch();
+                }
+            }
+        }
+    }
+
+    /**
+     * Offers the points in this leaf node to the given collector, calculating exact chord lengths only for points whose
+     * squared chord lengths show that the collector would accept them.
+     *
+     * @return the number of exact chord lengths calculated
+     */
+    @SuppressWarnings("unchecked")
+    private int offerNearestNeighborsTiered(final double[] queryVector, final NearestNeighborCollector<E> collector, final PointFilter<? super E> filter) {
+        int exactDistanceCalculations = 0;
+
+        // The collector only accepts points strictly closer than its farthest point
+        double squaredChordLengthLimit =
+                UnitVectors.getSquaredChordLengthLimit(Math.nextDown(collector.getFarthestChordLength()));
+
+        for (int i = 0; i < this.size; i++) {
+            final double squaredChordLength = UnitVectors.getSquaredChordLength(queryVector, this.vectors, i);
+
+            if (squaredChordLength <= squaredChordLengthLimit && (filter == null || filter.allowPoint((E) this.points[i]))) {
+                collector.offerPoint((E) this.points[i], Math.sqrt(squaredChordLength));
+                exactDistanceCalculations++;
+
+                squaredChordLengthLimit =
+                        UnitVectors.getSquaredChordLengthLimit(Math.nextDown(collector.getFarthestChordLength()));
+            }
+        }
+
+        return exactDistanceCalculations;
+    }
+
+    /**
+     * Collects approximate nearest neighbors to the given query vector from this node and its descendants. Branches
+     * are visited only if they could hold a point closer than the farthest collected point divided by
+     * {@code (1 + epsilon)}, and the search stops when its budget of distance calculations is exhausted. The given
+     * search records whether either limit caused the search to skip work an exact search would have done.
+     *
+     * @param queryVector the unit vector of the query point
+     * @param collector the collector to which to offer points
+     * @param search the limits and state of the approximate search
+     */
+    @SuppressWarnings("unchecked")
+    void collectApproximateNearestNeighbors(final double[] queryVector, final NearestNeighborCollector<E> collector, final ApproximateSearch search) {
+        if (this.isLeaf()) {
+            for (int i = 0; i < this.size; i++) {
+                if (!search.tryCalculateDistance()) {
+                    return;
+                }
+
+                final double chordLength = UnitVectors.getChordLength(queryVector, this.vectors, i);
+
+                if (chordLength < collector.getFarthestChordLength()) {
+                    collector.offerPoint((E) this.points[i], chordLength);
+                }
+            }
+        } else {
+            if (!search.tryCalculateDistance()) {
+                return;
+            }
+
+            final double chordLengthFromVantagePoint = UnitVectors.getChordLength(this.vantagePoint, queryVector, 0);
+
+            if (chordLengthFromVantagePoint <= this.threshold) {
+                this.closer.collectApproximateNearestNeighbors(queryVector, collector, search);
+
+                final double farthestChordLength = collector.getFarthestChordLength();
+
+                if (chordLengthFromVantagePoint + farthestChordLength * search.getPruningFactor() > this.threshold) {
+                    this.farther.collectApproximateNearestNeighbors(queryVector, collector, search);
+                } else if (chordLengthFromVantagePoint + farthestChordLength > this.threshold) {
+                    search.markInexact();
+                }
+            } else {
+                this.farther.collectApproximateNearestNeighbors(queryVector, collector, search);
+
+                final double farthestChordLength = collector.getFarthestChordLength();
+
+                if (chordLengthFromVantagePoint - farthestChordLength * search.getPruningFactor() <= this.threshold) {
+                    this.closer.collectApproximateNearestNeighbors(queryVector, collector, search);
+                } else if (chordLengthFromVantagePoint - farthestChordLength <= this.threshold) {
+                    search.markInexact();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator over the points in this node and its descendants in order of increasing distance from the
+     * query point.
+     *
+     * @param queryVector the unit vector of the query point
+     *
+     * @return an iterator over the points in this node in order of increasing distance from the query point
+     */
+    NearestNeighborIterator<E> getNearestNeighborIterator(final double[] queryVector) {
+        final NearestNeighborIterator<E> iterator = new NearestNeighborIterator<E>(queryVector) {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            void expand(final Object object, final int index, final double minChordLength) {
+                ((VPTreeNode<E>) object).expand(this, minChordLength);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            E getPoint(final Object object, final int position) {
+                return (E) ((VPTreeNode<E>) object).points[position];
+            }
+        };
+
+        iterator.addNode(this, 0, 0);
+
+        return iterator;
+    }
+
+    private void expand(final NearestNeighborIterator<E> iterator, final double minChordLength) {
+        if (this.isLeaf()) {
+            for (int i = 0; i < this.size; i++) {
+                iterator.addPoint(this, i, UnitVectors.getChordLength(iterator.queryVector, this.vectors, i));
+            }
+        } else {
+            final double chordLengthFromVantagePoint = UnitVectors.getChordLength(this.vantagePoint, iterator.queryVector, 0);
+
+            // Points in the closer node are no farther than the threshold from the vantage point and points in the
+            // farther node are no closer, so the triangle inequality bounds their distances from the query point
+            iterator.addNode(this.closer, 0, Math.max(minChordLength, chordLengthFromVantagePoint - this.threshold));
+            iterator.addNode(this.farther, 0, Math.max(minChordLength, this.threshold - chordLengthFromVantagePoint));
+        }
+    }
+
+    /**
+     * Adds all points in this node and its descendants within the given chord length of the query point to the given
+     * results, skipping any points that don't pass the given filter.
+     *
+     * @param queryVector the unit vector of the query point
+     * @param maxChordLength the maximum chord length (inclusive) between the query point and any collected point
+     * @param results the results to which to add points
+     * @param filter the filter points must pass to be added to the results, or {@code null} to add all points
+     * @param statistics the statistics in which to count the work done by the search, or {@code null} if the search
+     * is not instrumented
+     * @param distanceMode the strategy with which to evaluate distances to points in leaf nodes
+     */
+    @SuppressWarnings("unchecked")
+    void collectAllWithinChordLength(final double[] queryVector, final double maxChordLength, final SearchResults<E> results, final PointFilter<? super E> filter, final QueryStatistics statistics, final DistanceMode distanceMode) {
+        if (this.isLeaf()) {
+            int exactDistanceCalculations = 0;
+
+            if (distanceMode == DistanceMode.TIERED) {
+                final double squaredChordLengthLimit = UnitVectors.getSquaredChordLengthLimit(maxChordLength);
+
+                for (int i = 0; i < this.size; i++) {
+                    final double squaredChordLength = UnitVectors.getSquaredChordLength(queryVector, this.vectors, i);
+
+                    if (squaredChordLength <= squaredChordLengthLimit && (filter == null || filter.allowPoint((E) this.points[i]))) {
+                        results.add((E) this.points[i], Math.sqrt(squaredChordLength));
+                        exactDistanceCalculations++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < this.size; i++) {
+                    final double chordLength = UnitVectors.getChordLength(queryVector, this.vectors, i);
+
+                    if (chordLength <= maxChordLength && (filter == null || filter.allowPoint((E) this.points[i]))) {
+                        results.add((E) this.points[i], chordLength);
+                    }
+                }
+
+                exactDistanceCalculations = this.size;
+            }
+
+            if (statistics != null) {
+                statistics.visitLeaf(this.size, this.size);
+                statistics.calculateExactDistances(exactDistanceCalculations);
+            }
+        } else {
+            if (statistics != null) {
+                statistics.visitInternalNode(1);
+            }
+
+            final double chordLengthFromVantagePoint = UnitVectors.getChordLength(this.vantagePoint, queryVector, 0);
+
+            if (chordLengthFromVantagePoint - maxChordLength <= this.threshold) {
+                this.closer.collectAllWithinChordLength(queryVector, maxChordLength, results, filter, statistics, distanceMode);
+            } else if (statistics != null) {
+                statistics.pruneBranch();
+            }
+
+            if (chordLengthFromVantagePoint + maxChordLength > this.threshold) {
+                this.farther.collectAllWithinChordLength(queryVector, maxChordLength, results, filter, statistics, distanceMode);
+            } else if (statistics != null) {
+                statistics.pruneBranch();
+            }
+        }
+    }
+
+    /**
+     * Adds all points in this node and its descendants that fall within the given corridor to the given results. The
+     * corridor's span stack tracks the parts of the route that could be near any point in each subtree; subtrees that
+     * can't be near any part of the route are skipped entirely.
+     *
+     * @param corridor the corridor within which to find points
+     * @param from the first position (inclusive) in the corridor's span stack of the spans that could be near any
+     * point in this node
+     * @param to the last position (exclusive) in the corridor's span stack of the spans that could be near any point
+     * in this node
+     * @param results the results to which to add points
+     * @param recordRoutePositions if {@code true}, each result carries its route angle (see
+     * {@link Corridor#getRouteAngle(double[], int, int)}) in place of its distance
+     * @param statistics the statistics in which to count the work done by the search, or {@code null} if the search
+     * is not instrumented
+     */
+    @SuppressWarnings("unchecked")
+    void collectAllInCorridor(final Corridor corridor, final int from, final int to, final SearchResults<E> results,
+            final boolean recordRoutePositions, final QueryStatistics statistics) {
+        final int initialDistanceCalculations = corridor.getDistanceCalculations();
+
+        if (this.isLeaf()) {
+            for (int i = 0; i < this.size; i++) {
+                final int segment = corridor.getNearestSegment(this.vectors, i, from, to);
+
+                // Recording each point's position along the route now spares sorting from searching for each point's
+                // nearest segment again
+                if (segment >= 0) {
+                    results.add((E) this.points[i],
+                            recordRoutePositions ? corridor.getRouteAngle(this.vectors, i, segment) : Double.NaN);
+                }
+            }
+
+            if (statistics != null) {
+                final int distanceCalculations = corridor.getDistanceCalculations() - initialDistanceCalculations;
+
+                statistics.visitLeaf(this.size, distanceCalculations);
+                statistics.calculateExactDistances(distanceCalculations);
+            }
+        } else {
+            // Each child's spans go on the stack just above this node's spans; the farther child can reuse the closer
+            // child's space once the closer child is done with it
+            final int closerEnd = corridor.selectSpansWithin(from, to, this.vantagePoint, this.threshold);
+            int distanceCalculations = corridor.getDistanceCalculations() - initialDistanceCalculations;
+
+            if (closerEnd > to) {
+                this.closer.collectAllInCorridor(corridor, to, closerEnd, results, recordRoutePositions, statistics);
+            } else if (statistics != null) {
+                statistics.pruneBranch();
+            }
+
+            final int fartherDistanceCalculations = corridor.getDistanceCalculations();
+            final int fartherEnd = corridor.selectSpansBeyond(from, to, this.vantagePoint, this.threshold);
+            distanceCalculations += corridor.getDistanceCalculations() - fartherDistanceCalculations;
+
+            if (statistics != null) {
+                statistics.visitInternalNode(distanceCalculations);
+            }
+
+            if (fartherEnd > to) {
+                this.farther.collectAllInCorridor(corridor, to, fartherEnd, results, recordRoutePositions, statistics);
+            } else if (statistics != null) {
+                statistics.pruneBranch();
+            }
+        }
+    }
+
+    /**
+     * Adds all points in this node and its descendants that fall within the given bounding box to the given
+     * results. Subtrees whose bounds are disjoint from the box, or whose points are all closer to (or farther from)
+     * their vantage point than any point in the box could be, are skipped entirely; subtrees whose bounds lie entirely
+     * within the box are added without checking individual points.
+     *
+     * @param boundingBox the bounding box within which to find points
+     * @param results the results to which to add points
+     * @param statistics the statistics in which to count the work done by the search, or {@code null} if the search
+     * is not instrumented
+     */
+    @SuppressWarnings("unchecked")
+    void collectAllInBoundingBox(final BoundingBox boundingBox, final SearchResults<E> results, final QueryStatistics statistics) {
+        if (!boundingBox.intersects(this.bounds, 0)) {
+            if (statistics != null) {
+                statistics.pruneBranch();
+            }
+
+            return;
+        }
+
+        if (boundingBox.encloses(this.bounds, 0)) {
+            if (statistics != null) {
+                statistics.visitInternalNode(0);
+            }
+
+            this.collectAll(results);
+        } else if (this.isLeaf()) {
+            if (statistics != null) {
+                statistics.visitLeaf(this.size, 0);
+            }
+
+            for (int i = 0; i < this.size; i++) {
+                if (boundingBox.contains((E) this.points[i])) {
+                    results.add((E) this.points[i], Double.NaN);
+                }
+            }
+        } else {
+            if (statistics != null) {
+                statistics.visitInternalNode(2);
+            }
+
+            if (boundingBox.getMinChordLength(this.vantagePoint, 0) <= this.threshold) {
+                this.closer.collectAllInBoundingBox(boundingBox, results, statistics);
+            } else if (statistics != null) {
+                statistics.pruneBranch();
+            }
+
+            if (boundingBox.getMaxChordLength(this.vantagePoint, 0) > this.threshold) {
+                this.farther.collectAllInBoundingBox(boundingBox, results, statistics);
+            } else if (statistics != null) {
+                statistics.pruneBranch();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of points in this node and its descendants within the given chord length of the given query
+     * vector. Subtrees whose caps lie entirely within the given chord length are counted by size without visiting
+     * their points, and subtrees whose caps (or vantage point thresholds) put them out of reach are skipped entirely.
+     *
+     * @param queryVector the unit vector of the query point
+     * @param maxChordLength the maximum chord length (inclusive) between the query point and any counted point
+     *
+     * @return the number of points within the given chord length of the query vector
+     */
+    int countWithinChordLength(final double[] queryVector, final double maxChordLength) {
+        final double chordLengthFromCenter = UnitVectors.getChordLength(queryVector, this.cap, 0);
+
+        if (chordLengthFromCenter - this.cap[3] - CHORD_LENGTH_TOLERANCE > maxChordLength) {
+            return 0;
+        }
+
+        if (chordLengthFromCenter + this.cap[3] + CHORD_LENGTH_TOLERANCE <= maxChordLength) {
+            return this.size;
+        }
+
+        int count = 0;
+
+        if (this.isLeaf()) {
+            for (int i = 0; i < this.size; i++) {
+                if (UnitVectors.getChordLength(queryVector, this.vectors, i) <= maxChordLength) {
+                    count++;
+                }
+            }
+        } else {
+            final double chordLengthFromVantagePoint = UnitVectors.getChordLength(this.vantagePoint, queryVector, 0);
+
+            if (chordLengthFromVantagePoint - maxChordLength <= this.threshold) {
+                count += this.closer.countWithinChordLength(queryVector, maxChordLength);
+            }
+
+            if (chordLengthFromVantagePoint + maxChordLength > this.threshold) {
+                count += this.farther.countWithinChordLength(queryVector, maxChordLength);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of points in this node and its descendants that fall within the given bounding box. Subtrees
+     * are skipped or counted by size under the same rules that
+     * {@link #collectAllInBoundingBox(BoundingBox, SearchResults, QueryStatistics)} uses to skip or collect them.
+     *
+     * @param boundingBox the bounding box within which to count points
+     *
+     * @return the number of points within the given bounding box
+     */
+    int countInBoundingBox(final BoundingBox boundingBox) {
+        if (!boundingBox.intersects(this.bounds, 0)) {
+            return 0;
+        }
+
+        if (boundingBox.encloses(this.bounds, 0)) {
+            return this.size;
+        }
+
+        int count = 0;
+
+        if (this.isLeaf()) {
+            for (int i = 0; i < this.size; i++) {
+                if (boundingBox.contains((GeospatialPoint) this.points[i])) {
+                    count++;
+                }
+            }
+        } else {
+            if (boundingBox.getMinChordLength(this.vantagePoint, 0) <= this.threshold) {
+                count += this.closer.countInBoundingBox(boundingBox);
+            }
+
+            if (boundingBox.getMaxChordLength(this.vantagePoint, 0) > this.threshold) {
+                count += this.farther.countInBoundingBox(boundingBox);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds the points in this node and its descendants to the cells of the given grid. Subtrees whose bounds fall
+     * within a single cell are counted by size without visiting their points; otherwise, subtrees are skipped under the
+     * same rules that {@link #collectAllInBoundingBox(BoundingBox, SearchResults, QueryStatistics)} uses.
+     *
+     * @param grid the grid to which to add points
+     */
+    void countInGrid(final CountGrid grid) {
+        final BoundingBox boundingBox = grid.getBoundingBox();
+
+        if (!boundingBox.intersects(this.bounds, 0)) {
+            return;
+        }
+
+        if (boundingBox.encloses(this.bounds, 0)) {
+            this.countAllInGrid(grid);
+        } else if (this.isLeaf()) {
+            for (int i = 0; i < this.size; i++) {
+                final GeospatialPoint point = (GeospatialPoint) this.points[i];
+                grid.add(point.getLatitude(), point.getLongitude());
+            }
+        } else {
+            if (boundingBox.getMinChordLength(this.vantagePoint, 0) <= this.threshold) {
+                this.closer.countInGrid(grid);
+            }
+
+            if (boundingBox.getMaxChordLength(this.vantagePoint, 0) > this.threshold) {
+                this.farther.countInGrid(grid);
+            }
+        }
+    }
+
+    /**
+     * Adds all points in this node and its descendants to the cells of the given grid, whose bounding box must enclose
+     * this node's bounds. Vantage points can't skip anything here, so only the bounds of each subtree are checked.
+     */
+    private void countAllInGrid(final CountGrid grid) {
+        if (grid.addAll(this.bounds, 0, this.size)) {
+            return;
+        }
+
+        if (this.isLeaf()) {
+            for (int i = 0; i < this.size; i++) {
+                final GeospatialPoint point = (GeospatialPoint) this.points[i];
+                grid.add(point.getLatitude(), point.getLongitude());
+            }
+        } else {
+            this.closer.countAllInGrid(grid);
+            this.farther.countAllInGrid(grid);
+        }
+    }
+
+    /**
+     * Reports every pair of a point in this tree and a point in another tree that are no more than the given chord
+     * length apart to the given callback, dividing the work among the threads of the given pool.
+     *
+     * @param other the root node of the other tree
+     * @param maxChordLength the maximum chord length (inclusive) between the points in a pair
+     * @param callback the callback to which to report pairs
+     * @param distanceMode the strategy with which to evaluate distances to points in the other tree's leaf nodes
+     * @param pool the pool in which to run the join
+     */
+    <F extends GeospatialPoint> void joinWithinChordLength(final VPTreeNode<F> other, final double maxChordLength,
+            final JoinCallback<? super E, ? super F> callback, final DistanceMode distanceMode, final ForkJoinPool pool) {
+
+        pool.invoke(new JoinTask<>(this, Collections.singletonList(other), maxChordLength, 0, callback, distanceMode));
+    }
+
+    /**
+     * Reports each point in this tree's nearest neighbors in another tree to the given callback, dividing the work
+     * among the threads of the given pool.
+     *
+     * @param other the root node of the other tree
+     * @param maxNeighbors the number of neighbors to find for each point; must be positive and no larger than the
+     * number of points in the other tree
+     * @param callback the callback to which to report pairs
+     * @param distanceMode the strategy with which to evaluate distances to points in the other tree's leaf nodes
+     * @param pool the pool in which to run the join
+     */
+    <F extends GeospatialPoint> void joinNearestNeighbors(final VPTreeNode<F> other, final int maxNeighbors,
+            final JoinCallback<? super E, ? super F> callback, final DistanceMode distanceMode, final ForkJoinPool pool) {
+
+        pool.invoke(new JoinTask<>(this, Collections.singletonList(other), Double.POSITIVE_INFINITY, maxNeighbors,
+                callback, distanceMode));
+    }
+
+    /**
+     * Reports every pair of a point in this node (or its descendants) and a point in one of the given nodes from
+     * another tree that are no more than the given chord length apart.
+     *
+     * @param candidates nodes from the other tree that together contain every point within the given chord length of
+     * any point in this node
+     */
+    @SuppressWarnings("unchecked")
+    private <F extends GeospatialPoint> void joinWithinChordLength(final List<VPTreeNode<F>> candidates,
+            final double maxChordLength, final JoinCallback<? super E, ? super F> callback,
+            final SearchResults<F> results, final DistanceMode distanceMode) {
+
+        final List<VPTreeNode<F>> joinCandidates = this.selectJoinCandidates(candidates, maxChordLength);
+
+        if (joinCandidates.isEmpty()) {
+            return;
+        }
+
+        if (this.isLeaf()) {
+            final double[] queryVector = new double[3];
+
+            for (int i = 0; i < this.size; i++) {
+                System.arraycopy(this.vectors, 3 * i, queryVector, 0, 3);
+                results.clear();
+
+                for (final VPTreeNode<F> candidate : joinCandidates) {
+                    candidate.collectAllWithinChordLength(queryVector, maxChordLength, results, null, null, distanceMode);
+                }
+
+                for (int j = 0; j < results.size(); j++) {
+                    callback.pointsJoined((E) this.points[i], results.get(j), results.getDistance(j));
+                }
+            }
+        } else if (this.size > PARALLEL_JOIN_THRESHOLD) {
+            ForkJoinTask.invokeAll(
+                    new JoinTask<>(this.closer, joinCandidates, maxChordLength, 0, callback, distanceMode),
+                    new JoinTask<>(this.farther, joinCandidates, maxChordLength, 0, callback, distanceMode));
+        } else {
+            this.closer.joinWithinChordLength(joinCandidates, maxChordLength, callback, results, distanceMode);
+            this.farther.joinWithinChordLength(joinCandidates, maxChordLength, callback, results, distanceMode);
+        }
+    }
+
+    /**
+     * Reports the nearest neighbors among the points in the given nodes from another tree for each point in this node
+     * and its descendants.
+     *
+     * @param candidates nodes from the other tree that together contain every nearest neighbor of every point in this
+     * node
+     * @param maxChordLength the maximum chord length between any point in this node and its farthest nearest neighbor
+     */
+    @SuppressWarnings("unchecked")
+    private <F extends GeospatialPoint> void joinNearestNeighbors(final List<VPTreeNode<F>> candidates,
+            final double maxChordLength, final int maxNeighbors, final JoinCallback<? super E, ? super F> callback,
+            final SearchResults<F> results, final DistanceMode distanceMode) {
+
+        final double neighborChordLength =
+                Math.min(maxChordLength, this.getNeighborChordLengthBound(candidates, maxNeighbors));
+
+        final List<VPTreeNode<F>> joinCandidates = this.selectJoinCandidates(candidates, neighborChordLength);
+
+        if (joinCandidates.isEmpty()) {
+            return;
+        }
+
+        if (this.isLeaf()) {
+            final double[] queryVector = new double[3];
+
+            for (int i = 0; i < this.size; i++) {
+                System.arraycopy(this.vectors, 3 * i, queryVector, 0, 3);
+
+                final NearestNeighborCollector<F> collector = results.getCollector(maxNeighbors);
+
+                // Search the candidate most likely to hold the nearest neighbors first so the collector's limit shrinks
+                // quickly and lets us skip the others
+                int nearestCandidate = 0;
+                double nearestCandidateChordLength = Double.POSITIVE_INFINITY;
+
+                for (int j = 0; j < joinCandidates.size(); j++) {
+                    final double chordLength = joinCandidates.get(j).getMinChordLength(queryVector);
+
+                    if (chordLength < nearestCandidateChordLength) {
+                        nearestCandidate = j;
+                        nearestCandidateChordLength = chordLength;
+                    }
+                }
+
+                joinCandidates.get(nearestCandidate).collectNearestNeighbors(queryVector, collector, null, null, distanceMode);
+
+                for (int j = 0; j < joinCandidates.size(); j++) {
+                    final VPTreeNode<F> candidate = joinCandidates.get(j);
+
+                    if (j != nearestCandidate && candidate.getMinChordLength(queryVector) < collector.getFarthestChordLength()) {
+                        candidate.collectNearestNeighbors(queryVector, collector, null, null, distanceMode);
+                    }
+                }
+
+                results.clear();
+                collector.drainTo(results);
+
+                for (int j = 0; j < results.size(); j++) {
+                    callback.pointsJoined((E) this.points[i], results.get(j), results.getDistance(j));
+                }
+            }
+        } else if (this.size > PARALLEL_JOIN_THRESHOLD) {
+            ForkJoinTask.invokeAll(
+                    new JoinTask<>(this.closer, joinCandidates, neighborChordLength, maxNeighbors, callback, distanceMode),
+                    new JoinTask<>(this.farther, joinCandidates, neighborChordLength, maxNeighbors, callback, distanceMode));
+        } else {
+            this.closer.joinNearestNeighbors(joinCandidates, neighborChordLength, maxNeighbors, callback, results, distanceMode);
+            this.farther.joinNearestNeighbors(joinCandidates, neighborChordLength, maxNeighbors, callback, results, distanceMode);
+        }
+    }
+
+    /**
+     * Selects the nodes from another tree that could contain points within the given chord length of any point in this
+     * node from among the given nodes and their descendants.
+     */
+    private <F extends GeospatialPoint> List<VPTreeNode<F>> selectJoinCandidates(final List<VPTreeNode<F>> candidates, final double maxChordLength) {
+        final List<VPTreeNode<F>> selectedCandidates = new ArrayList<>(candidates.size());
+
+        for (final VPTreeNode<F> candidate : candidates) {
+            candidate.addJoinCandidates(this.cap, maxChordLength, selectedCandidates);
+        }
+
+        return selectedCandidates;
+    }
+
+    /**
+     * Adds this node to the given list of join candidates if it could contain points within the given chord length of
+     * a point in the given cap. If only one of this node's children could contain such points, that child takes this
+     * node's place; searches for individual points in the cap would have to visit both children otherwise, and so
+     * would gain nothing from starting at either child instead of this node.
+     */
+    private void addJoinCandidates(final double[] cap, final double maxChordLength, final List<VPTreeNode<E>> candidates) {
+        if (this.size == 0) {
+            return;
+        }
+
+        final double reach = cap[3] + maxChordLength + CHORD_LENGTH_TOLERANCE;
+
+        if (UnitVectors.getChordLength(cap, this.cap, 0) - this.cap[3] > reach) {
+            return;
+        }
+
+        if (this.isLeaf()) {
+            candidates.add(this);
+        } else {
+            final double chordLengthFromVantagePoint = UnitVectors.getChordLength(this.vantagePoint, cap, 0);
+
+            final boolean closerCandidate = chordLengthFromVantagePoint - reach <= this.threshold;
+            final boolean fartherCandidate = chordLengthFromVantagePoint + reach > this.threshold;
+
+            if (closerCandidate && fartherCandidate) {
+                candidates.add(this);
+            } else if (closerCandidate) {
+                this.closer.addJoinCandidates(cap, maxChordLength, candidates);
+            } else if (fartherCandidate) {
+                this.farther.addJoinCandidates(cap, maxChordLength, candidates);
+            }
+        }
+    }
+
+    /**
+     * Returns an upper bound for the chord length between any point in this node and its farthest nearest neighbor
+     * among the points in the given nodes from another tree.
+     */
+    private <F extends GeospatialPoint> double getNeighborChordLengthBound(final List<VPTreeNode<F>> candidates, final int maxNeighbors) {
+        final double[] maxChordLengths = new double[candidates.size()];
+        final int[] sizes = new int[candidates.size()];
+
+        // Sort candidates by the farthest any of their points could be from the center of this node's cap
+        for (int i = 0; i < maxChordLengths.length; i++) {
+            final VPTreeNode<F> candidate = candidates.get(i);
+            final double maxChordLength = UnitVectors.getChordLength(this.cap, candidate.cap, 0) + candidate.cap[3];
+
+            int j = i;
+
+            while (j > 0 && maxChordLengths[j - 1] > maxChordLength) {
+                maxChordLengths[j] = maxChordLengths[j - 1];
+                sizes[j] = sizes[j - 1];
+                j--;
+            }
+
+            maxChordLengths[j] = maxChordLength;
+            sizes[j] = candidate.size;
+        }
+
+        // Once the nearest candidates hold enough points, no point in this node needs to look any farther for neighbors
+        int neighbors = 0;
+
+        for (int i = 0; i < maxChordLengths.length; i++) {
+            neighbors += sizes[i];
+
+            if (neighbors >= maxNeighbors) {
+                return this.cap[3] + maxChordLengths[i] + CHORD_LENGTH_TOLERANCE;
+            }
+        }
+
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns a lower bound for the chord length between the given vector and any point in this node.
+     */
+    private double getMinChordLength(final double[] vector) {
+        return UnitVectors.getChordLength(vector, this.cap, 0) - this.cap[3] - CHORD_LENGTH_TOLERANCE;
+    }
+
+    /**
+     * Runs part of a join, starting from a single node of the first tree.
+     */
+    private static class JoinTask<E extends GeospatialPoint, F extends GeospatialPoint> extends RecursiveAction {
+        private final VPTreeNode<E> node;
+        private final List<VPTreeNode<F>> candidates;
+        private final double maxChordLength;
+        private final int maxNeighbors;
+        private final JoinCallback<? super E, ? super F> callback;
+        private final DistanceMode distanceMode;
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param maxNeighbors the number of nearest neighbors to find for each point, or 0 to find all points within
+         * the given chord length instead
+         */
+        private JoinTask(final VPTreeNode<E> node, final List<VPTreeNode<F>> candidates, final double maxChordLength,
+                final int maxNeighbors, final JoinCallback<? super E, ? super F> callback, final DistanceMode distanceMode) {
+
+            this.node = node;
+            this.candidates = candidates;
+            this.maxChordLength = maxChordLength;
+            this.maxNeighbors = maxNeighbors;
+            this.callback = callback;
+            this.distanceMode = distanceMode;
+        }
+
+        @Override
+        protected void compute() {
+            final SearchResults<F> results = new SearchResults<>();
+
+            if (this.maxNeighbors > 0) {
+                this.node.joinNearestNeighbors(this.candidates, this.maxChordLength, this.maxNeighbors, this.callback,
+                        results, this.distanceMode);
+            } else {
+                this.node.joinWithinChordLength(this.candidates, this.maxChordLength, this.callback, results,
+                        this.distanceMode);
+            }
+        }
+    }
+
+    /**
+     * Adds all points in this node and its descendants to the given results without distances.
+     *
+     * @param results the results to which to add points
+     */
+    @SuppressWarnings("unchecked")
+    void collectAll(final SearchResults<E> results) {
+        if (this.isLeaf()) {
+            for (int i = 0; i < this.size; i++) {
+                results.add((E) this.points[i], Double.NaN);
+            }
+        } else {
+            this.closer.collectAll(results);
+            this.farther.collectAll(results);
+        }
+    }
+
+    /**
+     * Adds this node and its descendants to the given statistics.
+     *
+     * @param depth the depth of this node in the tree
+     * @param statistics the statistics to which to add this node and its descendants
+     */
+    void collectTreeStatistics(final int depth, final TreeStatistics statistics) {
+        if (this.isLeaf()) {
+            statistics.addLeaf(depth, this.size);
+        } else {
+            statistics.addInternalNode();
+
+            this.closer.collectTreeStatistics(depth + 1, statistics);
+            this.farther.collectTreeStatistics(depth + 1, statistics);
+        }
+    }
+
+    /**
+     * Adds all of the leaf nodes under (and including) this node to the given list.
+     *
+     * @param leaves the list to which to add leaf nodes
+     */
+    void collectLeaves(final List<VPTreeNode<E>> leaves) {
+        if (this.isLeaf()) {
+            leaves.add(this);
+        } else {
+            this.closer.collectLeaves(leaves);
+            this.farther.collectLeaves(leaves);
+        }
+    }
+
+    /**
+     * Returns the point at the given index within this leaf node.
+     *
+     * @param index the index of the point to return
+     *
+     * @return the point at the given index
+     */
+    @SuppressWarnings("unchecked")
+    E getPoint(final int index) {
+        return (E) this.points[index];
+    }
+}
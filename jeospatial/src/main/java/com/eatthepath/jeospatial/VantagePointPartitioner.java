@@ -0,0 +1,202 @@
+package com.eatthepath.jeospatial;
+
+import java.util.Random;
+
+/**
+ * Partitions ranges of points around vantage points during vp-tree construction. Points are stored as parallel arrays
+ * of elements and unit vectors (see {@link UnitVectors}); partitioning rearranges both arrays in place so that the
+ * points closer to the vantage point than the partition threshold (inclusive) precede the points farther away.
+ *
+ * @author <a href="https://github.com/jchambers">Jon Chambers</a>
+ */
+class VantagePointPartitioner {
+
+    // The number of points against which to compare each vantage point candidate
+    static final int SPREAD_SAMPLE_SIZE = 64;
+
+    private VantagePointPartitioner() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Chooses a vantage point at random from the given range of points.
+     *
+     * @param from the index of the first point in the range (inclusive)
+     * @param to the index of the last point in the range (exclusive)
+     * @param random a source of randomness
+     *
+     * @return the index of the chosen vantage point
+     */
+    static int selectVantagePoint(final int from, final int to, final Random random) {
+        return from + random.nextInt(to - from);
+    }
+
+    /**
+     * Chooses a vantage point from the given range of points. With a single candidate, this chooses a point at random;
+     * otherwise, it chooses the given number of candidates at random and returns the one whose chord lengths to a
+     * random sample of points in the range have the largest variance.
+     *
+     * @param vectors the unit vectors of all points
+     * @param from the index of the first point in the range (inclusive)
+     * @param to the index of the last point in the range (exclusive)
+     * @param candidates the number of candidates from which to choose a vantage point
+     * @param random a source of randomness
+     *
+     * @return the index of the chosen vantage point
+     */
+    static int selectVantagePoint(final double[] vectors, final int from, final int to, final int candidates, final Random random) {
+        int vantagePointIndex = selectVantagePoint(from, to, random);
+
+        if (candidates > 1) {
+            final int sampleSize = Math.min(SPREAD_SAMPLE_SIZE, to - from);
+            final int[] sample = new int[sampleSize];
+
+            for (int i = 0; i < sampleSize; i++) {
+                sample[i] = from + random.nextInt(to - from);
+            }
+
+            double largestVariance = getChordLengthVariance(vectors, vantagePointIndex, sample);
+
+            for (int i = 1; i < candidates; i++) {
+                final int candidateIndex = selectVantagePoint(from, to, random);
+                final double variance = getChordLengthVariance(vectors, candidateIndex, sample);
+
+                if (variance > largestVariance) {
+                    vantagePointIndex = candidateIndex;
+                    largestVariance = variance;
+                }
+            }
+        }
+
+        return vantagePointIndex;
+    }
+
+    private static double getChordLengthVariance(final double[] vectors, final int candidateIndex, final int[] sample) {
+        double sum = 0;
+        double sumOfSquares = 0;
+
+        for (final int index : sample) {
+            final double chordLength = UnitVectors.getChordLength(vectors, candidateIndex, vectors, index);
+
+            sum += chordLength;
+            sumOfSquares += chordLength * chordLength;
+        }
+
+        final double mean = sum / sample.length;
+
+        return sumOfSquares / sample.length - mean * mean;
+    }
+
+    /**
+     * Calculates the chord length between the given vantage point and each point in the given range.
+     *
+     * @param vectors the unit vectors of all points
+     * @param vantagePoint the unit vector of the vantage point
+     * @param from the index of the first point in the range (inclusive)
+     * @param to the index of the last point in the range (exclusive)
+     * @param chordLengths the array to which to write chord lengths; each point's chord length is written at the
+     * point's own index
+     */
+    static void calculateChordLengths(final double[] vectors, final double[] vantagePoint, final int from, final int to, final double[] chordLengths) {
+        for (int i = from; i < to; i++) {
+            chordLengths[i] = UnitVectors.getChordLength(vantagePoint, vectors, i);
+        }
+    }
+
+    /**
+     * Selects the median of the given range of chord lengths.
+     *
+     * @param chordLengths the chord lengths from which to choose a median; not modified
+     * @param scratch a working array at least as large as the range; its contents in the range are overwritten
+     * @param from the index of the first chord length in the range (inclusive)
+     * @param to the index of the last chord length in the range (exclusive)
+     *
+     * @return the (lower) median chord length in the given range
+     */
+    static double selectMedian(final double[] chordLengths, final double[] scratch, final int from, final int to) {
+        System.arraycopy(chordLengths, from, scratch, from, to - from);
+
+        final int k = from + (to - from - 1) / 2;
+        int left = from;
+        int right = to - 1;
+
+        while (right > left) {
+            final double pivot = scratch[(left + right) >>> 1];
+
+            int i = left;
+            int j = right;
+
+            while (i <= j) {
+                while (scratch[i] < pivot) {
+                    i++;
+                }
+
+                while (scratch[j] > pivot) {
+                    j--;
+                }
+
+                if (i <= j) {
+                    final double temp = scratch[i];
+                    scratch[i++] = scratch[j];
+                    scratch[j--] = temp;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+
+        return scratch[k];
+    }
+
+    /**
+     * Rearranges the given range of points such that all points whose chord length from the vantage point is less
+     * than or equal to the threshold precede all points whose chord length is greater than the threshold.
+     *
+     * @param points the elements associated with each point
+     * @param vectors the unit vectors of each point
+     * @param chordLengths the chord length between each point and the vantage point
+     * @param from the index of the first point in the range (inclusive)
+     * @param to the index of the last point in the range (exclusive)
+     * @param threshold the partition threshold
+     *
+     * @return the index of the first point farther from the vantage point than the threshold, or {@code to} if no
+     * points are farther than the threshold
+     */
+    static int partition(final Object[] points, final double[] vectors, final double[] chordLengths, final int from, final int to, final double threshold) {
+        int split = from;
+
+        for (int i = from; i < to; i++) {
+            if (chordLengths[i] <= threshold) {
+                if (i != split) {
+                    swap(points, vectors, chordLengths, i, split);
+                }
+
+                split++;
+            }
+        }
+
+        return split;
+    }
+
+    private static void swap(final Object[] points, final double[] vectors, final double[] chordLengths, final int i, final int j) {
+        final Object point = points[i];
+        points[i] = points[j];
+        points[j] = point;
+
+        for (int c = 0; c < 3; c++) {
+            final double component = vectors[3 * i + c];
+            vectors[3 * i + c] = vectors[3 * j + c];
+            vectors[3 * j + c] = component;
+        }
+
+        final double chordLength = chordLengths[i];
+        chordLengths[i] = chordLengths[j];
+        chordLengths[j] = chordLength;
+    }
+}
@@ -0,0 +1,136 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BoundingBoxTest {
+
+    @Test
+    public void testContains() {
+        final BoundingBox boundingBox = new BoundingBox(-2, -2, 2, 2);
+
+        assertTrue(boundingBox.contains(0, 0));
+        assertTrue(boundingBox.contains(-2, -2));
+        assertTrue(boundingBox.contains(2, 2));
+        assertFalse(boundingBox.contains(3, 0));
+        assertFalse(boundingBox.contains(0, 3));
+        assertFalse(boundingBox.contains(0, 178));
+    }
+
+    @Test
+    public void testContainsAcrossAntimeridian() {
+        final BoundingBox boundingBox = new BoundingBox(-10, 170, 10, -170);
+
+        assertTrue(boundingBox.contains(0, 175));
+        assertTrue(boundingBox.contains(0, -175));
+        assertTrue(boundingBox.contains(0, -180));
+        assertTrue(boundingBox.contains(0, 180));
+        assertFalse(boundingBox.contains(0, 0));
+        assertFalse(boundingBox.contains(0, 160));
+        assertFalse(boundingBox.contains(0, -160));
+    }
+
+    @Test
+    public void testContainsAllLongitudes() {
+        final BoundingBox boundingBox = new BoundingBox(-10, -180, 10, 180);
+
+        assertTrue(boundingBox.contains(0, 0));
+        assertTrue(boundingBox.contains(0, -180));
+        assertTrue(boundingBox.contains(0, 179.9));
+        assertFalse(boundingBox.contains(11, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNorthSouthOfSouth() {
+        new BoundingBox(10, 0, -10, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLatitudeOutOfRange() {
+        new BoundingBox(-10, 0, 91, 10);
+    }
+
+    @Test
+    public void testNormalizeLongitude() {
+        assertEquals(0, BoundingBox.normalizeLongitude(0), 0);
+        assertEquals(-180, BoundingBox.normalizeLongitude(180), 0);
+        assertEquals(-170, BoundingBox.normalizeLongitude(190), 1e-12);
+        assertEquals(170, BoundingBox.normalizeLongitude(-190), 1e-12);
+        assertEquals(10, BoundingBox.normalizeLongitude(730), 1e-12);
+    }
+
+    @Test
+    public void testIntersectsAndEncloses() {
+        final BoundingBox boundingBox = new BoundingBox(-10, 170, 10, -170);
+
+        assertTrue(boundingBox.intersects(new double[] { -1, 160, 1, 175 }, 0));
+        assertFalse(boundingBox.encloses(new double[] { -1, 160, 1, 175 }, 0));
+        assertTrue(boundingBox.encloses(new double[] { -1, 172, 1, 175 }, 0));
+        assertTrue(boundingBox.encloses(new double[] { -1, -180, 1, -175 }, 0));
+        assertFalse(boundingBox.intersects(new double[] { -1, -160, 1, 160 }, 0));
+        assertFalse(boundingBox.intersects(new double[] { 11, 172, 12, 175 }, 0));
+    }
+
+    @Test
+    public void testChordLengthBounds() {
+        final Random random = new Random(53);
+
+        for (int i = 0; i < 200; i++) {
+            final double south = random.nextDouble() * 180 - 90;
+            final double north = south + random.nextDouble() * (90 - south);
+            final double west = random.nextDouble() * 360 - 180;
+            final double width = random.nextDouble() * 360;
+
+            final BoundingBox boundingBox = new BoundingBox(south, west, north, west + width);
+            final double[] vector = UnitVectors.getUnitVector(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+
+            final double minChordLength = boundingBox.getMinChordLength(vector, 0);
+            final double maxChordLength = boundingBox.getMaxChordLength(vector, 0);
+
+            for (int j = 0; j < 200; j++) {
+                final double[] pointVector = UnitVectors.getUnitVector(
+                        south + random.nextDouble() * (north - south), west + random.nextDouble() * width);
+
+                final double chordLength = UnitVectors.getChordLength(vector, pointVector, 0);
+
+                assertTrue(chordLength >= minChordLength);
+                assertTrue(chordLength <= maxChordLength);
+            }
+
+            // Corners should be within the bounds and at least one of them is usually close to one bound or the other
+            assertTrue(minChordLength <= UnitVectors.getChordLength(vector, UnitVectors.getUnitVector(south, west), 0));
+            assertTrue(maxChordLength >= UnitVectors.getChordLength(vector, UnitVectors.getUnitVector(north, west + width), 0));
+        }
+
+        final BoundingBox boundingBox = new BoundingBox(-1, -1, 1, 1);
+
+        assertEquals(0, boundingBox.getMinChordLength(UnitVectors.getUnitVector(0, 0), 0), 1e-8);
+        assertEquals(UnitVectors.MAX_CHORD_LENGTH, boundingBox.getMaxChordLength(UnitVectors.getUnitVector(0, 180), 0), 1e-6);
+        assertEquals(UnitVectors.getChordLength(UnitVectors.getUnitVector(0, 1), UnitVectors.getUnitVector(0, 10), 0),
+                boundingBox.getMinChordLength(UnitVectors.getUnitVector(0, 10), 0), 1e-6);
+    }
+
+    @Test
+    public void testMinChordLengthInsideBox() {
+        final Random random = new Random(71);
+
+        for (int i = 0; i < 1000; i++) {
+            final double south = random.nextDouble() * 170 - 85;
+            final double west = random.nextDouble() * 360 - 180;
+            final double north = south + random.nextDouble() * (90 - south);
+            final double width = random.nextDouble() * 10;
+
+            final BoundingBox boundingBox = new BoundingBox(south, west, north, west + width);
+
+            // Vectors for points inside the box must be exactly zero chord lengths away, or searches can prune subtrees
+            // whose vantage points lie in the box and whose inner radius is zero (i.e. the subtree holds duplicates)
+            final double[] vector = UnitVectors.getUnitVector(
+                    south + random.nextDouble() * (north - south), west + random.nextDouble() * width);
+
+            assertEquals(0, boundingBox.getMinChordLength(vector, 0), 0);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingGeospatialIndexTest {
+
+    private List<SimpleGeospatialPoint> points;
+    private VPTreeGeospatialIndex<SimpleGeospatialPoint> index;
+    private CachingGeospatialIndex<SimpleGeospatialPoint> cachingIndex;
+
+    private static final int TEST_POINT_COUNT = 2000;
+
+    // Queries cluster around a handful of places, as they would in a busy city
+    private static final int HOTSPOT_COUNT = 5;
+
+    @Before
+    public void setUp() {
+        this.points = VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        this.index = new VPTreeGeospatialIndex<>(this.points);
+        this.cachingIndex = new CachingGeospatialIndex<>(new VPTreeGeospatialIndex<>(this.points), 50e3, 64, 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCachingGeospatialIndexZeroCellSize() {
+        new CachingGeospatialIndex<>(this.index, 0, 64, 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCachingGeospatialIndexZeroCachedCells() {
+        new CachingGeospatialIndex<>(this.index, 50e3, 0, 1024);
+    }
+
+    @Test
+    public void testGetNearestNeighbors() {
+        final List<SimpleGeospatialPoint> hotspots = VPTreeGeospatialPointIndexTest.createRandomPoints(HOTSPOT_COUNT, new Random(157));
+        final Random random = new Random(163);
+
+        for (int i = 0; i < 500; i++) {
+            final SimpleGeospatialPoint queryPoint = createQueryPoint(hotspots, random);
+            final int maxResults = 1 + random.nextInt(20);
+
+            assertEquals(this.index.getNearestNeighbors(queryPoint, maxResults),
+                    this.cachingIndex.getNearestNeighbors(queryPoint, maxResults));
+        }
+
+        assertTrue(this.cachingIndex.getHitCount() > this.cachingIndex.getMissCount());
+        assertEquals(500, this.cachingIndex.getHitCount() + this.cachingIndex.getMissCount());
+    }
+
+    @Test
+    public void testGetAllWithinDistance() {
+        final List<SimpleGeospatialPoint> hotspots = VPTreeGeospatialPointIndexTest.createRandomPoints(HOTSPOT_COUNT, new Random(167));
+        final Random random = new Random(173);
+
+        for (int i = 0; i < 500; i++) {
+            final SimpleGeospatialPoint queryPoint = createQueryPoint(hotspots, random);
+            final double maxDistance = random.nextDouble() * 500e3;
+
+            assertEquals(new HashSet<>(this.index.getAllWithinDistance(queryPoint, maxDistance)),
+                    new HashSet<>(this.cachingIndex.getAllWithinDistance(queryPoint, maxDistance)));
+        }
+
+        assertTrue(this.cachingIndex.getHitRate() > 0.5);
+    }
+
+    @Test
+    public void testFilteredSearches() {
+        final List<SimpleGeospatialPoint> hotspots = VPTreeGeospatialPointIndexTest.createRandomPoints(HOTSPOT_COUNT, new Random(179));
+        final PointFilter<GeospatialPoint> filter = VPTreeGeospatialPointIndexTest.SPARSE_FILTER;
+        final Random random = new Random(181);
+
+        for (int i = 0; i < 500; i++) {
+            final SimpleGeospatialPoint queryPoint = createQueryPoint(hotspots, random);
+            final double maxDistance = random.nextDouble() * 500e3;
+
+            // Fill the cache with an unfiltered search so filtered searches have something to work with
+            this.cachingIndex.getNearestNeighbors(queryPoint, 20);
+
+            assertEquals(this.index.getNearestNeighbors(queryPoint, 2, filter),
+                    this.cachingIndex.getNearestNeighbors(queryPoint, 2, filter));
+
+            assertEquals(new HashSet<>(this.index.getAllWithinDistance(queryPoint, maxDistance, filter)),
+                    new HashSet<>(this.cachingIndex.getAllWithinDistance(queryPoint, maxDistance, filter)));
+        }
+    }
+
+    @Test
+    public void testInvalidation() {
+        final SimpleGeospatialPoint queryPoint = new SimpleGeospatialPoint(10, 10);
+        final SimpleGeospatialPoint distantQueryPoint = new SimpleGeospatialPoint(-10, -170);
+
+        this.cachingIndex.getNearestNeighbors(queryPoint, 5);
+        this.cachingIndex.getNearestNeighbors(distantQueryPoint, 5);
+
+        assertEquals(2, this.cachingIndex.getCachedCellCount());
+
+        final SimpleGeospatialPoint addedPoint = new SimpleGeospatialPoint(10.001, 10.001);
+        this.index.add(addedPoint);
+
+        assertTrue(this.cachingIndex.add(addedPoint));
+
+        assertEquals(1, this.cachingIndex.getInvalidationCount());
+        assertEquals(1, this.cachingIndex.getCachedCellCount());
+        assertEquals(this.index.getNearestNeighbors(queryPoint, 5), this.cachingIndex.getNearestNeighbors(queryPoint, 5));
+        assertEquals(addedPoint, this.cachingIndex.getNearestNeighbors(queryPoint, 1).get(0));
+
+        this.index.remove(addedPoint);
+
+        assertTrue(this.cachingIndex.remove(addedPoint));
+        assertFalse(this.cachingIndex.remove(addedPoint));
+
+        assertEquals(2, this.cachingIndex.getInvalidationCount());
+        assertEquals(this.index.getNearestNeighbors(queryPoint, 5), this.cachingIndex.getNearestNeighbors(queryPoint, 5));
+    }
+
+    @Test
+    public void testEviction() {
+        final CachingGeospatialIndex<SimpleGeospatialPoint> cachingIndex =
+                new CachingGeospatialIndex<>(this.index, 50e3, 2, 1024);
+
+        cachingIndex.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 5);
+        cachingIndex.getNearestNeighbors(new SimpleGeospatialPoint(0, 10), 5);
+
+        // Touch the first cell so the second is the least recently used
+        cachingIndex.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 5);
+        cachingIndex.getNearestNeighbors(new SimpleGeospatialPoint(0, 20), 5);
+
+        assertEquals(2, cachingIndex.getCachedCellCount());
+        assertEquals(1, cachingIndex.getEvictionCount());
+
+        final long hitCount = cachingIndex.getHitCount();
+        cachingIndex.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 5);
+
+        assertEquals(hitCount + 1, cachingIndex.getHitCount());
+    }
+
+    @Test
+    public void testCollectionMethods() {
+        assertEquals(TEST_POINT_COUNT, this.cachingIndex.size());
+        assertEquals(new HashSet<>(this.points), new HashSet<>(this.cachingIndex));
+        assertTrue(this.cachingIndex.contains(this.points.get(0)));
+
+        final List<SimpleGeospatialPoint> morePoints = VPTreeGeospatialPointIndexTest.createRandomPoints(10, new Random(191));
+        this.cachingIndex.addAll(morePoints);
+
+        assertEquals(TEST_POINT_COUNT + morePoints.size(), this.cachingIndex.size());
+
+        this.cachingIndex.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 5);
+        this.cachingIndex.clear();
+
+        assertTrue(this.cachingIndex.isEmpty());
+        assertEquals(0, this.cachingIndex.getCachedCellCount());
+        assertTrue(this.cachingIndex.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 5).isEmpty());
+    }
+
+    @Test
+    public void testEmptyIndex() {
+        final CachingGeospatialIndex<SimpleGeospatialPoint> cachingIndex =
+                new CachingGeospatialIndex<>(new VPTreeGeospatialIndex<SimpleGeospatialPoint>());
+
+        assertTrue(cachingIndex.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 5).isEmpty());
+        assertTrue(cachingIndex.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 5).isEmpty());
+        assertTrue(cachingIndex.getAllWithinDistance(new SimpleGeospatialPoint(0, 0), 1000).isEmpty());
+
+        final Iterator<SimpleGeospatialPoint> iterator = cachingIndex.getNearestNeighborIterator(new SimpleGeospatialPoint(0, 0));
+        assertFalse(iterator.hasNext());
+    }
+
+    private static SimpleGeospatialPoint createQueryPoint(final List<SimpleGeospatialPoint> hotspots, final Random random) {
+        final SimpleGeospatialPoint hotspot = hotspots.get(random.nextInt(hotspots.size()));
+
+        return new SimpleGeospatialPoint(Math.max(-90, Math.min(90, hotspot.getLatitude() + random.nextGaussian() * 0.1)),
+                hotspot.getLongitude() + random.nextGaussian() * 0.1);
+    }
+}
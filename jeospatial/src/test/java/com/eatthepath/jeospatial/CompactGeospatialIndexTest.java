@@ -0,0 +1,261 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.eatthepath.jvptree.DistanceComparator;
+
+public class CompactGeospatialIndexTest {
+
+    private static final int TEST_POINT_COUNT = 2000;
+
+    @Test
+    public void testGetNearestNeighbors() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final CompactGeospatialIndex<SimpleGeospatialPoint> index = new CompactGeospatialIndex<>(4, points);
+        final Random random = new Random(37);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+        }
+
+        assertTrue(new CompactGeospatialIndex<>(new ArrayList<SimpleGeospatialPoint>())
+                .getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 10).isEmpty());
+    }
+
+    @Test
+    public void testGetNearestNeighborIterator() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final CompactGeospatialIndex<SimpleGeospatialPoint> index = new CompactGeospatialIndex<>(4, points);
+        final Random random = new Random(43);
+
+        for (int i = 0; i < 10; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            final List<SimpleGeospatialPoint> actual = new ArrayList<>();
+
+            for (final Iterator<SimpleGeospatialPoint> iterator = index.getNearestNeighborIterator(queryPoint); iterator.hasNext();) {
+                actual.add(iterator.next());
+            }
+
+            assertEquals(expected, actual);
+        }
+
+        assertFalse(new CompactGeospatialIndex<>(new ArrayList<SimpleGeospatialPoint>())
+                .getNearestNeighborIterator(new SimpleGeospatialPoint(0, 0)).hasNext());
+    }
+
+    @Test
+    public void testFilteredSearches() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final CompactGeospatialIndex<SimpleGeospatialPoint> index = new CompactGeospatialIndex<>(4, points);
+        final CompactGeospatialIndex<SimpleGeospatialPoint> categorizedIndex =
+                new CompactGeospatialIndex<>(4, points, VPTreeGeospatialPointIndexTest.LONGITUDE_CATEGORIZER);
+
+        final PointFilter<GeospatialPoint> filter = VPTreeGeospatialPointIndexTest.SPARSE_FILTER;
+        final Random random = new Random(47);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 5000e3;
+
+            final List<SimpleGeospatialPoint> expectedNeighbors =
+                    VPTreeGeospatialPointIndexTest.getExpectedFilteredNeighbors(points, queryPoint, 10, filter);
+
+            final Set<SimpleGeospatialPoint> expectedWithinDistance =
+                    VPTreeGeospatialPointIndexTest.getExpectedFilteredPointsWithinDistance(points, queryPoint, maxDistance, filter);
+
+            assertEquals(expectedNeighbors, index.getNearestNeighbors(queryPoint, 10, filter));
+            assertEquals(expectedNeighbors, categorizedIndex.getNearestNeighbors(queryPoint, 10, filter));
+
+            assertEquals(expectedWithinDistance, new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance, filter)));
+            assertEquals(expectedWithinDistance, new HashSet<>(categorizedIndex.getAllWithinDistance(queryPoint, maxDistance, filter)));
+        }
+    }
+
+    @Test
+    public void testCategoryFilterSkipsNodes() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final CompactGeospatialIndex<SimpleGeospatialPoint> index = new CompactGeospatialIndex<>(4, points);
+        final CompactGeospatialIndex<SimpleGeospatialPoint> categorizedIndex =
+                new CompactGeospatialIndex<>(4, points, VPTreeGeospatialPointIndexTest.LONGITUDE_CATEGORIZER);
+
+        final AtomicInteger checkedPoints = new AtomicInteger();
+
+        // Only one category, so most leaves will contain no matching points
+        final CategoryFilter<GeospatialPoint> filter =
+                new CategoryFilter<GeospatialPoint>(VPTreeGeospatialPointIndexTest.LONGITUDE_CATEGORIZER, 1L << 19) {
+
+            @Override
+            public boolean allowPoint(final GeospatialPoint point) {
+                checkedPoints.incrementAndGet();
+                return super.allowPoint(point);
+            }
+        };
+
+        index.getAllWithinDistance(new SimpleGeospatialPoint(0, 0), 20000e3, filter);
+        final int uncategorizedChecks = checkedPoints.getAndSet(0);
+
+        categorizedIndex.getAllWithinDistance(new SimpleGeospatialPoint(0, 0), 20000e3, filter);
+
+        assertEquals(TEST_POINT_COUNT, uncategorizedChecks);
+        assertTrue(checkedPoints.get() < uncategorizedChecks / 2);
+    }
+
+    @Test
+    public void testGetAllWithinDistance() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final CompactGeospatialIndex<SimpleGeospatialPoint> index = new CompactGeospatialIndex<>(4, points);
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+        final Random random = new Random(41);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 2000e3;
+
+            final HashSet<SimpleGeospatialPoint> expected = new HashSet<>();
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (distanceFunction.getDistance(queryPoint, point) <= maxDistance) {
+                    expected.add(point);
+                }
+            }
+
+            assertEquals(expected, new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance)));
+        }
+    }
+
+    @Test
+    public void testGetAllPointsInRandomBoundingBoxes() {
+        final List<SimpleGeospatialPoint> points = VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(47));
+        final CompactGeospatialIndex<SimpleGeospatialPoint> index = new CompactGeospatialIndex<>(4, points);
+
+        final Random random = new Random(59);
+
+        for (int i = 0; i < 200; i++) {
+            final double south = random.nextDouble() * 180 - 90;
+            final double north = Math.min(90, south + random.nextDouble() * 60);
+            final double west = random.nextDouble() * 360 - 180;
+
+            // Roughly half of these boxes will cross the antimeridian
+            final double east = BoundingBox.normalizeLongitude(west + random.nextDouble() * 120);
+
+            final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+            final HashSet<SimpleGeospatialPoint> expected = new HashSet<>();
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (boundingBox.contains(point)) {
+                    expected.add(point);
+                }
+            }
+
+            final List<SimpleGeospatialPoint> pointsInBox = index.getAllPointsInBoundingBox(south, west, north, east);
+
+            assertEquals(expected.size(), pointsInBox.size());
+            assertEquals(expected, new HashSet<>(pointsInBox));
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.getAllPointsInBoundingBox(-90, -180, 90, 180).size());
+    }
+
+    @Test
+    public void testGetAllPointsInBoundingBox() {
+        final List<SimpleGeospatialPoint> points = new ArrayList<>();
+
+        for (int i = -5; i <= 5; i++) {
+            points.add(new SimpleGeospatialPoint(i, i));
+        }
+
+        final CompactGeospatialIndex<SimpleGeospatialPoint> index = new CompactGeospatialIndex<>(2, points);
+
+        assertEquals(5, index.getAllPointsInBoundingBox(-2, -2, 2, 2).size());
+    }
+
+    @Test
+    public void testCollectionMethods() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(43));
+
+        final CompactGeospatialIndex<SimpleGeospatialPoint> index = new CompactGeospatialIndex<>(4, points);
+
+        assertEquals(TEST_POINT_COUNT, index.size());
+        assertEquals(new HashSet<>(points), new HashSet<>(index));
+
+        for (final SimpleGeospatialPoint point : points) {
+            assertTrue(index.contains(point));
+        }
+
+        assertFalse(index.contains(new SimpleGeospatialPoint(100, 200)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAdd() {
+        new CompactGeospatialIndex<>(new ArrayList<SimpleGeospatialPoint>()).add(new SimpleGeospatialPoint(0, 0));
+    }
+
+    @Test
+    public void testSearchesDoNotReadPointCoordinates() {
+        final AtomicInteger coordinateReads = new AtomicInteger();
+        final List<GeospatialPoint> points = new ArrayList<>();
+
+        for (final SimpleGeospatialPoint point : VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(191))) {
+            points.add(new GeospatialPoint() {
+
+                public double getLatitude() {
+                    coordinateReads.incrementAndGet();
+                    return point.getLatitude();
+                }
+
+                public double getLongitude() {
+                    coordinateReads.incrementAndGet();
+                    return point.getLongitude();
+                }
+            });
+        }
+
+        final CompactGeospatialIndex<GeospatialPoint> index = new CompactGeospatialIndex<>(4, points);
+        coordinateReads.set(0);
+
+        final SimpleGeospatialPoint queryPoint = new SimpleGeospatialPoint(12, 34);
+
+        assertEquals(10, index.getNearestNeighbors(queryPoint, 10).size());
+        assertFalse(index.getAllWithinDistance(queryPoint, 2000e3).isEmpty());
+        assertFalse(index.getAllPointsInBoundingBox(-10, -170, 40, 60).isEmpty());
+        assertEquals(TEST_POINT_COUNT, index.getAllPointsInBoundingBox(-90, -180, 90, 180).size());
+
+        assertEquals(0, coordinateReads.get());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemove() {
+        new CompactGeospatialIndex<>(new ArrayList<SimpleGeospatialPoint>()).remove(new SimpleGeospatialPoint(0, 0));
+    }
+}
@@ -0,0 +1,591 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.eatthepath.jvptree.DistanceComparator;
+
+public class ConcurrentGeospatialIndexTest {
+
+    private static final int TEST_POINT_COUNT = 2000;
+
+    /**
+     * Runs merges as soon as they're scheduled.
+     */
+    private static class DirectExecutor implements Executor {
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    }
+
+    /**
+     * Holds merges until they're explicitly run, so changes can arrive while a merge is "in progress."
+     */
+    private static class DeferredExecutor implements Executor {
+        private final Queue<Runnable> commands = new ArrayDeque<>();
+
+        public void execute(final Runnable command) {
+            this.commands.add(command);
+        }
+
+        private void runPendingCommands() {
+            while (!this.commands.isEmpty()) {
+                this.commands.remove().run();
+            }
+        }
+    }
+
+    /**
+     * Records any exceptions thrown by merges, which would otherwise be lost in the background.
+     */
+    private static class FailureRecordingExecutor implements Executor {
+        private final Executor executor;
+        private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        private FailureRecordingExecutor(final Executor executor) {
+            this.executor = executor;
+        }
+
+        public void execute(final Runnable command) {
+            this.executor.execute(new Runnable() {
+
+                public void run() {
+                    try {
+                        command.run();
+                    } catch (final RuntimeException | Error e) {
+                        FailureRecordingExecutor.this.failures.add(e);
+                    }
+                }
+            });
+        }
+
+        private void assertNoFailures() {
+            assertTrue(String.valueOf(this.failures.peek()), this.failures.isEmpty());
+        }
+    }
+
+    @Test
+    public void testGetNearestNeighbors() {
+        final List<SimpleGeospatialPoint> points = new ArrayList<>();
+        final ConcurrentGeospatialIndex<SimpleGeospatialPoint> index =
+                this.createChurnedIndex(new Random(79), points, new DirectExecutor());
+
+        final Random random = new Random(83);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+        }
+
+        assertTrue(new ConcurrentGeospatialIndex<SimpleGeospatialPoint>()
+                .getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 10).isEmpty());
+    }
+
+    @Test
+    public void testGetNearestNeighborIterator() {
+        final List<SimpleGeospatialPoint> points = new ArrayList<>();
+        final DeferredExecutor executor = new DeferredExecutor();
+        final ConcurrentGeospatialIndex<SimpleGeospatialPoint> index =
+                this.createChurnedIndex(new Random(113), points, executor);
+
+        final Random random = new Random(127);
+
+        for (int i = 0; i < 10; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            final Iterator<SimpleGeospatialPoint> iterator = index.getNearestNeighborIterator(queryPoint);
+
+            // Changes to the index shouldn't be visible to iterators that already exist
+            index.add(queryPoint);
+            assertTrue(index.remove(queryPoint));
+
+            final List<SimpleGeospatialPoint> actual = new ArrayList<>();
+
+            while (iterator.hasNext()) {
+                actual.add(iterator.next());
+            }
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testFilteredSearches() {
+        final List<SimpleGeospatialPoint> points = new ArrayList<>();
+        final ConcurrentGeospatialIndex<SimpleGeospatialPoint> index =
+                this.createChurnedIndex(new Random(131), points, new DirectExecutor());
+
+        final PointFilter<GeospatialPoint> filter = VPTreeGeospatialPointIndexTest.SPARSE_FILTER;
+        final Random random = new Random(137);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 5000e3;
+
+            assertEquals(VPTreeGeospatialPointIndexTest.getExpectedFilteredNeighbors(points, queryPoint, 10, filter),
+                    index.getNearestNeighbors(queryPoint, 10, filter));
+
+            assertEquals(VPTreeGeospatialPointIndexTest.getExpectedFilteredPointsWithinDistance(points, queryPoint, maxDistance, filter),
+                    new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance, filter)));
+        }
+    }
+
+    @Test
+    public void testGetAllWithinDistanceAndBoundingBox() {
+        final List<SimpleGeospatialPoint> points = new ArrayList<>();
+        final DeferredExecutor executor = new DeferredExecutor();
+        final ConcurrentGeospatialIndex<SimpleGeospatialPoint> index =
+                this.createChurnedIndex(new Random(89), points, executor);
+
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+        final Random random = new Random(97);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 2000e3;
+
+            final HashSet<SimpleGeospatialPoint> expectedWithinDistance = new HashSet<>();
+            final HashSet<SimpleGeospatialPoint> expectedInBox = new HashSet<>();
+
+            final double south = Math.max(-90, queryPoint.getLatitude() - 10);
+            final double north = Math.min(90, queryPoint.getLatitude() + 10);
+            final double west = queryPoint.getLongitude() - 20;
+            final double east = queryPoint.getLongitude() + 20;
+
+            final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (distanceFunction.getDistance(queryPoint, point) <= maxDistance) {
+                    expectedWithinDistance.add(point);
+                }
+
+                if (boundingBox.contains(point)) {
+                    expectedInBox.add(point);
+                }
+            }
+
+            assertEquals(expectedWithinDistance, new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance)));
+            assertEquals(expectedInBox, new HashSet<>(index.getAllPointsInBoundingBox(south, west, north, east)));
+
+            // Let some merges complete partway through the queries
+            if (i == 50) {
+                executor.runPendingCommands();
+            }
+        }
+    }
+
+    @Test
+    public void testCollectionMethods() {
+        final List<SimpleGeospatialPoint> points = new ArrayList<>();
+        final DeferredExecutor executor = new DeferredExecutor();
+        final ConcurrentGeospatialIndex<SimpleGeospatialPoint> index =
+                this.createChurnedIndex(new Random(101), points, executor);
+
+        assertEquals(points.size(), index.size());
+        assertEquals(new HashSet<>(points), new HashSet<>(index));
+
+        executor.runPendingCommands();
+
+        assertEquals(points.size(), index.size());
+        assertEquals(new HashSet<>(points), new HashSet<>(index));
+
+        for (final SimpleGeospatialPoint point : points) {
+            assertTrue(index.contains(point));
+        }
+
+        final SimpleGeospatialPoint point = points.get(0);
+
+        assertTrue(index.remove(point));
+        assertFalse(index.contains(point));
+        assertFalse(index.remove(point));
+
+        // Duplicates should be counted separately
+        index.add(point);
+        index.add(point);
+        assertTrue(index.remove(point));
+        assertTrue(index.contains(point));
+
+        index.clear();
+        executor.runPendingCommands();
+
+        assertTrue(index.isEmpty());
+        assertFalse(index.iterator().hasNext());
+    }
+
+    @Test
+    public void testSearchesWithLargeDelta() {
+        final Random random = new Random(151);
+        final List<SimpleGeospatialPoint> points =
+                new ArrayList<>(VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, random));
+
+        // Merges never run, so every change stays in the delta, which gets rebuilt many times along the way
+        final ConcurrentGeospatialIndex<SimpleGeospatialPoint> index =
+                new ConcurrentGeospatialIndex<>(100000, points, new DeferredExecutor());
+
+        for (int i = 0; i < 3000; i++) {
+            if (random.nextInt(3) > 0) {
+                final SimpleGeospatialPoint point = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+                index.add(point);
+                points.add(point);
+            } else {
+                assertTrue(index.remove(points.remove(random.nextInt(points.size()))));
+            }
+        }
+
+        assertEquals(points.size(), index.size());
+        assertEquals(new HashSet<>(points), new HashSet<>(index));
+
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+
+        for (int i = 0; i < 20; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 2000e3;
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, distanceFunction));
+
+            final HashSet<SimpleGeospatialPoint> expectedWithinDistance = new HashSet<>();
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (distanceFunction.getDistance(queryPoint, point) <= maxDistance) {
+                    expectedWithinDistance.add(point);
+                }
+            }
+
+            assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+            assertEquals(expectedWithinDistance, new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance)));
+
+            final List<SimpleGeospatialPoint> actual = new ArrayList<>();
+            final Iterator<SimpleGeospatialPoint> iterator = index.getNearestNeighborIterator(queryPoint);
+
+            while (iterator.hasNext()) {
+                actual.add(iterator.next());
+            }
+
+            assertEquals(expected, actual);
+        }
+
+        for (final SimpleGeospatialPoint point : points) {
+            assertTrue(index.remove(point));
+        }
+
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception {
+        final List<SimpleGeospatialPoint> initialPoints =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(103));
+
+        final ConcurrentGeospatialIndex<SimpleGeospatialPoint> index =
+                new ConcurrentGeospatialIndex<>(64, initialPoints, AbstractGeospatialIndex.getDefaultPool());
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final List<Future<List<SimpleGeospatialPoint>>> writerFutures = new ArrayList<>();
+        final List<Future<?>> readerFutures = new ArrayList<>();
+
+        try {
+            // Each writer replaces its own share of the initial points
+            for (int writer = 0; writer < 2; writer++) {
+                final List<SimpleGeospatialPoint> ownPoints =
+                        new ArrayList<>(initialPoints.subList(writer * TEST_POINT_COUNT / 2, (writer + 1) * TEST_POINT_COUNT / 2));
+
+                final Random random = new Random(107 + writer);
+
+                writerFutures.add(executorService.submit(new Callable<List<SimpleGeospatialPoint>>() {
+
+                    public List<SimpleGeospatialPoint> call() {
+                        for (int i = 0; i < 5000; i++) {
+                            final int slot = random.nextInt(ownPoints.size());
+                            final SimpleGeospatialPoint replacement = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+                            assertTrue(index.remove(ownPoints.get(slot)));
+                            index.add(replacement);
+
+                            ownPoints.set(slot, replacement);
+                        }
+
+                        return ownPoints;
+                    }
+                }));
+            }
+
+            for (int reader = 0; reader < 2; reader++) {
+                final Random random = new Random(109 + reader);
+
+                readerFutures.add(executorService.submit(new Callable<Void>() {
+
+                    public Void call() {
+                        for (int i = 0; i < 2000; i++) {
+                            final List<SimpleGeospatialPoint> neighbors =
+                                    index.getNearestNeighbors(VPTreeGeospatialPointIndexTest.createRandomPoint(random), 10);
+
+                            // Each writer removes and then adds, so the index always holds at least TEST_POINT_COUNT - 2
+                            assertEquals(10, neighbors.size());
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            final HashSet<SimpleGeospatialPoint> expectedPoints = new HashSet<>();
+
+            for (final Future<List<SimpleGeospatialPoint>> future : writerFutures) {
+                expectedPoints.addAll(future.get());
+            }
+
+            for (final Future<?> future : readerFutures) {
+                future.get();
+            }
+
+            assertEquals(TEST_POINT_COUNT, index.size());
+            assertEquals(expectedPoints, new HashSet<>(index));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testMovePointDuringMerge() throws Exception {
+        final List<MovingPoint> points = new ArrayList<>();
+        final Random random = new Random(113);
+
+        for (int i = 0; i < TEST_POINT_COUNT; i++) {
+            points.add(new MovingPoint(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+        }
+
+        final List<Thread> mergeThreads = new ArrayList<>();
+        final FailureRecordingExecutor executor = new FailureRecordingExecutor(new Executor() {
+
+            public void execute(final Runnable command) {
+                final Thread thread = new Thread(command);
+                mergeThreads.add(thread);
+
+                thread.start();
+            }
+        });
+
+        final ConcurrentGeospatialIndex<GeospatialPoint> index =
+                new ConcurrentGeospatialIndex<GeospatialPoint>(16, new ArrayList<GeospatialPoint>(points), executor);
+
+        // The gate is the first addition, so a merge reads the positions of all of the points in the old base before
+        // it blocks on the gate
+        final GatePoint gate = new GatePoint();
+        index.add(gate);
+        gate.arm();
+
+        while (mergeThreads.isEmpty()) {
+            index.add(new MovingPoint(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+        }
+
+        gate.awaitReached();
+
+        // The new base has already recorded this point's old position
+        final MovingPoint point = points.get(0);
+
+        assertTrue(index.remove(point));
+        point.setPosition(-point.getLatitude(), BoundingBox.normalizeLongitude(point.getLongitude() + 180));
+        index.add(point);
+
+        gate.release();
+        mergeThreads.get(0).join();
+
+        executor.assertNoFailures();
+
+        assertEquals(1, index.getAllPointsInBoundingBox(point.getLatitude(), point.getLongitude(),
+                point.getLatitude(), point.getLongitude()).size());
+
+        assertTrue(index.remove(point));
+        assertFalse(index.contains(point));
+        assertFalse(index.remove(point));
+
+        // Later changes should still work after the merge
+        assertTrue(index.remove(gate));
+        assertTrue(index.add(point));
+        assertTrue(index.contains(point));
+    }
+
+    @Test
+    public void testConcurrentMoves() throws Exception {
+        final List<MovingPoint> initialPoints = new ArrayList<>();
+        final Random pointRandom = new Random(127);
+
+        for (int i = 0; i < TEST_POINT_COUNT; i++) {
+            initialPoints.add(new MovingPoint(pointRandom.nextDouble() * 180 - 90, pointRandom.nextDouble() * 360 - 180));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final FailureRecordingExecutor executor = new FailureRecordingExecutor(pool);
+        final ConcurrentGeospatialIndex<MovingPoint> index = new ConcurrentGeospatialIndex<>(50, initialPoints, executor);
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final List<Future<?>> writerFutures = new ArrayList<>();
+
+        try {
+            // Each writer moves its own share of the points by removing, relocating, and re-adding them
+            for (int writer = 0; writer < 4; writer++) {
+                final List<MovingPoint> ownPoints =
+                        initialPoints.subList(writer * TEST_POINT_COUNT / 4, (writer + 1) * TEST_POINT_COUNT / 4);
+
+                final Random random = new Random(131 + writer);
+
+                writerFutures.add(executorService.submit(new Callable<Void>() {
+
+                    public Void call() {
+                        for (int i = 0; i < 5000; i++) {
+                            final MovingPoint point = ownPoints.get(random.nextInt(ownPoints.size()));
+
+                            assertTrue(index.remove(point));
+                            point.setPosition(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+                            index.add(point);
+                        }
+
+                        return null;
+                    }
+                }));
+            }
+
+            for (final Future<?> future : writerFutures) {
+                future.get();
+            }
+
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+            executor.assertNoFailures();
+
+            assertEquals(TEST_POINT_COUNT, index.size());
+            assertEquals(new HashSet<>(initialPoints), new HashSet<>(index));
+
+            // Every point must still be findable at its final position
+            for (final MovingPoint point : initialPoints) {
+                assertTrue(index.contains(point));
+            }
+        } finally {
+            executorService.shutdown();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates an index with a small merge threshold and a history of additions and removals; the given list is
+     * populated with the points that should remain in the index. The history is long enough to trigger merges, but
+     * short enough that writers never wait for a merge to finish (which would never happen with a deferred executor).
+     */
+    private ConcurrentGeospatialIndex<SimpleGeospatialPoint> createChurnedIndex(final Random random, final List<SimpleGeospatialPoint> points, final Executor executor) {
+        points.addAll(VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, random));
+
+        final ConcurrentGeospatialIndex<SimpleGeospatialPoint> index = new ConcurrentGeospatialIndex<>(16, points, executor);
+
+        for (int i = 0; i < 2000; i++) {
+            if (random.nextBoolean()) {
+                final SimpleGeospatialPoint point = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+                index.add(point);
+                points.add(point);
+            } else {
+                assertTrue(index.remove(points.remove(random.nextInt(points.size()))));
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * A point whose position can change; unlike {@link SimpleGeospatialPoint}, points are equal only to themselves.
+     * Positions are volatile because merges read them from other threads.
+     */
+    private static class MovingPoint implements GeospatialPoint {
+        private volatile double latitude;
+        private volatile double longitude;
+
+        private MovingPoint(final double latitude, final double longitude) {
+            this.setPosition(latitude, longitude);
+        }
+
+        private void setPosition(final double latitude, final double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public double getLatitude() {
+            return this.latitude;
+        }
+
+        public double getLongitude() {
+            return this.longitude;
+        }
+    }
+
+    /**
+     * A point that, once armed, blocks the first thread other than the one that armed it that asks for its latitude
+     * until the test releases it. Writers may read the point's position while it's armed, but merges may not.
+     */
+    private static class GatePoint implements GeospatialPoint {
+        private final CountDownLatch reached = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        private volatile Thread armingThread = null;
+
+        private void arm() {
+            this.armingThread = Thread.currentThread();
+        }
+
+        private void awaitReached() throws InterruptedException {
+            assertTrue(this.reached.await(1, TimeUnit.MINUTES));
+        }
+
+        private void release() {
+            this.released.countDown();
+        }
+
+        public double getLatitude() {
+            final Thread armingThread = this.armingThread;
+
+            if (armingThread != null && armingThread != Thread.currentThread()) {
+                this.armingThread = null;
+                this.reached.countDown();
+
+                try {
+                    this.released.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return 0;
+        }
+
+        public double getLongitude() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CorridorTest {
+
+    @Test
+    public void testContains() {
+        final Corridor corridor = new Corridor(Arrays.asList(
+                new SimpleGeospatialPoint(0, 0),
+                new SimpleGeospatialPoint(0, 10),
+                new SimpleGeospatialPoint(10, 10)), 100e3);
+
+        // One degree of latitude is about 111 kilometers
+        assertTrue(corridor.contains(UnitVectors.getUnitVector(0.5, 5)));
+        assertTrue(corridor.contains(UnitVectors.getUnitVector(-0.5, 5)));
+        assertFalse(corridor.contains(UnitVectors.getUnitVector(1, 5)));
+        assertTrue(corridor.contains(UnitVectors.getUnitVector(0, -0.5)));
+        assertFalse(corridor.contains(UnitVectors.getUnitVector(0, -1)));
+        assertTrue(corridor.contains(UnitVectors.getUnitVector(5, 10.5)));
+        assertFalse(corridor.contains(UnitVectors.getUnitVector(5, 11)));
+        assertTrue(corridor.contains(UnitVectors.getUnitVector(10.5, 10)));
+        assertFalse(corridor.contains(UnitVectors.getUnitVector(11, 10)));
+        assertFalse(corridor.contains(UnitVectors.getUnitVector(5, 5)));
+    }
+
+    @Test
+    public void testContainsSinglePoint() {
+        final SimpleGeospatialPoint center = new SimpleGeospatialPoint(42.3631, -71.0064);
+        final Corridor corridor = new Corridor(Collections.singletonList(center), 500e3);
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+        final Random random = new Random(149);
+
+        for (int i = 0; i < 1000; i++) {
+            final SimpleGeospatialPoint point = new SimpleGeospatialPoint(
+                    center.getLatitude() + (random.nextDouble() * 20) - 10, center.getLongitude() + (random.nextDouble() * 20) - 10);
+
+            final double distance = distanceFunction.getDistance(center, point);
+
+            // Skip points right at the edge of the corridor, where the two ways of measuring distance may disagree
+            if (Math.abs(distance - 500e3) > 1) {
+                assertEquals(distance <= 500e3, corridor.contains(UnitVectors.getUnitVector(point)));
+            }
+        }
+    }
+
+    @Test
+    public void testGetChordLength() {
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+        final Random random = new Random(151);
+
+        for (int i = 0; i < 20; i++) {
+            final List<SimpleGeospatialPoint> route = createRandomRoute(12, random);
+            final Corridor corridor = new Corridor(route, 0);
+
+            for (int j = 0; j < 100; j++) {
+                final SimpleGeospatialPoint point = new SimpleGeospatialPoint(
+                        Math.max(-90, Math.min(90, route.get(0).getLatitude() + (random.nextDouble() * 20) - 10)),
+                        route.get(0).getLongitude() + (random.nextDouble() * 20) - 10);
+
+                final double distance = UnitVectors.toDistance(corridor.getChordLength(UnitVectors.getUnitVector(point)));
+
+                // Compare against the distance to the nearest of many points sampled along the route; the sampled
+                // distance can't be less than the true distance, and can't be more than half the sample spacing more
+                double sampledDistance = Double.POSITIVE_INFINITY;
+                double maxSpacing = 0;
+
+                for (int k = 0; k < route.size() - 1; k++) {
+                    final double[] start = UnitVectors.getUnitVector(route.get(k));
+                    final double[] end = UnitVectors.getUnitVector(route.get(k + 1));
+
+                    maxSpacing = Math.max(maxSpacing, distanceFunction.getDistance(route.get(k), route.get(k + 1)) / 1000);
+
+                    for (int sample = 0; sample <= 1000; sample++) {
+                        sampledDistance = Math.min(sampledDistance,
+                                UnitVectors.toDistance(UnitVectors.getChordLength(UnitVectors.getUnitVector(point), 0,
+                                        interpolate(start, end, sample / 1000.0), 0)));
+                    }
+                }
+
+                assertTrue(distance <= sampledDistance + 1e-3);
+                assertTrue(sampledDistance - distance <= (maxSpacing / 2) + 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void testSelectSpans() {
+        final Random random = new Random(157);
+
+        for (int i = 0; i < 100; i++) {
+            final List<SimpleGeospatialPoint> route = createRandomRoute(20, random);
+            final Corridor corridor = new Corridor(route, random.nextDouble() * 200e3);
+            final int initialStackSize = corridor.getInitialStackSize();
+
+            final double[] vantagePoint = UnitVectors.getUnitVector(route.get(random.nextInt(route.size())));
+            final double threshold = random.nextDouble() * 0.1;
+
+            // Both selections start at the same position on the stack, so only the most recent one is still there
+            corridor.selectSpansWithin(0, initialStackSize, vantagePoint, threshold);
+            final int beyondEnd = corridor.selectSpansBeyond(0, initialStackSize, vantagePoint, threshold);
+
+            for (int j = 0; j < 1000; j++) {
+                final double[] vector = createVectorNearRoute(route, random);
+
+                final int nearestSegment = corridor.getNearestSegment(vector, 0, 0, initialStackSize);
+
+                // Any point in the corridor must be nearest to the same segment among the selected spans as it is
+                // among all segments
+                if (nearestSegment >= 0 && UnitVectors.getChordLength(vantagePoint, 0, vector, 0) >= threshold) {
+                    assertEquals(nearestSegment, corridor.getNearestSegment(vector, 0, initialStackSize, beyondEnd));
+                }
+            }
+
+            final int withinEnd = corridor.selectSpansWithin(0, initialStackSize, vantagePoint, threshold);
+
+            for (int j = 0; j < 1000; j++) {
+                final double[] vector = createVectorNearRoute(route, random);
+
+                final int nearestSegment = corridor.getNearestSegment(vector, 0, 0, initialStackSize);
+
+                if (nearestSegment >= 0 && UnitVectors.getChordLength(vantagePoint, 0, vector, 0) <= threshold) {
+                    assertEquals(nearestSegment, corridor.getNearestSegment(vector, 0, initialStackSize, withinEnd));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSortByRoutePosition() {
+        final Corridor corridor = new Corridor(Arrays.asList(
+                new SimpleGeospatialPoint(0, 0),
+                new SimpleGeospatialPoint(0, 10),
+                new SimpleGeospatialPoint(10, 10)), 100e3);
+
+        final List<SimpleGeospatialPoint> expected = Arrays.asList(
+                new SimpleGeospatialPoint(0, -0.5),
+                new SimpleGeospatialPoint(0.5, 1),
+                new SimpleGeospatialPoint(-0.5, 2),
+                new SimpleGeospatialPoint(-0.5, 10.5),
+                new SimpleGeospatialPoint(3, 9.5),
+                new SimpleGeospatialPoint(10.5, 10));
+
+        final List<SimpleGeospatialPoint> shuffled = new ArrayList<>(expected);
+        Collections.shuffle(shuffled, new Random(163));
+
+        assertEquals(expected, corridor.sortByRoutePosition(shuffled));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRoute() {
+        new Corridor(new ArrayList<SimpleGeospatialPoint>(), 100e3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAntipodalRoute() {
+        new Corridor(Arrays.asList(new SimpleGeospatialPoint(0, 0), new SimpleGeospatialPoint(0, 180)), 100e3);
+    }
+
+    /**
+     * Creates a route that wanders in small steps from a random starting point.
+     */
+    static List<SimpleGeospatialPoint> createRandomRoute(final int length, final Random random) {
+        final List<SimpleGeospatialPoint> route = new ArrayList<>(length);
+
+        double latitude = (random.nextDouble() * 160) - 80;
+        double longitude = (random.nextDouble() * 360) - 180;
+
+        for (int i = 0; i < length; i++) {
+            route.add(new SimpleGeospatialPoint(latitude, longitude));
+
+            latitude = Math.max(-90, Math.min(90, latitude + random.nextGaussian()));
+            longitude += random.nextGaussian();
+        }
+
+        return route;
+    }
+
+    private static double[] createVectorNearRoute(final List<SimpleGeospatialPoint> route, final Random random) {
+        return UnitVectors.getUnitVector(
+                Math.max(-90, Math.min(90, route.get(0).getLatitude() + (random.nextDouble() * 20) - 10)),
+                route.get(0).getLongitude() + (random.nextDouble() * 20) - 10);
+    }
+
+    private static double[] interpolate(final double[] start, final double[] end, final double fraction) {
+        final double[] vector = new double[3];
+        double magnitude = 0;
+
+        for (int i = 0; i < 3; i++) {
+            vector[i] = start[i] + ((end[i] - start[i]) * fraction);
+            magnitude += vector[i] * vector[i];
+        }
+
+        magnitude = Math.sqrt(magnitude);
+
+        for (int i = 0; i < 3; i++) {
+            vector[i] /= magnitude;
+        }
+
+        return vector;
+    }
+}
@@ -0,0 +1,236 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GeospatialPointLoaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<IdentifiedGeospatialPoint> points;
+
+    private static final int TEST_POINT_COUNT = 5000;
+
+    @Before
+    public void setUp() {
+        final Random random = new Random(89);
+        this.points = new ArrayList<>(TEST_POINT_COUNT);
+
+        for (int i = 0; i < TEST_POINT_COUNT; i++) {
+            // Mix full-precision coordinates with the shorter coordinates found in most real data sets
+            final double latitude = (random.nextDouble() * 180.0) - 90;
+            final double longitude = (random.nextDouble() * 360.0) - 180;
+
+            if (i % 2 == 0) {
+                this.points.add(new GeospatialPointHandle(random.nextLong(), latitude, longitude));
+            } else {
+                this.points.add(new GeospatialPointHandle(i, Math.round(latitude * 1e6) / 1e6, Math.round(longitude * 1e6) / 1e6));
+            }
+        }
+    }
+
+    @Test
+    public void testLoadCsv() throws IOException {
+        final StringBuilder csv = new StringBuilder("id,name,latitude,longitude\r\n");
+
+        for (final IdentifiedGeospatialPoint point : this.points) {
+            csv.append(point.getId()).append(",\"Point, \"\"quoted\"\"\",");
+            csv.append(point.getLatitude()).append(',').append(point.getLongitude()).append("\r\n");
+            csv.append('\n');
+        }
+
+        final Path file = this.temporaryFolder.newFile().toPath();
+        Files.write(file, csv.toString().getBytes(StandardCharsets.US_ASCII));
+
+        final VPTreeGeospatialIndex<IdentifiedGeospatialPoint> index =
+                new GeospatialPointLoader(2, 3, 0, 1).loadCsv(file);
+
+        this.assertIndexContainsPoints(index);
+    }
+
+    @Test
+    public void testLoadCsvFromChannel() throws IOException {
+        final StringBuilder csv = new StringBuilder();
+
+        for (final IdentifiedGeospatialPoint point : this.points) {
+            csv.append(String.format(Locale.US, " %.6f , %.6f , %d ", point.getLatitude(), point.getLongitude(), point.getId()));
+            csv.append('\n');
+        }
+
+        final VPTreeGeospatialIndex<IdentifiedGeospatialPoint> index = new GeospatialPointLoader(0, 1, 2, 0, 4, new ForkJoinPool(2))
+                .loadCsv(Channels.newChannel(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.US_ASCII))));
+
+        assertEquals(TEST_POINT_COUNT, index.size());
+
+        final Random random = new Random(97);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final List<IdentifiedGeospatialPoint> nearestNeighbors = index.getNearestNeighbors(queryPoint, 1);
+
+            assertEquals(1, nearestNeighbors.size());
+        }
+    }
+
+    @Test
+    public void testLoadEmptyCsv() throws IOException {
+        final VPTreeGeospatialIndex<IdentifiedGeospatialPoint> index = new GeospatialPointLoader(0, 1, 2, 1)
+                .loadCsv(Channels.newChannel(new ByteArrayInputStream("latitude,longitude,id\n\n".getBytes(StandardCharsets.US_ASCII))));
+
+        assertTrue(index.isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadCsvMissingColumn() throws IOException {
+        new GeospatialPointLoader().loadCsv(
+                Channels.newChannel(new ByteArrayInputStream("1,2,3\n4,5\n".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadCsvMalformedNumber() throws IOException {
+        new GeospatialPointLoader().loadCsv(
+                Channels.newChannel(new ByteArrayInputStream("1,2,3\n4,five,6".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadCsvInvalidCoordinates() throws IOException {
+        new GeospatialPointLoader().loadCsv(
+                Channels.newChannel(new ByteArrayInputStream("91,0,1\n".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test
+    public void testLoadBinary() throws IOException {
+        final Path file = this.temporaryFolder.newFile().toPath();
+        GeospatialPointLoader.writeBinary(this.points, file);
+
+        assertEquals((long) GeospatialPointLoader.BINARY_RECORD_SIZE * TEST_POINT_COUNT, Files.size(file));
+
+        this.assertIndexContainsPoints(new GeospatialPointLoader().loadBinary(file));
+    }
+
+    @Test
+    public void testLoadBinaryFromChannel() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        GeospatialPointLoader.writeBinary(this.points, Channels.newChannel(outputStream));
+
+        this.assertIndexContainsPoints(new GeospatialPointLoader().loadBinary(
+                Channels.newChannel(new ByteArrayInputStream(outputStream.toByteArray()))));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testLoadBinaryTruncated() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        GeospatialPointLoader.writeBinary(this.points, Channels.newChannel(outputStream));
+
+        final byte[] bytes = outputStream.toByteArray();
+
+        new GeospatialPointLoader().loadBinary(
+                Channels.newChannel(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadBinaryFileTruncated() throws IOException {
+        final Path file = this.temporaryFolder.newFile().toPath();
+        Files.write(file, new byte[GeospatialPointLoader.BINARY_RECORD_SIZE + 1]);
+
+        new GeospatialPointLoader().loadBinary(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateColumns() {
+        new GeospatialPointLoader(0, 1, 0, 0);
+    }
+
+    @Test
+    public void testParseDouble() {
+        final Random random = new Random(101);
+
+        final String[] values = new String[] { "0", "-0", "+1.5", "  42.5\t", "1e3", "1.25E-2", "-.5", "5.",
+                "0.000000000000000000000000001", "123456789012345678901234", "1e400", "NaN", "-Infinity" };
+
+        for (final String value : values) {
+            assertParsedDoubleEquals(value);
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            final double value = (random.nextDouble() * 360) - 180;
+
+            assertParsedDoubleEquals(Double.toString(value));
+            assertParsedDoubleEquals(String.format(Locale.US, "%.6f", value));
+            assertParsedDoubleEquals(String.format(Locale.US, "%.3e", value));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseDoubleMalformed() {
+        final byte[] bytes = "1.2.3".getBytes(StandardCharsets.US_ASCII);
+        GeospatialPointLoader.parseDouble(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void testParseLong() {
+        final Random random = new Random(103);
+
+        final String[] values = new String[] { "0", "-0", "+17", " 42 ", String.valueOf(Long.MAX_VALUE),
+                String.valueOf(Long.MIN_VALUE) };
+
+        for (final String value : values) {
+            final byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(Long.parseLong(value.trim()), GeospatialPointLoader.parseLong(bytes, 0, bytes.length));
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            final long value = random.nextLong() >> random.nextInt(64);
+            final byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+
+            assertEquals(value, GeospatialPointLoader.parseLong(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseLongOverflow() {
+        final byte[] bytes = "9223372036854775808".getBytes(StandardCharsets.US_ASCII);
+        GeospatialPointLoader.parseLong(bytes, 0, bytes.length);
+    }
+
+    private static void assertParsedDoubleEquals(final String value) {
+        final byte[] bytes = ("," + value + ",").getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value.trim())),
+                Double.doubleToLongBits(GeospatialPointLoader.parseDouble(bytes, 1, bytes.length - 2)));
+    }
+
+    private void assertIndexContainsPoints(final VPTreeGeospatialIndex<IdentifiedGeospatialPoint> index) {
+        assertEquals(TEST_POINT_COUNT, index.size());
+        assertEquals(new HashSet<>(this.points), new HashSet<>(index));
+
+        final VPTreeGeospatialIndex<IdentifiedGeospatialPoint> expectedIndex = new VPTreeGeospatialIndex<>(this.points);
+        final Random random = new Random(107);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            assertEquals(expectedIndex.getNearestNeighbors(queryPoint, 10), index.getNearestNeighbors(queryPoint, 10));
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.eatthepath.jvptree.DistanceComparator;
+
+public class GridGeospatialIndexTest {
+
+    private static final int TEST_POINT_COUNT = 2000;
+
+    // Large enough that randomly-distributed points won't be too sparse
+    private static final double TEST_CELL_SIZE = 200e3;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGridGeospatialIndexZeroCellSize() {
+        new GridGeospatialIndex<SimpleGeospatialPoint>(0);
+    }
+
+    @Test
+    public void testGetNearestNeighbors() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final GridGeospatialIndex<SimpleGeospatialPoint> index = new GridGeospatialIndex<>(TEST_CELL_SIZE, points);
+        final Random random = new Random(97);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+        }
+
+        assertTrue(new GridGeospatialIndex<SimpleGeospatialPoint>()
+                .getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 10).isEmpty());
+    }
+
+    @Test
+    public void testGetNearestNeighborsDensePoints() {
+        // Points clustered around the antimeridian and the north pole, where cells are most distorted
+        final List<SimpleGeospatialPoint> points = new ArrayList<>();
+        final Random random = new Random(101);
+
+        for (int i = 0; i < TEST_POINT_COUNT / 2; i++) {
+            points.add(new SimpleGeospatialPoint(random.nextGaussian() * 0.05,
+                    BoundingBox.normalizeLongitude(180 + random.nextGaussian() * 0.05)));
+
+            points.add(new SimpleGeospatialPoint(90 - Math.abs(random.nextGaussian() * 0.05), random.nextDouble() * 360 - 180));
+        }
+
+        final GridGeospatialIndex<SimpleGeospatialPoint> index = new GridGeospatialIndex<>(1000, points);
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = points.get(random.nextInt(points.size()));
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, distanceFunction));
+
+            assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+
+            final double maxDistance = random.nextDouble() * 5000;
+            final Set<SimpleGeospatialPoint> expectedWithinDistance = new HashSet<>();
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (distanceFunction.getDistance(queryPoint, point) <= maxDistance) {
+                    expectedWithinDistance.add(point);
+                }
+            }
+
+            assertEquals(expectedWithinDistance, new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance)));
+        }
+    }
+
+    @Test
+    public void testGetNearestNeighborIterator() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final GridGeospatialIndex<SimpleGeospatialPoint> index = new GridGeospatialIndex<>(TEST_CELL_SIZE, points);
+        final Random random = new Random(103);
+
+        for (int i = 0; i < 10; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            final List<SimpleGeospatialPoint> actual = new ArrayList<>();
+
+            for (final Iterator<SimpleGeospatialPoint> iterator = index.getNearestNeighborIterator(queryPoint); iterator.hasNext();) {
+                actual.add(iterator.next());
+            }
+
+            assertEquals(expected, actual);
+        }
+
+        assertFalse(new GridGeospatialIndex<SimpleGeospatialPoint>()
+                .getNearestNeighborIterator(new SimpleGeospatialPoint(0, 0)).hasNext());
+    }
+
+    @Test
+    public void testFilteredSearches() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final GridGeospatialIndex<SimpleGeospatialPoint> index = new GridGeospatialIndex<>(TEST_CELL_SIZE, points);
+        final PointFilter<GeospatialPoint> filter = VPTreeGeospatialPointIndexTest.SPARSE_FILTER;
+        final Random random = new Random(107);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 5000e3;
+
+            assertEquals(VPTreeGeospatialPointIndexTest.getExpectedFilteredNeighbors(points, queryPoint, 10, filter),
+                    index.getNearestNeighbors(queryPoint, 10, filter));
+
+            assertEquals(VPTreeGeospatialPointIndexTest.getExpectedFilteredPointsWithinDistance(points, queryPoint, maxDistance, filter),
+                    new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance, filter)));
+        }
+    }
+
+    @Test
+    public void testGetAllWithinDistance() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final GridGeospatialIndex<SimpleGeospatialPoint> index = new GridGeospatialIndex<>(TEST_CELL_SIZE, points);
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+        final Random random = new Random(109);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            // Mix small and large search radii
+            final double maxDistance = random.nextDouble() * (i % 2 == 0 ? 500e3 : 15000e3);
+
+            final HashSet<SimpleGeospatialPoint> expected = new HashSet<>();
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (distanceFunction.getDistance(queryPoint, point) <= maxDistance) {
+                    expected.add(point);
+                }
+            }
+
+            assertEquals(expected, new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance)));
+        }
+    }
+
+    @Test
+    public void testGetAllWithinDistanceOfRoute() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final GridGeospatialIndex<SimpleGeospatialPoint> index = new GridGeospatialIndex<>(TEST_CELL_SIZE, points);
+        final Random random = new Random(179);
+
+        for (int i = 0; i < 20; i++) {
+            final List<SimpleGeospatialPoint> route = CorridorTest.createRandomRoute(1 + random.nextInt(50), random);
+            final double maxDistance = random.nextDouble() * 1000e3;
+
+            final List<SimpleGeospatialPoint> pointsNearRoute = index.getAllWithinDistanceOfRoute(route, maxDistance);
+
+            assertEquals(VPTreeGeospatialPointIndexTest.getExpectedPointsWithinDistanceOfRoute(points, route, maxDistance),
+                    new HashSet<>(pointsNearRoute));
+
+            assertEquals(new HashSet<>(pointsNearRoute).size(), pointsNearRoute.size());
+        }
+    }
+
+    @Test
+    public void testGetAllPointsInBoundingBox() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final GridGeospatialIndex<SimpleGeospatialPoint> index = new GridGeospatialIndex<>(TEST_CELL_SIZE, points);
+        final Random random = new Random(113);
+
+        for (int i = 0; i < 100; i++) {
+            final double south = random.nextDouble() * 180 - 90;
+            final double north = Math.min(90, south + random.nextDouble() * 60);
+            final double west = random.nextDouble() * 360 - 180;
+
+            // Some of these will cross the antimeridian
+            final double east = BoundingBox.normalizeLongitude(west + random.nextDouble() * 120);
+
+            final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+            final Set<SimpleGeospatialPoint> expected = new HashSet<>();
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (boundingBox.contains(point)) {
+                    expected.add(point);
+                }
+            }
+
+            assertEquals(expected, new HashSet<>(index.getAllPointsInBoundingBox(south, west, north, east)));
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.getAllPointsInBoundingBox(-90, -180, 90, 180).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetAllPointsInBoundingBoxSouthOfNorth() {
+        new GridGeospatialIndex<SimpleGeospatialPoint>().getAllPointsInBoundingBox(10, 0, -10, 10);
+    }
+
+    @Test
+    public void testCollectionMethods() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final GridGeospatialIndex<SimpleGeospatialPoint> index = new GridGeospatialIndex<>(TEST_CELL_SIZE, points);
+
+        assertEquals(TEST_POINT_COUNT, index.size());
+        assertEquals(new HashSet<>(points), new HashSet<>(index));
+
+        for (final SimpleGeospatialPoint point : points) {
+            assertTrue(index.contains(point));
+        }
+
+        assertFalse(index.contains(new SimpleGeospatialPoint(0.5, 0.5)));
+
+        for (final SimpleGeospatialPoint point : points.subList(0, TEST_POINT_COUNT / 2)) {
+            assertTrue(index.remove(point));
+            assertFalse(index.contains(point));
+        }
+
+        assertFalse(index.remove(points.get(0)));
+        assertEquals(TEST_POINT_COUNT / 2, index.size());
+        assertEquals(new HashSet<>(points.subList(TEST_POINT_COUNT / 2, TEST_POINT_COUNT)), new HashSet<>(index));
+
+        final SimpleGeospatialPoint queryPoint = new SimpleGeospatialPoint(0, 0);
+        final List<SimpleGeospatialPoint> expected = new ArrayList<>(points.subList(TEST_POINT_COUNT / 2, TEST_POINT_COUNT));
+        Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+        assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+
+        index.clear();
+
+        assertTrue(index.isEmpty());
+        assertFalse(index.iterator().hasNext());
+        assertTrue(index.getNearestNeighbors(queryPoint, 10).isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIteratorRemove() {
+        final GridGeospatialIndex<SimpleGeospatialPoint> index = new GridGeospatialIndex<>();
+        index.add(new SimpleGeospatialPoint(0, 0));
+
+        final Iterator<SimpleGeospatialPoint> iterator = index.iterator();
+        iterator.next();
+        iterator.remove();
+    }
+}
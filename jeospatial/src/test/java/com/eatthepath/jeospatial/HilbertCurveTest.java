@@ -0,0 +1,63 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HilbertCurveTest {
+
+    @Test
+    public void testGetIndex() {
+        final HashSet<Long> indices = new HashSet<>();
+
+        for (int latitude = -90; latitude <= 90; latitude += 10) {
+            for (int longitude = -180; longitude < 180; longitude += 10) {
+                final long index = HilbertCurve.getIndex(latitude, longitude);
+
+                assertTrue(index >= 0);
+                assertTrue(index < (1L << 32));
+                assertTrue("Distinct grid cells should have distinct indices.", indices.add(index));
+            }
+        }
+
+        assertEquals(HilbertCurve.getIndex(10, -170), HilbertCurve.getIndex(10, 190));
+    }
+
+    @Test
+    public void testLocality() {
+        // Adjacent cells along the curve should be adjacent on the grid, so nearby points should usually have nearby
+        // indices.
+        final long index = HilbertCurve.getIndex(42.3601, -71.0589);
+        final long nearbyIndex = HilbertCurve.getIndex(42.3602, -71.0588);
+        final long distantIndex = HilbertCurve.getIndex(-33.8688, 151.2093);
+
+        assertTrue(Math.abs(index - nearbyIndex) < Math.abs(index - distantIndex));
+    }
+
+    @Test
+    public void testSortByHilbertIndex() {
+        final Random random = new Random(37);
+        final GeospatialPoint[] points = new GeospatialPoint[1000];
+
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new SimpleGeospatialPoint(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+        }
+
+        final int[] order = AbstractGeospatialIndex.sortByHilbertIndex(points);
+        final HashSet<Integer> indices = new HashSet<>();
+
+        // Random points cover both halves of the curve, including indices at or above 2^31
+        for (int i = 0; i < order.length; i++) {
+            assertTrue(indices.add(order[i]));
+
+            if (i > 0) {
+                assertTrue(HilbertCurve.getIndex(points[order[i - 1]]) <= HilbertCurve.getIndex(points[order[i]]));
+            }
+        }
+
+        assertTrue(HilbertCurve.getIndex(points[order[order.length - 1]]) >= (1L << 31));
+    }
+}
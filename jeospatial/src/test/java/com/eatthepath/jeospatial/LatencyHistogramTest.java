@@ -0,0 +1,92 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testGetBucket() {
+        for (long value = 0; value < 128; value++) {
+            assertEquals(value, LatencyHistogram.getBucket(value));
+        }
+
+        final Random random = new Random(17);
+
+        for (int i = 0; i < 10000; i++) {
+            final long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            final int bucket = LatencyHistogram.getBucket(value);
+
+            assertTrue(LatencyHistogram.getLowestValueInBucket(bucket) <= value);
+            assertTrue(LatencyHistogram.getHighestValueInBucket(bucket) >= value);
+
+            // Buckets must be no wider than 1/64 of their lowest value
+            assertTrue(LatencyHistogram.getHighestValueInBucket(bucket) - LatencyHistogram.getLowestValueInBucket(bucket) <=
+                    Math.max(0, LatencyHistogram.getLowestValueInBucket(bucket) / 64));
+        }
+
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getHighestValueInBucket(LatencyHistogram.getBucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testGetValueAtPercentile() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final long[] latencies = new long[10000];
+        final Random random = new Random(19);
+
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = 1000 + random.nextInt(1000000);
+            histogram.recordLatency(latencies[i]);
+        }
+
+        Arrays.sort(latencies);
+
+        assertEquals(latencies.length, histogram.getCount());
+
+        for (final double percentile : new double[] { 0, 50, 90, 99, 99.9, 100 }) {
+            final long expected = latencies[Math.max(0, (int) Math.ceil(percentile / 100 * latencies.length) - 1)];
+            final long actual = histogram.getValueAtPercentile(percentile);
+
+            assertTrue(actual >= expected);
+            assertTrue(actual <= expected + expected / 64);
+        }
+
+        assertEquals(histogram.getValueAtPercentile(100), histogram.getMax());
+
+        double sum = 0;
+
+        for (final long latency : latencies) {
+            sum += latency;
+        }
+
+        assertEquals(sum / latencies.length, histogram.getMean(), 1e-6);
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertTrue(Double.isNaN(histogram.getMean()));
+
+        histogram.recordLatency(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetValueAtPercentileOutOfRange() {
+        new LatencyHistogram().getValueAtPercentile(101);
+    }
+}
@@ -0,0 +1,198 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedGeospatialIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<IdentifiedGeospatialPoint> points;
+    private CompactGeospatialIndex<IdentifiedGeospatialPoint> compactIndex;
+    private Path indexFile;
+
+    private static final int TEST_POINT_COUNT = 2000;
+
+    @Before
+    public void setUp() throws IOException {
+        final Random random = new Random(61);
+        this.points = new ArrayList<>(TEST_POINT_COUNT);
+
+        for (int i = 0; i < TEST_POINT_COUNT; i++) {
+            this.points.add(new GeospatialPointHandle(i, (random.nextDouble() * 180.0) - 90, (random.nextDouble() * 360.0) - 180));
+        }
+
+        this.compactIndex = new CompactGeospatialIndex<>(4, this.points);
+        this.indexFile = this.temporaryFolder.newFile().toPath();
+
+        MappedGeospatialIndex.write(this.compactIndex, this.indexFile);
+    }
+
+    @Test
+    public void testGetNearestNeighbors() throws IOException {
+        final MappedGeospatialIndex index = MappedGeospatialIndex.open(this.indexFile);
+        final Random random = new Random(67);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            assertEquals(this.compactIndex.getNearestNeighbors(queryPoint, 10), index.getNearestNeighbors(queryPoint, 10));
+        }
+
+        assertTrue(index.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 0).isEmpty());
+    }
+
+    @Test
+    public void testGetNearestNeighborsWithSearchResults() throws IOException {
+        final MappedGeospatialIndex index = MappedGeospatialIndex.open(this.indexFile);
+        final SearchResults<IdentifiedGeospatialPoint> results = new SearchResults<>();
+        final Random random = new Random(79);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            index.getNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), 10, results);
+
+            assertEquals(this.compactIndex.getNearestNeighbors(queryPoint, 10), results.toList());
+        }
+    }
+
+    @Test
+    public void testGetNearestNeighborIterator() throws IOException {
+        final MappedGeospatialIndex index = MappedGeospatialIndex.open(this.indexFile);
+        final Random random = new Random(83);
+
+        for (int i = 0; i < 10; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final List<IdentifiedGeospatialPoint> actual = new ArrayList<>();
+
+            for (final Iterator<IdentifiedGeospatialPoint> iterator = index.getNearestNeighborIterator(queryPoint); iterator.hasNext();) {
+                actual.add(iterator.next());
+            }
+
+            assertEquals(this.compactIndex.getNearestNeighbors(queryPoint, TEST_POINT_COUNT), actual);
+        }
+    }
+
+    @Test
+    public void testFilteredSearches() throws IOException {
+        final MappedGeospatialIndex index = MappedGeospatialIndex.open(this.indexFile);
+        final PointFilter<GeospatialPoint> filter = VPTreeGeospatialPointIndexTest.SPARSE_FILTER;
+        final Random random = new Random(89);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 5000e3;
+
+            assertEquals(this.compactIndex.getNearestNeighbors(queryPoint, 10, filter),
+                    index.getNearestNeighbors(queryPoint, 10, filter));
+
+            assertEquals(new HashSet<>(this.compactIndex.getAllWithinDistance(queryPoint, maxDistance, filter)),
+                    new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance, filter)));
+        }
+    }
+
+    @Test
+    public void testGetAllWithinDistance() throws IOException {
+        final MappedGeospatialIndex index = MappedGeospatialIndex.open(this.indexFile);
+        final Random random = new Random(71);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 2000e3;
+
+            assertEquals(new HashSet<>(this.compactIndex.getAllWithinDistance(queryPoint, maxDistance)),
+                    new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance)));
+        }
+    }
+
+    @Test
+    public void testGetAllPointsInBoundingBox() throws IOException {
+        final MappedGeospatialIndex index = MappedGeospatialIndex.open(this.indexFile);
+        final Random random = new Random(73);
+
+        for (int i = 0; i < 100; i++) {
+            final double south = random.nextDouble() * 180 - 90;
+            final double north = Math.min(90, south + random.nextDouble() * 60);
+            final double west = random.nextDouble() * 360 - 180;
+            final double east = BoundingBox.normalizeLongitude(west + random.nextDouble() * 120);
+
+            final List<IdentifiedGeospatialPoint> pointsInBox = index.getAllPointsInBoundingBox(south, west, north, east);
+
+            assertEquals(new HashSet<>(this.compactIndex.getAllPointsInBoundingBox(south, west, north, east)),
+                    new HashSet<>(pointsInBox));
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.getAllPointsInBoundingBox(-90, -180, 90, 180).size());
+    }
+
+    @Test
+    public void testCollectionMethods() throws IOException {
+        final MappedGeospatialIndex index = MappedGeospatialIndex.open(this.indexFile, false);
+
+        assertEquals(TEST_POINT_COUNT, index.size());
+        assertEquals(new HashSet<>(this.points), new HashSet<>(index));
+
+        for (final IdentifiedGeospatialPoint point : this.points) {
+            assertTrue(index.contains(point));
+        }
+
+        final IdentifiedGeospatialPoint point = this.points.get(0);
+
+        assertFalse(index.contains(new GeospatialPointHandle(-1, point.getLatitude(), point.getLongitude())));
+        assertFalse(index.contains(new SimpleGeospatialPoint(point.getLatitude(), point.getLongitude())));
+    }
+
+    @Test
+    public void testEmptyIndex() throws IOException {
+        MappedGeospatialIndex.write(new CompactGeospatialIndex<>(new ArrayList<IdentifiedGeospatialPoint>()), this.indexFile);
+
+        final MappedGeospatialIndex index = MappedGeospatialIndex.open(this.indexFile);
+
+        assertTrue(index.isEmpty());
+        assertTrue(index.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 10).isEmpty());
+        assertTrue(index.getAllWithinDistance(new SimpleGeospatialPoint(0, 0), 1000).isEmpty());
+        assertTrue(index.getAllPointsInBoundingBox(-90, -180, 90, 180).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenCorruptFile() throws IOException {
+        try (final RandomAccessFile file = new RandomAccessFile(this.indexFile.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            final int lastByte = file.read();
+
+            file.seek(file.length() - 1);
+            file.write(lastByte ^ 0xff);
+        }
+
+        MappedGeospatialIndex.open(this.indexFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenTruncatedFile() throws IOException {
+        try (final RandomAccessFile file = new RandomAccessFile(this.indexFile.toFile(), "rw")) {
+            file.setLength(file.length() - 4);
+        }
+
+        MappedGeospatialIndex.open(this.indexFile, false);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenWrongFileType() throws IOException {
+        Files.write(this.indexFile, new byte[MappedGeospatialIndex.HEADER_SIZE]);
+        MappedGeospatialIndex.open(this.indexFile, false);
+    }
+}
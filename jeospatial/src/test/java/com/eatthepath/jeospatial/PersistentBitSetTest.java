@@ -0,0 +1,54 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PersistentBitSetTest {
+
+    @Test
+    public void testSet() {
+        final Random random = new Random(113);
+        final BitSet expected = new BitSet();
+
+        final PersistentBitSet empty = new PersistentBitSet(20000);
+        PersistentBitSet bits = empty;
+
+        for (int i = 0; i < 1000; i++) {
+            final int index = random.nextInt(20000);
+
+            expected.set(index);
+            bits = bits.set(index);
+        }
+
+        assertEquals(expected.cardinality(), bits.cardinality());
+        assertEquals(0, empty.cardinality());
+
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(expected.get(i), bits.get(i));
+            assertFalse(empty.get(i));
+        }
+    }
+
+    @Test
+    public void testSetAlreadySetBit() {
+        final PersistentBitSet bits = new PersistentBitSet(100).set(7);
+
+        assertSame(bits, bits.set(7));
+        assertEquals(1, bits.cardinality());
+    }
+
+    @Test
+    public void testSetBeyondInitialCapacity() {
+        final PersistentBitSet empty = new PersistentBitSet(0);
+        final PersistentBitSet bits = empty.set(10000);
+
+        assertTrue(bits.get(10000));
+        assertFalse(bits.get(9999));
+        assertFalse(empty.get(10000));
+        assertEquals(1, bits.cardinality());
+    }
+}
@@ -0,0 +1,220 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryInstrumentationTest {
+
+    private List<SimpleGeospatialPoint> points;
+    private VPTreeGeospatialIndex<SimpleGeospatialPoint> index;
+    private QueryInstrumentation instrumentation;
+
+    private static final int TEST_POINT_COUNT = 2000;
+
+    @Before
+    public void setUp() {
+        this.points = VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        this.index = new VPTreeGeospatialIndex<>(4, this.points);
+        this.instrumentation = new QueryInstrumentation();
+
+        this.index.setInstrumentation(this.instrumentation);
+    }
+
+    @Test
+    public void testInstrumentedQueries() {
+        final SearchResults<SimpleGeospatialPoint> results = new SearchResults<>();
+        final Random random = new Random(23);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            this.index.getNearestNeighbors(queryPoint, 10);
+            this.index.getNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), 10, results);
+            this.index.getAllWithinDistance(queryPoint, 1000e3);
+            this.index.getAllPointsInBoundingBox(Math.max(-90, queryPoint.getLatitude() - 5), queryPoint.getLongitude() - 5,
+                    Math.min(90, queryPoint.getLatitude() + 5), queryPoint.getLongitude() + 5);
+        }
+
+        final QueryMetrics nearestNeighborMetrics = this.instrumentation.getMetrics(QueryType.NEAREST_NEIGHBORS);
+
+        assertEquals(200, nearestNeighborMetrics.getQueryCount());
+        assertEquals(2000, nearestNeighborMetrics.getResultCount());
+        assertTrue(nearestNeighborMetrics.getNodesVisited() > 0);
+        assertTrue(nearestNeighborMetrics.getPrunedBranches() > 0);
+
+        // Pruning should keep searches from examining every point
+        assertTrue(nearestNeighborMetrics.getPointsExamined() < 200L * TEST_POINT_COUNT);
+        assertTrue(nearestNeighborMetrics.getDistanceCalculations() > nearestNeighborMetrics.getPointsExamined());
+
+        assertEquals(100, this.instrumentation.getMetrics(QueryType.WITHIN_DISTANCE).getQueryCount());
+        assertEquals(100, this.instrumentation.getMetrics(QueryType.BOUNDING_BOX).getQueryCount());
+
+        assertEquals(200, nearestNeighborMetrics.getLatencyHistogram().getCount());
+        assertTrue(nearestNeighborMetrics.getMaxLatency() >= nearestNeighborMetrics.get99thPercentileLatency());
+        assertTrue(nearestNeighborMetrics.get99thPercentileLatency() >= nearestNeighborMetrics.getMedianLatency());
+
+        this.instrumentation.reset();
+
+        assertEquals(0, nearestNeighborMetrics.getQueryCount());
+        assertEquals(0, nearestNeighborMetrics.getLatencyHistogram().getCount());
+    }
+
+    @Test
+    public void testQueryListener() {
+        final List<String> completedQueries = new ArrayList<>();
+        final AtomicLong resultCount = new AtomicLong();
+
+        final QueryListener listener = new QueryListener() {
+
+            @Override
+            public void queryCompleted(final QueryType queryType, final QueryStatistics statistics, final long latencyNanos) {
+                completedQueries.add(queryType.name());
+                resultCount.addAndGet(statistics.getResultCount());
+
+                assertTrue(statistics.getNodesVisited() > 0);
+                assertTrue(latencyNanos >= 0);
+            }
+        };
+
+        this.instrumentation.addListener(listener);
+
+        final SimpleGeospatialPoint queryPoint = new SimpleGeospatialPoint(0, 0);
+        final int withinDistanceCount = this.index.getAllWithinDistance(queryPoint, 2000e3).size();
+
+        this.index.getNearestNeighbors(queryPoint, 7);
+
+        assertEquals(2, completedQueries.size());
+        assertEquals(QueryType.WITHIN_DISTANCE.name(), completedQueries.get(0));
+        assertEquals(QueryType.NEAREST_NEIGHBORS.name(), completedQueries.get(1));
+        assertEquals(withinDistanceCount + 7, resultCount.get());
+
+        assertTrue(this.instrumentation.removeListener(listener));
+        this.index.getNearestNeighbors(queryPoint, 7);
+
+        assertEquals(2, completedQueries.size());
+    }
+
+    @Test
+    public void testBoundingBoxStatistics() {
+        final SearchResults<SimpleGeospatialPoint> results = new SearchResults<>();
+        final List<QueryStatistics> statistics = new ArrayList<>();
+
+        this.instrumentation.addListener(new QueryListener() {
+
+            @Override
+            public void queryCompleted(final QueryType queryType, final QueryStatistics queryStatistics, final long latencyNanos) {
+                statistics.add(queryStatistics);
+            }
+        });
+
+        this.index.getAllPointsInBoundingBox(-90, -180, 90, 180, results);
+
+        // A box that covers the whole world encloses the root node, so no individual points need to be examined
+        assertEquals(TEST_POINT_COUNT, results.size());
+        assertEquals(1, statistics.get(0).getNodesVisited());
+        assertEquals(0, statistics.get(0).getPointsExamined());
+        assertEquals(TEST_POINT_COUNT, statistics.get(0).getResultCount());
+    }
+
+    @Test
+    public void testExactDistanceCalculations() {
+        final Random random = new Random(29);
+
+        this.index.setDistanceMode(DistanceMode.TIERED);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            this.index.getNearestNeighbors(queryPoint, 10);
+            this.index.getAllWithinDistance(queryPoint, 1000e3);
+        }
+
+        final QueryMetrics nearestNeighborMetrics = this.instrumentation.getMetrics(QueryType.NEAREST_NEIGHBORS);
+        final QueryMetrics withinDistanceMetrics = this.instrumentation.getMetrics(QueryType.WITHIN_DISTANCE);
+
+        // Tiered evaluation should rule out most points without calculating exact distances to them
+        assertTrue(nearestNeighborMetrics.getExactDistanceCalculations() > 0);
+        assertTrue(nearestNeighborMetrics.getExactDistanceCalculations() < nearestNeighborMetrics.getDistanceCalculations());
+        assertTrue(withinDistanceMetrics.getExactDistanceCalculations() < withinDistanceMetrics.getDistanceCalculations());
+
+        this.instrumentation.reset();
+        this.index.setDistanceMode(DistanceMode.EXACT);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            this.index.getNearestNeighbors(queryPoint, 10);
+            this.index.getAllWithinDistance(queryPoint, 1000e3);
+        }
+
+        assertEquals(nearestNeighborMetrics.getDistanceCalculations(), nearestNeighborMetrics.getExactDistanceCalculations());
+        assertEquals(withinDistanceMetrics.getDistanceCalculations(), withinDistanceMetrics.getExactDistanceCalculations());
+    }
+
+    @Test
+    public void testDetachInstrumentation() {
+        this.index.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 10);
+        this.index.setInstrumentation(null);
+        this.index.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 10);
+
+        assertNull(this.index.getInstrumentation());
+        assertEquals(1, this.instrumentation.getMetrics(QueryType.NEAREST_NEIGHBORS).getQueryCount());
+    }
+
+    @Test
+    public void testRegisterMBeans() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        this.instrumentation.registerMBeans(server, "test");
+
+        try {
+            this.index.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 10);
+
+            assertEquals(1L, server.getAttribute(QueryInstrumentation.getObjectName("test", QueryType.NEAREST_NEIGHBORS), "QueryCount"));
+            assertEquals(0L, server.getAttribute(QueryInstrumentation.getObjectName("test", QueryType.BOUNDING_BOX), "QueryCount"));
+        } finally {
+            this.instrumentation.unregisterMBeans(server, "test");
+        }
+
+        assertFalse(server.isRegistered(QueryInstrumentation.getObjectName("test", QueryType.NEAREST_NEIGHBORS)));
+    }
+
+    @Test
+    public void testStripedCounter() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter(4);
+        final Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        counter.increment();
+                    }
+                }
+            });
+
+            threads[i].start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, counter.sum());
+
+        counter.reset();
+
+        assertEquals(0, counter.sum());
+    }
+}
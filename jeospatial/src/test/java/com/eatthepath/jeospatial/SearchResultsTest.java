@@ -0,0 +1,150 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SearchResultsTest {
+
+    private static final int TEST_POINT_COUNT = 2000;
+
+    @Test
+    public void testAddAndClear() {
+        final SearchResults<SimpleGeospatialPoint> results = new SearchResults<>(1);
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(100, new Random(113));
+
+        assertTrue(results.isEmpty());
+
+        for (int i = 0; i < points.size(); i++) {
+            results.add(points.get(i), i / 100.0);
+        }
+
+        assertEquals(points.size(), results.size());
+        assertEquals(points, results.toList());
+
+        for (int i = 0; i < points.size(); i++) {
+            assertSame(points.get(i), results.get(i));
+            assertEquals(UnitVectors.toDistance(i / 100.0), results.getDistance(i), 1e-9);
+        }
+
+        results.clear();
+
+        assertTrue(results.isEmpty());
+        assertTrue(results.toList().isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetBeyondSize() {
+        final SearchResults<SimpleGeospatialPoint> results = new SearchResults<>();
+        results.add(new SimpleGeospatialPoint(0, 0), 0);
+
+        results.get(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveCapacity() {
+        new SearchResults<SimpleGeospatialPoint>(0);
+    }
+
+    @Test
+    public void testGetNearestNeighbors() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(127));
+
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+        final SearchResults<SimpleGeospatialPoint> results = new SearchResults<>();
+
+        for (final GeospatialIndex<SimpleGeospatialPoint> index : createIndices(points)) {
+            final Random random = new Random(131);
+
+            for (int i = 0; i < 100; i++) {
+                final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+                final int maxResults = 1 + random.nextInt(40);
+
+                index.getNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), maxResults, results);
+
+                assertEquals(index.getNearestNeighbors(queryPoint, maxResults), results.toList());
+
+                for (int j = 0; j < results.size(); j++) {
+                    assertEquals(distanceFunction.getDistance(queryPoint, results.get(j)), results.getDistance(j), 1e-3);
+                }
+            }
+
+            index.getNearestNeighbors(0, 0, 0, results);
+            assertTrue(results.isEmpty());
+        }
+    }
+
+    @Test
+    public void testGetAllWithinDistance() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(137));
+
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+        final SearchResults<SimpleGeospatialPoint> results = new SearchResults<>();
+
+        for (final GeospatialIndex<SimpleGeospatialPoint> index : createIndices(points)) {
+            final Random random = new Random(139);
+
+            for (int i = 0; i < 100; i++) {
+                final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+                final double maxDistance = random.nextDouble() * 2000e3;
+
+                index.getAllWithinDistance(queryPoint.getLatitude(), queryPoint.getLongitude(), maxDistance, results);
+
+                assertEquals(new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance)),
+                        new HashSet<>(results.toList()));
+
+                for (int j = 0; j < results.size(); j++) {
+                    assertEquals(distanceFunction.getDistance(queryPoint, results.get(j)), results.getDistance(j), 1e-3);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGetAllPointsInBoundingBox() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(149));
+
+        final SearchResults<SimpleGeospatialPoint> results = new SearchResults<>();
+
+        for (final GeospatialIndex<SimpleGeospatialPoint> index : createIndices(points)) {
+            final Random random = new Random(151);
+
+            for (int i = 0; i < 100; i++) {
+                final SimpleGeospatialPoint center = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+                final double south = Math.max(-90, center.getLatitude() - 10);
+                final double north = Math.min(90, center.getLatitude() + 10);
+                final double west = center.getLongitude() - 20;
+                final double east = center.getLongitude() + 20;
+
+                index.getAllPointsInBoundingBox(south, west, north, east, results);
+
+                assertEquals(new HashSet<>(index.getAllPointsInBoundingBox(south, west, north, east)),
+                        new HashSet<>(results.toList()));
+
+                for (int j = 0; j < results.size(); j++) {
+                    assertTrue(Double.isNaN(results.getDistance(j)));
+                }
+            }
+        }
+    }
+
+    private static List<GeospatialIndex<SimpleGeospatialPoint>> createIndices(final List<SimpleGeospatialPoint> points) {
+        final List<GeospatialIndex<SimpleGeospatialPoint>> indices = new ArrayList<>();
+
+        indices.add(new VPTreeGeospatialIndex<>(4, points));
+        indices.add(new CompactGeospatialIndex<>(4, points));
+        indices.add(new ConcurrentGeospatialIndex<>(points));
+
+        return indices;
+    }
+}
@@ -0,0 +1,361 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.eatthepath.jvptree.DistanceComparator;
+
+public class ShardedGeospatialIndexTest {
+
+    private static final int TEST_POINT_COUNT = 2000;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShardedGeospatialIndexNoShards() {
+        new ShardedGeospatialIndex<>(0, 4, new ArrayList<SimpleGeospatialPoint>(), AbstractGeospatialIndex.getDefaultPool());
+    }
+
+    @Test
+    public void testGetNearestNeighbors() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>(points);
+        final Random random = new Random(127);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+            assertEquals(expected.subList(0, 500), index.getNearestNeighbors(queryPoint, 500));
+        }
+
+        assertTrue(new ShardedGeospatialIndex<SimpleGeospatialPoint>()
+                .getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 10).isEmpty());
+    }
+
+    @Test
+    public void testGetNearestNeighborsNearDenseShard() {
+        final Random random = new Random(211);
+        final List<SimpleGeospatialPoint> points = new ArrayList<>();
+
+        // A few points spread out in the eastern shard and a dense cluster just across the boundary in the western shard
+        for (int i = 0; i < 20; i++) {
+            points.add(new SimpleGeospatialPoint(random.nextDouble() * 20 - 10, random.nextDouble() * 20));
+        }
+
+        for (int i = 0; i < TEST_POINT_COUNT; i++) {
+            points.add(new SimpleGeospatialPoint(random.nextDouble() * 2 - 1, -random.nextDouble()));
+        }
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index =
+                new ShardedGeospatialIndex<>(1, 2, points, AbstractGeospatialIndex.getDefaultPool());
+
+        for (int i = 0; i < 20; i++) {
+            final SimpleGeospatialPoint queryPoint = new SimpleGeospatialPoint(random.nextDouble() * 2 - 1, random.nextDouble() * 5);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+        }
+    }
+
+    @Test
+    public void testGetNearestNeighborIterator() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>(points);
+        final Random random = new Random(131);
+
+        for (int i = 0; i < 10; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            final List<SimpleGeospatialPoint> actual = new ArrayList<>();
+
+            for (final Iterator<SimpleGeospatialPoint> iterator = index.getNearestNeighborIterator(queryPoint); iterator.hasNext();) {
+                actual.add(iterator.next());
+            }
+
+            assertEquals(expected, actual);
+        }
+
+        assertFalse(new ShardedGeospatialIndex<SimpleGeospatialPoint>()
+                .getNearestNeighborIterator(new SimpleGeospatialPoint(0, 0)).hasNext());
+    }
+
+    @Test
+    public void testFilteredSearches() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>(points);
+        final PointFilter<GeospatialPoint> filter = VPTreeGeospatialPointIndexTest.SPARSE_FILTER;
+        final Random random = new Random(137);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 5000e3;
+
+            assertEquals(VPTreeGeospatialPointIndexTest.getExpectedFilteredNeighbors(points, queryPoint, 10, filter),
+                    index.getNearestNeighbors(queryPoint, 10, filter));
+
+            assertEquals(VPTreeGeospatialPointIndexTest.getExpectedFilteredPointsWithinDistance(points, queryPoint, maxDistance, filter),
+                    new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance, filter)));
+        }
+    }
+
+    @Test
+    public void testGetAllWithinDistance() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>(points);
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+        final Random random = new Random(139);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 5000e3;
+
+            final HashSet<SimpleGeospatialPoint> expected = new HashSet<>();
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (distanceFunction.getDistance(queryPoint, point) <= maxDistance) {
+                    expected.add(point);
+                }
+            }
+
+            assertEquals(expected, new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance)));
+        }
+    }
+
+    @Test
+    public void testGetAllWithinDistanceOfRoute() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>(points);
+        final Random random = new Random(173);
+
+        for (int i = 0; i < 100; i++) {
+            final List<SimpleGeospatialPoint> route = CorridorTest.createRandomRoute(1 + random.nextInt(50), random);
+            final double maxDistance = random.nextDouble() * 1000e3;
+
+            final List<SimpleGeospatialPoint> pointsNearRoute = index.getAllWithinDistanceOfRoute(route, maxDistance, true);
+
+            assertEquals(VPTreeGeospatialPointIndexTest.getExpectedPointsWithinDistanceOfRoute(points, route, maxDistance),
+                    new HashSet<>(pointsNearRoute));
+
+            assertEquals(new Corridor(route, maxDistance).sortByRoutePosition(pointsNearRoute), pointsNearRoute);
+        }
+    }
+
+    @Test
+    public void testGetAllPointsInBoundingBox() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>(points);
+        final Random random = new Random(149);
+
+        for (int i = 0; i < 100; i++) {
+            final double south = random.nextDouble() * 180 - 90;
+            final double north = Math.min(90, south + random.nextDouble() * 60);
+            final double west = random.nextDouble() * 360 - 180;
+            final double east = BoundingBox.normalizeLongitude(west + random.nextDouble() * 120);
+
+            final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+            final Set<SimpleGeospatialPoint> expected = new HashSet<>();
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (boundingBox.contains(point)) {
+                    expected.add(point);
+                }
+            }
+
+            assertEquals(expected, new HashSet<>(index.getAllPointsInBoundingBox(south, west, north, east)));
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.getAllPointsInBoundingBox(-90, -180, 90, 180).size());
+    }
+
+    @Test
+    public void testCounts() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>(points);
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> referenceIndex = new VPTreeGeospatialIndex<>(points);
+        final Random random = new Random(151);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 2000e3;
+
+            assertEquals(referenceIndex.countWithinDistance(queryPoint.getLatitude(), queryPoint.getLongitude(), maxDistance),
+                    index.countWithinDistance(queryPoint.getLatitude(), queryPoint.getLongitude(), maxDistance));
+
+            final double south = random.nextDouble() * 180 - 90;
+            final double north = Math.min(90, south + random.nextDouble() * 60);
+            final double west = random.nextDouble() * 360 - 180;
+            final double east = BoundingBox.normalizeLongitude(west + random.nextDouble() * 120);
+
+            assertEquals(referenceIndex.countInBoundingBox(south, west, north, east),
+                    index.countInBoundingBox(south, west, north, east));
+
+            final int[][] expected = referenceIndex.countInGrid(south, west, north, east, 4, 3);
+            final int[][] counts = index.countInGrid(south, west, north, east, 4, 3);
+
+            for (int row = 0; row < expected.length; row++) {
+                assertArrayEquals(expected[row], counts[row]);
+            }
+
+            final int[][] expectedWrapped = referenceIndex.countInGrid(-90, west, 90, west + 360, 2, 5);
+            final int[][] wrappedCounts = index.countInGrid(-90, west, 90, west + 360, 2, 5);
+
+            for (int row = 0; row < expectedWrapped.length; row++) {
+                assertArrayEquals(expectedWrapped[row], wrappedCounts[row]);
+            }
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.countInBoundingBox(-90, -180, 90, 180));
+    }
+
+    @Test
+    public void testCollectionMethods() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>(points.subList(0, TEST_POINT_COUNT / 2));
+        index.addAll(points.subList(TEST_POINT_COUNT / 2, TEST_POINT_COUNT));
+
+        assertEquals(TEST_POINT_COUNT, index.size());
+        assertEquals(new HashSet<>(points), new HashSet<>(index));
+
+        for (final SimpleGeospatialPoint point : points) {
+            assertTrue(index.contains(point));
+        }
+
+        for (final SimpleGeospatialPoint point : points.subList(0, TEST_POINT_COUNT / 2)) {
+            assertTrue(index.remove(point));
+        }
+
+        assertFalse(index.remove(points.get(0)));
+        assertFalse(index.contains(points.get(0)));
+        assertEquals(TEST_POINT_COUNT / 2, index.size());
+
+        final Iterator<SimpleGeospatialPoint> iterator = index.iterator();
+        final SimpleGeospatialPoint removed = iterator.next();
+        iterator.remove();
+
+        assertFalse(index.contains(removed));
+        assertEquals(TEST_POINT_COUNT / 2 - 1, index.size());
+
+        index.clear();
+
+        assertTrue(index.isEmpty());
+        assertTrue(index.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 10).isEmpty());
+    }
+
+    @Test
+    public void testRebuildShard() {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>(points);
+
+        for (int shard = 0; shard < index.getShardCount(); shard++) {
+            index.rebuildShard(shard);
+        }
+
+        assertEquals(new HashSet<>(points), new HashSet<>(index));
+
+        // Replace the contents of the shard containing the first point with only that point
+        final SimpleGeospatialPoint point = points.get(0);
+        final int shardIndex = index.getShardIndex(point);
+
+        index.rebuildShard(shardIndex, Collections.singletonList(point));
+
+        final Set<SimpleGeospatialPoint> expected = new HashSet<>();
+
+        for (final SimpleGeospatialPoint p : points) {
+            if (p == point || index.getShardIndex(p) != shardIndex) {
+                expected.add(p);
+            }
+        }
+
+        assertEquals(expected, new HashSet<>(index));
+        assertEquals(expected.size(), index.size());
+        assertEquals(Collections.singletonList(point), index.getNearestNeighbors(point, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRebuildShardWrongShard() {
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>();
+        final SimpleGeospatialPoint point = new SimpleGeospatialPoint(0, 0);
+
+        index.rebuildShard((index.getShardIndex(point) + 1) % index.getShardCount(), Collections.singletonList(point));
+    }
+
+    @Test
+    public void testSearchWhileRebuilding() throws InterruptedException {
+        final List<SimpleGeospatialPoint> points =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(TEST_POINT_COUNT, new Random(17));
+
+        final ShardedGeospatialIndex<SimpleGeospatialPoint> index = new ShardedGeospatialIndex<>(points);
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        final Thread rebuildThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; !finished.get(); i++) {
+                        index.rebuildShard(i % index.getShardCount());
+                    }
+                } catch (final Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+
+        rebuildThread.start();
+
+        try {
+            final Random random = new Random(151);
+
+            for (int i = 0; i < 200; i++) {
+                final SimpleGeospatialPoint queryPoint = VPTreeGeospatialPointIndexTest.createRandomPoint(random);
+
+                final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+                Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+                assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+            }
+        } finally {
+            finished.set(true);
+            rebuildThread.join();
+        }
+
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,99 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TreeTunerTest {
+
+    private static final int SAMPLE_POINT_COUNT = 2000;
+    private static final int QUERY_POINT_COUNT = 100;
+
+    @Test
+    public void testEvaluate() {
+        final TreeTuner tuner = createTuner(new Random(17));
+
+        final TreeParameters parameters = new TreeParameters(16, 4);
+        final TreeTuner.Evaluation evaluation = tuner.evaluate(parameters);
+
+        assertEquals(parameters, evaluation.getParameters());
+        assertTrue(evaluation.getDistanceCalculationsPerQuery() >= 10);
+        assertTrue(evaluation.getNodesVisitedPerQuery() >= 1);
+        assertEquals(evaluation.getDistanceCalculationsPerQuery() + TreeTuner.NODE_VISIT_COST * evaluation.getNodesVisitedPerQuery(),
+                evaluation.getCost(), 1e-9);
+
+        // A single leaf holding every point examines every point for every query
+        final TreeTuner.Evaluation singleLeaf = tuner.evaluate(new TreeParameters(SAMPLE_POINT_COUNT));
+
+        assertEquals(SAMPLE_POINT_COUNT, singleLeaf.getDistanceCalculationsPerQuery(), 1e-9);
+        assertEquals(1, singleLeaf.getNodesVisitedPerQuery(), 1e-9);
+    }
+
+    @Test
+    public void testTune() {
+        final TreeTuner tuner = createTuner(new Random(23));
+
+        assertTrue(TreeTuner.getDefaultCandidates().contains(tuner.tune()));
+
+        final TreeParameters singleLeaf = new TreeParameters(SAMPLE_POINT_COUNT);
+        final TreeParameters smallLeaves = new TreeParameters(16);
+
+        assertEquals(smallLeaves, tuner.tune(Arrays.asList(singleLeaf, smallLeaves)));
+        assertEquals(singleLeaf, tuner.tune(Collections.singletonList(singleLeaf)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTuneNoCandidates() {
+        createTuner(new Random(29)).tune(Collections.<TreeParameters>emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTunerEmptySample() {
+        new TreeTuner(Collections.<GeospatialPoint>emptyList(),
+                VPTreeGeospatialPointIndexTest.createRandomPoints(QUERY_POINT_COUNT, new Random(31)), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTunerNoResults() {
+        final Random random = new Random(37);
+
+        new TreeTuner(VPTreeGeospatialPointIndexTest.createRandomPoints(SAMPLE_POINT_COUNT, random),
+                VPTreeGeospatialPointIndexTest.createRandomPoints(QUERY_POINT_COUNT, random), 0);
+    }
+
+    @Test
+    public void testTreeParameters() {
+        assertEquals(TreeParameters.DEFAULT_NODE_CAPACITY, TreeParameters.DEFAULT.getNodeCapacity());
+        assertEquals(1, TreeParameters.DEFAULT.getVantagePointCandidates());
+
+        assertEquals(new TreeParameters(16, 1), new TreeParameters(16));
+        assertEquals(new TreeParameters(16, 1).hashCode(), new TreeParameters(16).hashCode());
+        assertNotEquals(new TreeParameters(16, 1), new TreeParameters(16, 8));
+        assertNotEquals(new TreeParameters(16, 8), new TreeParameters(32, 8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTreeParametersZeroCapacity() {
+        new TreeParameters(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTreeParametersZeroCandidates() {
+        new TreeParameters(16, 0);
+    }
+
+    private static TreeTuner createTuner(final Random random) {
+        final List<SimpleGeospatialPoint> samplePoints =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(SAMPLE_POINT_COUNT, random);
+
+        final List<SimpleGeospatialPoint> queryPoints =
+                VPTreeGeospatialPointIndexTest.createRandomPoints(QUERY_POINT_COUNT, random);
+
+        return new TreeTuner(samplePoints, queryPoints, 10);
+    }
+}
@@ -0,0 +1,66 @@
+package com.eatthepath.jeospatial;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class UnitVectorsTest {
+
+    @Test
+    public void testChordLengthMatchesHaversineDistance() {
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+
+        final SimpleGeospatialPoint BOS = new SimpleGeospatialPoint(42.3631, -71.0064);
+        final SimpleGeospatialPoint LAX = new SimpleGeospatialPoint(33.9425, -118.4072);
+
+        final double[] bos = UnitVectors.getUnitVector(BOS);
+        final double[] lax = UnitVectors.getUnitVector(LAX);
+
+        assertEquals(0, UnitVectors.getChordLength(bos, bos, 0), 0);
+
+        assertEquals("Chord length must convert to the same distance as the Haversine formula.",
+                distanceFunction.getDistance(BOS, LAX), UnitVectors.toDistance(UnitVectors.getChordLength(bos, lax, 0)), 1e-6);
+
+        final double[] a = UnitVectors.getUnitVector(0, 0);
+        final double[] b = UnitVectors.getUnitVector(0, 180);
+
+        assertEquals(UnitVectors.MAX_CHORD_LENGTH, UnitVectors.getChordLength(a, b, 0), 1e-12);
+        assertEquals(20015086, UnitVectors.toDistance(UnitVectors.getChordLength(a, b, 0)), 1);
+    }
+
+    @Test
+    public void testToChordLength() {
+        assertEquals(0, UnitVectors.toChordLength(0), 0);
+        assertEquals(1234.5, UnitVectors.toDistance(UnitVectors.toChordLength(1234.5)), 1e-6);
+        assertEquals(UnitVectors.MAX_CHORD_LENGTH, UnitVectors.toChordLength(30000e3), 0);
+    }
+
+    @Test
+    public void testGetSquaredChordLengthLimit() {
+        final Random random = new Random(43);
+
+        for (int i = 0; i < 10000; i++) {
+            final double chordLength = random.nextDouble() * UnitVectors.MAX_CHORD_LENGTH;
+            final double limit = UnitVectors.getSquaredChordLengthLimit(chordLength);
+
+            // Every value near the limit must land on the same side of it as its square root does of the chord length
+            double squaredChordLength = chordLength * chordLength;
+
+            for (int j = 0; j < 4; j++) {
+                squaredChordLength = Math.nextDown(squaredChordLength);
+            }
+
+            for (int j = 0; j < 8; j++) {
+                assertEquals(Math.sqrt(squaredChordLength) <= chordLength, squaredChordLength <= limit);
+                squaredChordLength = Math.nextUp(squaredChordLength);
+            }
+        }
+
+        assertEquals(0, UnitVectors.getSquaredChordLengthLimit(0), 0);
+        assertTrue(UnitVectors.getSquaredChordLengthLimit(Math.nextDown(0.0)) < 0);
+        assertEquals(Double.POSITIVE_INFINITY, UnitVectors.getSquaredChordLengthLimit(Double.POSITIVE_INFINITY), 0);
+        assertEquals(Double.POSITIVE_INFINITY, UnitVectors.getSquaredChordLengthLimit(Double.MAX_VALUE), 0);
+    }
+}
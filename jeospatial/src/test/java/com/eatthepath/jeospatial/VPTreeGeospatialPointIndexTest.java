@@ -2,12 +2,708 @@ package com.eatthepath.jeospatial;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import com.eatthepath.jvptree.DistanceComparator;
+
 public class VPTreeGeospatialPointIndexTest {
 
+    private static final int TEST_POINT_COUNT = 2000;
+
+    @Test
+    public void testGetNearestNeighbors() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        final Random random = new Random(23);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = createRandomPoint(random);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), TEST_POINT_COUNT * 2).size());
+        assertTrue(index.getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 0).isEmpty());
+        assertTrue(new VPTreeGeospatialIndex<SimpleGeospatialPoint>().getNearestNeighbors(new SimpleGeospatialPoint(0, 0), 10).isEmpty());
+    }
+
+    @Test
+    public void testGetApproximateNearestNeighbors() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+        final SearchResults<SimpleGeospatialPoint> results = new SearchResults<>();
+
+        final Random random = new Random(29);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = createRandomPoint(random);
+
+            // With no slack and no budget, approximate searches should match exact searches
+            index.getApproximateNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), 10, 0, Integer.MAX_VALUE, results);
+
+            assertEquals(index.getNearestNeighbors(queryPoint, 10), results.toList());
+            assertTrue(results.isExact());
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            final double[] queryVector = UnitVectors.getUnitVector(queryPoint);
+
+            for (final double epsilon : new double[] { 0.1, 1 }) {
+                index.getApproximateNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), 10, epsilon, Integer.MAX_VALUE, results);
+
+                assertEquals(10, results.size());
+
+                final double maxChordLength =
+                        (1 + epsilon) * UnitVectors.getChordLength(queryVector, UnitVectors.getUnitVector(expected.get(9)), 0);
+
+                for (int j = 0; j < results.size(); j++) {
+                    assertTrue(results.getChordLength(j) <= maxChordLength * (1 + 1e-12));
+                }
+
+                if (results.isExact()) {
+                    assertEquals(expected.subList(0, 10), results.toList());
+                }
+            }
+        }
+
+        index.getApproximateNearestNeighbors(0, 0, 10, 0, 20, results);
+
+        assertFalse(results.isExact());
+        assertTrue(results.size() <= 10);
+
+        new VPTreeGeospatialIndex<SimpleGeospatialPoint>().getApproximateNearestNeighbors(0, 0, 10, 0, 20, results);
+
+        assertTrue(results.isEmpty());
+        assertTrue(results.isExact());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetApproximateNearestNeighborsNegativeEpsilon() {
+        new VPTreeGeospatialIndex<SimpleGeospatialPoint>().getApproximateNearestNeighbors(0, 0, 10, -1, 20,
+                new SearchResults<SimpleGeospatialPoint>());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetApproximateNearestNeighborsNoBudget() {
+        new VPTreeGeospatialIndex<SimpleGeospatialPoint>().getApproximateNearestNeighbors(0, 0, 10, 0, 0,
+                new SearchResults<SimpleGeospatialPoint>());
+    }
+
+    @Test
+    public void testGetTreeStatistics() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        final TreeStatistics statistics = index.getTreeStatistics();
+
+        assertEquals(statistics.getLeafCount() * 2 - 1, statistics.getNodeCount());
+        assertEquals(TEST_POINT_COUNT, statistics.getMeanLeafSize() * statistics.getLeafCount(), 1e-6);
+        assertTrue(statistics.getMaxLeafSize() <= 4);
+        assertTrue(statistics.getMinLeafSize() >= 1);
+        assertTrue(statistics.getMaxDepth() >= statistics.getMeanLeafDepth());
+
+        // Freshly-built trees should be close to perfectly balanced
+        assertTrue(statistics.getBalance() > 0.9);
+
+        final TreeStatistics emptyStatistics = new VPTreeGeospatialIndex<SimpleGeospatialPoint>().getTreeStatistics();
+
+        assertEquals(0, emptyStatistics.getNodeCount());
+        assertTrue(Double.isNaN(emptyStatistics.getBalance()));
+    }
+
+    @Test
+    public void testSampledVantagePoints() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(19));
+        final TreeParameters parameters = new TreeParameters(4, 8);
+
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(parameters, points);
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> parallelIndex =
+                new VPTreeGeospatialIndex<>(parameters, points, new ForkJoinPool(4));
+
+        assertEquals(parameters, index.getTreeParameters());
+        assertTrue(index.getTreeStatistics().getMaxLeafSize() <= 4);
+
+        final Random random = new Random(29);
+
+        for (int i = 0; i < 50; i++) {
+            final SimpleGeospatialPoint queryPoint = createRandomPoint(random);
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            assertEquals(expected.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+            assertEquals(expected.subList(0, 10), parallelIndex.getNearestNeighbors(queryPoint, 10));
+        }
+
+        // Growing the tree one point at a time splits leaves with the same parameters
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> incrementalIndex = new VPTreeGeospatialIndex<>(parameters);
+
+        for (final SimpleGeospatialPoint point : points) {
+            incrementalIndex.add(point);
+        }
+
+        assertEquals(new HashSet<>(points), new HashSet<>(incrementalIndex));
+        assertTrue(incrementalIndex.getTreeStatistics().getMaxLeafSize() <= 4);
+    }
+
+    @Test
+    public void testGetNearestNeighborIterator() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        final Random random = new Random(29);
+
+        for (int i = 0; i < 10; i++) {
+            final SimpleGeospatialPoint queryPoint = createRandomPoint(random);
+
+            final List<SimpleGeospatialPoint> expected = new ArrayList<>(points);
+            Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+            final List<SimpleGeospatialPoint> actual = new ArrayList<>();
+
+            for (final Iterator<SimpleGeospatialPoint> iterator = index.getNearestNeighborIterator(queryPoint); iterator.hasNext();) {
+                actual.add(iterator.next());
+            }
+
+            assertEquals(expected, actual);
+        }
+
+        assertFalse(new VPTreeGeospatialIndex<SimpleGeospatialPoint>().getNearestNeighborIterator(new SimpleGeospatialPoint(0, 0)).hasNext());
+    }
+
+    @Test
+    public void testFilteredSearches() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        final Random random = new Random(31);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 5000e3;
+
+            assertEquals(getExpectedFilteredNeighbors(points, queryPoint, 10, SPARSE_FILTER),
+                    index.getNearestNeighbors(queryPoint, 10, SPARSE_FILTER));
+
+            assertEquals(getExpectedFilteredPointsWithinDistance(points, queryPoint, maxDistance, SPARSE_FILTER),
+                    new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance, SPARSE_FILTER)));
+        }
+    }
+
+    @Test
+    public void testDistanceModes() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        assertEquals(DistanceMode.EXACT, index.getDistanceMode());
+
+        final SearchResults<SimpleGeospatialPoint> exactResults = new SearchResults<>();
+        final SearchResults<SimpleGeospatialPoint> tieredResults = new SearchResults<>();
+
+        final Random random = new Random(37);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 2000e3;
+
+            index.setDistanceMode(DistanceMode.EXACT);
+
+            final List<SimpleGeospatialPoint> exactNeighbors = index.getNearestNeighbors(queryPoint, 10);
+            final List<SimpleGeospatialPoint> exactFilteredNeighbors = index.getNearestNeighbors(queryPoint, 10, SPARSE_FILTER);
+            final List<SimpleGeospatialPoint> exactWithinDistance = index.getAllWithinDistance(queryPoint, maxDistance);
+
+            index.setDistanceMode(DistanceMode.TIERED);
+
+            assertEquals(exactNeighbors, index.getNearestNeighbors(queryPoint, 10));
+            assertEquals(exactFilteredNeighbors, index.getNearestNeighbors(queryPoint, 10, SPARSE_FILTER));
+            assertEquals(exactWithinDistance, index.getAllWithinDistance(queryPoint, maxDistance));
+
+            index.setDistanceMode(DistanceMode.EXACT);
+            index.getNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), 10, exactResults);
+
+            index.setDistanceMode(DistanceMode.TIERED);
+            index.getNearestNeighbors(queryPoint.getLatitude(), queryPoint.getLongitude(), 10, tieredResults);
+
+            assertSameResults(exactResults, tieredResults);
+
+            index.setDistanceMode(DistanceMode.EXACT);
+            index.getAllWithinDistance(queryPoint.getLatitude(), queryPoint.getLongitude(), maxDistance, exactResults);
+
+            index.setDistanceMode(DistanceMode.TIERED);
+            index.getAllWithinDistance(queryPoint.getLatitude(), queryPoint.getLongitude(), maxDistance, tieredResults);
+
+            assertSameResults(exactResults, tieredResults);
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testSetNullDistanceMode() {
+        new VPTreeGeospatialIndex<SimpleGeospatialPoint>().setDistanceMode(null);
+    }
+
+    @Test
+    public void testParallelConstruction() {
+        // Use enough points that the top of the tree is built in parallel
+        final List<SimpleGeospatialPoint> points =
+                createRandomPoints(VPTreeNode.PARALLEL_BUILD_THRESHOLD * 3, new Random(67));
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            final VPTreeGeospatialIndex<SimpleGeospatialPoint> sequentialIndex = new VPTreeGeospatialIndex<>(points);
+            final VPTreeGeospatialIndex<SimpleGeospatialPoint> parallelIndex = new VPTreeGeospatialIndex<>(points, pool);
+
+            assertEquals(points.size(), parallelIndex.size());
+            assertEquals(new HashSet<>(points), new HashSet<>(parallelIndex));
+
+            final Random random = new Random(71);
+
+            for (int i = 0; i < 100; i++) {
+                final SimpleGeospatialPoint queryPoint = createRandomPoint(random);
+
+                assertEquals(sequentialIndex.getNearestNeighbors(queryPoint, 10), parallelIndex.getNearestNeighbors(queryPoint, 10));
+
+                assertEquals(new HashSet<>(sequentialIndex.getAllWithinDistance(queryPoint, 500e3)),
+                        new HashSet<>(parallelIndex.getAllWithinDistance(queryPoint, 500e3)));
+            }
+
+            assertTrue(new VPTreeGeospatialIndex<>(new ArrayList<SimpleGeospatialPoint>(), pool).isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetAllNearestNeighbors() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        final List<SimpleGeospatialPoint> queryPoints = createRandomPoints(1000, new Random(61));
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            final List<List<SimpleGeospatialPoint>> results = index.getAllNearestNeighbors(queryPoints, 8, pool);
+
+            assertEquals(queryPoints.size(), results.size());
+
+            for (int i = 0; i < queryPoints.size(); i++) {
+                assertEquals(index.getNearestNeighbors(queryPoints.get(i), 8), results.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue(index.getAllNearestNeighbors(new ArrayList<SimpleGeospatialPoint>(), 8).isEmpty());
+    }
+
+    @Test
+    public void testGetAllWithinDistance() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+
+        final Random random = new Random(29);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 2000e3;
+
+            final HashSet<SimpleGeospatialPoint> expected = new HashSet<>();
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (distanceFunction.getDistance(queryPoint, point) <= maxDistance) {
+                    expected.add(point);
+                }
+            }
+
+            assertEquals(expected, new HashSet<>(index.getAllWithinDistance(queryPoint, maxDistance)));
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.getAllWithinDistance(new SimpleGeospatialPoint(0, 0), 30000e3).size());
+    }
+
+    @Test
+    public void testGetAllWithinDistanceOfRoute() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        final Random random = new Random(167);
+
+        for (int i = 0; i < 100; i++) {
+            final List<SimpleGeospatialPoint> route = CorridorTest.createRandomRoute(1 + random.nextInt(50), random);
+            final double maxDistance = random.nextDouble() * 1000e3;
+
+            final List<SimpleGeospatialPoint> pointsNearRoute = index.getAllWithinDistanceOfRoute(route, maxDistance);
+            final Set<SimpleGeospatialPoint> expected = getExpectedPointsWithinDistanceOfRoute(points, route, maxDistance);
+
+            assertEquals(expected.size(), pointsNearRoute.size());
+            assertEquals(expected, new HashSet<>(pointsNearRoute));
+
+            final List<SimpleGeospatialPoint> sortedPointsNearRoute = index.getAllWithinDistanceOfRoute(route, maxDistance, true);
+
+            assertEquals(new Corridor(route, maxDistance).sortByRoutePosition(pointsNearRoute), sortedPointsNearRoute);
+        }
+
+        assertTrue(new VPTreeGeospatialIndex<SimpleGeospatialPoint>().getAllWithinDistanceOfRoute(
+                CorridorTest.createRandomRoute(10, random), 1000e3).isEmpty());
+    }
+
+    @Test
+    public void testJoinWithinDistance() {
+        // Use enough points that the join divides its work among several tasks
+        final List<SimpleGeospatialPoint> points =
+                createRandomPoints(VPTreeNode.PARALLEL_JOIN_THRESHOLD * 3, new Random(173));
+
+        final List<SimpleGeospatialPoint> otherPoints = createRandomPoints(TEST_POINT_COUNT, new Random(179));
+
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(points);
+
+        // Build the other index one point at a time so its nodes' bounds have to grow as points arrive
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> otherIndex = new VPTreeGeospatialIndex<>(4);
+
+        for (final SimpleGeospatialPoint point : otherPoints) {
+            otherIndex.add(point);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            otherIndex.remove(otherPoints.get(i));
+        }
+
+        final double maxDistance = 100e3;
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+        final Map<SimpleGeospatialPoint, Set<SimpleGeospatialPoint>> pairs = new HashMap<>();
+        final AtomicInteger pairCount = new AtomicInteger();
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            index.joinWithinDistance(otherIndex, maxDistance, new JoinCallback<SimpleGeospatialPoint, SimpleGeospatialPoint>() {
+
+                @Override
+                public void pointsJoined(final SimpleGeospatialPoint point, final SimpleGeospatialPoint otherPoint, final double distance) {
+                    assertEquals(distanceFunction.getDistance(point, otherPoint), distance, 1e-3);
+
+                    synchronized (pairs) {
+                        if (!pairs.containsKey(point)) {
+                            pairs.put(point, new HashSet<SimpleGeospatialPoint>());
+                        }
+
+                        pairs.get(point).add(otherPoint);
+                    }
+
+                    pairCount.incrementAndGet();
+                }
+            }, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        int expectedPairCount = 0;
+
+        for (final SimpleGeospatialPoint point : points) {
+            final Set<SimpleGeospatialPoint> expected = new HashSet<>(otherIndex.getAllWithinDistance(point, maxDistance));
+            expectedPairCount += expected.size();
+
+            assertEquals(expected, pairs.containsKey(point) ? pairs.get(point) : Collections.emptySet());
+        }
+
+        assertEquals(expectedPairCount, pairCount.get());
+    }
+
+    @Test
+    public void testSelfJoinWithinDistance() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(181));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        final double maxDistance = 200e3;
+        final Map<SimpleGeospatialPoint, Set<SimpleGeospatialPoint>> pairs = new HashMap<>();
+        final AtomicInteger pairCount = new AtomicInteger();
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            index.joinWithinDistance(index, maxDistance, new JoinCallback<SimpleGeospatialPoint, SimpleGeospatialPoint>() {
+
+                @Override
+                public void pointsJoined(final SimpleGeospatialPoint point, final SimpleGeospatialPoint otherPoint, final double distance) {
+                    synchronized (pairs) {
+                        if (!pairs.containsKey(point)) {
+                            pairs.put(point, new HashSet<SimpleGeospatialPoint>());
+                        }
+
+                        pairs.get(point).add(otherPoint);
+                    }
+
+                    pairCount.incrementAndGet();
+                }
+            }, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        // Pairs are ordered, so each point is paired with itself and every other pair is reported once in each order
+        int expectedPairCount = 0;
+
+        for (final SimpleGeospatialPoint point : points) {
+            final Set<SimpleGeospatialPoint> expected = new HashSet<>(index.getAllWithinDistance(point, maxDistance));
+            expectedPairCount += expected.size();
+
+            assertTrue(expected.contains(point));
+            assertEquals(expected, pairs.get(point));
+
+            for (final SimpleGeospatialPoint otherPoint : expected) {
+                assertTrue(pairs.get(otherPoint).contains(point));
+            }
+        }
+
+        assertTrue(expectedPairCount > points.size());
+        assertEquals(expectedPairCount, pairCount.get());
+    }
+
+    @Test
+    public void testJoinNearestNeighbors() {
+        final List<SimpleGeospatialPoint> points =
+                createRandomPoints(VPTreeNode.PARALLEL_JOIN_THRESHOLD * 3, new Random(181));
+
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(points);
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> otherIndex =
+                new VPTreeGeospatialIndex<>(4, createRandomPoints(TEST_POINT_COUNT, new Random(191)));
+
+        final Map<SimpleGeospatialPoint, List<SimpleGeospatialPoint>> neighbors = new HashMap<>();
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            index.joinNearestNeighbors(otherIndex, 5, new JoinCallback<SimpleGeospatialPoint, SimpleGeospatialPoint>() {
+
+                @Override
+                public void pointsJoined(final SimpleGeospatialPoint point, final SimpleGeospatialPoint otherPoint, final double distance) {
+                    synchronized (neighbors) {
+                        if (!neighbors.containsKey(point)) {
+                            neighbors.put(point, new ArrayList<SimpleGeospatialPoint>());
+                        }
+
+                        neighbors.get(point).add(otherPoint);
+                    }
+                }
+            }, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(points.size(), neighbors.size());
+
+        for (final SimpleGeospatialPoint point : points) {
+            assertEquals(otherIndex.getNearestNeighbors(point, 5), neighbors.get(point));
+        }
+
+        // Points can't have more neighbors than there are points in the other index
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> smallIndex =
+                new VPTreeGeospatialIndex<>(createRandomPoints(3, new Random(193)));
+
+        final AtomicInteger pairCount = new AtomicInteger();
+
+        smallIndex.joinNearestNeighbors(smallIndex, 10, new JoinCallback<SimpleGeospatialPoint, SimpleGeospatialPoint>() {
+
+            @Override
+            public void pointsJoined(final SimpleGeospatialPoint point, final SimpleGeospatialPoint otherPoint, final double distance) {
+                pairCount.incrementAndGet();
+            }
+        });
+
+        assertEquals(9, pairCount.get());
+
+        new VPTreeGeospatialIndex<SimpleGeospatialPoint>().joinNearestNeighbors(otherIndex, 10, new JoinCallback<SimpleGeospatialPoint, SimpleGeospatialPoint>() {
+
+            @Override
+            public void pointsJoined(final SimpleGeospatialPoint point, final SimpleGeospatialPoint otherPoint, final double distance) {
+                fail("Joins with an empty index should find no pairs.");
+            }
+        });
+    }
+
+    @Test
+    public void testAddRemoveContains() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(31));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4);
+
+        for (final SimpleGeospatialPoint point : points) {
+            assertTrue(index.add(point));
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.size());
+        assertEquals(new HashSet<>(points), new HashSet<>(index));
+
+        for (final SimpleGeospatialPoint point : points) {
+            assertTrue(index.contains(point));
+        }
+
+        assertFalse(index.contains(new SimpleGeospatialPoint(100, 200)));
+        assertFalse(index.remove(new SimpleGeospatialPoint(100, 200)));
+
+        for (int i = 0; i < TEST_POINT_COUNT; i += 2) {
+            assertTrue(index.remove(points.get(i)));
+        }
+
+        assertEquals(TEST_POINT_COUNT / 2, index.size());
+
+        for (int i = 0; i < TEST_POINT_COUNT; i++) {
+            assertEquals(i % 2 == 1, index.contains(points.get(i)));
+        }
+
+        final SimpleGeospatialPoint queryPoint = new SimpleGeospatialPoint(12, 34);
+        final List<SimpleGeospatialPoint> expected = new ArrayList<>(index);
+        Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+        assertEquals(expected.subList(0, 16), index.getNearestNeighbors(queryPoint, 16));
+
+        final HashSet<SimpleGeospatialPoint> expectedInBox = new HashSet<>();
+
+        for (final SimpleGeospatialPoint point : index) {
+            if (point.getLatitude() >= -30 && point.getLatitude() <= 30 && (point.getLongitude() >= 150 || point.getLongitude() <= -150)) {
+                expectedInBox.add(point);
+            }
+        }
+
+        assertEquals(expectedInBox, new HashSet<>(index.getAllPointsInBoundingBox(-30, 150, 30, -150)));
+
+        index.clear();
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    public void testMove() {
+        final Random random = new Random(67);
+        final List<MovingPoint> points = new ArrayList<>();
+
+        for (final SimpleGeospatialPoint point : createRandomPoints(TEST_POINT_COUNT, random)) {
+            points.add(new MovingPoint(point.getLatitude(), point.getLongitude()));
+        }
+
+        final VPTreeGeospatialIndex<MovingPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        // Most moves are short, but some points jump across the globe, and the whole population drifts toward the
+        // northern hemisphere so that the tree would grow unbalanced without rebuilding subtrees
+        for (int round = 0; round < 20; round++) {
+            for (final MovingPoint point : points) {
+                final double latitude;
+                final double longitude;
+
+                if (random.nextInt(20) == 0) {
+                    final SimpleGeospatialPoint destination = createRandomPoint(random);
+
+                    latitude = destination.getLatitude();
+                    longitude = destination.getLongitude();
+                } else {
+                    latitude = Math.min(90, Math.max(-90, point.getLatitude() + random.nextDouble() * 6 - 1));
+                    longitude = BoundingBox.normalizeLongitude(point.getLongitude() + random.nextDouble() * 2 - 1);
+                }
+
+                assertTrue(index.move(point, latitude, longitude));
+                point.setPosition(latitude, longitude);
+            }
+        }
+
+        assertFalse(index.move(new MovingPoint(12, 34), 56, 78));
+        assertEquals(TEST_POINT_COUNT, index.size());
+        assertEquals(new HashSet<>(points), new HashSet<>(index));
+
+        for (final MovingPoint point : points) {
+            assertTrue(index.contains(point));
+        }
+
+        assertTrue(index.getTreeStatistics().getBalance() > 0.5);
+
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+
+        for (int i = 0; i < 20; i++) {
+            final SimpleGeospatialPoint queryPoint = createRandomPoint(random);
+
+            final List<MovingPoint> expectedNeighbors = new ArrayList<>(points);
+            Collections.sort(expectedNeighbors, new DistanceComparator<GeospatialPoint>(queryPoint, distanceFunction));
+
+            assertEquals(expectedNeighbors.subList(0, 10), index.getNearestNeighbors(queryPoint, 10));
+
+            final Set<MovingPoint> expectedWithinDistance = new HashSet<>();
+            final Set<MovingPoint> expectedInBox = new HashSet<>();
+
+            final double south = Math.max(-90, queryPoint.getLatitude() - 10);
+            final double north = Math.min(90, queryPoint.getLatitude() + 10);
+            final double west = queryPoint.getLongitude();
+            final double east = BoundingBox.normalizeLongitude(west + 20);
+
+            final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+
+            for (final MovingPoint point : points) {
+                if (distanceFunction.getDistance(queryPoint, point) <= 1e6) {
+                    expectedWithinDistance.add(point);
+                }
+
+                if (boundingBox.contains(point)) {
+                    expectedInBox.add(point);
+                }
+            }
+
+            assertEquals(expectedWithinDistance, new HashSet<>(index.getAllWithinDistance(queryPoint, 1e6)));
+            assertEquals(expectedInBox, new HashSet<>(index.getAllPointsInBoundingBox(south, west, north, east)));
+        }
+
+        for (final MovingPoint point : points) {
+            assertTrue(index.remove(point));
+        }
+
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    public void testGetAllPointsInRandomBoundingBoxes() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(47));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        final Random random = new Random(59);
+
+        for (int i = 0; i < 200; i++) {
+            final double south = random.nextDouble() * 180 - 90;
+            final double north = Math.min(90, south + random.nextDouble() * 60);
+            final double west = random.nextDouble() * 360 - 180;
+
+            // Roughly half of these boxes will cross the antimeridian
+            final double east = BoundingBox.normalizeLongitude(west + random.nextDouble() * 120);
+
+            final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+            final HashSet<SimpleGeospatialPoint> expected = new HashSet<>();
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (boundingBox.contains(point)) {
+                    expected.add(point);
+                }
+            }
+
+            final List<SimpleGeospatialPoint> pointsInBox = index.getAllPointsInBoundingBox(south, west, north, east);
+
+            assertEquals(expected.size(), pointsInBox.size());
+            assertEquals(expected, new HashSet<>(pointsInBox));
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.getAllPointsInBoundingBox(-90, -180, 90, 180).size());
+    }
+
     @Test
     public void testGetAllPointsInBoundingBox() {
         final List<SimpleGeospatialPoint> points = java.util.Arrays.asList(new SimpleGeospatialPoint[] {
@@ -42,4 +738,316 @@ public class VPTreeGeospatialPointIndexTest {
             assertTrue(point.getLongitude() <= 2);
         }
     }
+
+    @Test
+    public void testGetAllPointsInBoundingBoxWithDuplicates() {
+        final Random random = new Random(73);
+        final List<SimpleGeospatialPoint> points = new ArrayList<>();
+
+        // Tight clusters of repeated coordinates produce nodes with zero-radius inner partitions
+        for (int cluster = 0; cluster < 50; cluster++) {
+            final SimpleGeospatialPoint center = createRandomPoint(random);
+
+            for (int i = 0; i < 20; i++) {
+                final double latitude = Math.max(-90, Math.min(90, center.getLatitude() + random.nextInt(3) * 1e-3));
+                final double longitude = center.getLongitude() + random.nextInt(3) * 1e-3;
+                final int copies = 1 + random.nextInt(4);
+
+                for (int copy = 0; copy < copies; copy++) {
+                    points.add(new SimpleGeospatialPoint(latitude, longitude));
+                }
+            }
+        }
+
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+        final CompactGeospatialIndex<SimpleGeospatialPoint> compactIndex = new CompactGeospatialIndex<>(4, points);
+
+        for (final SimpleGeospatialPoint center : points) {
+            final double south = Math.max(-90, center.getLatitude() - 1);
+            final double north = Math.min(90, center.getLatitude() + 1);
+            final double west = center.getLongitude() - 1;
+            final double east = BoundingBox.normalizeLongitude(center.getLongitude() + 1);
+
+            final BoundingBox boundingBox = new BoundingBox(south, west, north, east);
+            int expected = 0;
+
+            for (final SimpleGeospatialPoint point : points) {
+                if (boundingBox.contains(point)) {
+                    expected += 1;
+                }
+            }
+
+            assertEquals(expected, index.getAllPointsInBoundingBox(south, west, north, east).size());
+            assertEquals(expected, index.countInBoundingBox(south, west, north, east));
+            assertEquals(expected, compactIndex.getAllPointsInBoundingBox(south, west, north, east).size());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testAddDuplicatesOneAtATime() {
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4);
+        final SimpleGeospatialPoint duplicate = new SimpleGeospatialPoint(42.3601, -71.0589);
+
+        // Duplicates can't be partitioned, so a leaf full of them would be rebuilt after every addition if it always
+        // tried to split once it exceeded its capacity
+        for (int i = 0; i < 50000; i++) {
+            index.add(duplicate);
+        }
+
+        final SimpleGeospatialPoint other = new SimpleGeospatialPoint(-33.8688, 151.2093);
+        index.add(other);
+
+        assertEquals(50001, index.size());
+        assertEquals(50000, index.getAllWithinDistance(duplicate, 1).size());
+        assertEquals(java.util.Arrays.asList(other), index.getNearestNeighbors(other, 1));
+        assertTrue(index.remove(duplicate));
+        assertEquals(49999, index.countWithinDistance(duplicate.getLatitude(), duplicate.getLongitude(), 1));
+    }
+
+    @Test
+    public void testCountWithinDistance() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(17));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        final Random random = new Random(61);
+
+        for (int i = 0; i < 100; i++) {
+            final SimpleGeospatialPoint queryPoint = createRandomPoint(random);
+            final double maxDistance = random.nextDouble() * 5000e3;
+
+            assertEquals(index.getAllWithinDistance(queryPoint, maxDistance).size(),
+                    index.countWithinDistance(queryPoint.getLatitude(), queryPoint.getLongitude(), maxDistance));
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.countWithinDistance(0, 0, 30000e3));
+        assertEquals(0, new VPTreeGeospatialIndex<SimpleGeospatialPoint>().countWithinDistance(0, 0, 30000e3));
+    }
+
+    @Test
+    public void testCountInRandomBoundingBoxes() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(47));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+
+        final Random random = new Random(67);
+
+        for (int i = 0; i < 200; i++) {
+            final double south = random.nextDouble() * 180 - 90;
+            final double north = Math.min(90, south + random.nextDouble() * 60);
+            final double west = random.nextDouble() * 360 - 180;
+            final double east = BoundingBox.normalizeLongitude(west + random.nextDouble() * 120);
+
+            assertEquals(index.getAllPointsInBoundingBox(south, west, north, east).size(),
+                    index.countInBoundingBox(south, west, north, east));
+        }
+
+        assertEquals(TEST_POINT_COUNT, index.countInBoundingBox(-90, -180, 90, 180));
+        assertEquals(0, new VPTreeGeospatialIndex<SimpleGeospatialPoint>().countInBoundingBox(-90, -180, 90, 180));
+    }
+
+    @Test
+    public void testCountInGrid() {
+        final List<SimpleGeospatialPoint> points = java.util.Arrays.asList(new SimpleGeospatialPoint[] {
+                new SimpleGeospatialPoint(0, 0),
+                new SimpleGeospatialPoint(0.5, 0.5),
+                new SimpleGeospatialPoint(1, 1),
+                new SimpleGeospatialPoint(1.5, 3.5),
+                new SimpleGeospatialPoint(2, 4),
+                new SimpleGeospatialPoint(2, 5),
+                new SimpleGeospatialPoint(-1, 1)
+        });
+
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(2, points);
+
+        // Points on the northern and eastern limits of the box land in the last row and column, but points on the
+        // boundary between two cells land in the northern or eastern cell
+        final int[][] expected = new int[][] {
+            { 2, 0 },
+            { 1, 2 }
+        };
+
+        for (int row = 0; row < expected.length; row++) {
+            assertArrayEquals(expected[row], index.countInGrid(0, 0, 2, 4, 2, 2)[row]);
+        }
+    }
+
+    @Test
+    public void testCountInRandomGrids() {
+        final List<SimpleGeospatialPoint> points = createRandomPoints(TEST_POINT_COUNT, new Random(71));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, points);
+        final GridGeospatialIndex<SimpleGeospatialPoint> referenceIndex = new GridGeospatialIndex<>(points);
+
+        final Random random = new Random(73);
+
+        for (int i = 0; i < 100; i++) {
+            final double south = random.nextDouble() * 180 - 90;
+            final double north = Math.min(90, south + random.nextDouble() * 60);
+            final double west = random.nextDouble() * 360 - 180;
+
+            // Roughly half of these grids will cross the antimeridian
+            final double east = BoundingBox.normalizeLongitude(west + random.nextDouble() * 120);
+
+            final int rows = random.nextInt(8) + 1;
+            final int columns = random.nextInt(8) + 1;
+
+            final int[][] counts = index.countInGrid(south, west, north, east, rows, columns);
+            final int[][] expected = referenceIndex.countInGrid(south, west, north, east, rows, columns);
+
+            int total = 0;
+
+            for (int row = 0; row < rows; row++) {
+                assertArrayEquals(expected[row], counts[row]);
+
+                for (final int count : counts[row]) {
+                    total += count;
+                }
+            }
+
+            assertEquals(index.countInBoundingBox(south, west, north, east), total);
+        }
+
+        // A grid that spans all longitudes should start at its western limit
+        final int[][] hemispheres = index.countInGrid(-90, 0, 90, 360, 1, 2);
+        assertEquals(index.countInBoundingBox(-90, 0, 90, 179.999999), hemispheres[0][0]);
+        assertEquals(TEST_POINT_COUNT, hemispheres[0][0] + hemispheres[0][1]);
+    }
+
+    @Test
+    public void testCountInWrappedGrid() {
+        final List<SimpleGeospatialPoint> points = java.util.Arrays.asList(new SimpleGeospatialPoint[] {
+                new SimpleGeospatialPoint(0, -170),
+                new SimpleGeospatialPoint(0, 0),
+                new SimpleGeospatialPoint(0, 170)
+        });
+
+        // A grid that spans all longitudes from a western limit other than -180 splits subtrees whose bounds cross that
+        // limit between its first and last columns
+        assertArrayEquals(new int[] { 1, 2 }, new VPTreeGeospatialIndex<>(points).countInGrid(-90, -90, 90, 270, 1, 2)[0]);
+
+        final List<SimpleGeospatialPoint> randomPoints = createRandomPoints(TEST_POINT_COUNT, new Random(79));
+        final VPTreeGeospatialIndex<SimpleGeospatialPoint> index = new VPTreeGeospatialIndex<>(4, randomPoints);
+        final GridGeospatialIndex<SimpleGeospatialPoint> referenceIndex = new GridGeospatialIndex<>(randomPoints);
+
+        final Random random = new Random(83);
+
+        for (int i = 0; i < 50; i++) {
+            final double west = random.nextDouble() * 360 - 180;
+            final int columns = random.nextInt(8) + 1;
+
+            final int[][] counts = index.countInGrid(-90, west, 90, west + 360, 3, columns);
+            final int[][] expected = referenceIndex.countInGrid(-90, west, 90, west + 360, 3, columns);
+
+            for (int row = 0; row < expected.length; row++) {
+                assertArrayEquals(expected[row], counts[row]);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCountInGridNoRows() {
+        new VPTreeGeospatialIndex<SimpleGeospatialPoint>().countInGrid(-10, -10, 10, 10, 0, 4);
+    }
+
+    private static <E extends GeospatialPoint> void assertSameResults(final SearchResults<E> expected, final SearchResults<E> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+            assertEquals(expected.getDistance(i), actual.getDistance(i), 0);
+        }
+    }
+
+    static List<SimpleGeospatialPoint> createRandomPoints(final int count, final Random random) {
+        final List<SimpleGeospatialPoint> points = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            points.add(createRandomPoint(random));
+        }
+
+        return points;
+    }
+
+    static SimpleGeospatialPoint createRandomPoint(final Random random) {
+        return new SimpleGeospatialPoint((random.nextDouble() * 180.0) - 90, (random.nextDouble() * 360.0) - 180);
+    }
+
+    /**
+     * Assigns each point to one of 64 categories based on its longitude.
+     */
+    static final PointCategorizer<GeospatialPoint> LONGITUDE_CATEGORIZER = new PointCategorizer<GeospatialPoint>() {
+
+        public long getCategories(final GeospatialPoint point) {
+            return 1L << ((int) ((point.getLongitude() + 180) * 1000) % 64);
+        }
+    };
+
+    /**
+     * Allows roughly one point in 32.
+     */
+    static final PointFilter<GeospatialPoint> SPARSE_FILTER =
+            new CategoryFilter<>(LONGITUDE_CATEGORIZER, (1L << 7) | (1L << 41));
+
+    static <E extends GeospatialPoint> List<E> getExpectedFilteredNeighbors(final List<E> points, final GeospatialPoint queryPoint, final int maxResults, final PointFilter<? super E> filter) {
+        final List<E> expected = new ArrayList<>();
+
+        for (final E point : points) {
+            if (filter.allowPoint(point)) {
+                expected.add(point);
+            }
+        }
+
+        Collections.sort(expected, new DistanceComparator<>(queryPoint, new HaversineDistanceFunction()));
+
+        return expected.subList(0, Math.min(maxResults, expected.size()));
+    }
+
+    static <E extends GeospatialPoint> Set<E> getExpectedPointsWithinDistanceOfRoute(final List<E> points, final List<? extends GeospatialPoint> route, final double maxDistance) {
+        final Corridor corridor = new Corridor(route, maxDistance);
+        final Set<E> expected = new HashSet<>();
+
+        for (final E point : points) {
+            if (corridor.contains(UnitVectors.getUnitVector(point))) {
+                expected.add(point);
+            }
+        }
+
+        return expected;
+    }
+
+    static <E extends GeospatialPoint> Set<E> getExpectedFilteredPointsWithinDistance(final List<E> points, final GeospatialPoint queryPoint, final double maxDistance, final PointFilter<? super E> filter) {
+        final HaversineDistanceFunction distanceFunction = new HaversineDistanceFunction();
+        final Set<E> expected = new HashSet<>();
+
+        for (final E point : points) {
+            if (filter.allowPoint(point) && distanceFunction.getDistance(queryPoint, point) <= maxDistance) {
+                expected.add(point);
+            }
+        }
+
+        return expected;
+    }
+
+    /**
+     * A point whose position can change; unlike {@link SimpleGeospatialPoint}, points are equal only to themselves.
+     */
+    private static class MovingPoint implements GeospatialPoint {
+        private double latitude;
+        private double longitude;
+
+        private MovingPoint(final double latitude, final double longitude) {
+            this.setPosition(latitude, longitude);
+        }
+
+        private void setPosition(final double latitude, final double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public double getLatitude() {
+            return this.latitude;
+        }
+
+        public double getLongitude() {
+            return this.longitude;
+        }
+    }
 }